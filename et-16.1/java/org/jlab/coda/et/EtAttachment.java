@@ -15,8 +15,10 @@
 package org.jlab.coda.et;
 
 import java.io.*;
+import java.util.ArrayDeque;
 
 import org.jlab.coda.et.exception.*;
+import org.jlab.coda.et.system.AttachmentLocal;
 
 /**
  * This class defines an ET system user's attachment to a station.
@@ -45,6 +47,22 @@ public class EtAttachment {
      */
     private boolean usable;
 
+    /**
+     * Events, gotten over the network, which the user has put or dumped and whose
+     * objects and data arrays are handed out again by later gets and news over
+     * the network, or null if events are not reused. Guarded by itself.
+     */
+    private volatile ArrayDeque<EtEventImpl> eventPool;
+
+    /** If the ET system runs in this JVM, its own object for this attachment, else null. */
+    private AttachmentLocal localAttachment;
+
+    /**
+     * If events are striped across several connections to the ET system, the
+     * attachments to the same station made over the extra connections, else null.
+     */
+    private EtAttachment[] stripes;
+
 
     /**
      * Constructor for creating an attachment to a specific ET system and station.
@@ -90,6 +108,119 @@ public class EtAttachment {
      */
     void setUsable(boolean usable) {
         this.usable = usable;
+        if (!usable) {
+            eventPool = null;
+        }
+    }
+
+    /**
+     * Gets the ET system's own object for this attachment if the ET system runs in this JVM.
+     * @return ET system's own object for this attachment, or null if ET system is elsewhere
+     */
+    AttachmentLocal getLocalAttachment() {return localAttachment;}
+
+    /**
+     * Sets the ET system's own object for this attachment if the ET system runs in this JVM.
+     * @param localAttachment ET system's own object for this attachment
+     */
+    void setLocalAttachment(AttachmentLocal localAttachment) {
+        this.localAttachment = localAttachment;
+    }
+
+    /**
+     * Gets the attachments to the same station made over the extra connections
+     * to the ET system if events are striped across several connections.
+     * @return attachments made over the extra connections, or null if none
+     */
+    EtAttachment[] getStripes() {return stripes;}
+
+    /**
+     * Sets the attachments to the same station made over the extra connections
+     * to the ET system if events are striped across several connections.
+     * @param stripes attachments made over the extra connections, or null if none
+     */
+    void setStripes(EtAttachment[] stripes) {
+        this.stripes = stripes;
+    }
+
+    /**
+     * Sets whether the objects and data arrays of events gotten over the network
+     * are reused. If so, once events are put or dumped through this attachment, they
+     * are kept and handed out again by later calls to get or make new events instead
+     * of creating new ones, so that steady-state remote consumption creates no garbage.
+     * Thus <b>events must not be used once they have been put or dumped.</b>
+     * Nothing is reused for events accessed through JNI or through an ET system's
+     * shared event file, or for events whose data buffer has been replaced.
+     *
+     * @param reuse <code>true</code> if event objects and data arrays are to be reused
+     */
+    public void setReuseEvents(boolean reuse) {
+        if (!reuse) {
+            eventPool = null;
+        }
+        else if (eventPool == null) {
+            eventPool = new ArrayDeque<EtEventImpl>();
+        }
+
+        EtAttachment[] stripes = this.stripes;
+        if (stripes != null) {
+            for (EtAttachment stripe : stripes) {
+                stripe.setReuseEvents(reuse);
+            }
+        }
+    }
+
+    /**
+     * Tells if the objects and data arrays of events gotten over the network are reused.
+     * @return <code>true</code> if event objects and data arrays are reused
+     * @see #setReuseEvents(boolean)
+     */
+    public boolean isReuseEvents() {return eventPool != null;}
+
+    /**
+     * Keep events, which the user has put or dumped over the network, for reuse
+     * if reusing events. Since there cannot be more events out than are in the
+     * ET system, no more than that are kept.
+     *
+     * @param evs    array of event objects
+     * @param offset offset into array
+     * @param length number of array elements to keep
+     */
+    void recycleEvents(EtEvent[] evs, int offset, int length) {
+        ArrayDeque<EtEventImpl> pool = eventPool;
+        if (pool == null) return;
+
+        synchronized (pool) {
+            for (int i=offset; i < offset+length; i++) {
+                if (pool.size() >= sys.getNumEvents()) break;
+                EtEventImpl ev = (EtEventImpl) evs[i];
+                if (ev.recycle()) {
+                    pool.add(ev);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get an event object, kept for reuse, whose data array has the given size.
+     * Those of another size are dropped.
+     *
+     * @param size size of the data array in bytes
+     * @return event object, or null if there is none or events are not reused
+     */
+    EtEventImpl reuseEvent(int size) {
+        ArrayDeque<EtEventImpl> pool = eventPool;
+        if (pool == null) return null;
+
+        synchronized (pool) {
+            EtEventImpl ev;
+            while ((ev = pool.poll()) != null) {
+                if (ev.getMemSize() == size) {
+                    return ev;
+                }
+            }
+        }
+        return null;
     }
 
     /**
@@ -102,7 +233,9 @@ public class EtAttachment {
 
     /**
      * Gets the value of an attachment's eventsPut, eventsGet, eventsDump, or
-     * eventsMake by network communication with the ET system.
+     * eventsMake by network communication with the ET system. If events are
+     * striped across several connections, the values of the attachments made
+     * over the extra connections are included.
      *
      * @param cmd command number
      * @return value of requested parameter
@@ -114,6 +247,7 @@ public class EtAttachment {
         long val;
 
         synchronized (sys) {
+            sys.waitForAsync();
             sys.getOutputStream().writeInt(cmd);
             sys.getOutputStream().writeInt(id);
             sys.getOutputStream().flush();
@@ -125,6 +259,13 @@ public class EtAttachment {
             throw new EtException("this station has been revmoved from ET system");
         }
 
+        EtAttachment[] stripes = this.stripes;
+        if (stripes != null) {
+            for (EtAttachment stripe : stripes) {
+                val += stripe.getLongValue(cmd);
+            }
+        }
+
         return val;
     }
 
@@ -0,0 +1,526 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2026        Jefferson Science Associates,                   *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.jlab.coda.et.exception.EtException;
+
+/**
+ * This class compresses and decompresses the data of batches of events sent
+ * between an ET system and a user who agreed on it when connecting
+ * (see {@link EtSystemOpenConfig#setCompression(int)}).
+ * Each event's data is compressed separately in the LZ4 block format, which is
+ * fast enough to keep up with a network link. The events of a large batch are
+ * compressed or decompressed in parallel by a pool of threads shared by the JVM.<p>
+ *
+ * An object holds the compressed data of the last batch and is reused for the next,
+ * so each direction of a connection needs its own. It is not thread-safe.
+ *
+ * @author Carl Timmer
+ */
+public class EtCompressor {
+
+    /** Data smaller than this many bytes is not compressed. */
+    private static final int minBytes = 256;
+
+    /** Batches with fewer than this many bytes of data are done by the calling thread. */
+    private static final int parallelBytes = 65536;
+
+    /** Number of bits in the hash of the 4 bytes found at a position. */
+    private static final int hashLog = 12;
+
+    /** Shortest match. */
+    private static final int minMatch = 4;
+
+    /** The last this many bytes of data are always literals. */
+    private static final int lastLiterals = 5;
+
+    /** The last match starts at least this many bytes before the end of the data. */
+    private static final int mfLimit = 12;
+
+    /** Farthest back a match may be. */
+    private static final int maxDistance = 65535;
+
+    /** Threads compressing and decompressing, shared by all objects. */
+    private static ExecutorService pool;
+
+    /** Number of threads in {@link #pool}. */
+    private static final int poolSize = Runtime.getRuntime().availableProcessors();
+
+    /** Compressed data of each event of the last batch. */
+    private byte[][] blocks = new byte[0][];
+
+    /** Length of each event's compressed data, 0 if the event's data is not compressed. */
+    private int[] lengths = new int[0];
+
+
+    /**
+     * This interface is implemented to do part of the work on a batch of events.
+     */
+    private interface Part {
+        /**
+         * Do the work on the events from index <code>from</code> up to but not including <code>to</code>.
+         * @param from first event index
+         * @param to   index after last event
+         * @throws EtException if the work fails
+         */
+        void run(int from, int to) throws EtException;
+    }
+
+
+    /**
+     * Get the pool of threads compressing and decompressing, creating it if necessary.
+     * @return pool of threads
+     */
+    private static synchronized ExecutorService getPool() {
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "EtCompressor");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return pool;
+    }
+
+
+    /**
+     * Make sure there is room for a batch of the given number of events.
+     * @param count number of events
+     */
+    private void ensureCount(int count) {
+        if (lengths.length < count) {
+            byte[][] b = new byte[count][];
+            System.arraycopy(blocks, 0, b, 0, blocks.length);
+            blocks  = b;
+            lengths = new int[count];
+        }
+    }
+
+
+    /**
+     * Do work on a batch of events, in parallel if there is enough data.
+     *
+     * @param count number of events
+     * @param bytes number of bytes of data
+     * @param part  work to do on part of the events
+     * @throws EtException if the work fails
+     */
+    private static void runParts(int count, long bytes, final Part part) throws EtException {
+        int parts = Math.min(poolSize, count);
+        if (parts < 2 || bytes < parallelBytes) {
+            part.run(0, count);
+            return;
+        }
+
+        ExecutorService exec = getPool();
+        ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>(parts - 1);
+        int from = 0;
+        for (int i=0; i < parts; i++) {
+            final int start = from;
+            final int end = from + count/parts + (i < count%parts ? 1 : 0);
+            from = end;
+            // the calling thread does the last part itself
+            if (i == parts - 1) {
+                part.run(start, end);
+                break;
+            }
+            futures.add(exec.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    part.run(start, end);
+                    return null;
+                }
+            }));
+        }
+
+        EtException error = null;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            }
+            catch (InterruptedException e) {
+                error = new EtException("interrupted compressing events");
+            }
+            catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof EtException) error = (EtException) cause;
+                else if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                else error = new EtException(cause.toString());
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+
+    /**
+     * Compress the data of a batch of events. The data of each event, from its buffer's
+     * position to its limit, is replaced by the compressed data if that is smaller.
+     * The compressed data stays valid until this object is used for another batch.
+     *
+     * @param data  buffer of each event's data, null for events whose data is not sent
+     * @param count number of events
+     */
+    public void compress(final ByteBuffer[] data, int count) {
+        ensureCount(count);
+
+        long bytes = 0;
+        for (int i=0; i < count; i++) {
+            lengths[i] = 0;
+            if (data[i] != null) bytes += data[i].remaining();
+        }
+
+        try {
+            runParts(count, bytes, new Part() {
+                public void run(int from, int to) {
+                    int[] table = new int[1 << hashLog];
+                    for (int i=from; i < to; i++) {
+                        ByteBuffer buf = data[i];
+                        if (buf == null || buf.remaining() < minBytes) continue;
+
+                        int len = buf.remaining();
+                        byte[] src;
+                        int srcOff;
+                        if (buf.hasArray()) {
+                            src = buf.array();
+                            srcOff = buf.arrayOffset() + buf.position();
+                        }
+                        else {
+                            src = new byte[len];
+                            srcOff = 0;
+                            buf.duplicate().get(src);
+                        }
+
+                        byte[] block = blocks[i];
+                        if (block == null || block.length < maxCompressedLength(len)) {
+                            block = blocks[i] = new byte[maxCompressedLength(len)];
+                        }
+
+                        int clen = compress(src, srcOff, len, block, 0, table);
+                        if (clen < len) {
+                            lengths[i] = clen;
+                            data[i] = ByteBuffer.wrap(block, 0, clen);
+                        }
+                    }
+                }
+            });
+        }
+        catch (EtException e) { /* never happen */ }
+    }
+
+
+    /**
+     * Is the data of an event of the last batch compressed?
+     * @param index index of event in batch
+     * @return <code>true</code> if the event's data was compressed
+     */
+    public boolean isCompressed(int index) {
+        return lengths[index] > 0;
+    }
+
+
+    /**
+     * Start reading a batch of events whose data may be compressed.
+     * @param count number of events
+     */
+    public void clear(int count) {
+        ensureCount(count);
+        for (int i=0; i < count; i++) {
+            lengths[i] = 0;
+        }
+    }
+
+
+    /**
+     * Get an array into which to read the compressed data of an event
+     * of the batch being read, which is then decompressed by
+     * {@link #decompress(ByteBuffer[], int)}.
+     *
+     * @param index  index of event in batch
+     * @param length number of bytes of compressed data
+     * @return array of at least length bytes
+     */
+    public byte[] getBlock(int index, int length) {
+        byte[] block = blocks[index];
+        if (block == null || block.length < length) {
+            block = blocks[index] = new byte[length];
+        }
+        lengths[index] = length;
+        return block;
+    }
+
+
+    /**
+     * Decompress the data of the events of the batch being read whose compressed data
+     * was read with {@link #getBlock(int, int)}. The data of each event is written into
+     * its buffer from position to limit, which must be the length of the data, without
+     * changing the buffer's position.
+     *
+     * @param data  buffer of each event's data
+     * @param count number of events
+     * @throws EtException if compressed data is bad or does not have the expected length
+     */
+    public void decompress(final ByteBuffer[] data, int count) throws EtException {
+        long bytes = 0;
+        for (int i=0; i < count; i++) {
+            if (lengths[i] > 0) bytes += data[i].remaining();
+        }
+        if (bytes == 0) {
+            return;
+        }
+
+        runParts(count, bytes, new Part() {
+            public void run(int from, int to) throws EtException {
+                for (int i=from; i < to; i++) {
+                    if (lengths[i] < 1) continue;
+
+                    ByteBuffer buf = data[i];
+                    int len = buf.remaining();
+                    if (buf.hasArray()) {
+                        decompress(blocks[i], 0, lengths[i], buf.array(),
+                                   buf.arrayOffset() + buf.position(), len);
+                    }
+                    else {
+                        byte[] dst = new byte[len];
+                        decompress(blocks[i], 0, lengths[i], dst, 0, len);
+                        buf.duplicate().put(dst);
+                    }
+                }
+            }
+        });
+    }
+
+
+    /**
+     * Get the largest size data of the given length may have once compressed.
+     * @param length length of data in bytes
+     * @return largest size of compressed data in bytes
+     */
+    public static int maxCompressedLength(int length) {
+        return length + length/255 + 16;
+    }
+
+
+    /** Read 4 bytes of an array as an int. */
+    private static int readInt(byte[] b, int off) {
+        return (b[off] & 0xff) << 24 | (b[off+1] & 0xff) << 16 | (b[off+2] & 0xff) << 8 | (b[off+3] & 0xff);
+    }
+
+
+    /** Hash 4 bytes of data. */
+    private static int hash(int value) {
+        return (value * -1640531535) >>> (32 - hashLog);
+    }
+
+
+    /** Write the length of literals or of a match beyond what fits in a token. */
+    private static int writeLength(int length, byte[] dst, int op) {
+        while (length >= 255) {
+            dst[op++] = (byte) 255;
+            length -= 255;
+        }
+        dst[op++] = (byte) length;
+        return op;
+    }
+
+
+    /**
+     * Write literals followed by a match (if matchLength > 0).
+     * @return index after what was written
+     */
+    private static int writeSequence(byte[] src, int anchor, int litLength, int offset, int matchLength,
+                                     byte[] dst, int op) {
+        int tokenOp = op++;
+        int token = (litLength < 15 ? litLength : 15) << 4;
+        if (litLength >= 15) {
+            op = writeLength(litLength - 15, dst, op);
+        }
+        System.arraycopy(src, anchor, dst, op, litLength);
+        op += litLength;
+
+        if (matchLength > 0) {
+            dst[op++] = (byte) offset;
+            dst[op++] = (byte) (offset >>> 8);
+            int ml = matchLength - minMatch;
+            token |= (ml < 15 ? ml : 15);
+            if (ml >= 15) {
+                op = writeLength(ml - 15, dst, op);
+            }
+        }
+        dst[tokenOp] = (byte) token;
+        return op;
+    }
+
+
+    /**
+     * Compress data into the LZ4 block format.
+     *
+     * @param src    array of data
+     * @param srcOff offset of data
+     * @param srcLen length of data in bytes
+     * @param dst    array for compressed data of at least
+     *               {@link #maxCompressedLength(int)} bytes after dstOff
+     * @param dstOff offset of compressed data
+     * @param table  array of 2<sup>{@link #hashLog}</sup> ints used to find matches
+     * @return length of compressed data in bytes
+     */
+    static int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int[] table) {
+        int end        = srcOff + srcLen;
+        int matchLimit = end - lastLiterals;
+        int mfEnd      = end - mfLimit;
+        int anchor = srcOff, ip = srcOff, op = dstOff;
+
+        java.util.Arrays.fill(table, -1);
+
+        if (srcLen > mfLimit) {
+            int searches = 1 << 6;
+            while (ip < mfEnd) {
+                int h = hash(readInt(src, ip));
+                int ref = table[h];
+                table[h] = ip;
+
+                if (ref < srcOff || ip - ref > maxDistance || readInt(src, ref) != readInt(src, ip)) {
+                    // skip faster through data which does not compress
+                    ip += searches++ >>> 6;
+                    continue;
+                }
+                searches = 1 << 6;
+
+                // extend match backwards
+                while (ip > anchor && ref > srcOff && src[ip-1] == src[ref-1]) {
+                    ip--;
+                    ref--;
+                }
+
+                // and forwards
+                int matchLength = minMatch;
+                while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) {
+                    matchLength++;
+                }
+
+                op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLength, dst, op);
+                ip += matchLength;
+                anchor = ip;
+
+                if (ip < mfEnd) {
+                    table[hash(readInt(src, ip - 2))] = ip - 2;
+                }
+            }
+        }
+
+        // the rest are literals
+        op = writeSequence(src, anchor, end - anchor, 0, 0, dst, op);
+        return op - dstOff;
+    }
+
+
+    /**
+     * Decompress data in the LZ4 block format.
+     *
+     * @param src    array of compressed data
+     * @param srcOff offset of compressed data
+     * @param srcLen length of compressed data in bytes
+     * @param dst    array for data
+     * @param dstOff offset of data
+     * @param dstLen length of data in bytes
+     * @throws EtException if compressed data is bad or does not decompress to dstLen bytes
+     */
+    static void decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen)
+            throws EtException {
+
+        int ip = srcOff, srcEnd = srcOff + srcLen;
+        int op = dstOff, dstEnd = dstOff + dstLen;
+
+        try {
+            while (true) {
+                if (ip >= srcEnd) {
+                    throw new EtException("bad compressed data");
+                }
+                int token = src[ip++] & 0xff;
+
+                int litLength = token >>> 4;
+                if (litLength == 15) {
+                    int b;
+                    do {
+                        if (ip >= srcEnd) throw new EtException("bad compressed data");
+                        b = src[ip++] & 0xff;
+                        litLength += b;
+                    } while (b == 255);
+                }
+                if (litLength > srcEnd - ip || litLength > dstEnd - op) {
+                    throw new EtException("bad compressed data");
+                }
+                System.arraycopy(src, ip, dst, op, litLength);
+                ip += litLength;
+                op += litLength;
+
+                // last sequence has no match
+                if (ip == srcEnd) {
+                    break;
+                }
+
+                if (srcEnd - ip < 2) {
+                    throw new EtException("bad compressed data");
+                }
+                int offset = (src[ip] & 0xff) | (src[ip+1] & 0xff) << 8;
+                ip += 2;
+                int matchLength = token & 15;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        if (ip >= srcEnd) throw new EtException("bad compressed data");
+                        b = src[ip++] & 0xff;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += minMatch;
+
+                int ref = op - offset;
+                if (offset == 0 || ref < dstOff || matchLength > dstEnd - op) {
+                    throw new EtException("bad compressed data");
+                }
+
+                if (offset >= matchLength) {
+                    System.arraycopy(dst, ref, dst, op, matchLength);
+                    op += matchLength;
+                }
+                else {
+                    // match overlaps what it writes
+                    for (int i=0; i < matchLength; i++) {
+                        dst[op++] = dst[ref++];
+                    }
+                }
+            }
+        }
+        catch (ArrayIndexOutOfBoundsException e) {
+            throw new EtException("bad compressed data");
+        }
+
+        if (op != dstEnd) {
+            throw new EtException("compressed data has wrong length");
+        }
+    }
+}
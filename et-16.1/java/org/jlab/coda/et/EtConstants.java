@@ -65,6 +65,15 @@ public final class EtConstants {
     /** A default time-to-live value for multicasting.
      *  @see EtSystemOpenConfig#setTTL(int)  */
     public static final int    multicastTTL        = 32;
+    /** A default number of milliseconds for which the host and port of an ET system
+     *  found by broad/multicasting are remembered so it can be opened again quickly.
+     *  It is 0 so nothing is remembered unless asked for.
+     *  @see EtSystemOpenConfig#setDiscoveryCacheTime(long)  */
+    public static final long   discoveryCacheTime  = 0L;
+    /** The fewest events gotten, made or put over each connection when a batch of events
+     *  is striped across several connections to an ET system.
+     *  @see EtSystemOpenConfig#setConnections(int)  */
+    public static final int    stripeEventsMin     = 16;
     /** A default value for the number of integers associated with each event that
      *  stations may use to select or filter that event. If this is changed, a
      *  recompilation of ET is necessary and communication with ET systems in
@@ -91,6 +100,15 @@ public final class EtConstants {
      *  @see EtSystemOpenConfig#setResponsePolicy(int)  */
     public static final int    policyError         = 2;
 
+    // compression of event data sent over the network
+
+    /** Event data are sent over the network as they are.
+     *  @see EtSystemOpenConfig#setCompression(int)  */
+    public static final int    compressNone        = 0;
+    /** Event data are sent over the network compressed in the LZ4 block format.
+     *  @see EtSystemOpenConfig#setCompression(int)  */
+    public static final int    compressLz4         = 1;
+
 
     // system defaults
 
@@ -102,6 +120,9 @@ public final class EtConstants {
     public static final int    defaultStationsMax  = 20;
     /** An ET system's default maximum number of attachments. */
     public static final int    defaultAttsMax      = 50;
+    /** An ET system's default limit on the bytes each nonblocking station may spill to disk.
+     *  @see org.jlab.coda.et.system.SystemConfig#setSpillLimit(long)  */
+    public static final long   defaultSpillLimit   = 1024L*1024L*1024L;
 
     // station stuff
 
@@ -424,6 +445,10 @@ public final class EtConstants {
     public static final int    netEvDump        = 26;
     public static final int    netEvsDump       = 27;
     public static final int    netEvsNewGrp     = 28;
+    /** Put events and get more in one round trip (Java only). */
+    public static final int    netEvsPutGet     = 29;
+    /** Put events without a reply (Java only). */
+    public static final int    netEvsPutNR      = 30;
 
     public static final int    netAlive         = 40;
     public static final int    netWait          = 41;
@@ -485,4 +510,20 @@ public final class EtConstants {
     public static final int    netSysData       = 170;
     public static final int    netSysHist       = 171;
     public static final int    netSysGrps       = 172;
+    /** Get the file holding event data and have this connection use it (Java only). */
+    public static final int    netSysShm        = 173;
+    /** Get the ET system's metrics as text (Java only). */
+    public static final int    netSysMetrics    = 174;
+    /** Have this connection compress event data (Java only). */
+    public static final int    netSysCompress   = 175;
+
+    // bits telling a user, when opening an ET system, which optional commands it understands
+    /** ET system understands {@link #netSysShm}. */
+    public static final int    netFeatureShm      = 1;
+    /** ET system understands {@link #netSysCompress}. */
+    public static final int    netFeatureCompress = 2;
+    /** ET system understands {@link #netEvsPutGet}. */
+    public static final int    netFeaturePutGet   = 4;
+    /** ET system understands {@link #netEvsPutNR}. */
+    public static final int    netFeaturePutNR    = 8;
 }
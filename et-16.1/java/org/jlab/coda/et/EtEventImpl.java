@@ -76,6 +76,22 @@ public class EtEventImpl implements EtEvent {
      */
     private int sizeLimit;
 
+    /**
+     * Time, from {@link System#nanoTime()}, at which this event entered its
+     * station's input list. Used by the ET system to measure how long events
+     * wait in stations.
+     */
+    private long stationTime;
+
+    /** Is this event being traced through the stations? */
+    private boolean traced;
+
+    /** Time, from {@link System#nanoTime()}, at which tracing began. */
+    private long traceStart;
+
+    /** Time, from {@link System#nanoTime()}, of the last step of tracing. */
+    private long traceTime;
+
     /**
      * Status of the data. It can be ok {@link DataStatus#OK}, corrupted
      * {@link DataStatus#CORRUPT}, or possibly corrupted
@@ -147,6 +163,22 @@ public class EtEventImpl implements EtEvent {
         init();
     }
 
+    /**
+     * Creates an event object for the Java-based ET system whose data is stored
+     * in the given buffer which is usually a slice of a larger, direct buffer.
+     * Event objects are only created once in the ET system process - when the
+     * ET system is started up.
+     *
+     * @param buffer buffer in which to store data, whose capacity is the event size
+     */
+    public EtEventImpl(ByteBuffer buffer) {
+        memSize    = buffer.capacity();
+        isJava     = true;
+        control    = new int[numSelectInts];
+        dataBuffer = buffer;
+        init();
+    }
+
     /**
      * Creates an event object for ET system users when connecting to ET systems
      * over the network. Called by
@@ -338,7 +370,16 @@ public class EtEventImpl implements EtEvent {
         this.byteOrder  = ev.byteOrder;
 
         this.control    = ev.control.clone();
-        this.data       = ev.data.clone();
+        if (ev.data != null && ev.dataBuffer.hasArray() && ev.dataBuffer.array() == ev.data) {
+            this.data = ev.data.clone();
+        }
+        else {
+            // copy data stored outside the heap or in another buffer
+            ByteBuffer buf = ev.dataBuffer.duplicate();
+            buf.clear();
+            this.data = new byte[buf.remaining()];
+            buf.get(data);
+        }
 
         this.dataBuffer = ByteBuffer.wrap(data);
         this.dataBuffer.limit(ev.dataBuffer.limit());
@@ -361,6 +402,28 @@ public class EtEventImpl implements EtEvent {
     }
 
 
+    /**
+     * Make this event object, gotten over the network and no longer used, ready to
+     * be handed out again by a later get or new over the network. Its data array is
+     * kept and its other fields are initialized, including the owner, so it cannot
+     * be put again.
+     *
+     * @return <code>true</code> if it can be reused, <code>false</code> if its
+     *         data buffer does not wrap a data array of its own
+     */
+    boolean recycle() {
+        if (data == null || dataBuffer == null || !dataBuffer.hasArray() ||
+            dataBuffer.array() != data || dataBuffer.arrayOffset() != 0) {
+            return false;
+        }
+        dataBuffer.clear();
+        dataBuffer.order(ByteOrder.BIG_ENDIAN);
+        memSize = data.length;
+        init();
+        return true;
+    }
+
+
     // getters
 
     
@@ -447,6 +510,15 @@ public class EtEventImpl implements EtEvent {
         return control.clone();
     }
 
+    /**
+     * Gets one of the event's control integers without copying the control array.
+     * @param index index into the control array
+     * @return control integer at the given index
+     */
+    public int getControl(int index) {
+        return control[index];
+    }
+
     /** {@inheritDoc} */
     public byte[] getData() throws UnsupportedOperationException {
         return dataBuffer.array();
@@ -511,6 +583,69 @@ public class EtEventImpl implements EtEvent {
         this.owner = owner;
     }
 
+    /**
+     * Gets the time, from {@link System#nanoTime()}, at which this event entered
+     * its station's input list. Used by the ET system.
+     * @return time at which this event entered its station's input list
+     */
+    public long getStationTime() {
+        return stationTime;
+    }
+
+    /**
+     * Sets the time, from {@link System#nanoTime()}, at which this event entered
+     * its station's input list. Used by the ET system.
+     * @param stationTime time at which this event entered its station's input list
+     */
+    public void setStationTime(long stationTime) {
+        this.stationTime = stationTime;
+    }
+
+    /**
+     * Is this event being traced through the stations? Used by the ET system.
+     * @return <code>true</code> if this event is being traced
+     */
+    public boolean isTraced() {
+        return traced;
+    }
+
+    /**
+     * Start or stop tracing this event through the stations. Used by the ET system.
+     * @param traced <code>true</code> to start, <code>false</code> to stop tracing
+     * @param time   time, from {@link System#nanoTime()}, at which tracing starts
+     */
+    public void setTraced(boolean traced, long time) {
+        this.traced = traced;
+        traceStart  = traceTime = time;
+    }
+
+    /**
+     * Gets the time, from {@link System#nanoTime()}, at which tracing began.
+     * Used by the ET system.
+     * @return time at which tracing began
+     */
+    public long getTraceStart() {
+        return traceStart;
+    }
+
+    /**
+     * Gets the time, from {@link System#nanoTime()}, of the last step of tracing.
+     * Used by the ET system.
+     * @return time of the last step of tracing
+     */
+    public long getTraceTime() {
+        return traceTime;
+    }
+
+    /**
+     * Sets the time, from {@link System#nanoTime()}, of the last step of tracing.
+     * Used by the ET system.
+     * @param traceTime time of the last step of tracing
+     */
+    public void setTraceTime(long traceTime) {
+        this.traceTime = traceTime;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -533,6 +668,15 @@ public class EtEventImpl implements EtEvent {
         length = len;
     }
 
+    /**
+     * Sets the limit on the size of the data array in bytes.
+     * Only used for C-based ET systems.
+     * @param sizeLimit limit on the size of the data array in bytes
+     */
+    void setSizeLimit(int sizeLimit) {
+        this.sizeLimit = sizeLimit;
+    }
+
     /**
      * Sets the size of the data buffer in bytes.
      * @param memSize size of the data buffer in bytes
@@ -630,7 +774,8 @@ public class EtEventImpl implements EtEvent {
 
     /**
      * Sets the event's data without copying. The length and memSize members of
-     * the event are automatically set to the data array's length.
+     * the event are automatically set to the data array's length and the data
+     * buffer wraps the array.
      * Used only by local Java ET system in newEvents to increase data array size.
      *
      * @param data data array
@@ -639,9 +784,10 @@ public class EtEventImpl implements EtEvent {
         // In C-based ET systems, user cannot increase data size beyond
         // what was initially allocated, but this is only used by local Java ET system.
         if (data == null) return;
-        this.data = data;
-        length    = data.length;
-        memSize   = data.length;
+        this.data  = data;
+        dataBuffer = ByteBuffer.wrap(data);
+        length     = data.length;
+        memSize    = data.length;
     }
 
     /**
@@ -0,0 +1,237 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2026        Jefferson Science Associates,                   *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jlab.coda.et.enums.Mode;
+import org.jlab.coda.et.enums.Modify;
+import org.jlab.coda.et.exception.*;
+
+/**
+ * This class helps a remote consumer hide the network's latency. It keeps a number
+ * of requests for events outstanding at all times so that, while the user processes
+ * one batch of events, the next batches are already on their way. Events are put
+ * back without waiting for the ET system's reply. It uses
+ * {@link EtSystem#getEventsAsync} and {@link EtSystem#putEventsAsync}.
+ * Batches are handed out in the order they were requested.
+ *
+ * @author Carl Timmer
+ */
+public class EtEventPrefetcher {
+
+    /** ET system object. */
+    private final EtSystem sys;
+
+    /** Attachment getting events. */
+    private final EtAttachment att;
+
+    /** What the user may modify in events gotten. */
+    private final Modify modify;
+
+    /** Number of events in each batch requested. */
+    private final int count;
+
+    /** Batches of events requested but not yet handed out, in the order requested. */
+    private final ArrayDeque<CompletableFuture<EtEvent[]>> batches;
+
+    /** Has this object been closed? */
+    private boolean closed;
+
+
+    /**
+     * Constructor which immediately requests the first batches of events.
+     * Requests wait for events as long as it takes.
+     *
+     * @param sys    ET system object
+     * @param att    attachment getting events
+     * @param modify what the user may modify in events gotten
+     *               (see {@link EtSystem#getEvents(EtAttachment, Mode, Modify, int, int)})
+     * @param count  number of events in each batch
+     * @param depth  number of batches to keep requested at any time
+     *
+     * @throws IOException
+     *     if problems with network communications
+     * @throws EtException
+     *     if arguments have bad values;
+     *     if attachment object is invalid;
+     *     if trying to get events from GrandCentral station
+     * @throws EtClosedException
+     *     if the ET system is closed
+     */
+    public EtEventPrefetcher(EtSystem sys, EtAttachment att, Modify modify, int count, int depth)
+            throws IOException, EtException, EtClosedException {
+
+        if (sys == null) {
+            throw new EtException("Invalid ET system");
+        }
+        if (count < 1 || depth < 1) {
+            throw new EtException("count and depth must be > 0");
+        }
+
+        this.sys    = sys;
+        this.att    = att;
+        this.modify = modify;
+        this.count  = count;
+        batches = new ArrayDeque<CompletableFuture<EtEvent[]>>(depth);
+
+        for (int i=0; i < depth; i++) {
+            batches.add(request());
+        }
+    }
+
+
+    /**
+     * Request another batch of events.
+     * @return future holding the batch
+     */
+    private CompletableFuture<EtEvent[]> request()
+            throws IOException, EtException, EtClosedException {
+        return sys.getEventsAsync(att, Mode.SLEEP, modify, 0, count);
+    }
+
+
+    /**
+     * Get the next batch of events, waiting for it if necessary, and request
+     * another batch in its place. If the attachment is woken up, or there is an error,
+     * the batch is not replaced.
+     *
+     * @return next batch of events
+     *
+     * @throws IOException
+     *     if problems with network communications;
+     *     if interrupted
+     * @throws EtException
+     *     if error getting events
+     * @throws EtBusyException
+     *     if the station's input list is busy
+     * @throws EtWakeUpException
+     *     if the attachment has been commanded to wakeup
+     * @throws EtClosedException
+     *     if the ET system or this object is closed
+     */
+    synchronized public EtEvent[] getEvents()
+            throws IOException, EtException, EtBusyException, EtWakeUpException, EtClosedException {
+
+        CompletableFuture<EtEvent[]> batch = batches.poll();
+        if (batch == null) {
+            throw new EtClosedException("prefetcher is closed");
+        }
+
+        EtEvent[] evs;
+        try {
+            evs = batch.get();
+        }
+        catch (InterruptedException e) {
+            // don't lose the batch
+            batches.addFirst(batch);
+            throw new InterruptedIOException("interrupted waiting for events");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)       throw (IOException) cause;
+            if (cause instanceof EtException)       throw (EtException) cause;
+            if (cause instanceof EtBusyException)   throw (EtBusyException) cause;
+            if (cause instanceof EtWakeUpException) throw (EtWakeUpException) cause;
+            if (cause instanceof EtClosedException) throw (EtClosedException) cause;
+            throw new EtException("error getting events", cause);
+        }
+
+        if (!closed) {
+            batches.add(request());
+        }
+        return evs;
+    }
+
+
+    /**
+     * Put events back into the ET system without waiting for its reply.
+     *
+     * @param evs events to put
+     * @return future completed once the ET system has the events
+     *
+     * @throws IOException
+     *     if problems with network communications
+     * @throws EtException
+     *     if invalid arg(s);
+     *     if events are not owned by this attachment;
+     *     if null data buffer & whole event's being modified;
+     * @throws EtDeadException
+     *     if the ET system processes are dead
+     * @throws EtClosedException
+     *     if the ET system is closed
+     */
+    public CompletableFuture<Void> putEvents(EtEvent[] evs)
+            throws IOException, EtException, EtDeadException, EtClosedException {
+        return sys.putEventsAsync(att, evs);
+    }
+
+
+    /**
+     * Stop requesting events. Requests still waiting for events from a remote
+     * ET system end once their current short wait on the server runs out.
+     * Others are ended by waking up the attachment. Events which arrived but
+     * were never handed out are returned so the caller can put or dump them.
+     * If they are not, detaching takes care of them.
+     *
+     * @return list of events gotten but not handed out
+     *
+     * @throws IOException
+     *     if problems with network communications;
+     *     if interrupted
+     * @throws EtException
+     *     if the attachment object is invalid
+     * @throws EtClosedException
+     *     if the ET system is closed
+     */
+    synchronized public List<EtEvent> close() throws IOException, EtException, EtClosedException {
+        closed = true;
+        ArrayList<EtEvent> unused = new ArrayList<EtEvent>();
+        boolean stopped = sys.stopGetsAsync(att);
+
+        while (!batches.isEmpty()) {
+            CompletableFuture<EtEvent[]> batch = batches.peek();
+            // Each wake up ends only one waiting request
+            if (!stopped && !batch.isDone()) {
+                sys.wakeUpAttachment(att);
+            }
+
+            try {
+                Collections.addAll(unused, batch.get(500, TimeUnit.MILLISECONDS));
+            }
+            catch (TimeoutException e) {
+                continue;
+            }
+            catch (ExecutionException e) {
+                // woken up, no events
+            }
+            catch (InterruptedException e) {
+                throw new InterruptedIOException("interrupted waiting for events");
+            }
+            batches.poll();
+        }
+
+        return unused;
+    }
+}
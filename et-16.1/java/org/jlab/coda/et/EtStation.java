@@ -145,6 +145,7 @@ public class EtStation {
         int err;
 
         synchronized (sys) {
+            sys.waitForAsync();
             sys.getOutputStream().writeInt(EtConstants.netStatSSw);
             sys.getOutputStream().writeInt(id);
             for (int i = 0; i < select.length; i++) {
@@ -174,6 +175,7 @@ public class EtStation {
         int err, length = 0;
 
         synchronized (sys) {
+            sys.waitForAsync();
             sys.getOutputStream().writeInt(command);
             sys.getOutputStream().writeInt(id);
             sys.getOutputStream().flush();
@@ -263,6 +265,7 @@ public class EtStation {
         int err, val = 0;
 
         synchronized (sys) {
+            sys.waitForAsync();
             sys.getOutputStream().writeInt(cmd);
             sys.getOutputStream().writeInt(id);
             sys.getOutputStream().flush();
@@ -289,6 +292,7 @@ public class EtStation {
         int err;
 
         synchronized (sys) {
+            sys.waitForAsync();
             sys.getOutputStream().writeInt(cmd);
             sys.getOutputStream().writeInt(id);
             sys.getOutputStream().writeInt(val);
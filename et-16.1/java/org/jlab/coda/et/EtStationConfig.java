@@ -117,6 +117,13 @@ public class EtStationConfig implements Serializable {
      */
     private String selectClass;
 
+    /**
+     * Object containing the user-defined select method. It may be null. It is only
+     * used when the station is created in the same JVM as the ET system and, if set,
+     * is used in place of an object of {@link #selectClass}.
+     */
+    private transient EtEventSelectable selector;
+
 
     /**
      * Creates a new StationConfig object with default values for everything.
@@ -159,6 +166,7 @@ public class EtStationConfig implements Serializable {
         selectFunction = config.selectFunction;
         selectLibrary  = config.selectLibrary;
         selectClass    = config.selectClass;
+        selector       = config.selector;
     }
 
 
@@ -250,6 +258,10 @@ public class EtStationConfig implements Serializable {
      * @return library name */
     public String getSelectLibrary() {return selectLibrary;}
 
+    /** Gets the object containing the user-defined select method.
+     * @return object containing the user-defined select method */
+    public EtEventSelectable getSelector() {return selector;}
+
     /** Gets the name of the class containing the user-defined select method.
      * @return class name */
     public String getSelectClass() {return selectClass;}
@@ -409,4 +421,15 @@ public class EtStationConfig implements Serializable {
         }
         selectClass = sClass;
     }
+
+    /**
+     * Sets the object containing the user-defined select method. This is only
+     * possible when creating a station in the same JVM as the ET system, in which
+     * case it is used instead of loading the select class.
+     *
+     * @param selector object containing the user-defined select method
+     */
+    public void setSelector(EtEventSelectable selector) {
+        this.selector = selector;
+    }
 }
@@ -20,6 +20,14 @@ import java.util.*;
 import java.io.*;
 import java.net.*;
 import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.jlab.coda.et.data.*;
 import org.jlab.coda.et.exception.*;
@@ -27,6 +35,8 @@ import org.jlab.coda.et.enums.Modify;
 import org.jlab.coda.et.enums.Mode;
 import org.jlab.coda.et.enums.Priority;
 import org.jlab.coda.et.enums.DataStatus;
+import org.jlab.coda.et.system.AttachmentLocal;
+import org.jlab.coda.et.system.SystemCreate;
 
 // TODO: if IO exception occurs, open is not set to false, must catch it and call close()
 // TODO: so open is set to false. Then try open again.
@@ -66,6 +76,162 @@ public class EtSystem {
      *  intervening buffered output stream). */
     private DataOutputStream out;
 
+    /** If the file in which the Java ET system stores events' data has been mapped,
+     *  this holds the data of each event (indexed by id), else null. */
+    private ByteBuffer[] sharedEvents;
+
+    /** If the Java ET system runs in this JVM, the ET system itself, so that events
+     *  are gotten and put directly instead of over the network, else null. */
+    private SystemCreate localSys;
+
+    /**
+     * Requests sent by the asynchronous methods whose replies have not been read yet,
+     * in the order sent. Requests are only sent, and added here, while synchronized
+     * on this object. This is also the lock for {@link #asyncReader}.
+     */
+    private final ArrayDeque<AsyncRequest> asyncRequests = new ArrayDeque<AsyncRequest>();
+
+    /** Thread reading the replies to asynchronous requests, or null if none. */
+    private volatile Thread asyncReader;
+
+    /** Thread resending asynchronous requests for events which are waited for in short intervals.
+     *  Guarded by {@link #asyncRequests}. */
+    private ExecutorService asyncResender;
+
+    /**
+     * Attachments which have asynchronous requests for events sent that may wait
+     * (and so be resent), each with those requests and the ones held back.
+     * Guarded by {@link #asyncRequests}.
+     */
+    private final HashMap<EtAttachment, AsyncGets> waitingGets =
+            new HashMap<EtAttachment, AsyncGets>();
+
+    /** Extra connections to a remote ET system across which batches of events
+     *  are striped, or null if none. See {@link EtSystemOpenConfig#setConnections(int)}. */
+    private EtSystem[] stripes;
+
+    /** Threads sending and receiving events over the extra connections, or null if none. */
+    private ExecutorService stripeService;
+
+    /** If the ET system agreed to compress event data, decompresses data read, else null.
+     *  See {@link EtSystemOpenConfig#setCompression(int)}. */
+    private EtCompressor readCompressor;
+
+    /** If the ET system agreed to compress event data, compresses data written, else null. */
+    private EtCompressor writeCompressor;
+
+
+    /**
+     * This class holds a request sent by one of the asynchronous methods until its reply is read.
+     */
+    private static final class AsyncRequest {
+        /** Command sent: {@link EtConstants#netEvsGet}, {@link EtConstants#netEvsNewGrp}
+         *  or {@link EtConstants#netEvsPut}. */
+        final int command;
+        /** Attachment making the request. */
+        final EtAttachment att;
+        /** Bytes of a request for events, kept for resending it. */
+        byte[] request;
+        /** Wait mode given by the user (requests for events only). */
+        Mode mode;
+        /** Time, from {@link System#nanoTime()}, after which a timed request which
+         *  timed out is no longer resent. */
+        long deadline;
+        /** What the user may modify (get requests only). */
+        Modify modify;
+        /** Forget about allocating byte array and ByteBuffer (new requests only)? */
+        boolean noBuffer;
+        /** Size of events in bytes (new requests only). */
+        int size;
+        /** Events gotten (requests for events only). */
+        CompletableFuture<EtEvent[]> events;
+        /** Completed once events are put (put requests only). */
+        CompletableFuture<Void> put;
+        /** Requests of the attachment which this one is sent with, or null if none
+         *  (get requests only). Guarded by {@link EtSystem#asyncRequests}. */
+        AsyncGets gets;
+
+        AsyncRequest(int command, EtAttachment att) {
+            this.command = command;
+            this.att = att;
+        }
+
+        /**
+         * Set the bytes of a request for events. As with the blocking methods, sleeping
+         * and long timed waits are done on the server in .2 second intervals
+         * so the wait can be interrupted by waking up the attachment.
+         * Those timed out are resent until events arrive or the time is up.
+         *
+         * @param request  bytes of request except for the wait mode, which goes
+         *                 at index 8, and the seconds and nanoseconds, which go last
+         * @param microSec time to wait in microseconds if timed mode
+         */
+        void setRequest(byte[] request, int microSec) {
+            int newTimeInterval = 200000;  // (in microsec) wait .2 second intervals for each get
+            Mode netMode = mode;
+            if (mode == Mode.SLEEP || (mode == Mode.TIMED && microSec > 1000000)) {
+                netMode = Mode.TIMED;
+                if (mode == Mode.TIMED) {
+                    deadline = System.nanoTime() + 1000L*microSec;
+                }
+                microSec = newTimeInterval;
+            }
+            int sec  = microSec/1000000;
+            int nsec = (microSec - sec*1000000) * 1000;
+
+            EtUtils.intToBytes(netMode.getValue(), request, 8);
+            EtUtils.intToBytes(sec,  request, request.length - 8);
+            EtUtils.intToBytes(nsec, request, request.length - 4);
+            this.request = request;
+        }
+    }
+
+
+    /**
+     * This class holds an attachment's asynchronous requests for events which may wait
+     * and be resent. A resent request goes behind those sent after it, so the replies to
+     * these requests do not belong to any one of them. Instead, each reply with events
+     * (or an error other than a timeout to be resent) completes the oldest request not
+     * yet done. That way events are handed out in the order the requests were made and
+     * all of them can be on their way to the ET system at once. This only works for
+     * requests asking for the same thing, so a request asking for something else is held
+     * back until those sent are done.
+     */
+    private static final class AsyncGets {
+        /** Requests sent and not yet done, in the order made. */
+        final ArrayDeque<AsyncRequest> sent = new ArrayDeque<AsyncRequest>();
+        /** Requests held back, in the order made. */
+        final ArrayDeque<AsyncRequest> held = new ArrayDeque<AsyncRequest>();
+        /** Bytes of the requests sent. */
+        byte[] request;
+        /** Wait mode of the requests sent. */
+        Mode mode;
+        /** Are the requests sent no longer resent once they time out? */
+        boolean stopped;
+
+        /**
+         * Is this request for the same thing as those sent?
+         * @param req request
+         * @return <code>true</code> if it is
+         */
+        boolean matches(AsyncRequest req) {
+            return req.mode == mode && Arrays.equals(req.request, request);
+        }
+
+        /**
+         * Add a request to those sent, making it the one the others must match if it's the first.
+         * @param req request
+         */
+        void addSent(AsyncRequest req) {
+            if (sent.isEmpty()) {
+                request = req.request;
+                mode    = req.mode;
+            }
+            sent.add(req);
+            req.gets = this;
+        }
+    }
+
 
 
     /**
@@ -187,6 +353,10 @@ public class EtSystem {
             }
 
             open = true;
+
+            if (isJava && openConfig.isSharedMemory()) {
+                openSharedMemory();
+            }
         }
         else {
             open();
@@ -222,6 +392,15 @@ public class EtSystem {
         return sys.usingJniLibrary();
     }
 
+    /**
+     * Gets whether the ET system runs in this JVM so that events are gotten
+     * and put directly instead of over the network.
+     * @return whether the ET system runs in this JVM
+     */
+    public boolean usingLocalSystem() {
+        return localSys != null;
+    }
+
     /**
      * Gets the debug output level.
      * @return debug output level
@@ -323,6 +502,164 @@ public class EtSystem {
         }
 
         open = true;
+        localSys = sys.getLocalSystem();
+
+        // Only ET systems which say they can, share their event file
+        if (localSys == null && openConfig.isSharedMemory() &&
+            (sys.getFeatures() & EtConstants.netFeatureShm) != 0) {
+            openSharedMemory();
+        }
+
+        // Only ET systems which say they know how, compress
+        if (localSys == null && openConfig.getCompression() != EtConstants.compressNone &&
+            (sys.getFeatures() & EtConstants.netFeatureCompress) != 0) {
+            out.writeInt(EtConstants.netSysCompress);
+            out.writeInt(openConfig.getCompression());
+            out.flush();
+            if (in.readInt() == EtConstants.ok) {
+                readCompressor  = new EtCompressor();
+                writeCompressor = new EtCompressor();
+            }
+        }
+
+        if (localSys == null && !sys.usingJniLibrary() && openConfig.getConnections() > 1) {
+            openStripes();
+        }
+    }
+
+
+    /**
+     * Make the extra connections to a remote ET system across which batches of
+     * events are striped. If not all can be made, fewer are used.
+     */
+    private void openStripes() {
+        int count = openConfig.getConnections() - 1;
+        ArrayList<EtSystem> opened = new ArrayList<EtSystem>(count);
+
+        try {
+            // connect directly to the ET system already found
+            EtSystemOpenConfig config = new EtSystemOpenConfig(openConfig);
+            config.setConnections(1);
+            config.setConnectRemotely(true);
+            config.setNetworkContactMethod(EtConstants.direct);
+            config.setHost(sys.getHostAddress());
+            config.setTcpPort(sys.getTcpPort());
+
+            // Their errors reach the user through this object, and the ASYNC
+            // requests they make for events are often answered with none
+            int stripeDebug = Math.min(debug, EtConstants.debugSevere);
+            for (int i=0; i < count; i++) {
+                EtSystem stripe = new EtSystem(config, stripeDebug);
+                stripe.open();
+                opened.add(stripe);
+            }
+        }
+        catch (Exception ex) {
+            if (debug >= EtConstants.debugWarn) {
+                System.out.println("cannot make connection to ET system (" + ex.getMessage() +
+                                   "), use " + (opened.size() + 1) + " connection(s)");
+            }
+        }
+
+        if (opened.isEmpty()) {
+            return;
+        }
+
+        stripes = opened.toArray(new EtSystem[opened.size()]);
+        stripeService = Executors.newFixedThreadPool(stripes.length, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "EtSystem stripe");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+
+    /** Close the extra connections to a remote ET system, if any. */
+    private void closeStripes() {
+        if (stripes == null) {
+            return;
+        }
+
+        for (EtSystem stripe : stripes) {
+            stripe.close();
+        }
+        stripeService.shutdown();
+        stripes = null;
+        stripeService = null;
+    }
+
+
+    /**
+     * Map the file in which a Java ET system stores events' data so that the data
+     * can be read and written directly instead of being sent over the network.
+     * Event headers still go over the network. If the file cannot be mapped
+     * (the ET system has no such file or runs on another host, for example),
+     * data are sent over the network as usual.
+     *
+     * @throws IOException if problems with network communications
+     */
+    private void openSharedMemory() throws IOException {
+        out.writeInt(EtConstants.netSysShm);
+        out.writeInt(0);
+        out.flush();
+        if (in.readInt() != EtConstants.ok) {
+            return;
+        }
+
+        int  numEvents  = in.readInt();
+        long eventSize  = in.readLong();
+        long fileId     = in.readLong();
+        long dataOffset = in.readLong();
+        byte[] name = new byte[in.readInt()];
+        in.readFully(name);
+        String fileName = new String(name, "ASCII");
+
+        ByteBuffer[] events;
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(fileName, "rw");
+            // make sure it's the file of the ET system we're connected to
+            if (file.length() < dataOffset + numEvents*eventSize || file.readLong() != fileId) {
+                if (debug >= EtConstants.debugWarn) {
+                    System.out.println(fileName + " is not this ET system's event file, use network");
+                }
+                return;
+            }
+            events = EtUtils.mapEvents(file.getChannel(), dataOffset, numEvents, (int)eventSize);
+        }
+        catch (IOException ex) {
+            if (debug >= EtConstants.debugWarn) {
+                System.out.println("cannot map " + fileName + ", use network");
+            }
+            return;
+        }
+        finally {
+            // the mapping remains valid after the file is closed
+            if (file != null) {
+                try {file.close();}
+                catch (IOException ex) {}
+            }
+        }
+
+        out.writeInt(EtConstants.netSysShm);
+        out.writeInt(1);
+        out.flush();
+        if (in.readInt() == EtConstants.ok) {
+            sharedEvents = events;
+        }
+    }
+
+
+    /**
+     * Are events' data accessed through the file in which the Java ET system
+     * stores them instead of over the network?
+     * @return <code>true</code> if events' data are accessed through a shared file
+     * @see EtSystemOpenConfig#setSharedMemory(boolean)
+     */
+    synchronized public boolean usingSharedMemory() {
+        return sharedEvents != null;
     }
 
 
@@ -333,6 +670,8 @@ public class EtSystem {
             return;
         }
 
+        closeStripes();
+
         // if communication with ET system fails, we've already been "closed"
         try {
             // Are we using JNI? If so, close the ET system it opened.
@@ -361,7 +700,11 @@ public class EtSystem {
             catch (IOException ex) { /* ignore exception */ }
         }
 
+        sharedEvents = null;
+        readCompressor = writeCompressor = null;
+        localSys = null;
         open = false;
+        stopAsync();
     }
 
 
@@ -376,6 +719,8 @@ public class EtSystem {
             throw new EtClosedException("ET system is closed");
         }
 
+        closeStripes();
+
         // If communication with ET system fails, we've already been "closed"
         // and cannot, therefore, kill the ET system.
         try {
@@ -400,7 +745,11 @@ public class EtSystem {
             catch (IOException ex) { /* ignore exception */ }
         }
 
+        sharedEvents = null;
+        readCompressor = writeCompressor = null;
+        localSys = null;
         open = false;
+        stopAsync();
     }
 
 
@@ -419,6 +768,7 @@ public class EtSystem {
         // If ET system is NOT alive, or if ET system was killed and restarted
         // (breaking tcp connection), we'll get a read or write error.
         try {
+            waitForAsync();
             out.writeInt(EtConstants.netAlive);
             out.flush();
             alive = in.readInt();
@@ -695,6 +1045,8 @@ public class EtSystem {
         // check station configuration for self consistency
         configCheck(config);
 
+        waitForAsync();
+
         // command
         out.writeInt(EtConstants.netStatCrAt);
 
@@ -828,6 +1180,7 @@ public class EtSystem {
             throw new EtException("Invalid station");
         }
 
+        waitForAsync();
         out.writeInt(EtConstants.netStatRm);
         out.writeInt(station.getId());
         out.flush();
@@ -908,6 +1261,7 @@ public class EtSystem {
           throw new EtException("Invalid station");
       }
 
+      waitForAsync();
       out.writeInt(EtConstants.netStatSPos);
       out.writeInt(station.getId());
       out.writeInt(position);
@@ -963,6 +1317,7 @@ public class EtSystem {
             return 0;
         }
 
+        waitForAsync();
         out.writeInt(EtConstants.netStatGPos);
         out.writeInt(station.getId());
         out.flush();
@@ -1023,6 +1378,7 @@ public class EtSystem {
             return 0;
         }
 
+        waitForAsync();
         out.writeInt(EtConstants.netStatGPos);
         out.writeInt(station.getId());
         out.flush();
@@ -1088,6 +1444,7 @@ public class EtSystem {
         // find interface (ip address) socket is using
         String ipAddr = sock.getLocalAddress().getHostAddress();
 
+        waitForAsync();
         out.writeInt(EtConstants.netStatAtt);
         out.writeInt(station.getId());
         out.writeInt(-1); // no pid in Java
@@ -1125,10 +1482,48 @@ public class EtSystem {
 
         EtAttachment att = new EtAttachment(station, attId, this);
         att.setUsable(true);
+        if (localSys != null) {
+            att.setLocalAttachment(localSys.getAttachment(attId));
+        }
+        if (stripes != null) {
+            attachStripes(att);
+        }
         return att;
     }
 
 
+    /**
+     * Attach to the station of an attachment over each extra connection so that
+     * events can be striped across connections. If the station allows no more
+     * attachments, fewer connections are used, possibly only this one.
+     *
+     * @param att attachment made over this connection
+     */
+    private void attachStripes(EtAttachment att) {
+        EtStation station = att.getStation();
+        ArrayList<EtAttachment> atts = new ArrayList<EtAttachment>(stripes.length);
+
+        for (EtSystem stripe : stripes) {
+            EtStation stat = new EtStation(station.getName(), station.getId(), stripe);
+            stat.setUsable(true);
+            try {
+                atts.add(stripe.attach(stat));
+            }
+            catch (Exception ex) {
+                if (debug >= EtConstants.debugWarn) {
+                    System.out.println("cannot attach to " + station.getName() + " (" + ex.getMessage() +
+                                       "), use " + (atts.size() + 1) + " connection(s)");
+                }
+                break;
+            }
+        }
+
+        if (!atts.isEmpty()) {
+            att.setStripes(atts.toArray(new EtAttachment[atts.size()]));
+        }
+    }
+
+
 
     /**
      * Remove an attachment from a station.
@@ -1157,6 +1552,20 @@ public class EtSystem {
             throw new EtException("Invalid attachment");
         }
 
+        // detach over the extra connections too, the ET system
+        // gets back events still owned by those attachments
+        EtAttachment[] atts = att.getStripes();
+        if (atts != null) {
+            att.setStripes(null);
+            for (EtAttachment stripeAtt : atts) {
+                try {
+                    stripeAtt.getSys().detach(stripeAtt);
+                }
+                catch (Exception ex) { /* ignore */ }
+            }
+        }
+
+        waitForAsync();
         out.writeInt(EtConstants.netStatDet);
         out.writeInt(att.getId());
         out.flush();
@@ -1216,6 +1625,7 @@ public class EtSystem {
             throw new EtException("Invalid attachment");
         }
 
+        waitForAsync();
         out.writeInt(EtConstants.netStatIsAt);
         out.writeInt(station.getId());
         out.writeInt(att.getId());
@@ -1266,6 +1676,7 @@ public class EtSystem {
             throw new EtException("Invalid station name");
         }
 
+        waitForAsync();
         out.writeInt(EtConstants.netStatEx);
         out.writeInt(name.length()+1);
         try {
@@ -1316,6 +1727,7 @@ public class EtSystem {
             throw new EtException("Invalid station name");
         }
 
+        waitForAsync();
         out.writeInt(EtConstants.netStatEx);
         out.writeInt(name.length()+1);
         try {
@@ -1538,6 +1950,47 @@ public class EtSystem {
             return newEventsJNI(att.getId(), mode.getValue(), sec, nsec, count, size, group);
         }
 
+        // Does the ET system run in this JVM?
+        if (localSys != null) {
+            return newEventsLocal(att, mode, microSec, count, size, group);
+        }
+
+        // Split large batches across the extra connections, if any
+        if (att.getStripes() != null && count >= 2*EtConstants.stripeEventsMin) {
+            return newEventsStriped(att, mode, noBuffer, microSec, count, size, group);
+        }
+
+        return newEventsNet(att, mode, noBuffer, microSec, count, size, group);
+    }
+
+
+    /**
+     * Get new (unused) events from a specified group of such events in an ET system
+     * over the network.
+     *
+     * @param att       attachment object
+     * @param mode      wait mode
+     * @param noBuffer  forget about allocating byte array and ByteBuffer?
+     * @param microSec  the number of microseconds to wait if a timed wait is specified
+     * @param count     the number of events desired
+     * @param size      the size of events in bytes
+     * @param group     group number from which to draw new events
+     *
+     * @return an array of new events obtained from ET system.
+     * @see #newEvents(EtAttachment, Mode, boolean, int, int, int, int)
+     */
+    private EtEvent[] newEventsNet(EtAttachment att, Mode mode, boolean noBuffer,
+                                   int microSec, int count, int size, int group)
+            throws EtException, EtClosedException, EtEmptyException,
+                   EtBusyException, EtTimeoutException, EtWakeUpException, IOException {
+
+        int sec  = 0;
+        int nsec = 0;
+        if (microSec > 0) {
+            sec = microSec/1000000;
+            nsec = (microSec - sec*1000000) * 1000;
+        }
+
         // When using the network, do NOT use SLEEP mode because that
         // may block all usage of this API's synchronized methods.
         // Use repeated calls in TIMED mode. In between those calls,
@@ -1572,7 +2025,6 @@ public class EtSystem {
         EtUtils.intToBytes(sec,                buffer, 28);
         EtUtils.intToBytes(nsec,               buffer, 32);
 
-        int numEvents;
         EtEventImpl[] evs;
 
         boolean wait = false;
@@ -1590,6 +2042,7 @@ public class EtSystem {
                     throw new EtClosedException("Not connected to ET system");
                 }
 
+                waitForAsync();
                 out.write(buffer);
                 out.flush();
 
@@ -1641,17 +2094,35 @@ public class EtSystem {
                     }
                 }
 
-                // number of events to expect
-                numEvents = err;
-
-                // list of events to return
-                evs = new EtEventImpl[numEvents];
-                buffer = new byte[4*numEvents];
-                in.readFully(buffer, 0, 4*numEvents);
+                evs = readNewEvents(err, att, noBuffer, size);
             }
             break;
         }
 
+        return evs;
+    }
+
+
+
+    /**
+     * Read the ids of the new events sent by the ET system in reply to a request
+     * for new events, after the number of events has been read, and make the events.
+     *
+     * @param numEvents number of events sent
+     * @param att       attachment getting the events
+     * @param noBuffer  forget about allocating byte array and ByteBuffer?
+     * @param size      size of events in bytes
+     * @return events
+     * @throws IOException if problems with network communications
+     */
+    private EtEventImpl[] readNewEvents(int numEvents, EtAttachment att, boolean noBuffer, int size)
+            throws IOException {
+
+        // list of events to return
+        EtEventImpl[] evs = new EtEventImpl[numEvents];
+        byte[] buffer = new byte[4*numEvents];
+        in.readFully(buffer, 0, 4*numEvents);
+
         int index=-4;
         long sizeLimit = (size > sys.getEventSize()) ? (long)size : sys.getEventSize();
 
@@ -1668,9 +2139,24 @@ public class EtSystem {
             }
         }
 
+        // If possible, have users write data directly into the ET system's event file
+        boolean shared = sharedEvents != null && !noBuffer && size <= sys.getEventSize();
+
         for (int j=0; j < numEvents; j++) {
-            evs[j] = new EtEventImpl(size, (int)sizeLimit, isJava, noBuffer);
+            // reuse an event object the user is done with, if allowed
+            evs[j] = (noBuffer || shared) ? null : att.reuseEvent(size);
+            if (evs[j] == null) {
+                evs[j] = new EtEventImpl(size, (int)sizeLimit, isJava, noBuffer || shared);
+            }
+            else {
+                evs[j].setSizeLimit((int)sizeLimit);
+            }
             evs[j].setId(EtUtils.bytesToInt(buffer, index+=4));
+            if (shared) {
+                ByteBuffer buf = sharedEvents[evs[j].getId()];
+                buf.clear();
+                evs[j].setDataBuffer(buf);
+            }
             evs[j].setModify(Modify.ANYTHING);
             evs[j].setOwner(att.getId());
         }
@@ -1679,7 +2165,6 @@ public class EtSystem {
     }
 
 
-
     /**
      * Get events from an ET system.
      * This method uses JNI to call ET routines in the C library.
@@ -1828,76 +2313,417 @@ public class EtSystem {
             }
         }
 
-        // When using the network, do NOT use SLEEP mode because that
-        // may block all usage of this API's synchronized methods.
-        // Use repeated calls in TIMED mode. In between those calls,
-        // allow other synchronized code to run (such as wakeUpAll).
-        int iterations = 1;
-        int newTimeInterval = 200000;  // (in microsec) wait .2 second intervals for each get
-        Mode netMode = mode;
-        if (mode == Mode.SLEEP) {
-            netMode = Mode.TIMED;
-            sec  =  newTimeInterval/1000000;
-            nsec = (newTimeInterval - sec*1000000) * 1000;
+        // Does the ET system run in this JVM?
+        if (localSys != null) {
+            return getEventsLocal(att, mode, modify, microSec, count);
         }
-        // Also, if there is a long time designated for TIMED mode,
-        // break it up into repeated smaller time chunks for the
-        // reason mentioned above. Don't break it up if timeout <= 1 sec.
-        else if (mode == Mode.TIMED && (microSec > 1000000))  {
-            sec  =  newTimeInterval/1000000;
-            nsec = (newTimeInterval - sec*1000000) * 1000;
-            // How many times do we call getEvents() with this new timeout value?
-            // It will be an over estimate unless timeout is evenly divisible by .2 seconds.
-            iterations = microSec/newTimeInterval;
-            if (microSec % newTimeInterval > 0) iterations++;
+
+        // Split large batches across the extra connections, if any
+        if (att.getStripes() != null && count >= 2*EtConstants.stripeEventsMin) {
+            return getEventsStriped(att, mode, modify, microSec, count);
         }
 
-        EtEventImpl[] evs;
+        return getEvents(att, null, mode, modify, microSec, count, null);
+    }
 
-        byte[] buffer = new byte[28];
-        EtUtils.intToBytes(EtConstants.netEvsGet, buffer, 0);
-        EtUtils.intToBytes(att.getId(),         buffer, 4);
-        EtUtils.intToBytes(netMode.getValue(),  buffer, 8);
-        EtUtils.intToBytes(modify.getValue(),   buffer, 12);
-        EtUtils.intToBytes(count,               buffer, 16);
-        EtUtils.intToBytes(sec,                 buffer, 20);
-        EtUtils.intToBytes(nsec,                buffer, 24);
 
-        boolean wait = false;
+    /**
+     * Get events from an ET system over this and the extra connections in parallel.
+     * The events gotten over this connection are waited for as the user asked.
+     * Those gotten over the extra connections are not waited for, so that
+     * a call never takes longer than it would over a single connection.
+     * Each extra connection asks for events only once the ET system has taken those
+     * of the connection before it from the station, so that the events returned are
+     * in the station's order while they are being sent over all connections at once.
+     *
+     * @param att      attachment object
+     * @param mode     wait mode
+     * @param modify   what the user may modify
+     * @param microSec the number of microseconds to wait if a timed wait is specified
+     * @param count    the number of events desired
+     *
+     * @return an array of events obtained from ET system, those of this connection first,
+     *         followed by those of each extra connection in turn.
+     * @see #getEvents(EtAttachment, Mode, Modify, int, int)
+     */
+    private EtEvent[] getEventsStriped(EtAttachment att, Mode mode, final Modify modify,
+                                       int microSec, int count)
+            throws EtException, EtDeadException, EtClosedException, EtEmptyException,
+                   EtBusyException, EtTimeoutException, EtWakeUpException, IOException {
 
-        while (true) {
+        EtAttachment[] atts = att.getStripes();
+        int[] counts = stripeCounts(atts.length + 1, count);
 
-            // Allow other synchronized methods to be called here
-            if (wait) {
-                try {Thread.sleep(10);}
-                catch (InterruptedException e) { }
-            }
+        // one latch per connection, counted down once its events are taken or it failed
+        CountDownLatch[] taken = new CountDownLatch[counts.length];
+        for (int i=0; i < counts.length; i++) {
+            taken[i] = new CountDownLatch(1);
+        }
 
-            // Write over the network
-            synchronized (this) {
-                if (!open) {
-                    throw new EtClosedException("Not connected to ET system");
+        ArrayList<Future<EtEvent[]>> futures = new ArrayList<Future<EtEvent[]>>(counts.length - 1);
+        for (int i=1; i < counts.length; i++) {
+            final EtAttachment stripeAtt = atts[i-1];
+            final int stripeCount = counts[i];
+            final CountDownLatch previous = taken[i-1];
+            final CountDownLatch mine = taken[i];
+            futures.add(stripeService.submit(new Callable<EtEvent[]>() {
+                public EtEvent[] call() throws Exception {
+                    try {
+                        previous.await();
+                        return stripeAtt.getSys().getEvents(stripeAtt, null, Mode.ASYNC, modify,
+                                                            0, stripeCount, mine);
+                    }
+                    catch (EtEmptyException e) {}
+                    catch (EtBusyException e) {}
+                    finally {
+                        mine.countDown();
+                    }
+                    return new EtEvent[0];
                 }
+            }));
+        }
 
-                out.write(buffer);
-                out.flush();
+        EtEvent[] evs = null;
+        Exception waitEx = null, failure = null;
+        try {
+            evs = getEvents(att, null, mode, modify, microSec, counts[0], taken[0]);
+        }
+        catch (EtEmptyException e)   {waitEx = e;}
+        catch (EtBusyException e)    {waitEx = e;}
+        catch (EtTimeoutException e) {waitEx = e;}
+        catch (EtWakeUpException e)  {waitEx = e;}
+        catch (Exception e)          {failure = e;}
+        finally {
+            taken[0].countDown();
+        }
 
-                // ET system clients are liable to get stuck here if the ET
-                // system crashes. So use the 2 second socket timeout to try
-                // to read again. If the socket connection has been broken,
-                // an IOException will be generated.
-                int err;
-                while (true) {
+        return joinStripes(att, evs, waitEx, failure, futures, false);
+    }
+
+
+    /**
+     * Get new (unused) events from an ET system over this and the extra connections
+     * in parallel. The events gotten over this connection are waited for as the user
+     * asked. Those gotten over the extra connections are not waited for.
+     *
+     * @param att       attachment object
+     * @param mode      wait mode
+     * @param noBuffer  forget about allocating byte array and ByteBuffer?
+     * @param microSec  the number of microseconds to wait if a timed wait is specified
+     * @param count     the number of events desired
+     * @param size      the size of events in bytes
+     * @param group     group number from which to draw new events
+     *
+     * @return an array of new events obtained from ET system, those of this connection
+     *         first, followed by those of each extra connection in turn.
+     * @see #newEvents(EtAttachment, Mode, boolean, int, int, int, int)
+     */
+    private EtEvent[] newEventsStriped(EtAttachment att, Mode mode, final boolean noBuffer,
+                                       int microSec, int count, final int size, final int group)
+            throws EtException, EtDeadException, EtClosedException, EtEmptyException,
+                   EtBusyException, EtTimeoutException, EtWakeUpException, IOException {
+
+        EtAttachment[] atts = att.getStripes();
+        int[] counts = stripeCounts(atts.length + 1, count);
+
+        ArrayList<Future<EtEvent[]>> futures = new ArrayList<Future<EtEvent[]>>(counts.length - 1);
+        for (int i=1; i < counts.length; i++) {
+            final EtAttachment stripeAtt = atts[i-1];
+            final int stripeCount = counts[i];
+            futures.add(stripeService.submit(new Callable<EtEvent[]>() {
+                public EtEvent[] call() throws Exception {
                     try {
-                        err = in.readInt();
-                        break;
-                    }
-                    // If there's an interrupted ex, socket is OK, try again.
-                    catch (InterruptedIOException ex) {
+                        return stripeAtt.getSys().newEventsNet(stripeAtt, Mode.ASYNC, noBuffer, 0,
+                                                               stripeCount, size, group);
                     }
+                    catch (EtEmptyException e) {}
+                    catch (EtBusyException e) {}
+                    return new EtEvent[0];
                 }
+            }));
+        }
 
-                if (err < EtConstants.ok) {
+        EtEvent[] evs = null;
+        Exception waitEx = null, failure = null;
+        try {
+            evs = newEventsNet(att, mode, noBuffer, microSec, counts[0], size, group);
+        }
+        catch (EtEmptyException e)   {waitEx = e;}
+        catch (EtBusyException e)    {waitEx = e;}
+        catch (EtTimeoutException e) {waitEx = e;}
+        catch (EtWakeUpException e)  {waitEx = e;}
+        catch (Exception e)          {failure = e;}
+
+        return joinStripes(att, evs, waitEx, failure, futures, true);
+    }
+
+
+    /**
+     * Split the number of events wanted across connections so that each
+     * connection carries at least {@link EtConstants#stripeEventsMin} events.
+     *
+     * @param connections number of connections available
+     * @param count       number of events wanted, at least twice
+     *                    {@link EtConstants#stripeEventsMin}
+     * @return number of events for each connection used, this one first
+     */
+    private static int[] stripeCounts(int connections, int count) {
+        int n = Math.min(connections, count/EtConstants.stripeEventsMin);
+        int[] counts = new int[n];
+        for (int i=0; i < n; i++) {
+            counts[i] = count/n + (i < count%n ? 1 : 0);
+        }
+        return counts;
+    }
+
+
+    /**
+     * Put together the events gotten over this and the extra connections, in that order.
+     * If no events were gotten at all, the exception ending the wait over this
+     * connection is thrown. If getting events failed over any connection, the
+     * events gotten over the others are given back, the way detaching would:
+     * put if gotten from a station, or dumped if new, and the failure is thrown.
+     *
+     * @param att     attachment object
+     * @param evs     events gotten over this connection, or null if none
+     * @param waitEx  exception ending the wait for events over this connection, or null
+     * @param failure exception with which getting events over this connection failed, or null
+     * @param futures events gotten over each extra connection
+     * @param newEvents <code>true</code> if getting new events
+     * @return all events gotten
+     */
+    private EtEvent[] joinStripes(EtAttachment att, EtEvent[] evs, Exception waitEx, Exception failure,
+                                  List<Future<EtEvent[]>> futures, boolean newEvents)
+            throws EtException, EtDeadException, EtClosedException, EtEmptyException,
+                   EtBusyException, EtTimeoutException, EtWakeUpException, IOException {
+
+        // Wait for every connection, even after one fails, so no events are lost
+        EtEvent[][] parts = new EtEvent[futures.size() + 1][];
+        parts[0] = evs;
+        int total = (evs == null) ? 0 : evs.length;
+        for (int i=0; i < futures.size(); i++) {
+            try {
+                parts[i+1] = waitForStripe(futures.get(i));
+                total += parts[i+1].length;
+            }
+            catch (Exception e) {
+                if (failure == null) failure = e;
+            }
+        }
+
+        if (failure != null) {
+            giveBackStripes(att, parts, total, newEvents);
+            throwEtException(failure);
+        }
+
+        if (total == 0 && waitEx != null) {
+            throwEtException(waitEx);
+        }
+
+        EtEvent[] all = new EtEvent[total];
+        int index = 0;
+        for (EtEvent[] part : parts) {
+            if (part == null) continue;
+            System.arraycopy(part, 0, all, index, part.length);
+            index += part.length;
+        }
+        return all;
+    }
+
+
+    /**
+     * Give back the events gotten over this and the extra connections when
+     * the user will not get them because getting events failed.
+     *
+     * @param att       attachment object
+     * @param parts     events gotten over each connection, null for none
+     * @param total     number of events in all parts
+     * @param newEvents <code>true</code> if the events are new, in which case
+     *                  they're dumped, else they're put
+     */
+    private void giveBackStripes(EtAttachment att, EtEvent[][] parts, int total, boolean newEvents) {
+        if (total < 1) {
+            return;
+        }
+
+        EtEvent[] all = new EtEvent[total];
+        int index = 0;
+        for (EtEvent[] part : parts) {
+            if (part == null) continue;
+            System.arraycopy(part, 0, all, index, part.length);
+            index += part.length;
+        }
+
+        try {
+            putEventsStriped(att, all, 0, total, newEvents);
+        }
+        catch (Exception e) {
+            // a connection is broken, detaching takes care of its events
+            if (debug >= EtConstants.debugWarn) {
+                System.out.println("cannot give back events: " + e.getMessage());
+            }
+        }
+    }
+
+
+    /**
+     * Wait for the work done over an extra connection to finish and throw any exception it ended with.
+     *
+     * @param future work done over an extra connection
+     * @param <T> type of result
+     * @return result of the work
+     */
+    private static <T> T waitForStripe(Future<T> future)
+            throws EtException, EtDeadException, EtClosedException, EtEmptyException,
+                   EtBusyException, EtTimeoutException, EtWakeUpException, IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            throw new InterruptedIOException("interrupted waiting for connection");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throwEtException((Exception) cause);
+            }
+            throw (Error) cause;
+        }
+    }
+
+
+    /**
+     * Throw an exception as one of the types thrown by the methods getting and putting events.
+     * Any other exception is wrapped in an EtException.
+     *
+     * @param ex exception
+     */
+    private static void throwEtException(Exception ex)
+            throws EtException, EtDeadException, EtClosedException, EtEmptyException,
+                   EtBusyException, EtTimeoutException, EtWakeUpException, IOException {
+        if (ex instanceof IOException)        throw (IOException) ex;
+        if (ex instanceof EtException)        throw (EtException) ex;
+        if (ex instanceof EtDeadException)    throw (EtDeadException) ex;
+        if (ex instanceof EtClosedException)  throw (EtClosedException) ex;
+        if (ex instanceof EtEmptyException)   throw (EtEmptyException) ex;
+        if (ex instanceof EtBusyException)    throw (EtBusyException) ex;
+        if (ex instanceof EtTimeoutException) throw (EtTimeoutException) ex;
+        if (ex instanceof EtWakeUpException)  throw (EtWakeUpException) ex;
+        if (ex instanceof RuntimeException)   throw (RuntimeException) ex;
+        throw new EtException(ex.toString());
+    }
+
+
+    /**
+     * Get events from an ET system over the network, first putting events
+     * if there are any to put.
+     *
+     * @param att      attachment object
+     * @param putEvs   events to put in the same message as the request to get events,
+     *                 or null if none
+     * @param mode     wait mode
+     * @param modify   what the user may modify
+     * @param microSec the number of microseconds to wait if a timed wait is specified
+     * @param count    the number of events desired
+     * @param taken    if not null, counted down once the ET system has taken the events
+     *                 from the station, before they are read
+     *
+     * @return an array of events obtained from ET system.
+     * @see #getEvents(EtAttachment, Mode, Modify, int, int)
+     */
+    private EtEvent[] getEvents(EtAttachment att, EtEvent[] putEvs, Mode mode, Modify modify,
+                                int microSec, int count, CountDownLatch taken)
+            throws EtException, EtClosedException, EtEmptyException,
+                   EtBusyException, EtTimeoutException, EtWakeUpException, IOException {
+
+        int sec  = 0;
+        int nsec = 0;
+        if (microSec > 0) {
+            sec = microSec/1000000;
+            nsec = (microSec - sec*1000000) * 1000;
+        }
+
+        // When using the network, do NOT use SLEEP mode because that
+        // may block all usage of this API's synchronized methods.
+        // Use repeated calls in TIMED mode. In between those calls,
+        // allow other synchronized code to run (such as wakeUpAll).
+        int iterations = 1;
+        int newTimeInterval = 200000;  // (in microsec) wait .2 second intervals for each get
+        Mode netMode = mode;
+        if (mode == Mode.SLEEP) {
+            netMode = Mode.TIMED;
+            sec  =  newTimeInterval/1000000;
+            nsec = (newTimeInterval - sec*1000000) * 1000;
+        }
+        // Also, if there is a long time designated for TIMED mode,
+        // break it up into repeated smaller time chunks for the
+        // reason mentioned above. Don't break it up if timeout <= 1 sec.
+        else if (mode == Mode.TIMED && (microSec > 1000000))  {
+            sec  =  newTimeInterval/1000000;
+            nsec = (newTimeInterval - sec*1000000) * 1000;
+            // How many times do we call getEvents() with this new timeout value?
+            // It will be an over estimate unless timeout is evenly divisible by .2 seconds.
+            iterations = microSec/newTimeInterval;
+            if (microSec % newTimeInterval > 0) iterations++;
+        }
+
+        EtEventImpl[] evs;
+
+        byte[] buffer = new byte[28];
+        EtUtils.intToBytes(EtConstants.netEvsGet, buffer, 0);
+        EtUtils.intToBytes(att.getId(),         buffer, 4);
+        EtUtils.intToBytes(netMode.getValue(),  buffer, 8);
+        EtUtils.intToBytes(modify.getValue(),   buffer, 12);
+        EtUtils.intToBytes(count,               buffer, 16);
+        EtUtils.intToBytes(sec,                 buffer, 20);
+        EtUtils.intToBytes(nsec,                buffer, 24);
+
+        boolean wait = false;
+
+        while (true) {
+
+            // Allow other synchronized methods to be called here
+            if (wait) {
+                try {Thread.sleep(10);}
+                catch (InterruptedException e) { }
+            }
+
+            // Write over the network
+            synchronized (this) {
+                if (!open) {
+                    throw new EtClosedException("Not connected to ET system");
+                }
+
+                waitForAsync();
+                if (putEvs != null) {
+                    // Put events and request more in one message, once.
+                    // The request for events is that below minus the command.
+                    writeEvents(EtConstants.netEvsPutGet, att, putEvs, 0, putEvs.length, null);
+                    out.write(buffer, 4, buffer.length - 4);
+                    att.recycleEvents(putEvs, 0, putEvs.length);
+                    putEvs = null;
+                }
+                else {
+                    out.write(buffer);
+                }
+                out.flush();
+
+                // ET system clients are liable to get stuck here if the ET
+                // system crashes. So use the 2 second socket timeout to try
+                // to read again. If the socket connection has been broken,
+                // an IOException will be generated.
+                int err;
+                while (true) {
+                    try {
+                        err = in.readInt();
+                        break;
+                    }
+                    // If there's an interrupted ex, socket is OK, try again.
+                    catch (InterruptedIOException ex) {
+                    }
+                }
+
+                if (err < EtConstants.ok) {
                     if (debug >= EtConstants.debugError && err != EtConstants.errorTimeout) {
                         System.out.println("error in ET system (getEvents), err = " + err);
                     }
@@ -1928,62 +2754,124 @@ public class EtSystem {
                     }
                 }
 
-                // skip reading total size (long)
-                in.skipBytes(8);
+                // The ET system takes events before it replies
+                if (taken != null) {
+                    taken.countDown();
+                }
+                evs = readEvents(err, att, modify);
+            }
+
+            break;
+        }
+
+        return evs;
+    }
+
+
+    /**
+     * Read the events sent by the ET system in reply to a request to get events,
+     * after the number of events has been read.
+     *
+     * @param numEvents number of events sent
+     * @param att       attachment getting the events
+     * @param modify    what the user may modify
+     * @return events
+     * @throws IOException if problems with network communications
+     * @throws EtException if bad value for data length
+     */
+    private EtEventImpl[] readEvents(int numEvents, EtAttachment att, Modify modify)
+            throws IOException, EtException {
+
+        // skip reading total size (long)
+        in.skipBytes(8);
 
-                final int selectInts   = EtConstants.stationSelectInts;
-                final int dataShift    = EtConstants.dataShift;
-                final int dataMask     = EtConstants.dataMask;
-                final int priorityMask = EtConstants.priorityMask;
+        final int selectInts   = EtConstants.stationSelectInts;
+        final int dataShift    = EtConstants.dataShift;
+        final int dataMask     = EtConstants.dataMask;
+        final int priorityMask = EtConstants.priorityMask;
 
-                int numEvents = err;
-                evs = new EtEventImpl[numEvents];
-                int byteChunk = 4*(9+ EtConstants.stationSelectInts);
-                buffer = new byte[byteChunk];
-                int index;
+        EtEventImpl[] evs = new EtEventImpl[numEvents];
+        int byteChunk = 4*(9+ EtConstants.stationSelectInts);
+        byte[] buffer = new byte[byteChunk];
+        int index;
 
-                long  length, memSize;
-                int   priAndStat;
+        long  length, memSize;
+        int   priAndStat, id, compressedLength;
+        boolean shared;
+        int[] control = new int[selectInts];
 
-                for (int j=0; j < numEvents; j++) {
-                    in.readFully(buffer, 0, byteChunk);
+        // Compressed data are read first and decompressed once all events are read
+        EtCompressor compressor = readCompressor;
+        ByteBuffer[] compressed = null;
+        if (compressor != null) {
+            compressor.clear(numEvents);
+            compressed = new ByteBuffer[numEvents];
+        }
 
-                    length  = EtUtils.bytesToLong(buffer, 0);
-                    memSize = EtUtils.bytesToLong(buffer, 8);
+        for (int j=0; j < numEvents; j++) {
+            in.readFully(buffer, 0, byteChunk);
 
-                    // Note that the server will not send events too big for us,
-                    // we'll get an error above.
+            length  = EtUtils.bytesToLong(buffer, 0);
+            memSize = EtUtils.bytesToLong(buffer, 8);
 
-                    // if C ET system we are connected to is 64 bits ...
-                    if (!isJava && sys.isBit64()) {
-                        // if event size > ~1G, only allocate enough to hold data
-                        if (memSize > Integer.MAX_VALUE/2) {
-                            memSize = length;
-                        }
-                    }
-                    evs[j] = new EtEventImpl((int)memSize, (int)memSize, isJava, false);
-                    evs[j].setLength((int)length);
-                    evs[j].getDataBuffer().limit((int)length);
-                    priAndStat = EtUtils.bytesToInt(buffer, 16);
-                    evs[j].setPriority(Priority.getPriority(priAndStat & priorityMask));
-                    evs[j].setDataStatus(DataStatus.getStatus((priAndStat & dataMask) >> dataShift));
-                    evs[j].setId(EtUtils.bytesToInt(buffer, 20));
-                    // skip unused int here
-                    evs[j].setRawByteOrder(EtUtils.bytesToInt(buffer, 28));
-                    index = 32;   // skip unused int
-                    int[] control = new int[selectInts];
-                    for (int i=0; i < selectInts; i++) {
-                        control[i] = EtUtils.bytesToInt(buffer, index+=4);
-                    }
-                    evs[j].setControl(control);
-                    evs[j].setModify(modify);
-                    evs[j].setOwner(att.getId());
+            // Note that the server will not send events too big for us,
+            // we'll get an error above.
 
+            // if C ET system we are connected to is 64 bits ...
+            if (!isJava && sys.isBit64()) {
+                // if event size > ~1G, only allocate enough to hold data
+                if (memSize > Integer.MAX_VALUE/2) {
+                    memSize = length;
+                }
+            }
+            id = EtUtils.bytesToInt(buffer, 20);
+            // data is in the shared event file, not sent over the network, if next int = 1
+            shared = sharedEvents != null && EtUtils.bytesToInt(buffer, 24) != 0;
+
+            // reuse an event object the user is done with, if allowed
+            evs[j] = shared ? null : att.reuseEvent((int)memSize);
+            if (evs[j] == null) {
+                evs[j] = new EtEventImpl((int)memSize, (int)memSize, isJava, shared);
+            }
+            else {
+                evs[j].setSizeLimit((int)memSize);
+            }
+            if (shared) {
+                ByteBuffer buf = sharedEvents[id];
+                buf.clear();
+                evs[j].setDataBuffer(buf);
+            }
+            evs[j].setLength((int)length);
+            evs[j].getDataBuffer().limit((int)length);
+            priAndStat = EtUtils.bytesToInt(buffer, 16);
+            evs[j].setPriority(Priority.getPriority(priAndStat & priorityMask));
+            evs[j].setDataStatus(DataStatus.getStatus((priAndStat & dataMask) >> dataShift));
+            evs[j].setId(id);
+            evs[j].setRawByteOrder(EtUtils.bytesToInt(buffer, 28));
+            index = 32;   // skip unused int
+            for (int i=0; i < selectInts; i++) {
+                control[i] = EtUtils.bytesToInt(buffer, index+=4);
+            }
+            evs[j].setControl(control);
+            evs[j].setModify(modify);
+            evs[j].setOwner(att.getId());
+
+            if (!shared) {
+                // length of compressed data, or 0 if not compressed
+                compressedLength = (compressor == null) ? 0 : EtUtils.bytesToInt(buffer, 32);
+                if (compressedLength > 0) {
+                    in.readFully(compressor.getBlock(j, compressedLength), 0, compressedLength);
+                    compressed[j] = evs[j].getDataBuffer().duplicate();
+                    compressed[j].limit((int)length).position(0);
+                }
+                else {
                     in.readFully(evs[j].getData(), 0, (int)length);
                 }
             }
+        }
 
-            break;
+        if (compressed != null) {
+            compressor.decompress(compressed, numEvents);
         }
 
         return evs;
@@ -2015,204 +2903,1575 @@ public class EtSystem {
         if (eventList == null) {
             throw new EtException("Invalid event list arg");
         }
-        putEvents(att, eventList.toArray(new EtEvent[eventList.size()]));
+        putEvents(att, eventList.toArray(new EtEvent[eventList.size()]));
+    }
+
+
+    /**
+     * Put events into an ET system.
+     * Will access local C-based ET systems through JNI/shared memory, but other ET
+     * systems through sockets.
+     *
+     * @param att  attachment object
+     * @param evs  array of event objects
+     *
+     * @throws IOException
+     *     if problems with network communications
+     * @throws EtException
+     *     if invalid arg(s);
+     *     if not connected to ET system;
+     *     if events are not owned by this attachment;
+     * @throws EtDeadException
+     *     if the ET system processes are dead
+     * @throws EtClosedException
+     *     if the ET system is closed
+     */
+    public void putEvents(EtAttachment att, EtEvent[] evs)
+            throws IOException, EtException, EtDeadException, EtClosedException {
+
+        if (evs == null) {
+            throw new EtException("Invalid event array arg");
+        }
+        putEvents(att, evs, 0, evs.length);
+    }
+
+
+    /**
+     * Put events into an ET system.
+     * This method uses JNI to call ET routines in the C library. Since event memory, in
+     * this case, is directly accessed shared memory, none of it is copied.
+     *
+     * @param attId  attachment ID
+     * @param evs    array of event objects
+     * @param offset offset into array
+     * @param length number of array elements to put
+     *
+     * @throws EtException
+     *     if invalid arg(s);
+     *     if events are not owned by this attachment;
+     * @throws EtDeadException
+     *     if the ET system processes are dead
+     * @throws EtClosedException
+     *     if the ET system is closed
+     */
+    private void putEventsJNI(int attId, EtEvent[] evs, int offset, int length)
+            throws EtException, EtDeadException, EtClosedException {
+
+        // C interface has no offset (why did I do that again?), so compensate for that
+        EtEventImpl[] events = new EtEventImpl[length];
+        for (int i=0; i<length; i++) {
+            events[i] = (EtEventImpl) evs[offset + i];
+        }
+
+        sys.getJni().putEvents(sys.getJni().getLocalEtId(), attId, events, length);
+    }
+
+
+    /**
+     * Put events into an ET system.
+     * Will access local C-based ET systems through JNI/shared memory, but other ET
+     * systems through sockets.
+     *
+     * @param att    attachment object
+     * @param evs    array of event objects
+     * @param offset offset into array
+     * @param length number of array elements to put
+     *
+     * @throws IOException
+     *     if problems with network communications
+     * @throws EtException
+     *     if invalid arg(s);
+     *     if events are not owned by this attachment;
+     *     if null data buffer & whole event's being modified;
+     * @throws EtDeadException
+     *     if the ET system processes are dead
+     * @throws EtClosedException
+     *     if the ET system is closed
+     */
+    synchronized public void putEvents(EtAttachment att, EtEvent[] evs, int offset, int length)
+            throws IOException, EtException, EtDeadException, EtClosedException {
+
+        checkPutEvents(att, evs, offset, length);
+
+        // Did we get things locally through JNI?
+        if (sys.usingJniLibrary()) {
+            putEventsJNI(att.getId(), evs, offset, length);
+            return;
+        }
+
+        // Does the ET system run in this JVM?
+        if (localSys != null) {
+            putEventsLocal(att, evs, offset, length, false);
+            return;
+        }
+
+        // Events gotten over extra connections go back over them
+        if (att.getStripes() != null) {
+            putEventsStriped(att, evs, offset, length, false);
+            return;
+        }
+
+        putEventsNet(att, evs, offset, length, null);
+    }
+
+
+    /**
+     * Put events into an ET system over the network.
+     * Must be called while synchronized on this object.
+     *
+     * @param att    attachment object
+     * @param evs    array of event objects
+     * @param offset offset into array
+     * @param length number of array elements to put
+     * @param previous if not null, the ET system only gets all the events once this
+     *                 is counted down
+     *
+     * @throws IOException
+     *     if problems with network communications
+     * @throws EtException
+     *     if null data buffer & whole event's being modified;
+     */
+    private void putEventsNet(EtAttachment att, EtEvent[] evs, int offset, int length,
+                              CountDownLatch previous)
+            throws IOException, EtException {
+
+        waitForAsync();
+
+        // If nothing was modified, nothing was sent and there is no reply
+        boolean sent = sendEvents(EtConstants.netEvsPut, att, evs, offset, length, previous);
+        att.recycleEvents(evs, offset, length);
+        if (sent) {
+            // err should always be = Constants.ok
+            // skip reading error
+            in.skipBytes(4);
+        }
+    }
+
+
+    /**
+     * Put events into an ET system and get more events from it in one round trip.
+     * This does the same as {@link #putEvents(EtAttachment, EtEvent[])} followed by
+     * {@link #getEvents(EtAttachment, Mode, Modify, int, int)}, but over the network
+     * the events put and the request for more are sent in a single message and
+     * only the reply to the request is waited for. This halves the number of
+     * round trips made by a remote user who repeatedly gets, processes and puts events.
+     * The events are put even if getting more fails.
+     * Local C-based ET systems (through JNI) and remote ET systems which do not say,
+     * when opened, that they understand the combined message are sent two.
+     *
+     * @param att      attachment object
+     * @param putEvs   array of event objects to put
+     * @param mode     if there are no new events available, this parameter specifies
+     *                 whether to wait for some by sleeping {@link Mode#SLEEP},
+     *                 to wait for a set time {@link Mode#TIMED},
+     *                 or to return immediately {@link Mode#ASYNC}.
+     * @param modify   this specifies whether this application plans
+     *                 on modifying the data in events obtained {@link Modify#ANYTHING}, or
+     *                 only modifying headers {@link Modify#HEADER}. The default assumed, {@link Modify#NOTHING},
+     *                 is that no values are modified resulting in the events being put back into
+     *                 the ET system (by remote server) immediately upon being copied and that copy
+     *                 sent to this method's caller.
+     * @param microSec the number of microseconds to wait if a timed wait is
+     *                 specified
+     * @param count    the number of events desired
+     *
+     * @return an array of events obtained from ET system. Count may be different from that requested.
+     *
+     * @throws IOException
+     *     if problems with network communications
+     * @throws EtException
+     *     if arguments have bad values;
+     *     if the attachment's station is GRAND_CENTRAL;
+     *     if the attachment object is invalid;
+     *     if events to put are not owned by this attachment;
+     *     if null data buffer & whole event's being modified;
+     *     for other general errors
+     * @throws EtDeadException
+     *     if the ET system processes are dead
+     * @throws EtClosedException
+     *     if the ET system is closed
+     * @throws EtEmptyException
+     *     if the mode is asynchronous and the station's input list is empty
+     * @throws EtBusyException
+     *     if the mode is asynchronous and the station's input list is being used
+     *     (the mutex is locked)
+     * @throws EtTimeoutException
+     *     if the mode is timed wait and the time has expired
+     * @throws EtWakeUpException
+     *     if the attachment has been commanded to wakeup,
+     *     {@link org.jlab.coda.et.system.EventList#wakeUp(org.jlab.coda.et.system.AttachmentLocal)},
+     *     {@link org.jlab.coda.et.system.EventList#wakeUpAll}
+     */
+    public EtEvent[] putAndGetEvents(EtAttachment att, EtEvent[] putEvs, Mode mode, Modify modify,
+                                     int microSec, int count)
+            throws EtException, EtDeadException, EtClosedException, EtEmptyException,
+                   EtBusyException, EtTimeoutException, EtWakeUpException, IOException {
+
+        if (putEvs == null) {
+            throw new EtException("Invalid event array arg");
+        }
+
+        // Only ET systems which say so understand the combined message,
+        // and there is no round trip to save in this JVM
+        // and events gotten over extra connections go back over them
+        if (sys.usingJniLibrary() || localSys != null ||
+            (sys.getFeatures() & EtConstants.netFeaturePutGet) == 0 ||
+            putEvs.length == 0 || count == 0 || (att != null && att.getStripes() != null)) {
+            putEvents(att, putEvs);
+            return getEvents(att, mode, modify, microSec, count);
+        }
+
+        if (modify == null) {
+            modify = Modify.NOTHING;
+        }
+
+        // Check everything before putting
+        checkPutEvents(att, putEvs, 0, putEvs.length);
+
+        // May not get events from GrandCentral
+        if (att.getStation().getId() == 0) {
+            throw new EtException("may not get events from GRAND_CENTRAL");
+        }
+
+        if (count < 0) {
+            throw new EtException("bad count argument");
+        }
+
+        if (mode == null) {
+            throw new EtException("Invalid mode");
+        }
+        else if ((mode == Mode.TIMED) && (microSec < 0)) {
+            throw new EtException("bad microSec argument");
+        }
+
+        return getEvents(att, putEvs, mode, modify, microSec, count, null);
+    }
+
+
+    /**
+     * Check the arguments used to put events into an ET system.
+     *
+     * @param att    attachment object
+     * @param evs    array of event objects
+     * @param offset offset into array
+     * @param length number of array elements to put
+     *
+     * @throws EtException
+     *     if invalid arg(s);
+     *     if events are not owned by this attachment;
+     * @throws EtClosedException
+     *     if the ET system is closed
+     */
+    private void checkPutEvents(EtAttachment att, EtEvent[] evs, int offset, int length)
+            throws EtException, EtClosedException {
+
+        if (!open) {
+            throw new EtClosedException("Not connected to ET system");
+        }
+
+        if (evs == null) {
+            throw new EtException("Invalid event array arg");
+        }
+
+        if (offset < 0 || length < 0 || offset + length > evs.length) {
+            throw new EtException("Bad offset or length argument(s)");
+        }
+
+        if (att == null || !att.isUsable() || att.getSys() != this) {
+            throw new EtException("Invalid attachment");
+        }
+
+        for (int i=offset; i < offset+length; i++) {
+            // each event must be registered as owned by this attachment
+            if (!owns(att, evs[i])) {
+                throw new EtException("may not put event(s), not owner");
+            }
+        }
+    }
+
+
+    /**
+     * Is an event owned by an attachment, or by one of the attachments to
+     * the same station made over the extra connections?
+     *
+     * @param att attachment object
+     * @param ev  event object
+     * @return <code>true</code> if the event is owned by the attachment
+     */
+    private static boolean owns(EtAttachment att, EtEvent ev) {
+        if (ev.getOwner() == att.getId()) {
+            return true;
+        }
+
+        EtAttachment[] atts = att.getStripes();
+        if (atts != null) {
+            for (EtAttachment stripeAtt : atts) {
+                if (ev.getOwner() == stripeAtt.getId()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Put or dump events over the connections they were gotten over, in parallel.
+     * Those owned by the attachment itself are sent over this connection.
+     * Events put over each extra connection only go into the ET system once those of
+     * the nearest connection before it with any events are in, so that events put in
+     * the order they were gotten keep that order while they are being sent over all
+     * connections at once.
+     *
+     * @param att    attachment object
+     * @param evs    array of event objects
+     * @param offset offset into array
+     * @param length number of array elements to put
+     * @param dump   <code>true</code> if dumping events, else putting
+     *
+     * @throws IOException
+     *     if problems with network communications
+     * @throws EtException
+     *     if events are not owned by this attachment;
+     *     if null data buffer & whole event's being modified;
+     * @throws EtDeadException
+     *     if the ET system processes are dead
+     * @throws EtClosedException
+     *     if the ET system is closed
+     */
+    private void putEventsStriped(EtAttachment att, EtEvent[] evs, int offset, int length,
+                                  final boolean dump)
+            throws IOException, EtException, EtDeadException, EtClosedException {
+
+        EtAttachment[] atts = att.getStripes();
+
+        // sort the events by owner, index 0 for this connection
+        ArrayList<ArrayList<EtEvent>> parts = new ArrayList<ArrayList<EtEvent>>(atts.length + 1);
+        for (int i=0; i <= atts.length; i++) {
+            parts.add(new ArrayList<EtEvent>());
+        }
+
+        for (int i=offset; i < offset+length; i++) {
+            int owner = evs[i].getOwner();
+            if (owner == att.getId()) {
+                parts.get(0).add(evs[i]);
+                continue;
+            }
+            for (int j=0; j < atts.length; j++) {
+                if (owner == atts[j].getId()) {
+                    parts.get(j+1).add(evs[i]);
+                    break;
+                }
+            }
+        }
+
+        // one latch per connection, counted down once its events are in or it failed
+        CountDownLatch[] done = new CountDownLatch[atts.length + 1];
+        for (int i=0; i <= atts.length; i++) {
+            done[i] = new CountDownLatch(parts.get(i).isEmpty() ? 0 : 1);
+        }
+
+        ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>(atts.length);
+        CountDownLatch last = done[0];
+        for (int i=0; i < atts.length; i++) {
+            ArrayList<EtEvent> part = parts.get(i+1);
+            if (part.isEmpty()) continue;
+
+            // wait for the last connection with events, not one with none
+            final EtAttachment stripeAtt = atts[i];
+            final EtEvent[] stripeEvs = part.toArray(new EtEvent[part.size()]);
+            final CountDownLatch previous = last;
+            final CountDownLatch mine = done[i+1];
+            last = mine;
+            futures.add(stripeService.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    try {
+                        if (dump) {
+                            stripeAtt.getSys().dumpEvents(stripeAtt, stripeEvs, 0, stripeEvs.length);
+                        }
+                        else {
+                            stripeAtt.getSys().putStripe(stripeAtt, stripeEvs, previous);
+                        }
+                    }
+                    finally {
+                        mine.countDown();
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        // send this connection's events while the others are sent
+        ArrayList<EtEvent> part = parts.get(0);
+        if (!part.isEmpty()) {
+            EtEvent[] myEvs = part.toArray(new EtEvent[part.size()]);
+            try {
+                if (dump) {
+                    dumpEventsNet(att, myEvs, 0, myEvs.length);
+                }
+                else {
+                    putEventsNet(att, myEvs, 0, myEvs.length, null);
+                }
+            }
+            finally {
+                done[0].countDown();
+            }
+        }
+
+        try {
+            for (Future<Void> future : futures) {
+                waitForStripe(future);
+            }
+        }
+        catch (EtEmptyException e)   {throw new EtException(e.getMessage());}
+        catch (EtBusyException e)    {throw new EtException(e.getMessage());}
+        catch (EtTimeoutException e) {throw new EtException(e.getMessage());}
+        catch (EtWakeUpException e)  {throw new EtException(e.getMessage());}
+    }
+
+
+    /**
+     * Put events into an ET system over this connection when it is one of the
+     * extra connections of another EtSystem object.
+     *
+     * @param att      attachment made over this connection
+     * @param evs      array of event objects
+     * @param previous the ET system only gets all the events once this is counted down
+     *
+     * @throws IOException
+     *     if problems with network communications
+     * @throws EtException
+     *     if null data buffer & whole event's being modified;
+     * @throws EtClosedException
+     *     if the ET system is closed
+     */
+    synchronized private void putStripe(EtAttachment att, EtEvent[] evs, CountDownLatch previous)
+            throws IOException, EtException, EtClosedException {
+
+        if (!open) {
+            throw new EtClosedException("Not connected to ET system");
+        }
+        putEventsNet(att, evs, 0, evs.length, previous);
+    }
+
+
+    /**
+     * Send events to be put into an ET system over the network.
+     * Only events which were modified are sent.
+     *
+     * @param command {@link EtConstants#netEvsPut} or {@link EtConstants#netEvsPutNR}
+     * @param att     attachment object
+     * @param evs     array of event objects
+     * @param offset  offset into array
+     * @param length  number of array elements to put
+     * @param previous if not null, the last event is only written once this is counted down
+     * @return <code>true</code> if events were sent,
+     *         <code>false</code> if nothing was modified and nothing sent
+     *
+     * @throws IOException
+     *     if problems with network communications
+     * @throws EtException
+     *     if null data buffer & whole event's being modified;
+     */
+    private boolean sendEvents(int command, EtAttachment att, EtEvent[] evs, int offset, int length,
+                               CountDownLatch previous)
+            throws IOException, EtException {
+
+        // If nothing was modified, we're done, just return.
+        boolean modified = false;
+        for (int i=offset; i < offset+length; i++) {
+            if (evs[i].getModify() != Modify.NOTHING) {
+                modified = true;
+                break;
+            }
+        }
+        if (!modified) {
+            return false;
+        }
+
+        writeEvents(command, att, evs, offset, length, previous);
+        out.flush();
+        return true;
+    }
+
+
+    /**
+     * Write the command to put events into an ET system, followed by those events
+     * which were modified (possibly none), without flushing.
+     *
+     * @param command {@link EtConstants#netEvsPut} or {@link EtConstants#netEvsPutGet}
+     * @param att     attachment object
+     * @param evs     array of event objects
+     * @param offset  offset into array
+     * @param length  number of array elements to put
+     * @param previous if not null, the last event is only written once this is counted down
+     *
+     * @throws IOException
+     *     if problems with network communications;
+     *     if interrupted waiting for previous
+     * @throws EtException
+     *     if null data buffer & whole event's being modified;
+     */
+    private void writeEvents(int command, EtAttachment att, EtEvent[] evs, int offset, int length,
+                             CountDownLatch previous)
+            throws IOException, EtException {
+
+        final int selectInts = EtConstants.stationSelectInts;
+        final int dataShift  = EtConstants.dataShift;
+
+        // Compress the data sent, if agreed on with the ET system
+        EtCompressor compressor = writeCompressor;
+        ByteBuffer[] compressed = null;
+        if (compressor != null) {
+            compressed = new ByteBuffer[length];
+            for (int i=offset; i < offset+length; i++) {
+                if (evs[i].getModify() == Modify.ANYTHING && !isSharedData(evs[i])) {
+                    ByteBuffer buf = evs[i].getDataBuffer();
+                    if (buf == null) throw new EtException("null data buffer");
+                    buf = buf.duplicate();
+                    buf.limit(evs[i].getLength()).position(0);
+                    compressed[i-offset] = buf;
+                }
+            }
+            compressor.compress(compressed, length);
+        }
+
+        // find out how many events we're sending & total # bytes
+        int bytes = 0, numEvents = 0;
+        int headerSize = 4*(7+selectInts);
+
+        for (int i=offset; i < offset+length; i++) {
+            // if modifying header only or header & data ...
+            if (evs[i].getModify() != Modify.NOTHING) {
+                numEvents++;
+                bytes += headerSize;
+                // if modifying data as well (unless it's in the shared event file) ...
+                if (compressed != null && compressed[i-offset] != null) {
+                    bytes += compressed[i-offset].remaining();
+                }
+                else if (evs[i].getModify() == Modify.ANYTHING && !isSharedData(evs[i])) {
+                    bytes += evs[i].getLength();
+                }
+            }
+        }
+
+        int indx, written = 0;
+        int[] control;
+        byte[] header = new byte[headerSize];
+
+        out.writeInt(command);
+        out.writeInt(att.getId());
+        out.writeInt(numEvents);
+        out.writeLong((long)bytes);
+
+//        EtUtils.intToBytes(EtConstants.netEvsPut, ByteOrder.BIG_ENDIAN, header, 0);
+//        EtUtils.intToBytes(att.getId(), ByteOrder.BIG_ENDIAN, header, 4);
+//        EtUtils.intToBytes(numEvents, ByteOrder.BIG_ENDIAN, header, 8);
+//        EtUtils.longToBytes((long)bytes, ByteOrder.BIG_ENDIAN, header, 12);
+//        out.write(header, 0, 20);
+
+
+        for (int i=offset; i < offset+length; i++) {
+            // send only if modifying an event (data or header) ...
+            if (evs[i].getModify() != Modify.NOTHING) {
+                // The ET system puts the events once it has read them all,
+                // so hold the last one back until the previous put is done
+                if (previous != null && ++written == numEvents) {
+                    out.flush();
+                    try {
+                        previous.await();
+                    }
+                    catch (InterruptedException e) {
+                        throw new InterruptedIOException("interrupted waiting for previous put");
+                    }
+                }
+
+                boolean shared = isSharedData(evs[i]);
+                EtUtils.intToBytes(evs[i].getId(), ByteOrder.BIG_ENDIAN, header, 0);
+                // tell server if data was written directly into the shared event file
+                EtUtils.intToBytes(shared ? 1 : 0, ByteOrder.BIG_ENDIAN, header, 4);
+                EtUtils.longToBytes((long) evs[i].getLength(), ByteOrder.BIG_ENDIAN, header, 8);
+                EtUtils.intToBytes(evs[i].getPriority().getValue() | evs[i].getDataStatus().getValue() << dataShift,
+                                   ByteOrder.BIG_ENDIAN, header, 16);
+                EtUtils.intToBytes(evs[i].getRawByteOrder(), ByteOrder.BIG_ENDIAN, header, 20);
+                // length of compressed data, or 0 if not compressed
+                boolean isCompressed = compressor != null && compressor.isCompressed(i-offset);
+                EtUtils.intToBytes(isCompressed ? compressed[i-offset].remaining() : 0,
+                                   ByteOrder.BIG_ENDIAN, header, 24);
+                indx = 28;
+                control = evs[i].getControl();
+                for (int j=0; j < selectInts; j++,indx+=4) {
+                    EtUtils.intToBytes(control[j], ByteOrder.BIG_ENDIAN, header, indx);
+                }
+                // Much Faster to put header data into byte array and write
+                // it out once instead of writing each int and long.
+                out.write(header);
+
+                // send data only if modifying whole event
+                if (isCompressed) {
+                    ByteBuffer buf = compressed[i-offset];
+                    out.write(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+                }
+                else if (evs[i].getModify() == Modify.ANYTHING && !shared) {
+                    ByteBuffer buf = evs[i].getDataBuffer();
+                    if (buf == null) throw new EtException("null data buffer");
+                    if (!buf.hasArray()) {
+//System.out.println("Memory mapped buffer does NOT have a backing array !!!");
+                        for (int j=0; j<evs[i].getLength(); j++) {
+                            out.write(buf.get(j));
+                        }
+                    }
+                    else {
+                        out.write(buf.array(), 0, evs[i].getLength());
+                    }
+                }
+            }
+        }
+    }
+
+
+
+
+    //****************************************************
+    //        EVENT METHODS FOR ET SYSTEM IN THIS JVM    *
+    //****************************************************
+
+
+    /**
+     * Get the ET system's own object for an attachment when the ET system runs in this JVM.
+     * @param att attachment object
+     * @return ET system's own attachment object
+     * @throws EtException if the attachment object is invalid
+     */
+    private AttachmentLocal localAttachment(EtAttachment att) throws EtException {
+        AttachmentLocal localAtt = att.getLocalAttachment();
+        if (localAtt == null) {
+            throw new EtException("Invalid attachment");
+        }
+        return localAtt;
+    }
+
+
+    /**
+     * Get events from an ET system running in this JVM. The events themselves are
+     * handed out, not copies, and nothing is serialized. Just as with the network, if the
+     * user does not modify the events, copies are handed out and the events are put back
+     * at once. Waiting for events does not block other methods of this object.
+     *
+     * @param att      attachment object
+     * @param mode     wait mode
+     * @param modify   what the user may modify
+     * @param microSec the number of microseconds to wait if a timed wait is specified
+     * @param count    the number of events desired
+     *
+     * @return an array of events obtained from ET system.
+     * @see #getEvents(EtAttachment, Mode, Modify, int, int)
+     */
+    private EtEvent[] getEventsLocal(EtAttachment att, Mode mode, Modify modify, int microSec, int count)
+            throws EtException, EtClosedException, EtEmptyException,
+                   EtBusyException, EtTimeoutException, EtWakeUpException {
+
+        SystemCreate local;
+        // Value of "open" valid only if synchronized
+        synchronized (this) {
+            if (!open) {
+                throw new EtClosedException("Not connected to ET system");
+            }
+            local = localSys;
+        }
+
+        AttachmentLocal localAtt = localAttachment(att);
+        EtEventImpl[] evs = local.getEvents(localAtt, mode.getValue(), microSec, count);
+
+        if (modify == Modify.NOTHING) {
+            EtEventImpl[] copies = new EtEventImpl[evs.length];
+            for (int i=0; i < evs.length; i++) {
+                copies[i] = new EtEventImpl(evs[i]);
+                copies[i].getDataBuffer().limit(evs[i].getLength()).position(0);
+            }
+            local.putEvents(localAtt, evs);
+            evs = copies;
+        }
+
+        for (EtEventImpl ev : evs) {
+            ev.setModify(modify);
+            ev.setSizeLimit(ev.getMemSize());
+            ev.getDataBuffer().limit(ev.getLength()).position(0);
+        }
+        return evs;
+    }
+
+
+    /**
+     * Get new (unused) events from an ET system running in this JVM.
+     * The events themselves are handed out and nothing is serialized.
+     * Waiting for events does not block other methods of this object.
+     *
+     * @param att      attachment object
+     * @param mode     wait mode
+     * @param microSec the number of microseconds to wait if a timed wait is specified
+     * @param count    the number of events desired
+     * @param size     the size of events in bytes
+     * @param group    group number from which to draw new events
+     *
+     * @return an array of events obtained from ET system.
+     * @see #newEvents(EtAttachment, Mode, boolean, int, int, int, int)
+     */
+    private EtEvent[] newEventsLocal(EtAttachment att, Mode mode, int microSec,
+                                     int count, int size, int group)
+            throws EtException, EtClosedException, EtEmptyException,
+                   EtBusyException, EtTimeoutException, EtWakeUpException {
+
+        SystemCreate local;
+        synchronized (this) {
+            if (!open) {
+                throw new EtClosedException("Not connected to ET system");
+            }
+            local = localSys;
+        }
+
+        List<EtEventImpl> evList = local.newEvents(localAttachment(att), mode.getValue(),
+                                                   microSec, count, size, group);
+        EtEventImpl[] evs = evList.toArray(new EtEventImpl[evList.size()]);
+        for (EtEventImpl ev : evs) {
+            ev.setModify(Modify.ANYTHING);
+            ev.setSizeLimit(ev.getMemSize());
+            ev.getDataBuffer().clear();
+        }
+        return evs;
+    }
+
+
+    /**
+     * Put or dump events into an ET system running in this JVM.
+     * Only events which may have been modified are put since the others
+     * are copies whose originals were put back when they were gotten.
+     * Must be called while synchronized on this object.
+     *
+     * @param att    attachment object
+     * @param evs    array of event objects
+     * @param offset offset into array
+     * @param length number of array elements to put
+     * @param dump   {@code true} if dumping events, {@code false} if putting
+     *
+     * @throws EtException if the attachment object is invalid
+     */
+    private void putEventsLocal(EtAttachment att, EtEvent[] evs, int offset, int length, boolean dump)
+            throws EtException {
+
+        AttachmentLocal localAtt = localAttachment(att);
+
+        int numEvents = 0;
+        for (int i=offset; i < offset+length; i++) {
+            if (evs[i].getModify() != Modify.NOTHING) numEvents++;
+        }
+
+        EtEventImpl[] events = new EtEventImpl[numEvents];
+        numEvents = 0;
+        for (int i=offset; i < offset+length; i++) {
+            if (evs[i].getModify() != Modify.NOTHING) {
+                events[numEvents++] = (EtEventImpl) evs[i];
+            }
+        }
+
+        if (dump) {
+            localSys.dumpEvents(localAtt, events);
+        }
+        else {
+            localSys.putEvents(localAtt, events);
+        }
+    }
+
+
+    /**
+     * Get events from an ET system running in this JVM for an asynchronous method.
+     * This is done by a single thread so that requests are carried out in order
+     * and the caller does not wait.
+     *
+     * @param task task getting events
+     * @return future holding the events obtained from the ET system
+     */
+    private CompletableFuture<EtEvent[]> localAsync(final Callable<EtEvent[]> task) {
+        final CompletableFuture<EtEvent[]> future = new CompletableFuture<EtEvent[]>();
+        synchronized (asyncRequests) {
+            getAsyncResender().execute(new Runnable() {
+                public void run() {
+                    try {
+                        future.complete(task.call());
+                    }
+                    catch (Exception ex) {
+                        future.completeExceptionally(ex);
+                    }
+                }
+            });
+        }
+        return future;
+    }
+
+
+
+
+    //****************************************************
+    //              ASYNCHRONOUS EVENT METHODS           *
+    //****************************************************
+
+
+    /**
+     * Get events from an ET system without waiting for them. The request is sent
+     * and this method returns at once so that more requests may be sent over the
+     * same connection before the reply to this one arrives (pipelining). Replies
+     * are read by a separate thread, in the order the requests were sent, which
+     * completes the returned future. This hides the network's latency for a remote
+     * user who processes one batch of events while the next are on their way.
+     * See {@link EtEventPrefetcher} for an easy way of doing that.<p>
+     *
+     * While any asynchronous request is outstanding, the other (blocking) methods of
+     * this object wait for their replies before doing anything. Actions which depend on
+     * the completion of the future, unless done with one of its "async" methods, run in
+     * the thread reading the replies and so must not call blocking methods of this object.
+     * Over JNI, events are gotten before this method returns.
+     *
+     * @param att      attachment object
+     * @param mode     if there are no events available, this parameter specifies
+     *                 whether to wait for some by sleeping {@link Mode#SLEEP},
+     *                 to wait for a set time {@link Mode#TIMED},
+     *                 or to return immediately {@link Mode#ASYNC}.
+     * @param modify   this specifies whether this application plans
+     *                 on modifying the data in events obtained {@link Modify#ANYTHING}, or
+     *                 only modifying headers {@link Modify#HEADER}. The default assumed, {@link Modify#NOTHING},
+     *                 is that no values are modified resulting in the events being put back into
+     *                 the ET system (by remote server) immediately upon being copied and that copy
+     *                 sent to this method's caller.
+     * @param microSec the number of microseconds to wait if a timed wait is
+     *                 specified
+     * @param count    the number of events desired
+     *
+     * @return future holding the events obtained from the ET system. If it completes
+     *         exceptionally, the cause is any exception {@link #getEvents} may throw.
+     *
+     * @throws IOException
+     *     if problems with network communications
+     * @throws EtException
+     *     if arguments have bad values;
+     *     if attachment object is invalid;
+     *     if trying to get events from GrandCentral station
+     * @throws EtClosedException
+     *     if the ET system is closed
+     */
+    public CompletableFuture<EtEvent[]> getEventsAsync(EtAttachment att, Mode mode, Modify modify,
+                                                       int microSec, int count)
+            throws IOException, EtException, EtClosedException {
+
+        if (att == null|| !att.isUsable() || att.getSys() != this) {
+            throw new EtException("Invalid attachment");
+        }
+
+        if (modify == null) {
+            modify = Modify.NOTHING;
+        }
+
+        // May not get events from GrandCentral
+        if (att.getStation().getId() == 0) {
+            throw new EtException("may not get events from GRAND_CENTRAL");
+        }
+
+        if (count == 0) {
+            return CompletableFuture.completedFuture(new EtEvent[0]);
+        }
+        else if (count < 0) {
+            throw new EtException("bad count argument");
+        }
+
+        if (mode == null) {
+            throw new EtException("Invalid mode");
+        }
+        else if ((mode == Mode.TIMED) && (microSec < 0)) {
+            throw new EtException("bad microSec argument");
+        }
+
+        // Over JNI there is no network latency to hide
+        if (sys.usingJniLibrary()) {
+            CompletableFuture<EtEvent[]> future = new CompletableFuture<EtEvent[]>();
+            try {
+                future.complete(getEvents(att, mode, modify, microSec, count));
+            }
+            catch (Exception ex) {
+                future.completeExceptionally(ex);
+            }
+            return future;
+        }
+
+        // In this JVM, wait for events in another thread
+        if (localSys != null) {
+            final EtAttachment fAtt = att;
+            final Mode fMode = mode;
+            final Modify fModify = modify;
+            final int fMicroSec = microSec, fCount = count;
+            return localAsync(new Callable<EtEvent[]>() {
+                public EtEvent[] call() throws Exception {
+                    return getEventsLocal(fAtt, fMode, fModify, fMicroSec, fCount);
+                }
+            });
+        }
+
+        byte[] buffer = new byte[28];
+        EtUtils.intToBytes(EtConstants.netEvsGet, buffer, 0);
+        EtUtils.intToBytes(att.getId(),         buffer, 4);
+        EtUtils.intToBytes(modify.getValue(),   buffer, 12);
+        EtUtils.intToBytes(count,               buffer, 16);
+
+        AsyncRequest req = new AsyncRequest(EtConstants.netEvsGet, att);
+        req.mode   = mode;
+        req.modify = modify;
+        req.events = new CompletableFuture<EtEvent[]>();
+        req.setRequest(buffer, microSec);
+        sendGetAsync(req);
+
+        return req.events;
+    }
+
+
+    /**
+     * Get new (unused) events from a specified group of such events in an ET system
+     * without waiting for them. This works just like {@link #getEventsAsync}.
+     *
+     * @param att      attachment object
+     * @param mode     if there are no new events available, this parameter specifies
+     *                 whether to wait for some by sleeping {@link Mode#SLEEP},
+     *                 to wait for a set time {@link Mode#TIMED},
+     *                 or to return immediately {@link Mode#ASYNC}.
+     * @param noBuffer if <code>true</code>, do not allocate memory for events' data
+     *                 (user must supply a buffer with
+     *                 {@link EtEventImpl#setDataBuffer(java.nio.ByteBuffer)})
+     * @param microSec the number of microseconds to wait if a timed wait is specified
+     * @param count    the number of events desired
+     * @param size     the size of events in bytes
+     * @param group    group number from which to draw new events. Some ET systems have
+     *                 unused events divided into groups whose numbering starts at 1.
+     *                 For ET system not so divided, all events belong to group 1.
+     *
+     * @return future holding the new events obtained from the ET system. If it completes
+     *         exceptionally, the cause is any exception {@link #newEvents} may throw.
+     *
+     * @throws IOException
+     *     if problems with network communications
+     * @throws EtException
+     *     if arguments have bad values;
+     *     if attachment object is invalid
+     * @throws EtClosedException
+     *     if the ET system is closed
+     */
+    public CompletableFuture<EtEvent[]> newEventsAsync(EtAttachment att, Mode mode, boolean noBuffer,
+                                                       int microSec, int count, int size, int group)
+            throws IOException, EtException, EtClosedException {
+
+        if (mode == null) {
+            throw new EtException("Invalid mode");
+        }
+
+        if (att == null || !att.isUsable() || att.getSys() != this) {
+            throw new EtException("Invalid attachment");
+        }
+
+        if (count == 0) {
+            return CompletableFuture.completedFuture(new EtEvent[0]);
+        }
+        else if (count < 0) {
+            throw new EtException("bad count argument");
+        }
+
+        if ((microSec < 0) && (mode == Mode.TIMED)) {
+            throw new EtException("bad microSec argument");
+        }
+        else if (size < 1) {
+            throw new EtException("bad size argument");
+        }
+        else if (group < 1) {
+            throw new EtException("group number must be > 0");
+        }
+
+        // Over JNI there is no network latency to hide
+        if (sys.usingJniLibrary()) {
+            CompletableFuture<EtEvent[]> future = new CompletableFuture<EtEvent[]>();
+            try {
+                future.complete(newEvents(att, mode, noBuffer, microSec, count, size, group));
+            }
+            catch (Exception ex) {
+                future.completeExceptionally(ex);
+            }
+            return future;
+        }
+
+        // In this JVM, wait for events in another thread
+        if (localSys != null) {
+            final EtAttachment fAtt = att;
+            final Mode fMode = mode;
+            final int fMicroSec = microSec, fCount = count, fSize = size, fGroup = group;
+            return localAsync(new Callable<EtEvent[]>() {
+                public EtEvent[] call() throws Exception {
+                    return newEventsLocal(fAtt, fMode, fMicroSec, fCount, fSize, fGroup);
+                }
+            });
+        }
+
+        byte[] buffer = new byte[36];
+        EtUtils.intToBytes(EtConstants.netEvsNewGrp, buffer, 0);
+        EtUtils.intToBytes(att.getId(),        buffer, 4);
+        EtUtils.longToBytes((long)size,        buffer, 12);
+        EtUtils.intToBytes(count,              buffer, 20);
+        EtUtils.intToBytes(group,              buffer, 24);
+
+        AsyncRequest req = new AsyncRequest(EtConstants.netEvsNewGrp, att);
+        req.mode     = mode;
+        req.noBuffer = noBuffer;
+        req.size     = size;
+        req.events   = new CompletableFuture<EtEvent[]>();
+        req.setRequest(buffer, microSec);
+        sendAsync(req);
+
+        return req.events;
+    }
+
+
+    /**
+     * Put events into an ET system without waiting for the reply.
+     * The returned future is completed once the ET system has them.
+     * See {@link #getEventsAsync} for more details.
+     * Over JNI, events are put before this method returns.
+     * ET systems which say, when opened, that they can put events without replying
+     * are sent such a request. It does not wait behind requests for events sent
+     * before it, and the future is completed once it's sent. Since nothing comes
+     * back, the request sent after it must not be held by the TCP stack until the
+     * ET system acknowledges the put, so TCP no-delay is turned on for such systems
+     * when opened (see {@link EtSystemOpenConfig#setNoDelay(boolean)}).
+     *
+     * @param att  attachment object
+     * @param evs  array of event objects
+     *
+     * @return future completed once the ET system has the events
+     *
+     * @throws IOException
+     *     if problems with network communications
+     * @throws EtException
+     *     if invalid arg(s);
+     *     if events are not owned by this attachment;
+     *     if null data buffer & whole event's being modified;
+     * @throws EtDeadException
+     *     if the ET system processes are dead
+     * @throws EtClosedException
+     *     if the ET system is closed
+     */
+    public CompletableFuture<Void> putEventsAsync(EtAttachment att, EtEvent[] evs)
+            throws IOException, EtException, EtDeadException, EtClosedException {
+
+        if (evs == null) {
+            throw new EtException("Invalid event array arg");
+        }
+        return putEventsAsync(att, evs, 0, evs.length);
+    }
+
+
+    /**
+     * Put events into an ET system without waiting for the reply.
+     * The returned future is completed once the ET system has them.
+     * See {@link #getEventsAsync} for more details.
+     * Over JNI, events are put before this method returns.
+     * ET systems which say, when opened, that they can put events without replying
+     * are sent such a request. It does not wait behind requests for events sent
+     * before it, and the future is completed once it's sent. Since nothing comes
+     * back, the request sent after it must not be held by the TCP stack until the
+     * ET system acknowledges the put, so TCP no-delay is turned on for such systems
+     * when opened (see {@link EtSystemOpenConfig#setNoDelay(boolean)}).
+     *
+     * @param att    attachment object
+     * @param evs    array of event objects
+     * @param offset offset into array
+     * @param length number of array elements to put
+     *
+     * @return future completed once the ET system has the events
+     *
+     * @throws IOException
+     *     if problems with network communications
+     * @throws EtException
+     *     if invalid arg(s);
+     *     if events are not owned by this attachment;
+     *     if null data buffer & whole event's being modified;
+     * @throws EtDeadException
+     *     if the ET system processes are dead
+     * @throws EtClosedException
+     *     if the ET system is closed
+     */
+    synchronized public CompletableFuture<Void> putEventsAsync(EtAttachment att, EtEvent[] evs,
+                                                               int offset, int length)
+            throws IOException, EtException, EtDeadException, EtClosedException {
+
+        checkPutEvents(att, evs, offset, length);
+
+        // Did we get things locally through JNI?
+        if (sys.usingJniLibrary()) {
+            putEventsJNI(att.getId(), evs, offset, length);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Does the ET system run in this JVM?
+        if (localSys != null) {
+            putEventsLocal(att, evs, offset, length, false);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Events gotten over extra connections go back over them
+        if (att.getStripes() != null) {
+            putEventsStriped(att, evs, offset, length, false);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // If nothing was modified, nothing was sent and there is no reply
+        boolean noReply = (sys.getFeatures() & EtConstants.netFeaturePutNR) != 0;
+        boolean sent = sendEvents(noReply ? EtConstants.netEvsPutNR : EtConstants.netEvsPut,
+                                  att, evs, offset, length, null);
+        att.recycleEvents(evs, offset, length);
+        if (!sent || noReply) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        AsyncRequest req = new AsyncRequest(EtConstants.netEvsPut, att);
+        req.put = new CompletableFuture<Void>();
+        queueAsync(req);
+
+        return req.put;
+    }
+
+
+    /**
+     * Send a request for events to the ET system and add it to the requests waiting for replies.
+     * @param req request
+     * @throws IOException if problems with network communications
+     * @throws EtClosedException if the ET system is closed
+     */
+    private synchronized void sendAsync(AsyncRequest req) throws IOException, EtClosedException {
+        if (!open) {
+            throw new EtClosedException("Not connected to ET system");
+        }
+        out.write(req.request);
+        out.flush();
+        queueAsync(req);
+    }
+
+
+    /**
+     * Send a request to get events from a station. If the attachment already has
+     * requests sent which may wait and be resent, this one is sent along with them
+     * if it asks for the same thing and nothing is held back. Otherwise it's held
+     * until they are done. See {@link AsyncGets}.
+     *
+     * @param req request
+     * @throws IOException if problems with network communications
+     * @throws EtClosedException if the ET system is closed
+     */
+    private synchronized void sendGetAsync(AsyncRequest req) throws IOException, EtClosedException {
+        if (!open) {
+            throw new EtClosedException("Not connected to ET system");
+        }
+
+        synchronized (asyncRequests) {
+            AsyncGets gets = waitingGets.get(req.att);
+            if (gets != null) {
+                if (gets.stopped || !gets.held.isEmpty() || !gets.matches(req)) {
+                    gets.held.add(req);
+                    return;
+                }
+                gets.addSent(req);
+            }
+            else if (req.mode != Mode.ASYNC) {
+                gets = new AsyncGets();
+                gets.addSent(req);
+                waitingGets.put(req.att, gets);
+            }
+        }
+        sendAsync(req);
+    }
+
+
+    /**
+     * Find the request to be completed by a reply to a request for events. If the
+     * request was sent along with others of its attachment, that's the oldest one not
+     * yet done, and once they are all done, the requests held back are sent.
+     *
+     * @param req request replied to
+     * @return request to complete
+     */
+    private AsyncRequest takeAsync(AsyncRequest req) {
+        ArrayList<AsyncRequest> next = null;
+        AsyncRequest done;
+        synchronized (asyncRequests) {
+            AsyncGets gets = req.gets;
+            if (gets == null) {
+                return req;
+            }
+            done = gets.sent.poll();
+            if (done == null) {
+                return req;
+            }
+            if (gets.sent.isEmpty()) {
+                if (gets.held.isEmpty()) {
+                    waitingGets.remove(req.att);
+                }
+                else {
+                    // Send the held requests which ask for the same thing as the first
+                    next = new ArrayList<AsyncRequest>();
+                    gets.stopped = false;
+                    gets.addSent(gets.held.poll());
+                    while (!gets.held.isEmpty() && gets.matches(gets.held.peek())) {
+                        gets.addSent(gets.held.poll());
+                    }
+                    next.addAll(gets.sent);
+                }
+            }
+        }
+
+        if (next != null) {
+            for (AsyncRequest r : next) {
+                resendAsync(r);
+            }
+        }
+        return done;
+    }
+
+
+    /**
+     * Stop resending an attachment's asynchronous requests for events, sent to a remote
+     * ET system, once their short waits on the server time out. This ends them within
+     * a fraction of a second without waking up the attachment, which could leave it
+     * to be woken up by its next request. Requests held back are still sent.
+     * Used by {@link EtEventPrefetcher#close()}.
+     *
+     * @param att attachment
+     * @return <code>true</code> if the attachment had such requests waiting for replies
+     */
+    boolean stopGetsAsync(EtAttachment att) {
+        synchronized (asyncRequests) {
+            AsyncGets gets = waitingGets.get(att);
+            if (gets == null) {
+                return false;
+            }
+            gets.stopped = true;
+            return true;
+        }
+    }
+
+
+    /**
+     * May a request for events which timed out on the server be resent? Sleeping
+     * requests are resent until they get events and timed ones until their time is up.
+     * If sent along with other requests of its attachment, it's resent unless those
+     * are stopped or the time of the oldest one, which its reply would complete, is up.
+     *
+     * @param req request
+     * @return <code>true</code> if it may be resent
+     */
+    private boolean mayResendAsync(AsyncRequest req) {
+        synchronized (asyncRequests) {
+            if (req.gets != null) {
+                if (req.gets.stopped || req.gets.sent.isEmpty()) {
+                    return false;
+                }
+                req = req.gets.sent.peek();
+            }
+        }
+        return req.mode == Mode.SLEEP ||
+               (req.mode == Mode.TIMED && req.deadline - System.nanoTime() > 0);
+    }
+
+
+    /**
+     * Add a request, which has just been sent, to the requests waiting for replies.
+     * Must be called while synchronized on this object.
+     * @param req request
+     */
+    private void queueAsync(AsyncRequest req) {
+        synchronized (asyncRequests) {
+            asyncRequests.add(req);
+
+            if (asyncReader == null) {
+                asyncReader = new Thread(new Runnable() {
+                    public void run() {
+                        readAsyncReplies();
+                    }
+                }, "EtSystem async reader");
+                asyncReader.setDaemon(true);
+                asyncReader.start();
+            }
+            asyncRequests.notifyAll();
+        }
+    }
+
+
+    /**
+     * Wait until all replies to asynchronous requests have been read, so that a
+     * blocking method can send its own request and read the reply.
+     * Must be called while synchronized on this object. Also used by
+     * {@link EtStation} and {@link EtAttachment} which talk to the ET system directly.
+     *
+     * @throws IOException if interrupted;
+     *                     if called from the thread reading replies while there are
+     *                     still replies to read, which would never end.
+     */
+    void waitForAsync() throws IOException {
+        synchronized (asyncRequests) {
+            if (asyncRequests.isEmpty()) {
+                return;
+            }
+            if (Thread.currentThread() == asyncReader) {
+                throw new IOException("cannot wait for replies in thread reading them");
+            }
+            while (!asyncRequests.isEmpty()) {
+                try {
+                    asyncRequests.wait();
+                }
+                catch (InterruptedException e) {
+                    throw new InterruptedIOException("interrupted waiting for replies");
+                }
+            }
+        }
     }
 
 
     /**
-     * Put events into an ET system.
-     * Will access local C-based ET systems through JNI/shared memory, but other ET
-     * systems through sockets.
-     *
-     * @param att  attachment object
-     * @param evs  array of event objects
-     *
-     * @throws IOException
-     *     if problems with network communications
-     * @throws EtException
-     *     if invalid arg(s);
-     *     if not connected to ET system;
-     *     if events are not owned by this attachment;
-     * @throws EtDeadException
-     *     if the ET system processes are dead
-     * @throws EtClosedException
-     *     if the ET system is closed
+     * Stop reading replies to asynchronous requests. Those still waiting for replies
+     * end with an exception. Called once the connection is closed.
      */
-    public void putEvents(EtAttachment att, EtEvent[] evs)
-            throws IOException, EtException, EtDeadException, EtClosedException {
-
-        if (evs == null) {
-            throw new EtException("Invalid event array arg");
+    private void stopAsync() {
+        synchronized (asyncRequests) {
+            asyncReader = null;
+            asyncRequests.notifyAll();
+            if (asyncResender != null) {
+                asyncResender.shutdown();
+                asyncResender = null;
+            }
         }
-        putEvents(att, evs, 0, evs.length);
     }
 
 
     /**
-     * Put events into an ET system.
-     * This method uses JNI to call ET routines in the C library. Since event memory, in
-     * this case, is directly accessed shared memory, none of it is copied.
-     *
-     * @param attId  attachment ID
-     * @param evs    array of event objects
-     * @param offset offset into array
-     * @param length number of array elements to put
-     *
-     * @throws EtException
-     *     if invalid arg(s);
-     *     if events are not owned by this attachment;
-     * @throws EtDeadException
-     *     if the ET system processes are dead
-     * @throws EtClosedException
-     *     if the ET system is closed
+     * End all requests waiting for replies with an exception.
+     * @param ex exception
      */
-    private void putEventsJNI(int attId, EtEvent[] evs, int offset, int length)
-            throws EtException, EtDeadException, EtClosedException {
-
-        // C interface has no offset (why did I do that again?), so compensate for that
-        EtEventImpl[] events = new EtEventImpl[length];
-        for (int i=0; i<length; i++) {
-            events[i] = (EtEventImpl) evs[offset + i];
+    private void failAsync(Exception ex) {
+        ArrayList<AsyncRequest> failed;
+        synchronized (asyncRequests) {
+            failed = new ArrayList<AsyncRequest>(asyncRequests);
+            for (AsyncGets gets : waitingGets.values()) {
+                failed.addAll(gets.sent);
+                failed.addAll(gets.held);
+            }
+            waitingGets.clear();
+            asyncRequests.clear();
+            asyncRequests.notifyAll();
         }
+        for (AsyncRequest req : failed) {
+            completeAsync(req, null, ex);
+        }
+    }
 
-        sys.getJni().putEvents(sys.getJni().getLocalEtId(), attId, events, length);
+
+    /**
+     * Complete a request's future.
+     * @param req request
+     * @param evs events gotten, if any
+     * @param ex  exception if request failed, else null
+     */
+    private static void completeAsync(AsyncRequest req, EtEvent[] evs, Exception ex) {
+        if (req.put != null) {
+            if (ex == null) req.put.complete(null);
+            else            req.put.completeExceptionally(ex);
+        }
+        else {
+            if (ex == null) req.events.complete(evs);
+            else            req.events.completeExceptionally(ex);
+        }
     }
 
 
     /**
-     * Put events into an ET system.
-     * Will access local C-based ET systems through JNI/shared memory, but other ET
-     * systems through sockets.
-     *
-     * @param att    attachment object
-     * @param evs    array of event objects
-     * @param offset offset into array
-     * @param length number of array elements to put
+     * Get the exception corresponding to an error returned by the ET system
+     * when getting events.
      *
-     * @throws IOException
-     *     if problems with network communications
-     * @throws EtException
-     *     if invalid arg(s);
-     *     if events are not owned by this attachment;
-     *     if null data buffer & whole event's being modified;
-     * @throws EtDeadException
-     *     if the ET system processes are dead
-     * @throws EtClosedException
-     *     if the ET system is closed
+     * @param err error
+     * @param req request
+     * @return exception
      */
-    synchronized public void putEvents(EtAttachment att, EtEvent[] evs, int offset, int length)
-            throws IOException, EtException, EtDeadException, EtClosedException {
-
-        if (!open) {
-            throw new EtClosedException("Not connected to ET system");
+    private static Exception getEventsError(int err, AsyncRequest req) {
+        if (err == EtConstants.errorBusy) {
+            return new EtBusyException("input list is busy");
         }
-
-        if (evs == null) {
-            throw new EtException("Invalid event array arg");
+        else if (err == EtConstants.errorEmpty) {
+            return new EtEmptyException("no events in list");
         }
-
-        if (offset < 0 || length < 0 || offset + length > evs.length) {
-            throw new EtException("Bad offset or length argument(s)");
+        else if (err == EtConstants.errorWakeUp) {
+            return new EtWakeUpException("attachment " + req.att.getId() + " woken up");
         }
-
-        if (att == null || !att.isUsable() || att.getSys() != this) {
-            throw new EtException("Invalid attachment");
+        else if (err == EtConstants.errorTimeout) {
+            return new EtTimeoutException("no events within timeout");
         }
+        else if (req.command == EtConstants.netEvsNewGrp) {
+            return new EtException("bad mode value or group # too high");
+        }
+        return new EtException("bad mode value");
+    }
 
-        final int selectInts = EtConstants.stationSelectInts;
-        final int dataShift  = EtConstants.dataShift;
-
-        // find out how many events we're sending & total # bytes
-        int bytes = 0, numEvents = 0;
-        int headerSize = 4*(7+selectInts);
 
-        for (int i=offset; i < offset+length; i++) {
-            // each event must be registered as owned by this attachment
-            if (evs[i].getOwner() != att.getId()) {
-                throw new EtException("may not put event(s), not owner");
-            }
-            // if modifying header only or header & data ...
-            if (evs[i].getModify() != Modify.NOTHING) {
-                numEvents++;
-                bytes += headerSize;
-                // if modifying data as well ...
-                if (evs[i].getModify() == Modify.ANYTHING) {
-                    bytes += evs[i].getLength();
+    /**
+     * Get the thread which resends requests for events, and which gets events
+     * from an ET system in this JVM for the asynchronous methods, creating it if necessary.
+     * Must be called while synchronized on {@link #asyncRequests}.
+     * @return executor running the thread
+     */
+    private ExecutorService getAsyncResender() {
+        if (asyncResender == null) {
+            asyncResender = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "EtSystem async resender");
+                    t.setDaemon(true);
+                    return t;
                 }
-            }
+            });
         }
+        return asyncResender;
+    }
 
 
-        // Did we get things locally through JNI?
-        if (sys.usingJniLibrary()) {
-            putEventsJNI(att.getId(), evs, offset, length);
-            return;
-        }
-
-        // If nothing was modified, we're done, just return.
-        if (numEvents == 0) {
-            return;
+    /**
+     * Resend a request for events whose wait on the server timed out,
+     * or send one which was held back for the attachment's other requests.
+     * This is done in another thread since the thread reading replies must
+     * never wait to send something, or the connection could block in both directions.
+     *
+     * @param req request
+     */
+    private void resendAsync(final AsyncRequest req) {
+        // Do not synchronize on this object, whose lock a blocking method
+        // may be holding while it waits for this thread to read replies
+        synchronized (asyncRequests) {
+            if (asyncReader == null) {
+                completeAsync(req, null, new EtClosedException("Not connected to ET system"));
+                return;
+            }
+            getAsyncResender().execute(new Runnable() {
+                public void run() {
+                    try {
+                        sendAsync(req);
+                    }
+                    catch (Exception ex) {
+                        completeAsync(req, null, ex);
+                    }
+                }
+            });
         }
+    }
 
-        int indx;
-        int[] control;
-        byte[] header = new byte[headerSize];
 
-        out.writeInt(EtConstants.netEvsPut);
-        out.writeInt(att.getId());
-        out.writeInt(numEvents);
-        out.writeLong((long)bytes);
+    /**
+     * Read the replies to asynchronous requests, in order, and complete them.
+     * This is run by its own thread.
+     */
+    private void readAsyncReplies() {
+        Thread me = Thread.currentThread();
+        AsyncRequest req;
 
-//        EtUtils.intToBytes(EtConstants.netEvsPut, ByteOrder.BIG_ENDIAN, header, 0);
-//        EtUtils.intToBytes(att.getId(), ByteOrder.BIG_ENDIAN, header, 4);
-//        EtUtils.intToBytes(numEvents, ByteOrder.BIG_ENDIAN, header, 8);
-//        EtUtils.longToBytes((long)bytes, ByteOrder.BIG_ENDIAN, header, 12);
-//        out.write(header, 0, 20);
+        while (true) {
+            synchronized (asyncRequests) {
+                while (asyncRequests.isEmpty() && asyncReader == me) {
+                    try {
+                        asyncRequests.wait();
+                    }
+                    catch (InterruptedException e) {
+                    }
+                }
+                if (asyncReader != me) {
+                    break;
+                }
+                req = asyncRequests.peek();
+            }
 
+            EtEvent[] evs = null;
+            Exception error = null;
+            boolean resend = false;
 
-        for (int i=offset; i < offset+length; i++) {
-            // send only if modifying an event (data or header) ...
-            if (evs[i].getModify() != Modify.NOTHING) {
-                EtUtils.intToBytes(evs[i].getId(), ByteOrder.BIG_ENDIAN, header, 0);
-                // skip 1 int here
-                EtUtils.longToBytes((long) evs[i].getLength(), ByteOrder.BIG_ENDIAN, header, 8);
-                EtUtils.intToBytes(evs[i].getPriority().getValue() | evs[i].getDataStatus().getValue() << dataShift,
-                                   ByteOrder.BIG_ENDIAN, header, 16);
-                EtUtils.intToBytes(evs[i].getRawByteOrder(), ByteOrder.BIG_ENDIAN, header, 20);
-                indx = 28;  // skip 1 int here
-                control = evs[i].getControl();
-                for (int j=0; j < selectInts; j++,indx+=4) {
-                    EtUtils.intToBytes(control[j], ByteOrder.BIG_ENDIAN, header, indx);
+            try {
+                // Use the 2 second socket timeout to check if we've been closed
+                int err;
+                while (true) {
+                    try {
+                        err = in.readInt();
+                        break;
+                    }
+                    catch (InterruptedIOException ex) {
+                        if (asyncReader != me) throw ex;
+                    }
                 }
-                // Much Faster to put header data into byte array and write
-                // it out once instead of writing each int and long.
-                out.write(header);
 
-                // send data only if modifying whole event
-                if (evs[i].getModify() == Modify.ANYTHING) {
-                    ByteBuffer buf = evs[i].getDataBuffer();
-                    if (buf == null) throw new EtException("null data buffer");
-                    if (!buf.hasArray()) {
-//System.out.println("Memory mapped buffer does NOT have a backing array !!!");
-                        for (int j=0; j<evs[i].getLength(); j++) {
-                            out.write(buf.get(j));
-                        }
+                if (req.put != null) {
+                    // err should always be = Constants.ok
+                }
+                else if (err < EtConstants.ok) {
+                    if (err == EtConstants.errorTimeout && mayResendAsync(req)) {
+                        resend = true;
                     }
                     else {
-                        out.write(buf.array(), 0, evs[i].getLength());
+                        error = getEventsError(err, req);
+                    }
+                }
+                else if (req.command == EtConstants.netEvsGet) {
+                    evs = readEvents(err, req.att, req.modify);
+                }
+                else {
+                    evs = readNewEvents(err, req.att, req.noBuffer, req.size);
+                }
+            }
+            catch (EtException ex) {
+                error = ex;
+            }
+            catch (IOException ex) {
+                // Connection is broken
+                synchronized (asyncRequests) {
+                    if (asyncReader == me) {
+                        asyncReader = null;
                     }
                 }
+                failAsync(ex);
+                return;
             }
-        }
 
-        out.flush();
+            synchronized (asyncRequests) {
+                asyncRequests.poll();
+                asyncRequests.notifyAll();
+            }
 
-        // err should always be = Constants.ok
-        // skip reading error
-        in.skipBytes(4);
+            if (resend) {
+                resendAsync(req);
+            }
+            else if (req.command == EtConstants.netEvsGet) {
+                completeAsync(takeAsync(req), evs, error);
+            }
+            else {
+                completeAsync(req, evs, error);
+            }
+        }
+
+        failAsync(new EtClosedException("Not connected to ET system"));
     }
 
 
+    /**
+     * Is this event's data in the shared event file of a Java ET system?
+     * If so, it does not need to be sent over the network.
+     * @param ev event
+     * @return <code>true</code> if event's data is in the shared event file
+     */
+    private boolean isSharedData(EtEvent ev) {
+        return sharedEvents != null && ev.getId() >= 0 && ev.getId() < sharedEvents.length &&
+               ev.getDataBuffer() == sharedEvents[ev.getId()] && ev.getLength() <= ev.getDataBuffer().capacity();
+    }
 
 
     /**
@@ -2347,14 +4606,11 @@ public class EtSystem {
             throw new EtException("Bad offset or length argument(s)");
         }
 
-        // find out how many we're sending
-        int numEvents = 0;
         for (int i=offset; i<offset+length; i++) {
             // each event must be registered as owned by this attachment
-            if (evs[i].getOwner() != att.getId()) {
+            if (!owns(att, evs[i])) {
                 throw new EtException("may not put event(s), not owner");
             }
-            if (evs[i].getModify() != Modify.NOTHING) numEvents++;
         }
 
         // Did we get things locally through JNI?
@@ -2363,11 +4619,50 @@ public class EtSystem {
             return;
         }
 
+        // Does the ET system run in this JVM?
+        if (localSys != null) {
+            putEventsLocal(att, evs, offset, length, true);
+            return;
+        }
+
+        // Events gotten over extra connections go back over them
+        if (att.getStripes() != null) {
+            putEventsStriped(att, evs, offset, length, true);
+            return;
+        }
+
+        dumpEventsNet(att, evs, offset, length);
+    }
+
+
+    /**
+     * Dispose of unwanted events in an ET system over the network.
+     * Must be called while synchronized on this object.
+     *
+     * @param att    attachment object
+     * @param evs    array of event objects
+     * @param offset offset into array
+     * @param length number of array elements to put
+     *
+     * @throws IOException
+     *     if problems with network communications
+     */
+    private void dumpEventsNet(EtAttachment att, EtEvent[] evs, int offset, int length)
+            throws IOException {
+
+        // find out how many we're sending
+        int numEvents = 0;
+        for (int i=offset; i<offset+length; i++) {
+            if (evs[i].getModify() != Modify.NOTHING) numEvents++;
+        }
+
         // If nothing was modified, we're done, just return.
         if (numEvents == 0) {
+            att.recycleEvents(evs, offset, length);
             return;
         }
 
+        waitForAsync();
         out.writeInt(EtConstants.netEvsDump);
         out.writeInt(att.getId());
         out.writeInt(numEvents);
@@ -2379,6 +4674,7 @@ public class EtSystem {
             }
         }
         out.flush();
+        att.recycleEvents(evs, offset, length);
 
         // err should always be = Constants.ok
         // skip reading error
@@ -2407,6 +4703,7 @@ public class EtSystem {
             throw new EtClosedException ("Not connected to ET system");
         }
 
+        waitForAsync();
         out.writeInt(cmd);
         out.flush();
         // err should always be = Constants.ok
@@ -2600,11 +4897,12 @@ public class EtSystem {
      * @throws EtClosedException
      *     if the ET system is closed
      */
-    public int[] getGroups() throws IOException, EtClosedException {
+    synchronized public int[] getGroups() throws IOException, EtClosedException {
         if (!open) {
             throw new EtClosedException("Not connected to ET system");
         }
 
+        waitForAsync();
         out.writeInt(EtConstants.netSysGrps);
         out.flush();
 
@@ -2686,6 +4984,7 @@ public class EtSystem {
         }
 
         AllData data = new AllData();
+        waitForAsync();
         out.writeInt(EtConstants.netSysData);
         out.flush();
 
@@ -2765,6 +5064,7 @@ public class EtSystem {
             throw new EtClosedException("Not connected to ET system");
         }
         
+        waitForAsync();
         out.writeInt(EtConstants.netSysHist);
         out.flush();
 
@@ -2782,5 +5082,45 @@ public class EtSystem {
         }
         return hist;
     }
+
+
+    /**
+     * Gets the ET system's metrics as text in the Prometheus text format.
+     * These include counts of events, how long calls to get, make and put events
+     * take, and for each station, how long events wait in its input list.
+     * This feature is only available on Java ET systems.
+     *
+     * @return text containing the ET system's metrics
+     *
+     * @throws IOException
+     *     if there are problems with network communication
+     * @throws EtException
+     *     if the ET system is not Java based
+     * @throws EtClosedException
+     *     if the ET system is closed
+     * @see org.jlab.coda.et.system.SystemMetrics
+     */
+    synchronized public String getMetrics() throws IOException, EtException, EtClosedException {
+        if (!open) {
+            throw new EtClosedException("Not connected to ET system");
+        }
+
+        if (!isJava) {
+            throw new EtException("metrics are only available from Java ET systems");
+        }
+
+        waitForAsync();
+        out.writeInt(EtConstants.netSysMetrics);
+        out.flush();
+
+        // receive error code
+        if (in.readInt() != EtConstants.ok) {
+            throw new EtException("cannot get metrics");
+        }
+
+        byte[] text = new byte[in.readInt()];
+        in.readFully(text);
+        return new String(text, "ASCII");
+    }
 }
 
@@ -23,6 +23,7 @@ import java.nio.channels.FileChannel;
 import java.nio.ByteOrder;
 
 import org.jlab.coda.et.exception.*;
+import org.jlab.coda.et.system.SystemCreate;
 
 /**
  * This class opens (finds and connects to) an ET system. The use of this class
@@ -76,6 +77,10 @@ public class EtSystemOpen {
     /** Object for accessing native methods which use C library to get and put events. */
     private EtJniAccess jni;
 
+    /** If opening a local, Java-based ET system which runs in this JVM, the ET system
+     *  itself so that its events can be accessed directly instead of over sockets. */
+    private SystemCreate localSystem;
+
     // properties of opened ET system
 
     /** Endian value of the opened ET system. */
@@ -104,8 +109,20 @@ public class EtSystemOpen {
     /** True if ET system is 64 bit, else false. */
     private boolean bit64;
 
+    /** Bits telling which optional commands the opened ET system understands,
+     *  such as {@link EtConstants#netFeatureShm}. Older ET systems send 0. */
+    private int features;
+
     private Collection<String> localHostIpAddrs;
 
+    /** Were the host and port of the ET system taken from those found earlier
+     *  instead of from broad/multicasting? */
+    private boolean discoveryCached;
+
+    /** Hosts and ports of ET systems found by broad/multicasting,
+     *  keyed by how they were looked for. */
+    private static final HashMap<String, Discovery> discoveries = new HashMap<String, Discovery>();
+
 
     // convenience variables
     private final boolean  foundServer=true, cannotFindServer=false;
@@ -203,6 +220,10 @@ public class EtSystemOpen {
      *  @return language */
     public int getLanguage() {return language;}
 
+    /** Gets the bits telling which optional commands the opened ET system understands.
+     *  @return bits such as {@link EtConstants#netFeatureShm} */
+    public int getFeatures() {return features;}
+
     /** Gets the number of station select integers of the opened ET system.
      *  @return number of select integers */
     public int getSelectInts() {return stationSelectInts;}
@@ -237,6 +258,11 @@ public class EtSystemOpen {
      *          to access events. */
     public boolean usingJniLibrary() {return useJniLibrary;}
 
+    /** Gets the ET system, if a local, Java-based ET system running in this JVM was opened,
+     *  whose events can be accessed directly instead of over sockets.
+     *  @return ET system running in this JVM, or null if none */
+    public SystemCreate getLocalSystem() {return localSystem;}
+
     /** Gets the object used to access native methods when using local, C-based ET system. */
     public EtJniAccess getJni() {return jni;}
 
@@ -285,6 +311,110 @@ public class EtSystemOpen {
     }
 
 
+    /** Host and port of an ET system found by broad/multicasting. */
+    private static class Discovery {
+        String hostAddress;
+        ArrayList<String> hostAddresses;
+        ArrayList<String> broadcastAddresses;
+        int tcpPort;
+        boolean etOnLocalHost;
+        /** Time in milliseconds at which it was found. */
+        long time;
+    }
+
+
+    /**
+     * Gets the key under which the ET system found by broad/multicasting is
+     * remembered. Anything which changes how it is looked for changes the key.
+     * @return key of ET system found by broad/multicasting
+     */
+    private String discoveryKey() {
+        StringBuilder sb = new StringBuilder(200);
+        sb.append(config.getEtName()).append('|').append(config.getHost());
+        sb.append('|').append(config.getNetworkContactMethod());
+        sb.append('|').append(config.getUdpPort());
+        sb.append('|').append(config.getResponsePolicy());
+        sb.append('|').append(config.getNetworkInterface());
+        sb.append('|').append(new TreeSet<String>(config.getBroadcastAddrs()));
+        sb.append('|').append(new TreeSet<String>(config.getMulticastAddrs()));
+        return sb.toString();
+    }
+
+
+    /**
+     * Takes the ET system's tcp server port number and host from those found
+     * earlier by broad/multicasting, if not found too long ago. Nothing is
+     * taken when duplicate ET systems are to be reported as an error.
+     * @return <code>true</code> if server was found earlier, else <code>false</code>
+     */
+    private boolean findCachedServerPort() {
+        long cacheTime = config.getDiscoveryCacheTime();
+        if (cacheTime < 1 || config.getResponsePolicy() == EtConstants.policyError) {
+            return false;
+        }
+
+        Discovery d;
+        synchronized (discoveries) {
+            d = discoveries.get(discoveryKey());
+        }
+        if (d == null || System.currentTimeMillis() - d.time > cacheTime) {
+            return false;
+        }
+
+        responders.clear();
+        hostAddress        = d.hostAddress;
+        hostAddresses      = new ArrayList<String>(d.hostAddresses);
+        broadcastAddresses = new ArrayList<String>(d.broadcastAddresses);
+        tcpPort            = d.tcpPort;
+        etOnLocalHost      = d.etOnLocalHost;
+
+        if (debug >= EtConstants.debugInfo) {
+            System.out.println("findCachedServerPort: found earlier on host " + hostAddress +
+                                       ", port " + tcpPort);
+        }
+        return true;
+    }
+
+
+    /**
+     * Remembers the ET system's tcp server port number and host, found by
+     * broad/multicasting, so it can be opened again without waiting for replies.
+     */
+    private void cacheServerPort() {
+        if (config.getDiscoveryCacheTime() < 1 ||
+            config.getResponsePolicy() == EtConstants.policyError) {
+            return;
+        }
+
+        Discovery d = new Discovery();
+        d.hostAddress        = hostAddress;
+        d.hostAddresses      = new ArrayList<String>(hostAddresses);
+        d.broadcastAddresses = new ArrayList<String>(broadcastAddresses);
+        d.tcpPort            = tcpPort;
+        d.etOnLocalHost      = etOnLocalHost;
+        d.time               = System.currentTimeMillis();
+
+        synchronized (discoveries) {
+            discoveries.put(discoveryKey(), d);
+        }
+    }
+
+
+    /**
+     * Forgets the ET system's tcp server port number and host found earlier,
+     * when they no longer lead to the ET system.
+     */
+    private void forgetServerPort() {
+        synchronized (discoveries) {
+            discoveries.remove(discoveryKey());
+        }
+        discoveryCached = false;
+        if (debug >= EtConstants.debugInfo) {
+            System.out.println("forgetServerPort: cannot connect to ET system found earlier");
+        }
+    }
+
+
     /**
      * Finds the ET system's tcp server port number and host.
      *
@@ -493,6 +623,9 @@ public class EtSystemOpen {
         }
 
 
+        // Receiving threads notify this object when they get a packet
+        final Object replied = new Object();
+
         /** Class to help receive a packet on a socket. */
         class get {
             // min data size = 8*4 + 3 + Constants.ipAddrStrLen +
@@ -510,7 +643,7 @@ public class EtSystemOpen {
 
             // start up thread to receive single udp packet on single socket
             void start() {
-                thread = new DatagramReceive(packet, socket);
+                thread = new DatagramReceive(packet, socket, replied);
                 thread.start();
             }
         }
@@ -531,6 +664,13 @@ public class EtSystemOpen {
 
         Thread.yield();
 
+        // A specific host takes only its own responses, and the policyFirst
+        // takes the first response, so neither waits for others.
+        boolean firstResponseWins =
+                ((!config.getHost().equals(EtConstants.hostRemote)) &&
+                 (!config.getHost().equals(EtConstants.hostAnywhere))) ||
+                (config.getResponsePolicy() == EtConstants.policyFirst);
+
         sendPoint:
         // set a limit on the total # of packet groups sent out to find a server
         while (totalPacketsSent < sendPacketLimit) {
@@ -546,16 +686,32 @@ public class EtSystemOpen {
                 if (debug >= EtConstants.debugInfo) {
                     System.out.println("findServerPort: wait for " + waitTime + " milliseconds");
                 }
-                // wait for replies
-                try {
-                    Thread.sleep(waitTime);
-                }
-                catch (InterruptedException ix) {
+                // wait for replies, but only until the first arrives
+                long deadline = System.currentTimeMillis() + waitTime;
+                synchronized (replied) {
+                    waitForReplies:
+                    while (true) {
+                        for (get receiver : receiveList) {
+                            if (receiver.thread.status == DatagramReceive.receivedPacket) {
+                                break waitForReplies;
+                            }
+                        }
+                        long timeLeft = deadline - System.currentTimeMillis();
+                        if (timeLeft < 1) {
+                            break;
+                        }
+                        try {
+                            replied.wait(timeLeft);
+                        }
+                        catch (InterruptedException ix) {
+                            break;
+                        }
+                    }
                 }
 
                 // check for replies on all sockets
                 for (get receiver : receiveList) {
-                    status = receiver.thread.waitForReply(10);
+                    status = receiver.thread.status;
                     if (debug >= EtConstants.debugInfo) {
                         System.out.println("findServerPort: receive on socket " + receiver.socket +
                                 ", status = " + status);
@@ -576,6 +732,12 @@ public class EtSystemOpen {
                                 System.out.println("findServerPort: found match");
                             }
                             match = gotMatch;
+
+                            // If no other response can change our choice, take this one
+                            if (firstResponseWins ||
+                                (config.getResponsePolicy() == EtConstants.policyLocal && etOnLocalHost)) {
+                                break sendPoint;
+                            }
                         }
                         else {
                             if (debug >= EtConstants.debugInfo) {
@@ -611,6 +773,11 @@ public class EtSystemOpen {
             } // while (true)
         } // while (totalPacketsSent < sendPacketLimit)
 
+        // Closing sockets ends the threads still waiting for replies
+        for (send sender : sendList) {
+            sender.socket.close();
+        }
+
 
         if (match) {
             // If the host is not remote or anywhere (i.e. we know its name) ...
@@ -1145,7 +1312,7 @@ public class EtSystemOpen {
         stationSelectInts = dis.readInt();
         language          = dis.readInt();
         bit64             = dis.readInt() > 0;
-        dis.skipBytes(4);
+        features          = dis.readInt();
 
         // check to see if connecting to same version ET software
         if (version != EtConstants.version) {
@@ -1163,6 +1330,12 @@ public class EtSystemOpen {
             isJavaEtSystem = true;
         }
 
+        // A put with no reply is usually followed by a small request which,
+        // with Nagle's algorithm, would wait for the ET system's delayed ack
+        if ((features & EtConstants.netFeaturePutNR) != 0) {
+            sock.setTcpNoDelay(true);
+        }
+
         connected = true;
 
         if (debug >= EtConstants.debugInfo) {
@@ -1198,6 +1371,8 @@ public class EtSystemOpen {
         // However, in cases where there is a local C-based, ET system, an attempt is also
         // made to access events through JNI.
         useJniLibrary = false;
+        localSystem = null;
+        discoveryCached = false;
 
         long t1, t2;
         List<String> addrList;
@@ -1256,8 +1431,11 @@ public class EtSystemOpen {
                     System.out.println("connect(): try to find server port");
                 }
 
-                // Send a UDP broad or multicast packet to find ET TCP server & port
-                if (!findServerPort((int)config.getWaitTime())) {    // IOEx, UnknownHostEx, EtTooMany
+                // Use the ET TCP server & port found earlier if there is one,
+                // else send a UDP broad or multicast packet to find them
+                discoveryCached = findCachedServerPort();
+                if (!discoveryCached &&
+                    !findServerPort((int)config.getWaitTime())) {    // IOEx, UnknownHostEx, EtTooMany
                     // delay 1/2 second for next round
                     try {Thread.sleep(500);}
                     catch (InterruptedException e) {}
@@ -1385,6 +1563,12 @@ System.out.println("connect(): FAILED creating connection to " + connectionHost)
 
             // If no socket can be opened, try another round
             if (sock == null || !sock.isConnected()) {
+                // If ET system was found earlier, find it again right away
+                if (discoveryCached) {
+                    forgetServerPort();
+                    continue;
+                }
+
                 // delay 1/2 second for next round
                 try {Thread.sleep(500);}
                 catch (InterruptedException e) {}
@@ -1403,6 +1587,16 @@ System.out.println("connect(): FAILED creating connection to " + connectionHost)
                 // The above call finds out if ET system is implemented in C or Java.
                 // If Java, don't try to use JNI library.
                 if (isJavaEtSystem) {
+                    // If the ET system runs in this JVM, access its events directly
+                    if (useJniLibrary) {
+                        localSystem = SystemCreate.getRunningSystem(config.getEtName());
+                        if (localSystem != null && localSystem.getConfig().getServerPort() != tcpPort) {
+                            localSystem = null;
+                        }
+                        if (localSystem != null) {
+                            System.out.println("connect(): access events directly since java ET system is in this JVM");
+                        }
+                    }
                     useJniLibrary = false;
                     //if (debug >= EtConstants.debugInfo) {
                     System.out.println("connect(): Not using local shared memory since connecting to java ET system");
@@ -1411,6 +1605,11 @@ System.out.println("connect(): FAILED creating connection to " + connectionHost)
 
                 // Finally got a good connection
                 gotConnection = true;
+
+                // Remember where it was found
+                if (config.getNetworkContactMethod() != EtConstants.direct && !discoveryCached) {
+                    cacheServerPort();
+                }
                 break;
             }
             catch (IOException ex) {
@@ -1422,6 +1621,14 @@ System.out.println("connect(): FAILED creating connection to " + connectionHost)
                 excep = ex;
             }
 
+            // If ET system was found earlier, find it again right away
+            if (discoveryCached) {
+                try {sock.close();}
+                catch (IOException e) {}
+                forgetServerPort();
+                continue;
+            }
+
             // delay 1/2 second for next round
             try {Thread.sleep(500);}
             catch (InterruptedException e) {}
@@ -1539,6 +1746,7 @@ System.out.println("Error in opening ET with jni, IO exception, use sockets only
      */
     synchronized public void disconnect() {
         connected = false;
+        localSystem = null;
         try {sock.close();}
         catch (IOException ex) {}
     }
@@ -1572,6 +1780,9 @@ class DatagramReceive extends Thread {
     /** Current status. */
     volatile int status = timedOut;
 
+    /** Object also notified when a packet is received, may be null. */
+    private final Object notifier;
+
     /**
      * Creates a DatagramReceive object.
      * @param recvPacket UDP packet in which to receive communication data.
@@ -1579,8 +1790,21 @@ class DatagramReceive extends Thread {
      *
      */
     DatagramReceive(DatagramPacket recvPacket, DatagramSocket recvSocket) {
+        this(recvPacket, recvSocket, null);
+    }
+
+
+    /**
+     * Creates a DatagramReceive object which also notifies the given object
+     * so that one thread may wait for packets on many sockets.
+     * @param recvPacket UDP packet in which to receive communication data.
+     * @param recvSocket UDP Socket over which to communicate
+     * @param notifier   object to notify when a packet is received
+     */
+    DatagramReceive(DatagramPacket recvPacket, DatagramSocket recvSocket, Object notifier) {
         packet = recvPacket;
         socket = recvSocket;
+        this.notifier = notifier;
     }
 
 
@@ -1624,6 +1848,11 @@ class DatagramReceive extends Thread {
         synchronized (this) {
             notify();
         }
+        if (notifier != null) {
+            synchronized (notifier) {
+                notifier.notifyAll();
+            }
+        }
     }
 
 }
@@ -97,6 +97,32 @@ public class EtSystemOpenConfig {
      */
     private boolean noDelay;
 
+    /**
+     * If the ET system is Java based, on this host, and stores events' data in a file,
+     * map that file and access the data directly instead of over the network?
+     * <code>True</code> if so, else <code>false</code>.
+     */
+    private boolean sharedMemory;
+
+    /**
+     * Number of milliseconds for which the host and port of an ET system found by
+     * broad/multicasting are remembered so that opening it again does not wait for
+     * replies. A value of 0 means always broad/multicast.
+     */
+    private long discoveryCacheTime = EtConstants.discoveryCacheTime;
+
+    /**
+     * Number of TCP connections made to a remote ET system. Large batches of events
+     * are striped across them.
+     */
+    private int connections = 1;
+
+    /**
+     * How event data sent to and from a remote Java ET system are compressed,
+     * {@link EtConstants#compressNone} or {@link EtConstants#compressLz4}.
+     */
+    private int compression = EtConstants.compressNone;
+
 
     /**
      * No arg constructor. Will broadcast to local subnet addresses,
@@ -410,6 +436,10 @@ public class EtSystemOpenConfig {
         tcpRecvBufSize       = config.tcpRecvBufSize;
         tcpSendBufSize       = config.tcpSendBufSize;
         noDelay              = config.noDelay;
+        sharedMemory         = config.sharedMemory;
+        discoveryCacheTime   = config.discoveryCacheTime;
+        connections          = config.connections;
+        compression          = config.compression;
     }
 
 
@@ -425,9 +455,14 @@ public class EtSystemOpenConfig {
         builder.append("\n  tcp port = ");  builder.append(tcpPort);
         builder.append("\n  udp port = ");  builder.append(udpPort);
         builder.append("\ntcp  nodelay = ");  builder.append(noDelay);
+        builder.append("\nshared memory = ");  builder.append(sharedMemory);
         builder.append("\ntcp recv buf = ");  builder.append(tcpRecvBufSize);
         builder.append("\ntcp send buf = ");  builder.append(tcpSendBufSize);
         builder.append("\nwait time (ms) = ");  builder.append(waitTime);
+        builder.append("\ndiscovery cache time (ms) = ");  builder.append(discoveryCacheTime);
+        builder.append("\nconnections = ");  builder.append(connections);
+        builder.append("\ncompression = ");
+        builder.append(compression == EtConstants.compressLz4 ? "lz4" : "none");
         builder.append("\nconnect remotely = ");  builder.append(connectRemotely);
         builder.append("\nnetwork IF = ");  builder.append(networkInterface);
         builder.append("\nttl = ");  builder.append(ttl);
@@ -598,6 +633,32 @@ public class EtSystemOpenConfig {
         return noDelay;
     }
 
+    /** Get whether events' data are accessed through a file shared with the ET system.
+     *  @return <code>true</code> if events' data are accessed through a shared file */
+    public boolean isSharedMemory() {
+        return sharedMemory;
+    }
+
+    /** Get the number of milliseconds for which the host and port of an ET system
+     *  found by broad/multicasting are remembered.
+     *  @return number of milliseconds for which a found ET system is remembered,
+     *          0 if never */
+    public long getDiscoveryCacheTime() {
+        return discoveryCacheTime;
+    }
+
+    /** Get the number of TCP connections made to a remote ET system.
+     *  @return number of TCP connections made to a remote ET system */
+    public int getConnections() {
+        return connections;
+    }
+
+    /** Get how event data sent to and from a remote Java ET system are compressed.
+     *  @return {@link EtConstants#compressNone} or {@link EtConstants#compressLz4} */
+    public int getCompression() {
+        return compression;
+    }
+
 
     // Setters
 
@@ -884,12 +945,95 @@ public class EtSystemOpenConfig {
     }
 
     /**
-     * Set the TCP no-delay setting. It is off by default.
+     * Set the TCP no-delay setting. It is off by default. It is turned on regardless
+     * when the ET system can put events without replying, since such puts are
+     * followed by requests which would otherwise wait for the ET system's delayed
+     * acknowledgement (see {@link EtSystem#putEventsAsync(EtAttachment, EtEvent[])}).
      * @param noDelay TCP no-delay setting
      */
     public void setNoDelay(boolean noDelay) {
         this.noDelay = noDelay;
     }
 
+    /**
+     * Set whether events' data are accessed through a file shared with the ET system.
+     * This only happens if the ET system is Java based, runs on this host, and stores
+     * events' data in a memory-mapped file
+     * (see {@link org.jlab.coda.et.system.SystemConfig#setEventFile(String)}).
+     * Otherwise data are sent over the network as usual. It is off by default.
+     * @param sharedMemory <code>true</code> if events' data are to be accessed through
+     *                     a shared file if possible
+     */
+    public void setSharedMemory(boolean sharedMemory) {
+        this.sharedMemory = sharedMemory;
+    }
+
+    /**
+     * Set the number of milliseconds for which the host and port of an ET system found
+     * by broad/multicasting are remembered. Opening the same ET system again within that
+     * time connects directly without waiting for replies. If that connection fails,
+     * the ET system is forgotten and found again. Since only a broad/multicast can tell
+     * whether several ET systems of the same name respond, ET systems are never remembered
+     * when opening with {@link EtConstants#policyError}. It is
+     * {@link EtConstants#discoveryCacheTime} (0, never remembered) by default.
+     *
+     * @param discoveryCacheTime number of milliseconds for which a found ET system is
+     *                           remembered, 0 if never
+     * @throws EtException
+     *     if the argument is less than 0
+     */
+    public void setDiscoveryCacheTime(long discoveryCacheTime) throws EtException {
+        if (discoveryCacheTime < 0) {
+            throw new EtException("discovery cache time must be >= 0");
+        }
+        this.discoveryCacheTime = discoveryCacheTime;
+    }
+
+    /**
+     * Set the number of TCP connections made to a remote ET system. If more than one,
+     * each attachment is backed by an attachment of its own on every extra connection
+     * and batches of events gotten, made, put or dumped are split across the connections
+     * and sent over them in parallel, so that a single process can fill a fast link.
+     * Each connection carries at least {@link EtConstants#stripeEventsMin} events of a batch.
+     * Events gotten are returned in the order of the connections they came over.
+     * Since the extra attachments are real attachments to the station, stations allowing a
+     * single user get no striping and the extra attachments count toward the limits on
+     * attachments. Only one connection is made to an ET system in this JVM or through JNI.
+     * It is 1 by default.
+     *
+     * @param connections number of TCP connections made to a remote ET system
+     * @throws EtException
+     *     if the argument is less than 1
+     */
+    public void setConnections(int connections) throws EtException {
+        if (connections < 1) {
+            throw new EtException("number of connections must be > 0");
+        }
+        this.connections = connections;
+    }
+
+    /**
+     * Set how event data sent to and from a remote Java ET system are compressed.
+     * With {@link EtConstants#compressLz4}, the data of each event in a batch of events
+     * gotten or put is compressed in the LZ4 block format, unless it is small or does not
+     * get smaller. This trades processor time on both ends for less data over the network,
+     * which is worth it for users on slow links. The events of large batches are compressed
+     * in parallel. The ET system must agree when the connection is made, otherwise data are
+     * sent as they are. Data are never compressed for C-based ET systems,
+     * or when accessed through a shared file or in this JVM.
+     * It is {@link EtConstants#compressNone} by default.
+     *
+     * @param compression {@link EtConstants#compressNone} or {@link EtConstants#compressLz4}
+     * @throws EtException
+     *     if the argument has a bad value
+     */
+    public void setCompression(int compression) throws EtException {
+        if (compression != EtConstants.compressNone &&
+            compression != EtConstants.compressLz4) {
+            throw new EtException("bad compression value");
+        }
+        this.compression = compression;
+    }
+
 
 }
@@ -16,8 +16,11 @@ package org.jlab.coda.et;
 
 import org.jlab.coda.et.exception.EtException;
 
+import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -291,6 +294,41 @@ public class EtUtils {
     }
 
 
+    /**
+     * Map the data of all events of a Java ET system which are stored in a file.
+     * Since a single mapping cannot be larger than 2GB, events are divided among
+     * mappings of up to 1GB each and every event gets a slice of one.
+     * The file may be closed afterwards.
+     *
+     * @param file       file channel, opened for reading and writing
+     * @param offset     offset into the file of the first event's data
+     * @param numEvents  number of events
+     * @param eventSize  size of each event in bytes
+     * @return array of buffers, one for each event, indexed by event id
+     * @throws IOException if file cannot be mapped
+     */
+    public static ByteBuffer[] mapEvents(FileChannel file, long offset, int numEvents, int eventSize)
+            throws IOException {
+
+        int eventsPerMap = Math.max(1, (1 << 30) / eventSize);
+        ByteBuffer[] events = new ByteBuffer[numEvents];
+        ByteBuffer memory = null;
+
+        for (int i=0; i < numEvents; i++) {
+            int index = i % eventsPerMap;
+            if (index == 0) {
+                int count = Math.min(eventsPerMap, numEvents - i);
+                memory = file.map(FileChannel.MapMode.READ_WRITE,
+                                  offset + (long)i*eventSize, (long)count*eventSize);
+            }
+            memory.limit((index + 1) * eventSize).position(index * eventSize);
+            events[i] = memory.slice();
+        }
+
+        return events;
+    }
+
+
     /**
      * Is the given list of IP addresses identical to those of the local host?
      *
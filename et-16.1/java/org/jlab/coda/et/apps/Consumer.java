@@ -37,9 +37,9 @@ public class Consumer {
 
     private static void usage() {
         System.out.println("\nUsage: java Consumer -f <et name> -s <station name>\n" +
-                "                      [-h] [-v] [-nb] [-r] [-m] [-b] [-nd] [-read] [-dump]\n" +
+                "                      [-h] [-v] [-nb] [-r] [-m] [-b] [-nd] [-shm] [-reuse] [-read] [-dump]\n" +
                 "                      [-host <ET host>] [-p <ET port>]\n" +
-                "                      [-c <chunk size>] [-q <Q size>]\n" +
+                "                      [-c <chunk size>] [-q <Q size>] [-pf <batches>] [-pg]\n" +
                 "                      [-pos <station pos>] [-ppos <parallel station pos>]\n" +
                 "                      [-i <interface address>] [-a <mcast addr>]\n" +
                 "                      [-rb <buf size>] [-sb <buf size>]\n\n" +
@@ -53,6 +53,8 @@ public class Consumer {
                 "       -read  read data (1 int for each event)\n" +
                 "       -dump  dump events back into ET (go directly to GC) instead of put\n" +
                 "       -c     number of events in one get/put array\n" +
+                "       -pf    keep this many gets outstanding and put without waiting\n" +
+                "       -pg    put events and get more in one round trip\n" +
                 "       -r     act as remote (TCP) client even if ET system is local\n" +
                 "       -p     port, TCP if direct, else UDP\n\n" +
 
@@ -68,7 +70,9 @@ public class Consumer {
 
                 "       -rb    TCP receive buffer size (bytes)\n" +
                 "       -sb    TCP send    buffer size (bytes)\n" +
-                "       -nd    use TCP_NODELAY option\n\n" +
+                "       -nd    use TCP_NODELAY option\n" +
+                "       -shm   access data through the ET system's event file if local\n" +
+                "       -reuse reuse event objects and data arrays once put\n\n" +
 
                 "        This consumer works by making a direct connection to the\n" +
                 "        ET system's server port and host unless at least one multicast address\n" +
@@ -82,8 +86,8 @@ public class Consumer {
     public static void main(String[] args) {
 
         int port=0, flowMode = EtConstants.stationSerial;
-        int position=1, pposition=0, qSize=0, chunk=1, recvBufSize=0, sendBufSize=0;
-        boolean dump=false, readData=false, noDelay=false;
+        int position=1, pposition=0, qSize=0, chunk=1, recvBufSize=0, sendBufSize=0, prefetch=0;
+        boolean dump=false, readData=false, noDelay=false, sharedMemory=false, putGet=false, reuse=false;
         boolean blocking=true, verbose=false, remote=false;
         boolean broadcast=false, multicast=false, broadAndMulticast=false;
         HashSet<String> multicastAddrs = new HashSet<String>();
@@ -118,6 +122,15 @@ public class Consumer {
             else if (args[i].equalsIgnoreCase("-nd")) {
                 noDelay = true;
             }
+            else if (args[i].equalsIgnoreCase("-shm")) {
+                sharedMemory = true;
+            }
+            else if (args[i].equalsIgnoreCase("-reuse")) {
+                reuse = true;
+            }
+            else if (args[i].equalsIgnoreCase("-pg")) {
+                putGet = true;
+            }
             else if (args[i].equalsIgnoreCase("-v")) {
                 verbose = true;
             }
@@ -214,6 +227,21 @@ public class Consumer {
                     return;
                 }
             }
+            else if (args[i].equalsIgnoreCase("-pf")) {
+                try {
+                    prefetch = Integer.parseInt(args[++i]);
+                    if (prefetch < 1) {
+                        System.out.println("Number of batches must be > 0.");
+                        usage();
+                        return;
+                    }
+                }
+                catch (NumberFormatException ex) {
+                    System.out.println("Did not specify a proper number of batches.");
+                    usage();
+                    return;
+                }
+            }
             else if (args[i].equalsIgnoreCase("-pos")) {
                 try {
                     position = Integer.parseInt(args[++i]);
@@ -323,6 +351,7 @@ System.out.println("Flow mode is parallel");
 
             // Defaults are to use operating system default buffer sizes and turn off TCP_NODELAY
             config.setNoDelay(noDelay);
+            config.setSharedMemory(sharedMemory);
             config.setTcpRecvBufSize(recvBufSize);
             config.setTcpSendBufSize(sendBufSize);
             config.setNetworkInterface(outgoingInterface);
@@ -357,9 +386,16 @@ System.out.println("Flow mode is parallel");
 
             // attach to new station
             EtAttachment att = sys.attach(stat);
+            att.setReuseEvents(reuse);
 
-            // array of events
-            EtEvent[] mevs;
+            // keep several batches of events on their way
+            EtEventPrefetcher prefetcher = null;
+            if (prefetch > 0) {
+                prefetcher = new EtEventPrefetcher(sys, att, Modify.ANYTHING, chunk, prefetch);
+            }
+
+            // array of events, and those to put with the next get
+            EtEvent[] mevs, done = null;
 
             int    len, num;
             long   t1=0L, t2=0L, time, totalT=0L, count=0L, totalCount=0L, bytes=0L, totalBytes=0L;
@@ -372,7 +408,16 @@ System.out.println("Flow mode is parallel");
 
                 // get events from ET system
                 //mevs = sys.getEvents(att, Mode.TIMED, Modify.ANYTHING, 2000, chunk);
-                mevs = sys.getEvents(att, Mode.SLEEP, Modify.ANYTHING, 0, chunk);
+                if (prefetcher != null) {
+                    mevs = prefetcher.getEvents();
+                }
+                else if (done != null) {
+                    mevs = sys.putAndGetEvents(att, done, Mode.SLEEP, Modify.ANYTHING, 0, chunk);
+                    done = null;
+                }
+                else {
+                    mevs = sys.getEvents(att, Mode.SLEEP, Modify.ANYTHING, 0, chunk);
+                }
 
                 // example of reading & printing event data
                 if (readData) {
@@ -425,7 +470,14 @@ System.out.println("Flow mode is parallel");
                 }
 
                 // put events back into ET system
-                if (!dump) {
+                if (prefetcher != null && !dump) {
+                    prefetcher.putEvents(mevs);
+                }
+                else if (putGet && !dump) {
+                    // put them with the next get
+                    done = mevs;
+                }
+                else if (!dump) {
                     sys.putEvents(att, mevs);
                 }
                 else {
@@ -0,0 +1,486 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2026        Jefferson Science Associates,                   *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.apps;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.enums.Mode;
+import org.jlab.coda.et.enums.Modify;
+import org.jlab.coda.et.exception.*;
+import org.jlab.coda.et.system.AttachmentLocal;
+import org.jlab.coda.et.system.StationLocal;
+import org.jlab.coda.et.system.SystemConfig;
+import org.jlab.coda.et.system.SystemCreate;
+
+/**
+ * This class measures the speed of the parts of an ET system so that changes
+ * which slow it down are caught before being deployed. Each benchmark runs an
+ * ET system in this JVM and keeps one or more threads doing the same thing over
+ * and over while the number of operations completed is counted. After a few
+ * warmup iterations, the rate of several measured iterations is averaged and
+ * printed along with its standard deviation. The benchmarks are:
+ * <ul>
+ * <li>lists: threads putting events into and getting them from the same station,
+ *     contending for its input and output lists;</li>
+ * <li>conductor: events moved by conductor threads through a chain of stations
+ *     or through a group of parallel stations;</li>
+ * <li>select: events matched against a station's select integers, or selected
+ *     by {@link EtStationSelection};</li>
+ * <li>roundTrip: events made, put, gotten and put again by a remote user over
+ *     a TCP connection to this JVM, which includes serializing them.</li>
+ * </ul>
+ *
+ * @author Carl Timmer
+ */
+public class EtBenchmark {
+
+    /** Number of events in each ET system. */
+    private static final int numEvents = 2000;
+
+    /** Number of events in each get or put. */
+    private static final int chunk = 10;
+
+    /** Directory in which ET system files are made. */
+    private static final String dir = System.getProperty("java.io.tmpdir");
+
+    /** Next TCP port to use, the UDP port is the one after. */
+    private static int port = 23931;
+
+
+    public EtBenchmark() {
+    }
+
+
+    private static void usage() {
+        System.out.println("\nUsage: java EtBenchmark [-h] [-b <benchmark>] [-wi <iterations>] [-i <iterations>]\n" +
+                "                       [-r <seconds>] [-p <port>]\n\n" +
+                "       -h     help\n" +
+                "       -b     run only benchmarks whose name contains this string\n" +
+                "       -wi    number of warmup iterations (default 3)\n" +
+                "       -i     number of measured iterations (default 5)\n" +
+                "       -r     seconds in each iteration (default 1)\n" +
+                "       -p     first TCP port of ET systems, the next one is its UDP port\n" +
+                "              (default 23931)\n\n" +
+                "        This program measures the rates at which parts of the ET system\n" +
+                "        work. The ET systems run in this JVM.\n");
+    }
+
+
+    /**
+     * A benchmark runs threads doing the same operation over and over
+     * and counts the operations done.
+     */
+    static abstract class Benchmark {
+
+        /** Name of benchmark. */
+        final String name;
+
+        /** Parameters of benchmark. */
+        final String params;
+
+        /** Number of operations done. */
+        final LongAdder ops = new LongAdder();
+
+        /** Should threads keep going? */
+        volatile boolean running;
+
+        /** Error which ended a thread, if any. */
+        volatile Throwable error;
+
+        /** Threads doing operations. */
+        private final ArrayList<Thread> threads = new ArrayList<Thread>();
+
+        /** ET system in this JVM. */
+        SystemCreate sys;
+
+
+        Benchmark(String name, String params) {
+            this.name   = name;
+            this.params = params;
+        }
+
+        /**
+         * Create an ET system in this JVM on the next free ports.
+         * @return ET system
+         */
+        SystemCreate createSystem(int eventSize) throws EtException {
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(numEvents);
+            config.setEventSize(eventSize);
+            config.setServerPort(port++);
+            config.setUdpPort(port++);
+            config.setDebug(EtConstants.debugNone);
+            String name = dir + File.separator + "etBenchmark" + config.getServerPort();
+            new File(name).delete();
+            sys = new SystemCreate(name, config);
+            return sys;
+        }
+
+        /**
+         * Start a thread which runs an operation over and over until told to stop.
+         * @param op operation which returns the number of operations it did
+         */
+        void startThread(final Operation op) {
+            Thread t = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        while (running) {
+                            ops.add(op.run());
+                        }
+                    }
+                    catch (Throwable e) {
+                        if (running) error = e;
+                    }
+                }
+            }, name);
+            t.setDaemon(true);
+            threads.add(t);
+            t.start();
+        }
+
+        /** Make the ET system and start the threads. */
+        abstract void setup() throws Exception;
+
+        /** Stop the threads and the ET system. */
+        void teardown() throws Exception {
+            running = false;
+            for (Thread t : threads) {
+                t.join(2000);
+            }
+            if (sys != null) {
+                sys.shutdown();
+            }
+        }
+    }
+
+
+    /** An operation done over and over by a benchmark thread. */
+    interface Operation {
+        /**
+         * Do the operation once.
+         * @return number of operations done (for example, events moved)
+         */
+        int run() throws Exception;
+    }
+
+
+    /**
+     * Threads put events into GRAND_CENTRAL and get them from one station
+     * whose input and output lists they contend for.
+     */
+    static class ListsBenchmark extends Benchmark {
+        private final int numThreads;
+
+        ListsBenchmark(int numThreads) {
+            super("lists", "threads=" + numThreads);
+            this.numThreads = numThreads;
+        }
+
+        void setup() throws Exception {
+            createSystem(128);
+            StationLocal stat = sys.createStation(new EtStationConfig(), "lists");
+            running = true;
+            for (int i=0; i < numThreads; i++) {
+                final AttachmentLocal gcAtt = sys.attach(0);
+                final AttachmentLocal att = sys.attach(stat.getStationId());
+                startThread(new Operation() {
+                    public int run() throws Exception {
+                        sys.putEvents(gcAtt, sys.newEvents(gcAtt, EtConstants.timed, 100000, chunk, 128));
+                        try {
+                            EtEventImpl[] evs = sys.getEvents(att, EtConstants.timed, 100000, chunk);
+                            sys.putEvents(att, evs);
+                            return evs.length;
+                        }
+                        catch (EtTimeoutException e) {
+                            return 0;
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+
+    /**
+     * One thread makes new events and threads at each station pass them on, so
+     * that conductors move events through a chain of stations or through a
+     * group of parallel stations. Events are counted as they reach the last station.
+     */
+    static class ConductorBenchmark extends Benchmark {
+        private final int numStations;
+        private final boolean parallel;
+
+        ConductorBenchmark(int numStations, boolean parallel) {
+            super("conductor", "stations=" + numStations + (parallel ? ",parallel" : ",serial"));
+            this.numStations = numStations;
+            this.parallel    = parallel;
+        }
+
+        void setup() throws Exception {
+            createSystem(128);
+            running = true;
+
+            final AttachmentLocal gcAtt = sys.attach(0);
+            startThread(new Operation() {
+                public int run() throws Exception {
+                    sys.putEvents(gcAtt, sys.newEvents(gcAtt, EtConstants.timed, 100000, chunk, 128));
+                    return 0;
+                }
+            });
+
+            EtStationConfig config = new EtStationConfig();
+            if (parallel) {
+                config.setFlowMode(EtConstants.stationParallel);
+                config.setSelectMode(EtConstants.stationSelectRRobin);
+            }
+
+            for (int i=0; i < numStations; i++) {
+                StationLocal stat;
+                if (parallel) {
+                    stat = sys.createStation(config, "conductor" + i, 1, EtConstants.end);
+                }
+                else {
+                    stat = sys.createStation(config, "conductor" + i);
+                }
+
+                final AttachmentLocal att = sys.attach(stat.getStationId());
+                final boolean count = parallel || i == numStations - 1;
+                startThread(new Operation() {
+                    public int run() throws Exception {
+                        try {
+                            EtEventImpl[] evs = sys.getEvents(att, EtConstants.timed, 100000, chunk);
+                            sys.putEvents(att, evs);
+                            return count ? evs.length : 0;
+                        }
+                        catch (EtTimeoutException e) {
+                            return 0;
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+
+    /**
+     * A thread matches events against a station's select integers
+     * or selects them with {@link EtStationSelection}.
+     */
+    static class SelectBenchmark extends Benchmark {
+        private final boolean user;
+
+        SelectBenchmark(boolean user) {
+            super("select", user ? "user" : "match");
+            this.user = user;
+        }
+
+        void setup() throws Exception {
+            createSystem(128);
+
+            EtStationConfig config = new EtStationConfig();
+            config.setSelectMode(user ? EtConstants.stationSelectUser : EtConstants.stationSelectMatch);
+            config.setSelect(new int[] {1, 0x10, -1, -1, 7, 0x100});
+            if (user) {
+                config.setSelectClass(EtStationSelection.class.getName());
+            }
+            final StationLocal stat = sys.createStation(config, "select");
+            final EtEventSelectable selector = user ? new EtStationSelection() : stat;
+
+            // events with random control integers
+            Random rand = new Random(1);
+            final EtEventImpl[] evs = new EtEventImpl[1024];
+            for (int i=0; i < evs.length; i++) {
+                int[] control = new int[EtConstants.stationSelectInts];
+                for (int j=0; j < control.length; j++) {
+                    control[j] = rand.nextInt(512);
+                }
+                evs[i] = new EtEventImpl(16);
+                evs[i].setId(i);
+                evs[i].setControl(control);
+            }
+
+            running = true;
+            startThread(new Operation() {
+                int selected;
+                public int run() {
+                    for (EtEventImpl ev : evs) {
+                        if (selector.select(sys, stat, ev)) selected++;
+                    }
+                    return evs.length;
+                }
+            });
+        }
+    }
+
+
+    /**
+     * A remote user connected over TCP to this JVM makes and puts events, then
+     * gets and puts them from a station. All events are counted as they are gotten.
+     */
+    static class RoundTripBenchmark extends Benchmark {
+        private final int size;
+        private EtSystem user;
+
+        RoundTripBenchmark(int size) {
+            super("roundTrip", "size=" + size);
+            this.size = size;
+        }
+
+        void setup() throws Exception {
+            createSystem(size);
+
+            EtSystemOpenConfig config = new EtSystemOpenConfig(sys.getName(), EtConstants.hostLocal,
+                                                               sys.getConfig().getServerPort());
+            config.setConnectRemotely(true);
+            user = new EtSystem(config, EtConstants.debugNone);
+            user.open();
+
+            final EtAttachment gcAtt = user.attach(user.stationNameToObject("GRAND_CENTRAL"));
+            final EtAttachment att = user.attach(user.createStation(new EtStationConfig(), "roundTrip"));
+
+            running = true;
+            startThread(new Operation() {
+                public int run() throws Exception {
+                    EtEvent[] evs = user.newEvents(gcAtt, Mode.TIMED, 100000, chunk, size);
+                    for (EtEvent ev : evs) {
+                        ev.setLength(size);
+                    }
+                    user.putEvents(gcAtt, evs);
+
+                    evs = user.getEvents(att, Mode.TIMED, Modify.ANYTHING, 100000, chunk);
+                    user.putEvents(att, evs);
+                    return evs.length;
+                }
+            });
+        }
+
+        void teardown() throws Exception {
+            running = false;
+            Thread.sleep(200);
+            user.close();
+            super.teardown();
+        }
+    }
+
+
+    /**
+     * Run one benchmark and print its result.
+     *
+     * @param b          benchmark
+     * @param warmups    number of warmup iterations
+     * @param iterations number of measured iterations
+     * @param millis     milliseconds in each iteration
+     */
+    private static void run(Benchmark b, int warmups, int iterations, long millis) throws Exception {
+        double[] rates = new double[iterations];
+        try {
+            b.setup();
+            for (int i=0; i < warmups + iterations; i++) {
+                long ops = b.ops.sum(), t = System.nanoTime();
+                Thread.sleep(millis);
+                double rate = (b.ops.sum() - ops) * 1.e9 / (System.nanoTime() - t);
+                if (b.error != null) break;
+                if (i >= warmups) rates[i - warmups] = rate;
+            }
+        }
+        finally {
+            b.teardown();
+        }
+
+        if (b.error != null) {
+            System.out.printf("%-12s %-24s failed: %s%n", b.name, b.params, b.error);
+            return;
+        }
+
+        double mean = 0., var = 0.;
+        for (double r : rates) mean += r;
+        mean /= iterations;
+        for (double r : rates) var += (r - mean)*(r - mean);
+        double dev = iterations > 1 ? Math.sqrt(var/(iterations - 1)) : 0.;
+
+        System.out.printf("%-12s %-24s %5d %14.1f +- %12.1f  ops/s%n",
+                          b.name, b.params, iterations, mean, dev);
+    }
+
+
+    public static void main(String[] args) {
+        String only = null;
+        int warmups = 3, iterations = 5;
+        double seconds = 1.;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equalsIgnoreCase("-b")) {
+                    only = args[++i];
+                }
+                else if (args[i].equalsIgnoreCase("-wi")) {
+                    warmups = Integer.parseInt(args[++i]);
+                }
+                else if (args[i].equalsIgnoreCase("-i")) {
+                    iterations = Integer.parseInt(args[++i]);
+                }
+                else if (args[i].equalsIgnoreCase("-r")) {
+                    seconds = Double.parseDouble(args[++i]);
+                }
+                else if (args[i].equalsIgnoreCase("-p")) {
+                    port = Integer.parseInt(args[++i]);
+                }
+                else {
+                    usage();
+                    return;
+                }
+            }
+        }
+        catch (Exception ex) {
+            usage();
+            return;
+        }
+
+        if (iterations < 1 || warmups < 0 || seconds <= 0.) {
+            usage();
+            return;
+        }
+
+        ArrayList<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.add(new ListsBenchmark(1));
+        benchmarks.add(new ListsBenchmark(4));
+        benchmarks.add(new ConductorBenchmark(1, false));
+        benchmarks.add(new ConductorBenchmark(4, false));
+        benchmarks.add(new ConductorBenchmark(4, true));
+        benchmarks.add(new SelectBenchmark(false));
+        benchmarks.add(new SelectBenchmark(true));
+        benchmarks.add(new RoundTripBenchmark(16));
+        benchmarks.add(new RoundTripBenchmark(1024));
+        benchmarks.add(new RoundTripBenchmark(65536));
+
+        System.out.printf("%-12s %-24s %5s %14s   %12s  %s%n",
+                          "Benchmark", "Parameters", "Cnt", "Score", "Error", "Units");
+        try {
+            for (Benchmark b : benchmarks) {
+                if (only != null && !b.name.contains(only)) continue;
+                run(b, warmups, iterations, (long) (1000*seconds));
+            }
+        }
+        catch (Exception ex) {
+            System.out.println("ERROR:");
+            ex.printStackTrace();
+        }
+        System.exit(0);
+    }
+}
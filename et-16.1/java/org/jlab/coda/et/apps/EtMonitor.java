@@ -43,14 +43,15 @@ public class EtMonitor {
 
     private static void usage() {
         System.out.println("\nUsage: java EtMonitor -f <ET name> [-h] [-r] [-m] [-b]\n" +
-                                   "                         [-host <ET host>][-t <period (sec)>]\n" +
+                                   "                         [-host <ET host>][-t <period (sec)>] [-metrics]\n" +
                                    "                         [-p <ET port>] [-a <mcast addr>]\n\n" +
 
                                    "       -f     ET system's (memory-mapped file) name\n" +
                                    "       -host  ET system's host if direct connection (default to local)\n" +
                                    "       -h     help\n" +
                                    "       -t     period in seconds between updates\n" +
-                                   "       -r     act as remote (TCP) client even if ET system is local\n\n" +
+                                   "       -r     act as remote (TCP) client even if ET system is local\n" +
+                                   "       -metrics  display metrics (Java ET systems only)\n\n" +
 
                                    "       -p     ET port (TCP for direct, UDP for broad/multicast)\n" +
                                    "       -a     multicast address(es) (dot-decimal), may use multiple times\n" +
@@ -64,7 +65,7 @@ public class EtMonitor {
     public static void main(String[] args) {
 
         int port=0;
-        boolean remote=false, broadcast=false, multicast=false, broadAndMulticast=false;
+        boolean remote=false, broadcast=false, multicast=false, broadAndMulticast=false, metrics=false;
         HashSet<String> multicastAddrs = new HashSet<String>();
         String etName = null, host = null;
 
@@ -79,6 +80,9 @@ public class EtMonitor {
                 else if (args[i].equalsIgnoreCase("-r")) {
                     remote = true;
                 }
+                else if (args[i].equalsIgnoreCase("-metrics")) {
+                    metrics = true;
+                }
                 else if (args[i].equalsIgnoreCase("-m")) {
                     multicast = true;
                 }
@@ -230,8 +234,13 @@ public class EtMonitor {
 
           while (true) {
               try {
-                  etData = sys.getData();
-                  display(sys, etData);
+                  if (metrics) {
+                      System.out.println(sys.getMetrics());
+                  }
+                  else {
+                      etData = sys.getData();
+                      display(sys, etData);
+                  }
               }
               catch (EtException ex) {
                   ex.printStackTrace();
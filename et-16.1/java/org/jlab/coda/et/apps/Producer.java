@@ -38,7 +38,7 @@ public class Producer {
 
     private static void usage() {
         System.out.println("\nUsage: java Producer -f <et name>\n" +
-                "                      [-h] [-v] [-r] [-m] [-b] [-nd] [-blast]\n" +
+                "                      [-h] [-v] [-r] [-m] [-b] [-nd] [-shm] [-reuse] [-blast]\n" +
                 "                      [-host <ET host>] [-w <big endian? 0/1>]\n" +
                 "                      [-s <event size>] [-c <chunk size>] [-g <group>]\n" +
                 "                      [-d <delay>] [-p <ET port>]\n" +
@@ -68,7 +68,9 @@ public class Producer {
 
                 "       -rb    TCP receive buffer size (bytes)\n" +
                 "       -sb    TCP send    buffer size (bytes)\n" +
-                "       -nd    use TCP_NODELAY option\n\n" +
+                "       -nd    use TCP_NODELAY option\n" +
+                "       -shm   access data through the ET system's event file if local\n" +
+                "       -reuse reuse event objects and data arrays once put\n\n" +
 
                 "        This producer works by making a direct connection to the\n" +
                 "        ET system's server port and host unless at least one multicast address\n" +
@@ -83,7 +85,7 @@ public class Producer {
 
         int group=1, delay=0, size=32, port=0;
         int chunk=1, recvBufSize=0, sendBufSize=0;
-        boolean noDelay=false, verbose=false, remote=false, blast=false;
+        boolean noDelay=false, verbose=false, remote=false, blast=false, sharedMemory=false, reuse=false;
         boolean bigEndian=true, writeData=false;
         boolean broadcast=false, multicast=false, broadAndMulticast=false;
         HashSet<String> multicastAddrs = new HashSet<String>();
@@ -116,6 +118,12 @@ public class Producer {
             else if (args[i].equalsIgnoreCase("-nd")) {
                 noDelay = true;
             }
+            else if (args[i].equalsIgnoreCase("-shm")) {
+                sharedMemory = true;
+            }
+            else if (args[i].equalsIgnoreCase("-reuse")) {
+                reuse = true;
+            }
             else if (args[i].equalsIgnoreCase("-v")) {
                 verbose = true;
             }
@@ -323,6 +331,7 @@ public class Producer {
 
             // Defaults are to use operating system default buffer sizes and turn off TCP_NODELAY
             config.setNoDelay(noDelay);
+            config.setSharedMemory(sharedMemory);
             config.setTcpRecvBufSize(recvBufSize);
             config.setTcpSendBufSize(sendBufSize);
             config.setNetworkInterface(outgoingInterface);
@@ -366,6 +375,7 @@ public class Producer {
 
             // attach to GRAND_CENTRAL
             EtAttachment att = sys.attach(gc);
+            att.setReuseEvents(reuse);
 
             EtEvent[]   mevs;
             EtEventImpl realEvent;
@@ -35,9 +35,10 @@ public class StartEt {
     private static void usage() {
 
         System.out.println("\nUsage: java StartEt [-h] [-v] [-d] [-f <file>] [-n <events>] [-s <eventSize>]\n" +
-                             "                    [-g <groups>] [-a <multicast address>]\n" +
+                             "                    [-g <groups>] [-direct] [-mf <file>] [-a <multicast address>]\n" +
                              "                    [-p <TCP server port>] [-u <UDP port>]\n" +
-                             "                    [-rb <buf size>] [-sb <buf size>] [-nd]\n\n" +
+                             "                    [-rb <buf size>] [-sb <buf size>] [-nd] [-nio <threads>]\n" +
+                             "                    [-trace <n>] [-spill <dir>] [-spillmax <MB>]\n\n" +
 
         "          -h   help\n" +
         "          -v   verbose output\n" +
@@ -46,7 +47,10 @@ public class StartEt {
 
         "          -n   number of events\n" +
         "          -s   event size in bytes\n" +
-        "          -g   number of groups to divide events into\n\n" +
+        "          -g   number of groups to divide events into\n" +
+        "          -direct store event data outside of the Java heap\n" +
+        "          -mf  store event data in this memory-mapped file which local\n" +
+        "               Java clients may share\n\n" +
 
         "          -p   TCP server port #\n" +
         "          -u   UDP broadcast port #\n" +
@@ -54,7 +58,14 @@ public class StartEt {
 
         "          -rb  TCP receive buffer size (bytes)\n" +
         "          -sb  TCP send    buffer size (bytes)\n" +
-        "          -nd  use TCP_NODELAY option\n\n" +
+        "          -nd  use TCP_NODELAY option\n" +
+        "          -nio handle all TCP connections with this many threads\n" +
+        "               (default = 0, one thread per connection)\n" +
+        "          -trace trace 1 of every n new events through the stations\n" +
+        "               (default = 0, none)\n" +
+        "          -spill nonblocking stations spill events beyond their cue\n" +
+        "               to files in this directory\n" +
+        "          -spillmax most MB each station may spill (default = 1024)\n\n" +
 
         "          This program starts up an ET system.\n" +
         "          Listens on 239.200.0.0 by default.\n");
@@ -70,10 +81,14 @@ public class StartEt {
         int udpPort = EtConstants.udpPort;
         int recvBufSize = 0, sendBufSize = 0;
         int numGroups = 1;
+        int serverThreads = 0;
+        int traceSampling = 0;
+        long spillLimit = 0;
         boolean debug = false;
         boolean noDelay = false;
+        boolean directEvents = false;
         boolean deleteFile = false;
-        String file = null;
+        String file = null, eventFile = null, spillDirectory = null;
         HashSet<String> multicastAddrs = new HashSet<String>();
 
         // loop over all args
@@ -113,6 +128,29 @@ public class StartEt {
             else if (args[i].equalsIgnoreCase("-nd")) {
                 noDelay = true;
             }
+            else if (args[i].equalsIgnoreCase("-nio")) {
+                serverThreads = Integer.parseInt(args[i + 1]);
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-trace")) {
+                traceSampling = Integer.parseInt(args[i + 1]);
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-spill")) {
+                spillDirectory = args[i + 1];
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-spillmax")) {
+                spillLimit = Long.parseLong(args[i + 1]) * 1024L * 1024L;
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-direct")) {
+                directEvents = true;
+            }
+            else if (args[i].equalsIgnoreCase("-mf")) {
+                eventFile = args[i + 1];
+                i++;
+            }
             else if (args[i].equalsIgnoreCase("-v")) {
                 debug = true;
             }
@@ -201,6 +239,29 @@ public class StartEt {
             if (noDelay) {
                 config.setNoDelay(noDelay);
             }
+            // multiplex tcp connections over a few threads
+            if (serverThreads > 0) {
+                config.setServerThreads(serverThreads);
+            }
+            // trace a sample of events through the stations
+            if (traceSampling > 0) {
+                config.setTraceSampling(traceSampling);
+            }
+            // spill events beyond nonblocking stations' cues to disk
+            if (spillDirectory != null) {
+                config.setSpillDirectory(spillDirectory);
+            }
+            if (spillLimit > 0) {
+                config.setSpillLimit(spillLimit);
+            }
+            // store event data in direct buffers
+            if (directEvents) {
+                config.setDirectEvents(true);
+            }
+            // store event data in a file shared with local clients
+            if (eventFile != null) {
+                config.setEventFile(eventFile);
+            }
             // set debug level
             if (debug) {
                 config.setDebug(EtConstants.debugInfo);
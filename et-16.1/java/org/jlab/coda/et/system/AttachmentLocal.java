@@ -74,6 +74,9 @@ public class AttachmentLocal {
     /** Flag telling the attachment blocked on a read to wake up or return. */
     private volatile boolean wakeUp;
 
+    /** Time in nanoseconds traced events are held by the user between being gotten and put. */
+    private final LogHistogram traceHold = new LogHistogram();
+
 
     /**
      * Constructor. Attachments are only created by an ET system's
@@ -93,6 +96,15 @@ public class AttachmentLocal {
         return id;
     }
 
+    /**
+     * Gets the histogram of the time, in nanoseconds, traced events are held
+     * by the user between being gotten and put or dumped.
+     * @return histogram of the time traced events are held by the user
+     */
+    LogHistogram getTraceHold() {
+        return traceHold;
+    }
+
     /**
      * Sets the attachment id number.
      * @param id attachment id number
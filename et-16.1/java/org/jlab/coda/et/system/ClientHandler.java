@@ -0,0 +1,1708 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2001        Southeastern Universities Research Association, *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12H        *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-5800             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.system;
+
+import java.lang.*;
+import java.util.*;
+import java.util.Map.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+
+import org.jlab.coda.et.exception.*;
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.enums.Modify;
+import org.jlab.coda.et.enums.Priority;
+import org.jlab.coda.et.enums.DataStatus;
+
+/**
+ * This class carries out the commands sent by a user who has opened the ET system
+ * over a tcp connection. It only reads from and writes to the data streams it is
+ * given, so it can be driven either by a thread blocked on the user's socket
+ * ({@link ClientThread}) or by a thread multiplexing many users' sockets
+ * ({@link SystemNioServer}).<p>
+ *
+ * Commands which get or make events are split into reading the request
+ * ({@link #readGetRequest}), getting the events ({@link #getEvents} or
+ * {@link #tryGetEvents}), and replying ({@link #replyGetRequest}), so that a
+ * request for which no events are available need not hold a thread while it waits.
+ *
+ * @author Carl Timmer
+ */
+
+class ClientHandler {
+
+    // for efficiency, keep local copy of constants
+    private static final int selectInts   = EtConstants.stationSelectInts;
+    private static final int dataShift    = EtConstants.dataShift;
+    private static final int priorityMask = EtConstants.priorityMask;
+    private static final int dataMask     = EtConstants.dataMask;
+    private static final int ok           = EtConstants.ok;
+
+    /** ET system object. */
+    private SystemCreate sys;
+
+    /** ET system configuration object. */
+    private SystemConfig config;
+
+    /** Data input stream from the user. */
+    private DataInputStream  in;
+
+    /** Data output stream to the user. */
+    private DataOutputStream out;
+
+    /** Client is 64 bits? */
+    boolean bit64;
+
+    /**
+     * Keep track of all the attachments this client makes
+     * as they may need to be detached if the client dies
+     * without cleanly disconnecting itself. Detaching
+     * takes care of all events that were sent to clients
+     * as events to be modified, but were never put back.
+     */
+    private HashMap<Integer, AttachmentLocal> attachments;
+
+    /** Buffer for the headers of events sent to users. */
+    private byte[] buffer = new byte[65535];
+
+    /** Buffer for reading command parameters. */
+    private byte[] params = new byte[32 + 4 * selectInts];
+
+    /** Object which writes event headers and data to the user. */
+    private GatheringWriter writer;
+
+    /** Array of buffers for gathering writes. */
+    private ByteBuffer[] gatherBuffers = new ByteBuffer[64];
+
+    /**
+     * Has the user (Java, on this host) mapped the file in which events' data
+     * are stored? If so, event data in that file are not sent over the network.
+     */
+    private boolean sharedMemory;
+
+    /** If the user agreed to compress event data, decompresses data read, else null. */
+    private EtCompressor readCompressor;
+
+    /** If the user agreed to compress event data, compresses data written, else null. */
+    private EtCompressor writeCompressor;
+
+    /** Buffer of each event's data sent to the user. */
+    private ByteBuffer[] dataBuffers = new ByteBuffer[64];
+
+
+    /**
+     * This interface is implemented by the server to send data to the user
+     * with a gathering write, so event data goes out straight from the
+     * events' memory without first being copied into a staging buffer.
+     */
+    interface GatheringWriter {
+        /**
+         * Write all bytes remaining in the given buffers, in order, after
+         * anything already written to the data output stream.
+         * Once this returns, the buffers' contents may be changed.
+         *
+         * @param buffers buffers to write
+         * @param count   number of buffers to write, starting with the first
+         * @throws IOException if error writing
+         */
+        void write(ByteBuffer[] buffers, int count) throws IOException;
+    }
+
+
+    /**
+     * This class holds a user's request to get or make events
+     * while it is being carried out.
+     */
+    static final class GetRequest {
+        /** Command which made the request. */
+        int command;
+        /** Attachment getting or making events. */
+        AttachmentLocal att;
+        /** Wait mode. */
+        int mode;
+        /** Modify flag (get commands only). */
+        int mod;
+        /** Number of events. */
+        int count;
+        /** Size of events in bytes (new commands only). */
+        long size;
+        /** Group of events (new group command only). */
+        int group;
+        /** Time to wait in microseconds if timed mode. */
+        int microSec;
+        /** Error to reply with. */
+        int err = ok;
+        /** Events gotten. */
+        EtEventImpl[] evs;
+        /** Events gotten (new group command only). */
+        List<EtEventImpl> evList;
+        /** Has the data to send been gathered, and compressed if agreed on? */
+        boolean dataReady;
+    }
+
+
+    /**
+     *  Create a new ClientHandler object.
+     *  @param sys    ET system object.
+     *  @param in     data input stream from user.
+     *  @param out    data output stream to user.
+     *  @param writer object which writes event headers and data to user.
+     */
+    ClientHandler(SystemCreate sys, DataInputStream in, DataOutputStream out,
+                  GatheringWriter writer) {
+        this.sys    = sys;
+        this.in     = in;
+        this.out    = out;
+        this.writer = writer;
+        config = sys.getConfig();
+        attachments = new HashMap<Integer, AttachmentLocal>(config.getAttachmentsMax() + 1);
+    }
+
+
+    /**
+     * Read the user's request to open the ET system and reply to it.
+     *
+     * @return <code>true</code> if the user is trying to open this ET system,
+     *         else <code>false</code> (and an error has been sent)
+     * @throws IOException if error communicating with user
+     */
+    boolean open() throws IOException {
+        int endian = in.readInt();
+        int length = in.readInt();
+        int b64    = in.readInt();
+        bit64      = b64 == 1;
+        in.readLong();
+
+        byte[] buf = new byte[length];
+        in.readFully(buf, 0, length);
+        String etName = new String(buf, 0, length - 1, "ASCII");
+
+        // see if the ET system that the client is
+        // trying to connect to is this one.
+        if (!etName.equals(sys.getName())) {
+            if (config.getDebug() >= EtConstants.debugError) {
+                System.out.println("Tcp Server: client trying to connect to " + etName);
+            }
+            // send error to client
+            out.writeInt(EtConstants.error);
+            out.flush();
+            return false;
+        }
+
+        // send ET system info back to client
+        out.writeInt(EtConstants.ok);
+        out.writeInt(EtConstants.endianBig);
+        out.writeInt(config.getNumEvents());
+        out.writeLong(config.getEventSize());
+        out.writeInt(EtConstants.version);
+        out.writeInt(EtConstants.stationSelectInts);
+        out.writeInt(EtConstants.langJava);
+        out.writeInt(EtConstants.bit64);
+        // optional commands understood
+        out.writeInt(EtConstants.netFeatureShm | EtConstants.netFeatureCompress |
+                     EtConstants.netFeaturePutGet | EtConstants.netFeaturePutNR);
+        out.flush();
+
+        return true;
+    }
+
+
+    /** Detach all attachments made by this client. */
+    void detachAll() {
+        for (Entry<Integer, AttachmentLocal> entry : attachments.entrySet()) {
+            //System.out.println("Detaching from attachment key = " + entry.getKey());
+            sys.detach(entry.getValue());
+        }
+        attachments.clear();
+    }
+
+
+    /**
+     * Is the given command a request to get or make events?
+     * @param command command from user
+     * @return <code>true</code> if command gets or makes events
+     */
+    static boolean isGetCommand(int command) {
+        return command == EtConstants.netEvGet || command == EtConstants.netEvsGet ||
+               command == EtConstants.netEvNew || command == EtConstants.netEvsNew ||
+               command == EtConstants.netEvsNewGrp || command == EtConstants.netEvsPutGet;
+    }
+
+
+    /**
+     * Does carrying out the given command decompress event data?
+     * @param command command from user
+     * @return <code>true</code> if command decompresses event data
+     */
+    boolean decompresses(int command) {
+        return readCompressor != null &&
+               (command == EtConstants.netEvsPut || command == EtConstants.netEvsPutNR ||
+                command == EtConstants.netEvsPutGet);
+    }
+
+
+    /**
+     * Does the reply to the given request compress event data?
+     * @param req request which is done
+     * @return <code>true</code> if reply compresses event data
+     */
+    boolean compresses(GetRequest req) {
+        return writeCompressor != null && req.err == ok && req.command == EtConstants.netEvsGet;
+    }
+
+
+    /**
+     * Gather the data of the events to be sent in reply to a request to get them,
+     * and compress it if agreed on with the user. This is done by
+     * {@link #replyGetRequest} if not called beforehand, perhaps in another thread.
+     *
+     * @param req request which is done
+     */
+    void prepareReply(GetRequest req) {
+        EtEventImpl[] evs = req.evs;
+        req.dataReady = true;
+        if (req.err != ok || req.command != EtConstants.netEvsGet) {
+            return;
+        }
+
+        // Don't share data the user doesn't own since another may overwrite it
+        boolean useShared = sharedMemory && req.mod != 0;
+        if (evs.length > dataBuffers.length) {
+            dataBuffers = new ByteBuffer[evs.length];
+        }
+        for (int i = 0; i < evs.length; i++) {
+            dataBuffers[i] = null;
+            if (useShared && sys.isSharedData(evs[i])) continue;
+            dataBuffers[i] = dataBuffer(evs[i]);
+        }
+
+        // Compress the data sent, if agreed on with the user,
+        // using other threads while this one waits
+        if (writeCompressor != null) {
+            writeCompressor.compress(dataBuffers, evs.length);
+        }
+    }
+
+
+    /**
+     * Can carrying out the given command block for a while, waiting on
+     * station or attachment changes elsewhere in the ET system?
+     * @param command command from user
+     * @return <code>true</code> if command can block
+     */
+    static boolean isBlockingCommand(int command) {
+        return command == EtConstants.netStatAtt  || command == EtConstants.netStatDet  ||
+               command == EtConstants.netStatCrAt || command == EtConstants.netStatRm   ||
+               command == EtConstants.netStatSPos || command == EtConstants.netClose    ||
+               command == EtConstants.netFClose;
+    }
+
+
+    /**
+     * Read the parameters of a request to get or make events.
+     * A request which first puts events ({@link EtConstants#netEvsPutGet})
+     * puts them here, once all its bytes have been read, and then becomes
+     * an ordinary request to get events.
+     *
+     * @param command command from user, one for which {@link #isGetCommand} is true
+     * @return request
+     * @throws IOException if error communicating with user
+     * @throws EtException if an event put is too long for this ET system
+     */
+    GetRequest readGetRequest(int command) throws IOException, EtException {
+        GetRequest req = new GetRequest();
+        req.command = command;
+        req.count = 1;
+        int sec, nsec;
+
+        // Events to put before getting more
+        AttachmentLocal putAtt = null;
+        EtEventImpl[] putEvs = null;
+        if (command == EtConstants.netEvsPutGet) {
+            in.readFully(params, 0, 16);
+            putAtt = attachments.get(EtUtils.bytesToInt(params, 0));
+            putEvs = readEvents(EtUtils.bytesToInt(params, 4));
+            command = req.command = EtConstants.netEvsGet;
+        }
+
+        switch (command) {
+            case EtConstants.netEvGet:
+                in.readFully(params, 0, 20);
+                req.mode  = EtUtils.bytesToInt(params,  4);
+                req.mod   = EtUtils.bytesToInt(params,  8);
+                sec       = EtUtils.bytesToInt(params, 12);
+                nsec      = EtUtils.bytesToInt(params, 16);
+                break;
+
+            case EtConstants.netEvsGet:
+                in.readFully(params, 0, 24);
+                req.mode  = EtUtils.bytesToInt(params,  4);
+                req.mod   = EtUtils.bytesToInt(params,  8);
+                req.count = EtUtils.bytesToInt(params, 12);
+                sec       = EtUtils.bytesToInt(params, 16);
+                nsec      = EtUtils.bytesToInt(params, 20);
+                break;
+
+            case EtConstants.netEvNew:
+                in.readFully(params, 0, 24);
+                req.mode  = EtUtils.bytesToInt(params,  4);
+                req.size  = EtUtils.bytesToLong(params, 8);
+                sec       = EtUtils.bytesToInt(params, 16);
+                nsec      = EtUtils.bytesToInt(params, 20);
+                break;
+
+            case EtConstants.netEvsNew:
+                in.readFully(params, 0, 28);
+                req.mode  = EtUtils.bytesToInt(params,  4);
+                req.size  = EtUtils.bytesToLong(params, 8);
+                req.count = EtUtils.bytesToInt(params, 16);
+                sec       = EtUtils.bytesToInt(params, 20);
+                nsec      = EtUtils.bytesToInt(params, 24);
+                break;
+
+            default:
+                in.readFully(params, 0, 32);
+                req.mode  = EtUtils.bytesToInt(params,  4);
+                req.size  = EtUtils.bytesToLong(params, 8);
+                req.count = EtUtils.bytesToInt(params, 16);
+                req.group = EtUtils.bytesToInt(params, 20);
+                sec       = EtUtils.bytesToInt(params, 24);
+                nsec      = EtUtils.bytesToInt(params, 28);
+        }
+
+        req.att = attachments.get(EtUtils.bytesToInt(params, 0));
+        req.microSec = sec * 1000000 + nsec / 1000;
+
+        if (putEvs != null && putAtt == null) {
+            // unknown attachment, so neither put nor get
+            req.err = EtConstants.error;
+            return req;
+        }
+        else if (putEvs != null && putEvs.length > 0) {
+            sys.putEvents(putAtt, putEvs);
+        }
+
+        if (bit64 && req.count*req.size > Integer.MAX_VALUE/5) {
+            req.err = EtConstants.errorTooBig;
+        }
+
+        return req;
+    }
+
+
+    /**
+     * Get the list from which the events of a request are taken.
+     * @param req request
+     * @return station's input list for get commands, else GRAND_CENTRAL's input list
+     */
+    EventList getInputList(GetRequest req) {
+        if (req.command == EtConstants.netEvGet || req.command == EtConstants.netEvsGet) {
+            return req.att.getStation().getInputList();
+        }
+        return sys.getStations().get(0).getInputList();
+    }
+
+
+    /**
+     * Get or make the events of a request using the given wait mode.
+     *
+     * @param req      request
+     * @param mode     wait mode
+     * @param microSec time to wait in microseconds if timed mode
+     */
+    private void getOrMakeEvents(GetRequest req, int mode, int microSec)
+            throws EtException, EtEmptyException, EtBusyException,
+                   EtTimeoutException, EtWakeUpException {
+
+        switch (req.command) {
+            case EtConstants.netEvGet:
+            case EtConstants.netEvsGet:
+                req.evs = sys.getEvents(req.att, mode, microSec, req.count);
+                break;
+            case EtConstants.netEvNew:
+            case EtConstants.netEvsNew:
+                req.evs = sys.newEvents(req.att, mode, microSec, req.count, (int)req.size);
+                break;
+            default:
+                req.evList = sys.newEvents(req.att, mode, microSec, req.count, (int)req.size, req.group);
+        }
+    }
+
+
+    /**
+     * Get or make the events of a request, waiting for them if the request's
+     * mode says so. Any error is stored in the request.
+     *
+     * @param req request
+     * @throws IOException if error communicating with user
+     */
+    void getEvents(GetRequest req) throws IOException {
+        if (req.err != ok) {
+            return;
+        }
+
+        AttachmentLocal att = req.att;
+
+        try {
+            if (req.mode == EtConstants.timed) {
+                // If we've been told to wake up, do so.
+                if (att.isWakeUp()) {
+                    att.setWakeUp(false);
+                    throw new EtWakeUpException("attachment " + att.getId() + " woken up");
+                }
+                getOrMakeEvents(req, req.mode, req.microSec);
+            }
+            else if (req.mode == EtConstants.sleep) {
+                // NOTE: currently the sleep mode on the client side is implemented
+                // with timed waits because otherwise the client sleeps inside
+                // of synchronized code, blocking all other API calls that talk
+                // over the network.
+
+                // There's a problem if we have a remote client that is waiting
+                // for another event by sleeping and the events stop flowing. In
+                // that case, the client can be killed and the ET system does NOT
+                // know about it. Since this thread will be stuck in "getEvents",
+                // it will not immediately detect the break in the socket - at least
+                // not until events start flowing again. To circumvent this, implement
+                // "sleep" by repeats of "timed" every few seconds to allow
+                // detection of broken socket between calls to "getEvents".
+
+                // Store the fact we're trying to sleep - necessary when
+                // told to wake up.
+                att.setSleepMode(true);
+
+                while (true) {
+                    // try a 4 second wait for events
+                    try {
+                        if (att.isWakeUp()) {
+                            att.setWakeUp(false);
+                            throw new EtWakeUpException("attachment " + att.getId() + " woken up");
+                        }
+                        getOrMakeEvents(req, EtConstants.timed, 4000000);
+                        // no longer in sleep mode
+                        att.setSleepMode(false);
+                        // may have been told to wake up between last 2 statements.
+                        att.setWakeUp(false);
+                        break;
+                    }
+                    // if timeout, check socket to see if still open
+                    catch (EtTimeoutException tx) {
+                        try {
+                            // 1/2 second max delay on read
+                            in.readInt();
+                            // should never be able to get here
+                            att.setSleepMode(false);
+                            throw new EtException("communication protocol error");
+                        }
+                        // if there's an interrupted ex, socket is OK
+                        catch (InterruptedIOException ex) { }
+                    }
+                }
+            }
+            else {
+                getOrMakeEvents(req, req.mode, 0);
+            }
+        }
+        catch (EtException ex) {
+            req.err = EtConstants.error;
+        }
+        catch (EtBusyException ex) {
+            req.err = EtConstants.errorBusy;
+        }
+        catch (EtEmptyException ex) {
+            req.err = EtConstants.errorEmpty;
+        }
+        catch (EtWakeUpException ex) {
+            req.err = EtConstants.errorWakeUp;
+            att.setSleepMode(false);
+        }
+        catch (EtTimeoutException ex) {
+            req.err = EtConstants.errorTimeout;
+        }
+    }
+
+
+    /**
+     * Try to get or make the events of a request without waiting.
+     * If there are none and the request's mode allows waiting, nothing
+     * is done so the caller may try again once events arrive.
+     * To avoid missing those events, call this while holding the lock of the
+     * list returned by {@link #getInputList}.
+     * Any other outcome, including an error, is stored in the request.
+     *
+     * @param req request
+     * @return <code>true</code> if the request is done and can be replied to,
+     *         <code>false</code> if it must wait for events
+     */
+    boolean tryGetEvents(GetRequest req) {
+        if (req.err != ok) {
+            return true;
+        }
+
+        AttachmentLocal att = req.att;
+        boolean canWait = req.mode == EtConstants.sleep || req.mode == EtConstants.timed;
+
+        try {
+            if (canWait) {
+                // If we've been told to wake up, do so.
+                if (att.isWakeUp()) {
+                    att.setWakeUp(false);
+                    throw new EtWakeUpException("attachment " + att.getId() + " woken up");
+                }
+                att.setSleepMode(req.mode == EtConstants.sleep);
+            }
+
+            getOrMakeEvents(req, EtConstants.async, 0);
+
+            // No events of the desired group
+            if (canWait && req.evList != null && req.evList.size() < 1) {
+                req.evList = null;
+                return false;
+            }
+            att.setSleepMode(false);
+        }
+        catch (EtEmptyException ex) {
+            if (canWait) {
+                return false;
+            }
+            req.err = EtConstants.errorEmpty;
+        }
+        catch (EtException ex) {
+            req.err = EtConstants.error;
+        }
+        catch (EtBusyException ex) {
+            req.err = EtConstants.errorBusy;
+        }
+        catch (EtWakeUpException ex) {
+            req.err = EtConstants.errorWakeUp;
+            att.setSleepMode(false);
+        }
+        catch (EtTimeoutException ex) {
+            req.err = EtConstants.errorTimeout;
+        }
+        return true;
+    }
+
+
+    /**
+     * Get a buffer of an event's valid data which does not disturb the event's own buffer.
+     * @param ev event
+     * @return buffer of event's data
+     */
+    private static ByteBuffer dataBuffer(EtEventImpl ev) {
+        ByteBuffer buf = ev.getDataBuffer().duplicate();
+        buf.limit(ev.getLength()).position(0);
+        return buf;
+    }
+
+
+    /**
+     * Read an event's data from the user into the event.
+     * @param ev event whose length has been set
+     * @throws IOException if error communicating with user
+     */
+    private void readData(EtEventImpl ev) throws IOException {
+        ByteBuffer buf = ev.getDataBuffer();
+        if (buf.hasArray()) {
+            in.readFully(buf.array(), buf.arrayOffset(), ev.getLength());
+            return;
+        }
+
+        // data stored outside the heap
+        buf = buf.duplicate();
+        buf.clear();
+        int bytes, left = ev.getLength();
+        while (left > 0) {
+            bytes = Math.min(left, buffer.length);
+            in.readFully(buffer, 0, bytes);
+            buf.put(buffer, 0, bytes);
+            left -= bytes;
+        }
+    }
+
+
+    /**
+     * Read the headers and data of events the user is putting back into the system.
+     * Nothing is put here.
+     *
+     * @param numEvents number of events
+     * @return events read
+     * @throws IOException if error communicating with user
+     * @throws EtException if an event is too long for this ET system
+     */
+    private EtEventImpl[] readEvents(int numEvents) throws IOException, EtException {
+        long len;
+        int  id, priAndStat, index, compressedLength;
+        boolean shared;
+        int  byteChunk = 28 + 4 * selectInts;
+        EtEventImpl[] evs = new EtEventImpl[numEvents];
+
+        // Compressed data are read first and decompressed once all events are read
+        ByteBuffer[] compressed = null;
+        if (readCompressor != null) {
+            readCompressor.clear(numEvents);
+            compressed = new ByteBuffer[numEvents];
+        }
+
+        for (int j = 0; j < numEvents; j++) {
+            in.readFully(params, 0, byteChunk);
+
+            id = EtUtils.bytesToInt(params, 0);
+            evs[j] = sys.getEvents()[id];
+            // 1 if user wrote data directly into the event file
+            shared = sharedMemory && EtUtils.bytesToInt(params, 4) != 0;
+
+            len = EtUtils.bytesToLong(params, 8);
+            if (len > Integer.MAX_VALUE) {
+                throw new EtException("Event is too long for this (java) ET system");
+            }
+            evs[j].setLengthFromServer((int) len);
+
+            priAndStat = EtUtils.bytesToInt(params, 16);
+            evs[j].setPriority(Priority.getPriority(priAndStat & priorityMask));
+            evs[j].setDataStatus(DataStatus.getStatus((priAndStat & dataMask) >> dataShift));
+            evs[j].setRawByteOrder(EtUtils.bytesToInt(params, 20));
+            index = 24;
+            int[] control = new int[selectInts];
+            for (int i = 0; i < selectInts; i++) {
+                control[i] = EtUtils.bytesToInt(params, index += 4);
+            }
+            evs[j].setControl(control);
+            if (evs[j].getModify() == Modify.ANYTHING && shared) {
+                // data is already in place
+                sys.useSharedData(evs[j]);
+                if (evs[j].getLength() > evs[j].getMemSize()) {
+                    throw new EtException("Event is too long for the event file");
+                }
+            }
+            else if (evs[j].getModify() == Modify.ANYTHING) {
+                // If user increased data length beyond memSize,
+                // use more memory.
+                if (evs[j].getLength() > evs[j].getMemSize()) {
+                    evs[j].setData(new byte[evs[j].getLength()]);
+                    evs[j].setMemSize(evs[j].getLength());
+                }
+
+                // length of compressed data, or 0 if not compressed
+                compressedLength = (readCompressor == null) ? 0 : EtUtils.bytesToInt(params, 24);
+                if (compressedLength > 0) {
+                    in.readFully(readCompressor.getBlock(j, compressedLength), 0, compressedLength);
+                    compressed[j] = dataBuffer(evs[j]);
+                }
+                else {
+                    readData(evs[j]);
+                }
+            }
+        }
+
+        if (compressed != null) {
+            readCompressor.decompress(compressed, numEvents);
+        }
+        return evs;
+    }
+
+
+    /**
+     * Send the user the reply to a request to get or make events.
+     *
+     * @param req request which is done
+     * @throws IOException if error communicating with user
+     */
+    void replyGetRequest(GetRequest req) throws IOException {
+        EtEventImpl[] evs = req.evs;
+        if (!req.dataReady) {
+            prepareReply(req);
+        }
+
+        if (req.err != ok) {
+            out.writeInt(req.err);
+            if (req.command == EtConstants.netEvNew) {
+                out.writeLong(0);
+            }
+            out.flush();
+            return;
+        }
+
+        switch (req.command) {
+
+            case EtConstants.netEvGet: {
+                EtEventImpl ev = evs[0];
+
+                // send header from here, data straight from the event
+                byte[] header = new byte[4 * (10 + selectInts)];
+
+                // first send error
+                EtUtils.intToBytes(ok, header, 0);
+                EtUtils.longToBytes((long)ev.getLength(),  header,  4);
+                EtUtils.longToBytes((long)ev.getMemSize(), header, 12);
+                EtUtils.intToBytes(ev.getPriority().getValue() |
+                                   ev.getDataStatus().getValue() << dataShift, header, 20);
+                EtUtils.intToBytes(ev.getId(), header, 24);  // skip 4 bytes here
+                EtUtils.intToBytes(ev.getRawByteOrder(), header, 32);
+                // arrays are initialized to zero so skip 0 values elements
+                int index = 36;
+                int[] control = ev.getControl();
+                for (int i = 0; i < selectInts; i++) {
+                    EtUtils.intToBytes(control[i], header, index += 4);
+                }
+
+                gatherBuffers[0] = ByteBuffer.wrap(header);
+                gatherBuffers[1] = dataBuffer(ev);
+                writer.write(gatherBuffers, 2);
+
+                ev.setModify(Modify.getModify(req.mod));
+                if (req.mod == 0) {
+                    sys.putEvents(req.att, evs);
+                }
+            }
+            break;
+
+
+            case EtConstants.netEvsGet: {
+                // Send all headers from one array, and data straight
+                // from the events, in a single gathering write.
+                int index = 12;
+                int headerSize = 4 * (6 + selectInts);
+                int headerBytes = 4 * (9 + selectInts);
+                int size = evs.length * headerSize;
+
+                // Data buffers were filled, and perhaps compressed, by prepareReply
+                for (int i = 0; i < evs.length; i++) {
+                    if (dataBuffers[i] != null) size += dataBuffers[i].remaining();
+                }
+
+                byte[] headers = buffer;
+                if (12 + evs.length * headerBytes > headers.length) {
+                    headers = new byte[12 + evs.length * headerBytes];
+                }
+                if (2 * evs.length > gatherBuffers.length) {
+                    gatherBuffers = new ByteBuffer[2 * evs.length];
+                }
+
+                EtUtils.intToBytes(evs.length, headers, 0);
+                EtUtils.longToBytes((long)size, headers, 4);
+
+                int start = 0, count = 0;
+                Modify mfy = Modify.getModify(req.mod);
+                for (int j = 0; j < evs.length; j++) {
+                    EtEventImpl ev = evs[j];
+                    ev.setModify(mfy);
+                    EtUtils.longToBytes((long)ev.getLength(), headers, index);
+                    EtUtils.longToBytes((long)ev.getMemSize(), headers, index += 8);
+                    EtUtils.intToBytes(ev.getPriority().getValue() |
+                                     ev.getDataStatus().getValue() << dataShift, headers, index += 8);
+                    // Next int is 1 if the user can find the data in the event file
+                    // instead of in what follows. Always write it since headers is reused.
+                    boolean shared = dataBuffers[j] == null;
+                    EtUtils.intToBytes(ev.getId(), headers, index += 4);
+                    EtUtils.intToBytes(shared ? 1 : 0, headers, index += 4);
+                    EtUtils.intToBytes(ev.getRawByteOrder(), headers, index += 4);
+                    // length of compressed data, or 0 if not compressed
+                    boolean isCompressed = writeCompressor != null && writeCompressor.isCompressed(j);
+                    EtUtils.intToBytes(isCompressed ? dataBuffers[j].remaining() : 0, headers, index += 4);
+                    int[] control = ev.getControl();
+                    for (int i = 0; i < selectInts; i++) {
+                        EtUtils.intToBytes(control[i], headers, index += 4);
+                    }
+                    index += 4;
+
+                    if (!shared) {
+                        gatherBuffers[count++] = ByteBuffer.wrap(headers, start, index - start);
+                        gatherBuffers[count++] = dataBuffers[j];
+                        start = index;
+                    }
+                }
+
+                if (start < index) {
+                    gatherBuffers[count++] = ByteBuffer.wrap(headers, start, index - start);
+                }
+                writer.write(gatherBuffers, count);
+
+                if (req.mod == 0) {
+                    sys.putEvents(req.att, evs);
+                }
+            }
+            break;
+
+
+            case EtConstants.netEvNew: {
+                evs[0].setModify(Modify.ANYTHING);
+
+                out.writeInt(ok);
+                out.writeInt(evs[0].getId());
+                out.writeInt(0); // unused
+                out.flush();
+            }
+            break;
+
+
+            default: {
+                if (evs == null) {
+                    evs = req.evList.toArray(new EtEventImpl[req.evList.size()]);
+                }
+
+                // handle buffering by hand
+                int index = 0;
+                byte[] buf = new byte[4 + 4 * evs.length];
+
+                // first send number of events
+                EtUtils.intToBytes(evs.length, buf, 0);
+                for (EtEventImpl ev : evs) {
+                    ev.setModify(Modify.ANYTHING);
+                    EtUtils.intToBytes(ev.getId(), buf, index += 4);
+                }
+                out.write(buf);
+                out.flush();
+            }
+        }
+    }
+
+
+    /**
+     * Carry out a single command from the user.
+     *
+     * @param command command from user
+     * @return <code>false</code> if the user has closed the connection, else <code>true</code>
+     * @throws IOException     if error communicating with user
+     * @throws EtException     if event is too long for this ET system
+     * @throws EtReadException if bad command value
+     */
+    boolean processCommand(int command) throws IOException, EtException, EtReadException {
+
+        EtEventImpl[] evs;
+
+        // Commands which get or make events are handled separately
+        // so the waiting can be done in different ways.
+        if (isGetCommand(command)) {
+            GetRequest req = readGetRequest(command);
+            getEvents(req);
+            replyGetRequest(req);
+            return true;
+        }
+
+        // Since there are so many commands, break up things up a bit,
+        // start off with commands for local clients for use in Linux
+        // or other non-mutex sharing operating systems.
+
+        if (command < EtConstants.netEvGet) {
+            // No local Linux stuff in Java implementation
+            if (config.getDebug() >= EtConstants.debugError) {
+                System.out.println("No Java support for local Linux");
+            }
+            throw new EtReadException("No Java support for local Linux");
+        }
+
+        else if (command < EtConstants.netAlive) {
+
+            switch (command) {
+
+                case EtConstants.netEvPut: {
+                    in.readFully(params, 0, 32 + 4 * selectInts);
+
+                    int attId = EtUtils.bytesToInt(params, 0);
+                    AttachmentLocal att = attachments.get(new Integer(attId));
+
+                    int id = EtUtils.bytesToInt(params, 4);
+                    EtEventImpl ev = sys.getEvents()[id];
+                    // skip 4 bytes here
+
+                    long len = EtUtils.bytesToLong(params, 12);
+                    if (len > Integer.MAX_VALUE) {
+                        throw new EtException("Event is too long for this (java) ET system");
+                    }
+                    ev.setLengthFromServer((int) len);
+
+                    int priAndStat = EtUtils.bytesToInt(params, 20);
+                    ev.setPriority(Priority.getPriority(priAndStat & priorityMask));
+                    ev.setDataStatus(DataStatus.getStatus((priAndStat & dataMask) >> dataShift));
+                    ev.setRawByteOrder(EtUtils.bytesToInt(params, 24));
+                    // last parameter is ignored
+
+                    int index = 24;
+                    int[] control = new int[selectInts];
+                    for (int i = 0; i < selectInts; i++) {
+                        control[i] = EtUtils.bytesToInt(params, index += 4);
+                    }
+                    ev.setControl(control);
+                    // only read data if modifying everything
+                    if (ev.getModify() == Modify.ANYTHING) {
+                        readData(ev);
+                    }
+
+                    EtEventImpl[] evArray = new EtEventImpl[1];
+                    evArray[0] = ev;
+
+                    sys.putEvents(att, evArray);
+
+                    out.writeInt(ok);
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netEvsPut:
+                case EtConstants.netEvsPutNR: {
+                    in.readFully(params, 0, 16);
+                    int attId           = EtUtils.bytesToInt(params, 0);
+                    AttachmentLocal att = attachments.get(new Integer(attId));
+                    int numEvents       = EtUtils.bytesToInt(params,  4);
+
+                    evs = readEvents(numEvents);
+                    sys.putEvents(att, evs);
+                    if (command == EtConstants.netEvsPut) {
+                        out.writeInt(ok);
+                        out.flush();
+                    }
+                }
+                break;
+
+
+                case EtConstants.netEvDump: {
+                    int  attId = in.readInt();
+                    int  id    = in.readInt();
+
+                    AttachmentLocal att = attachments.get(new Integer(attId));
+                    EtEventImpl ev = sys.getEvents()[id];
+                    EtEventImpl[] evArray = new EtEventImpl[1];
+                    evArray[0] = ev;
+                    sys.dumpEvents(att, evArray);
+
+                    out.writeInt(ok);
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netEvsDump: {
+                    int attId     = in.readInt();
+                    int numEvents = in.readInt();
+                    evs = new EtEventImpl[numEvents];
+                    AttachmentLocal att = attachments.get(new Integer(attId));
+
+                    int id;
+                    byte[] buf = new byte[4 * numEvents];
+                    in.readFully(buf, 0, 4 * numEvents);
+                    int index = -4;
+
+                    for (int j = 0; j < numEvents; j++) {
+                        id = EtUtils.bytesToInt(buf, index += 4);
+                        evs[j] = sys.getEvents()[id];
+                    }
+
+                    sys.dumpEvents(att, evs);
+
+                    out.writeInt(ok);
+                    out.flush();
+                }
+                break;
+
+
+                default:
+                    break;
+            } // switch(command)
+        }   // if (command < Constants.netAlive)
+
+
+        else if (command < EtConstants.netStatGAtts) {
+            switch (command) {
+                case EtConstants.netAlive: {
+                    // we must be alive by definition as this is in the ET process
+                    out.writeInt(1);
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netWait: {
+                    // We are alive by definition and in Java there is no
+                    // routine comparable to et_wait_for_alive(). This is
+                    // to talk to "C" ET systems.
+                    out.writeInt(ok);
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netClose:
+                case EtConstants.netFClose: {
+                    // Client does not listen for a response
+                    //out.writeInt(ok);
+
+                    // detach all attachments
+                    detachAll();
+                    if (config.getDebug() >= EtConstants.debugInfo) {
+                        java.lang.System.out.println("commandLoop: remote client closing");
+                    }
+                    return false;
+                }
+                // break;
+
+
+                case EtConstants.netKill: {
+                    if (config.getDebug() >= EtConstants.debugInfo) {
+                        System.out.println("commandLoop: got command to kill this ET");
+                    }
+                    System.exit(-1);
+                }
+
+
+                case EtConstants.netWakeAtt: {
+                    int attId = in.readInt();
+                    // look locally for attachments
+                    AttachmentLocal att = attachments.get(new Integer(attId));
+                    if (att != null) {
+                        att.getStation().getInputList().wakeUp(att);
+                        // UPDATE: the client side, when talking over sockets, also
+                        // implements SLEEP mode as a series of TIMED mode calls.
+                        // Thus the wake up must be set for them as well.
+                        //if (att.isSleepMode()) {
+                        att.setWakeUp(true);
+                        //}
+                    }
+                }
+                break;
+
+
+                case EtConstants.netWakeAll: {
+                    int statId = in.readInt();
+                    // Stations are stored in a linked list. Find one w/ this id.
+                    synchronized (sys.getStationLock()) {
+                        for (StationLocal stat : sys.getStations()) {
+                            if (stat.getStationId() == statId) {
+                                // Since attachments which sleep when getting events don't
+                                // really sleep (here on server side) but do a timed wait,
+                                // they occasionally are
+                                // not in a get method but are checking the status of the
+                                // tcp connection. This means they don't know to wake up.
+                                // Solve this problem by setting all the station's
+                                // attachment's wake up flags, so that the next call to
+                                // getEvents will make them all wake up.
+
+                                // UPDATE: the client side, when talking over sockets, also
+                                // implements SLEEP mode as a series of TIMED mode calls.
+                                // Thus the wake up must be set for them as well.
+                                for (AttachmentLocal att : stat.getAttachments()) {
+                                //    if (att.isSleepMode()) {
+                                    att.setWakeUp(true);
+                                //    }
+                                }
+
+                                stat.getInputList().wakeUpAll();
+                                break;
+                            }
+                        }
+                    }
+                }
+                break;
+
+
+                case EtConstants.netStatAtt: {
+                    int err = ok;
+                    int statId   = in.readInt();
+                    int pid      = in.readInt();
+                    int length   = in.readInt();
+                    int ipLength = in.readInt();
+                    String host = null, ipAddr = null;
+                    AttachmentLocal att = null;
+
+                    if (length > 0) {
+                        byte buf[] = new byte[length];
+                        in.readFully(buf, 0, length);
+                        host = new String(buf, 0, length - 1, "ASCII");
+                    }
+
+                    if (ipLength > 0) {
+                        byte buf[] = new byte[ipLength];
+                        in.readFully(buf, 0, ipLength);
+                        ipAddr = new String(buf, 0, ipLength - 1, "ASCII");
+                    }
+
+                    try {
+                        att = sys.attach(statId);
+                        att.setPid(pid);
+                        if (length > 0) {
+                            att.setHost(host);
+                        }
+                        if (ipLength > 0) {
+                            att.setIpAddress(ipAddr);
+                        }
+                        // keep track of all attachments locally
+                        attachments.put(att.getId(), att);
+                    }
+                    catch (EtException ex) {
+                        err = EtConstants.error;
+                    }
+                    catch (EtTooManyException ex) {
+                        err = EtConstants.errorTooMany;
+                    }
+
+                    out.writeInt(err);
+                    if (err == ok) {
+                        out.writeInt(att.getId());
+                    }
+                    else {
+                        out.writeInt(0);
+                    }
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netStatDet: {
+                    int attId = in.readInt();
+                    AttachmentLocal att = attachments.get(new Integer(attId));
+
+                    sys.detach(att);
+
+                    // keep track of all detachments locally
+                    attachments.remove(att.getId());
+                    out.writeInt(ok);
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netStatCrAt: {
+                    int err = ok;
+                    StationLocal stat = null;
+                    EtStationConfig statConfig = new EtStationConfig();
+
+                    // read in station config info
+                    int init = in.readInt(); // not used in Java
+                    statConfig.setFlowMode(in.readInt());
+                    statConfig.setUserMode(in.readInt());
+                    statConfig.setRestoreMode(in.readInt());
+                    statConfig.setBlockMode(in.readInt());
+                    statConfig.setPrescale(in.readInt());
+                    statConfig.setCue(in.readInt());
+                    statConfig.setSelectMode(in.readInt());
+                    int[] select = new int[EtConstants.stationSelectInts];
+                    for (int i = 0; i < EtConstants.stationSelectInts; i++) {
+                        select[i] = in.readInt();
+                    }
+                    statConfig.setSelect(select);
+
+                    // If both a function name and library name are sent,
+                    // the user thinks he's talking to a C system when
+                    // it's really a Java java.lang.System. If only a single name
+                    // (class) is supplied, the user knows what he's doing.
+                    int lengthFunc       = in.readInt();
+                    int lengthLib        = in.readInt();
+                    int lengthClass      = in.readInt();
+                    int lengthName       = in.readInt();
+                    int position         = in.readInt();
+                    int parallelPosition = in.readInt();
+
+                    int length = (lengthClass > lengthLib) ? lengthClass : lengthLib;
+                    length = (length > lengthFunc) ? length : lengthFunc;
+                    length = (length > lengthName) ? length : lengthName;
+                    byte[] buf = new byte[length];
+
+                    if (lengthFunc > 0) {
+                        in.readFully(buf, 0, lengthFunc);
+                        statConfig.setSelectFunction(new String(buf, 0, lengthFunc - 1, "ASCII"));
+                    }
+                    if (lengthLib > 0) {
+                        in.readFully(buf, 0, lengthLib);
+                        statConfig.setSelectLibrary(new String(buf, 0, lengthLib - 1, "ASCII"));
+                    }
+                    if (lengthClass > 0) {
+                        in.readFully(buf, 0, lengthClass);
+                        statConfig.setSelectClass(new String(buf, 0, lengthClass - 1, "ASCII"));
+                    }
+
+                    in.readFully(buf, 0, lengthName);
+                    String name = new String(buf, 0, lengthName - 1, "ASCII");
+
+                    try {
+                        stat = sys.createStation(statConfig, name, position, parallelPosition);
+                    }
+                    catch (EtTooManyException ex) {
+                        err = EtConstants.errorTooMany;
+                    }
+                    catch (EtExistsException ex) {
+                        err = EtConstants.errorExists;
+                    }
+                    catch (EtException ex) {
+                        err = EtConstants.error;
+                    }
+
+                    out.writeInt(err);
+                    if (err != ok) {
+                        out.writeInt(0);
+                    }
+                    else {
+                        out.writeInt(stat.getStationId());
+                    }
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netStatRm: {
+                    int err = ok;
+                    int statId = in.readInt();
+
+                    try {
+                        sys.removeStation(statId);
+                    }
+                    catch (EtException ex) {
+                        err = EtConstants.error;
+                    }
+
+                    out.writeInt(err);
+                    out.flush();
+                }
+                break;
+
+                case EtConstants.netStatSPos: {
+                    int err = ok;
+                    int statId = in.readInt();
+                    int position = in.readInt();
+                    int pposition = in.readInt();
+
+                    try {
+                        sys.setStationPosition(statId, position, pposition);
+                    }
+                    catch (EtException ex) {
+                        err = EtConstants.error;
+                    }
+
+                    out.writeInt(err);
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netStatGPos: {
+                    int position = -1, pPosition = 0;
+                    int err = ok;
+                    int statId = in.readInt();
+
+                    try {
+                        position  = sys.getStationPosition(statId);
+                        pPosition = sys.getStationParallelPosition(statId);
+                    }
+                    catch (EtException ex) {
+                        err = EtConstants.error;
+                    }
+
+                    out.writeInt(err);
+                    out.writeInt(position);
+                    out.writeInt(pPosition);
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netStatIsAt: {
+                    int attached; // not attached by default
+                    int statId = in.readInt();
+                    int attId = in.readInt();
+
+                    try {
+                        attached = sys.stationAttached(statId, attId) ? 1 : 0;
+                    }
+                    catch (EtException ex) {
+                        attached = EtConstants.error;
+                    }
+
+                    out.writeInt(attached);
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netStatEx: {
+                    boolean exists = true;
+                    int statId = 0;
+                    int length = in.readInt();
+                    byte[] buf = new byte[length];
+                    in.readFully(buf, 0, length);
+                    String name = new String(buf, 0, length - 1, "ASCII");
+
+                    // in equivalent "C" function, station id is also returned
+                    try {
+                        statId = sys.stationNameToObject(name).getStationId();
+                    }
+                    catch (EtException ex) {
+                        exists = false;
+                    }
+
+                    out.writeInt(exists ? 1 : 0);
+                    out.writeInt(statId);
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netStatSSw: {
+                    StationLocal stat = null;
+                    int[] select = new int[selectInts];
+                    int statId = in.readInt();
+
+                    for (int i = 0; i < selectInts; i++) {
+                        select[i] = in.readInt();
+                    }
+
+                    try {
+                        stat = sys.stationIdToObject(statId);
+                    }
+                    catch (EtException ex) {
+                    }
+
+                    if (stat != null) {
+                        stat.setSelectWords(select);
+                        out.writeInt(ok);
+                    }
+                    else {
+                        out.writeInt(EtConstants.error);
+                    }
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netStatGSw: {
+                    int statId = in.readInt();
+                    StationLocal stat = null;
+
+                    try {
+                        stat = sys.stationIdToObject(statId);
+                    }
+                    catch (EtException ex) {
+                    }
+
+                    if (stat != null) {
+                        out.writeInt(ok);
+                        int[] select = stat.getConfig().getSelect();
+                        for (int i = 0; i < selectInts; i++) {
+                            out.writeInt(select[i]);
+                        }
+                    }
+                    else {
+                        out.writeInt(EtConstants.error);
+                    }
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netStatFunc:
+                case EtConstants.netStatLib:
+                case EtConstants.netStatClass: {
+                    int statId = in.readInt();
+                    StationLocal stat;
+
+                    try {
+                        stat = sys.stationIdToObject(statId);
+                        String returnString;
+                        if (command == EtConstants.netStatFunc) {
+                            returnString = stat.getConfig().getSelectFunction();
+                        }
+                        else if (command == EtConstants.netStatLib) {
+                            returnString = stat.getConfig().getSelectLibrary();
+                        }
+                        else {
+                            returnString = stat.getConfig().getSelectClass();
+                        }
+
+                        if (returnString == null) {
+                            out.writeInt(EtConstants.error);
+                            out.writeInt(0);
+                        }
+                        else {
+                            out.writeInt(ok);
+                            out.writeInt(returnString.length() + 1);
+                            try {
+                                out.write(returnString.getBytes("ASCII"));
+                            }
+                            catch (UnsupportedEncodingException ex) {
+                            }
+                            out.writeByte(0); // C null terminator
+                        }
+                    }
+                    catch (EtException ex) {
+                        out.writeInt(EtConstants.error);
+                        out.writeInt(-1);
+                    }
+
+                    out.flush();
+
+                }
+                break;
+
+
+                default :
+                    ;
+            } // switch(command)
+        }   // if (command < Constants.netStatGAtts)
+
+        // the following commands get values associated with stations
+        else if (command < EtConstants.netStatSBlock) {
+            int val = 0;
+            int statId = in.readInt();
+
+            StationLocal stat = null;
+            try {
+                stat = sys.stationIdToObject(statId);
+            }
+            catch (EtException ex) {
+            }
+
+            if (stat == null) {
+                out.writeInt(EtConstants.error);
+            }
+            else {
+                if (command == EtConstants.netStatGAtts) {
+                    synchronized (sys.getStationLock()) {
+                        val = stat.getAttachments().size();
+                    }
+                }
+                else if (command == EtConstants.netStatStatus)
+                    val = stat.getStatus();
+                else if (command == EtConstants.netStatInCnt) {
+                    synchronized (stat.getInputList()) {
+                        val = stat.getInputList().size();
+                    }
+                }
+                else if (command == EtConstants.netStatOutCnt) {
+                    synchronized (stat.getOutputList()) {
+                        val = stat.getOutputList().size();
+                    }
+                }
+                else if (command == EtConstants.netStatGBlock)
+                    val = stat.getConfig().getBlockMode();
+                else if (command == EtConstants.netStatGUser)
+                    val = stat.getConfig().getUserMode();
+                else if (command == EtConstants.netStatGRestore)
+                    val = stat.getConfig().getRestoreMode();
+                else if (command == EtConstants.netStatGPre)
+                    val = stat.getConfig().getPrescale();
+                else if (command == EtConstants.netStatGCue)
+                    val = stat.getConfig().getCue();
+                else if (command == EtConstants.netStatGSelect)
+                    val = stat.getConfig().getSelectMode();
+                else {
+                    if (config.getDebug() >= EtConstants.debugError) {
+                        java.lang.System.out.println("commandLoop: bad command value");
+                    }
+                    throw new EtReadException("bad command value");
+                }
+                out.writeInt(ok);
+            }
+            out.writeInt(val);
+            out.flush();
+        }
+
+        // the following commands set values associated with stations
+        else if (command < EtConstants.netAttPut) {
+            int statId = in.readInt();
+            int val = in.readInt();
+
+            StationLocal stat = null;
+            try {
+                stat = sys.stationIdToObject(statId);
+            }
+            catch (EtException ex) {
+            }
+
+            if (stat == null) {
+                out.writeInt(EtConstants.error);
+            }
+            else {
+                if (command == EtConstants.netStatSBlock)
+                    stat.setBlockMode(val);
+                else if (command == EtConstants.netStatSUser)
+                    stat.setUserMode(val);
+                else if (command == EtConstants.netStatSRestore)
+                    stat.setRestoreMode(val);
+                else if (command == EtConstants.netStatSPre)
+                    stat.setPrescale(val);
+                else if (command == EtConstants.netStatSCue)
+                    stat.setCue(val);
+                else {
+                    if (config.getDebug() >= EtConstants.debugError) {
+                        java.lang.System.out.println("commandLoop: bad command value");
+                    }
+                    throw new EtReadException("bad command value");
+                }
+                out.writeInt(ok);
+            }
+            out.flush();
+        }
+
+        // the following commands get values associated with attachments
+        else if (command < EtConstants.netSysTmp) {
+            int attId = in.readInt();
+            // look locally for attachments
+            AttachmentLocal att = attachments.get(new Integer(attId));
+            if (att == null) {
+                out.writeInt(EtConstants.error);
+                out.writeLong(0);
+            }
+            else {
+                out.writeInt(ok);
+                if (command == EtConstants.netAttPut)
+                    out.writeLong(att.getEventsPut());
+                else if (command == EtConstants.netAttGet)
+                    out.writeLong(att.getEventsGet());
+                else if (command == EtConstants.netAttDump)
+                    out.writeLong(att.getEventsDump());
+                else if (command == EtConstants.netAttMake)
+                    out.writeLong(att.getEventsMake());
+            }
+            out.flush();
+        }
+
+        // the following commands get values associated with the system
+        else if (command <= EtConstants.netSysGrp) {
+            int val;
+
+            if (command == EtConstants.netSysTmp)
+                val = 0; // no temps (or all temps) by definition
+            else if (command == EtConstants.netSysTmpMax)
+                val = 0; // no max # of temps
+            else if (command == EtConstants.netSysStat) {
+                synchronized (sys.getStationLock()) {
+                    val = sys.getStations().size(); // # stations active or idle
+                }
+            }
+            else if (command == EtConstants.netSysStatMax)
+                val = sys.getConfig().getStationsMax(); // max # stations allowed
+            else if (command == EtConstants.netSysProc)
+                val = 0; // no processes since no shared memory
+            else if (command == EtConstants.netSysProcMax)
+                val = 0; // no max # of processes since no shared memory
+            else if (command == EtConstants.netSysAtt) {
+                synchronized (sys.getSystemLock()) {
+                    val = sys.getAttachments().size(); // # attachments
+                }
+            }
+            else if (command == EtConstants.netSysAttMax)
+                val = sys.getConfig().getAttachmentsMax(); // max # attachments allowed
+            else if (command == EtConstants.netSysHBeat)
+                val = 0; // no heartbeat since no shared mem
+            else if (command == EtConstants.netSysPid) {
+                val = -1; // no pids in Java
+            }
+            else if (command == EtConstants.netSysGrp) {
+                val = sys.getConfig().getGroups().length; // number of groups
+            }
+            else {
+                if (config.getDebug() >= EtConstants.debugError) {
+                    java.lang.System.out.println("commandLoop: bad command value");
+                }
+                throw new EtReadException("bad command value");
+            }
+
+            out.writeInt(ok);
+            out.writeInt(val);
+            out.flush();
+        }
+
+
+        else if (command <= EtConstants.netSysGrps) {
+            // command to distribute data about this ET system over the network
+            if (command == EtConstants.netSysData) {
+                // allow only 1 thread at a time a crack at updating information
+                synchronized (sys.getInfoArray()) {
+                    int err = sys.gatherSystemData();
+                    out.writeInt(err);
+                    if (err == ok) {
+                        // Send data + int holding data size
+                        out.write(sys.getInfoArray(), 0, sys.getDataLength() + 4);
+                    }
+                }
+                out.flush();
+            }
+
+            // send histogram data
+            else if (command == EtConstants.netSysHist) {
+                // not supported under Java (yet)
+                out.writeInt(EtConstants.error);
+                out.flush();
+            }
+
+            // send group data
+            else if (command == EtConstants.netSysGrps) {
+                // send number of groups to follow
+                int[] groups = sys.getConfig().getGroups();
+                out.writeInt(groups.length);
+
+                // send number in each group
+                for (int j : groups) {
+                    out.writeInt(j);
+                }
+                out.flush();
+            }
+        }
+
+        else if (command == EtConstants.netSysMetrics) {
+            byte[] text = sys.getMetrics().toText().getBytes("ASCII");
+            out.writeInt(ok);
+            out.writeInt(text.length);
+            out.write(text);
+            out.flush();
+        }
+
+        else if (command == EtConstants.netSysCompress) {
+            // only one kind of compression so far
+            if (in.readInt() == EtConstants.compressLz4) {
+                readCompressor  = new EtCompressor();
+                writeCompressor = new EtCompressor();
+                out.writeInt(ok);
+            }
+            else {
+                out.writeInt(EtConstants.error);
+            }
+            out.flush();
+        }
+
+        else if (command == EtConstants.netSysShm) {
+            // 0 = describe the file in which events' data are stored, 1 = start using it
+            int use = in.readInt();
+            String fileName = config.getEventFile();
+
+            if (fileName == null) {
+                out.writeInt(EtConstants.error);
+            }
+            else if (use == 0) {
+                byte[] name = new File(fileName).getAbsolutePath().getBytes("ASCII");
+                out.writeInt(ok);
+                out.writeInt(config.getNumEvents());
+                out.writeLong(config.getEventSize());
+                out.writeLong(sys.getEventFileId());
+                out.writeLong(SystemCreate.eventFileDataOffset);
+                out.writeInt(name.length);
+                out.write(name);
+            }
+            else {
+                sharedMemory = true;
+                out.writeInt(ok);
+            }
+            out.flush();
+        }
+
+        else {
+            if (config.getDebug() >= EtConstants.debugError) {
+                java.lang.System.out.println("commandLoop: bad command value");
+            }
+            throw new EtReadException("bad command value");
+        }
+
+        return true;
+    }
+}
@@ -17,7 +17,6 @@ package org.jlab.coda.et.system;
 import java.lang.*;
 import java.util.*;
 import org.jlab.coda.et.exception.*;
-import org.jlab.coda.et.EtEvent;
 import org.jlab.coda.et.EtConstants;
 import org.jlab.coda.et.EtEventImpl;
 import org.jlab.coda.et.enums.Priority;
@@ -31,8 +30,17 @@ import org.jlab.coda.et.enums.Priority;
 
 class EventList {
 
-    /** List of events. */
-    private ArrayList<EtEventImpl> events;
+    /** High priority events, in order, one ring for each group of events. */
+    private EventRing[] high;
+
+    /** Low priority events, in order, one ring for each group of events. */
+    private EventRing[] low;
+
+    /** Are events kept apart by group (is there more than one ring)? */
+    private final boolean grouped;
+
+    /** Index of the group from which events are taken first when any group will do. */
+    private int nextGroup;
 
     /** Number of events put into this list. */
     private long eventsIn;
@@ -52,26 +60,136 @@ class EventList {
      *  up needs to reset wakeAll. */
     private int waitingCount;
 
-    // output list members only
+    /** Readers waiting for events without a thread of their own. */
+    private ArrayList<Waiter> waiters = new ArrayList<Waiter>();
+
+    /** Is a thread waiting for events to be taken out of this list to make room? */
+    private boolean roomWanted;
+
+    /** Number of events in this list each time events are gotten from it,
+     *  or null if not kept. */
+    private final LogHistogram depths;
 
-    /** Position of the last high priority event in the linked list. */
-    private int lastHigh;
 
 
+    /**
+     * This interface is implemented by a reader of events which, instead of having
+     * a thread wait inside {@link #get}, leaves itself in the list to be told when
+     * events arrive.
+     */
+    interface Waiter {
+        /**
+         * Get the attachment reading events.
+         * @return attachment reading events
+         */
+        AttachmentLocal getAttachment();
+
+        /**
+         * Called once, with the list's lock held, when events have been added to
+         * the list or the attachment has been woken up. The waiter is no longer
+         * in the list and must try reading again. Must not block.
+         */
+        void resume();
+    }
+
 
-    /** Construct a new EventList object. */
+    /**
+     * Construct a new EventList object. High and low priority events are kept
+     * in separate rings so that neither taking events off the front nor adding
+     * high priority events moves the events already in the list.
+     * @param listSize most events the list will need to hold
+     */
     EventList(int listSize) {
-        events = new ArrayList<EtEventImpl>(listSize);
+        this(new int[] {listSize}, null);
+    }
+
+
+    /**
+     * Construct a new EventList object for a station's input list which keeps
+     * track of the number of events in it each time events are gotten.
+     * @param listSize most events the list will need to hold
+     * @param depths   histogram of the number of events in this list when
+     *                 events are gotten, or null if not kept
+     */
+    EventList(int listSize, LogHistogram depths) {
+        this(new int[] {listSize}, depths);
+    }
+
+
+    /**
+     * Construct a new EventList object which, if given more than one group,
+     * keeps the events of each group in rings of their own. Getting events of
+     * one group then takes them off the front of its rings without looking at
+     * any others. This is used for GRAND_CENTRAL's input list, which holds the
+     * free events of all groups.
+     *
+     * @param groupSizes most events of each group (starting with group 1)
+     *                   the list will need to hold
+     * @param depths     histogram of the number of events in this list when
+     *                   events are gotten, or null if not kept
+     */
+    EventList(int[] groupSizes, LogHistogram depths) {
+        grouped = groupSizes.length > 1;
+        high = new EventRing[groupSizes.length];
+        low  = new EventRing[groupSizes.length];
+        for (int i=0; i < groupSizes.length; i++) {
+            high[i] = new EventRing(groupSizes[i]);
+            low[i]  = new EventRing(groupSizes[i]);
+        }
+        this.depths = depths;
+    }
+
+
+    /**
+     * Get the index of the rings holding an event.
+     * @param ev event
+     * @return index of the rings holding the event
+     */
+    private int ringIndex(EtEventImpl ev) {
+        return grouped ? ev.getGroup() - 1 : 0;
+    }
+
+
+    /**
+     * Mark the time at which events entered this list so the time they spend
+     * in a station can be measured.
+     * @param newEvents list of events entering this list
+     * @param from      index of first event
+     * @param to        index after last event
+     */
+    private static void markTime(List<EtEventImpl> newEvents, int from, int to) {
+        long now = System.nanoTime();
+        for (int i=from; i < to; i++) {
+            newEvents.get(i).setStationTime(now);
+        }
     }
 
 
 
     /**
-     * Get the linked list of events.
-     * @return linked list of events
+     * Get the number of events in this list.
+     * @return number of events in this list
      */
-    ArrayList<EtEventImpl> getEvents() {
-        return events;
+    int size() {
+        if (!grouped) {
+            return high[0].size() + low[0].size();
+        }
+        int size = 0;
+        for (int i=0; i < high.length; i++) {
+            size += high[i].size() + low[i].size();
+        }
+        return size;
+    }
+
+
+    /**
+     * Get the number of events of a group in this list.
+     * @param group group number of events (starting at 1)
+     * @return number of events of the group in this list
+     */
+    int size(int group) {
+        int i = grouped ? group - 1 : 0;
+        return high[i].size() + low[i].size();
     }
 
     /**
@@ -126,11 +244,57 @@ class EventList {
     // methods for waking up reading attachments on input lists
 
 
+    /**
+     * Add a reader which waits for events without a thread. Call this while
+     * holding this list's lock, after finding no events to read, so none are missed.
+     * @param waiter reader waiting for events
+     */
+    synchronized void addWaiter(Waiter waiter) {
+        waiters.add(waiter);
+    }
+
+
+    /**
+     * Remove a reader which waits for events without a thread.
+     * @param waiter reader waiting for events
+     * @return <code>true</code> if waiter was removed, <code>false</code> if
+     *         it was not in the list (it has already been resumed)
+     */
+    synchronized boolean removeWaiter(Waiter waiter) {
+        return waiters.remove(waiter);
+    }
+
+
+    /**
+     * Resume all readers waiting for events without a thread. Call this
+     * while holding this list's lock whenever events are added.
+     */
+    void resumeWaiters() {
+        if (waiters.size() < 1) {
+            return;
+        }
+        Waiter[] resumed = waiters.toArray(new Waiter[waiters.size()]);
+        waiters.clear();
+        for (Waiter waiter : resumed) {
+            waiter.resume();
+        }
+    }
+
+
     /**
      * Wake up an attachment waiting to read events from this list.
      * @param att attachment to be woken up
      */
     synchronized void wakeUp(AttachmentLocal att) {
+        for (Iterator<Waiter> i = waiters.iterator(); i.hasNext();) {
+            Waiter waiter = i.next();
+            if (waiter.getAttachment() == att) {
+                i.remove();
+                att.setWakeUp(true);
+                waiter.resume();
+            }
+        }
+
         if (!att.isWaiting()) {
             return;
         }
@@ -139,8 +303,26 @@ class EventList {
     }
 
 
+    /**
+     * Wait until events are taken out of this list or until notified. Used by the
+     * thread putting events spilled to disk back into a station's input list.
+     * Call with this list's lock held.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void waitForRoom() throws InterruptedException {
+        roomWanted = true;
+        wait();
+    }
+
+
     /** Wake up all attachments waiting to read events from this list. */
     synchronized void wakeUpAll() {
+        for (Waiter waiter : waiters) {
+            waiter.getAttachment().setWakeUp(true);
+        }
+        resumeWaiters();
+
         if (waitingCount < 1) {
             return;
         }
@@ -156,8 +338,16 @@ class EventList {
      * @param newEvents list of events to put
      */
     void putInLow(List<EtEventImpl> newEvents) {
+        markTime(newEvents, 0, newEvents.size());
         // add all events to list's end
-        events.addAll(newEvents);
+        if (grouped) {
+            for (EtEventImpl ev : newEvents) {
+                low[ringIndex(ev)].addLast(ev);
+            }
+        }
+        else {
+            low[0].addLast(newEvents, 0, newEvents.size());
+        }
         // keep stats
         eventsIn += newEvents.size();
     }
@@ -171,6 +361,9 @@ class EventList {
     synchronized void putInGC(EtEventImpl[] newEvents) {
         // convert array to list and put as low priority events
         putInLow(Arrays.asList(newEvents));
+        // users waiting for new events may each want a different group
+        notifyAll();
+        resumeWaiters();
     }
 
 
@@ -181,6 +374,8 @@ class EventList {
      */
     synchronized void putInGC(List<EtEventImpl> newEvents) {
         putInLow(newEvents);
+        notifyAll();
+        resumeWaiters();
     }
 
 
@@ -194,49 +389,27 @@ class EventList {
     void putAll(List<EtEventImpl> newEvents) {
         // number of incoming events
         int num = newEvents.size();
+        markTime(newEvents, 0, num);
 
-        // all incoming events' priorities are low or no events in this EventList
-        if ((events.size() == 0) || ((newEvents.get(0)).getPriority() == Priority.LOW))  {
-            // adds new events to the end
-            events.addAll(newEvents);
-            /*
-            if ((newEvents.get(0)).priority == Constants.low) {
-              System.out.println("  putAll in as is as incoming are all low pri, " + newEvents.size());
-            }
-            if (events.size() == 0) {
-              System.out.println("  putAll in as is as list EventList empty, " + newEvents.size());
-            }
-            */
+        // add new high pri items after those already in list
+        int newHighCount = 0;
+        while (newHighCount < num && newEvents.get(newHighCount).getPriority() == Priority.HIGH) {
+            newHighCount++;
         }
 
-        // if any high pri events (count != 0) ...
-        else {
-            // find last high priority event already in list
-            int highCount = 0;
-            for (EtEvent ev : events) {
-                if (ev.getPriority() != Priority.HIGH) {
-                    break;
-                }
-                highCount++;
-            }
-//System.out.println("  putAll last high of input list = " + highCount);
-
-            // add new high pri items
-            int newHighCount = 0;
-            for (EtEventImpl ev : newEvents) {
-                if (ev.getPriority() != Priority.HIGH) {
-                    break;
-                }
-//System.out.println("  putAll add high " + ev.id + " at " + (highCount + newHighCount));
-                events.add(highCount + newHighCount++, ev);
+        if (grouped) {
+            for (int i=0; i < num; i++) {
+                EtEventImpl ev = newEvents.get(i);
+                (i < newHighCount ? high : low)[ringIndex(ev)].addLast(ev);
             }
+        }
+        else {
+            high[0].addLast(newEvents, 0, newHighCount);
 
             // rest are low pri, add to end
-            if (newHighCount < num) {
-//System.out.println("  putAll add " + (num - newHighCount) + " lows at end");
-                events.addAll(newEvents.subList(newHighCount, num));
-            }
+            low[0].addLast(newEvents, newHighCount, num);
         }
+
         // keep stats
         eventsIn += num;
         return;
@@ -249,25 +422,19 @@ class EventList {
      * @param newEvents array of events to put
      */
     synchronized void put(EtEventImpl[] newEvents) {
-        // if no events in list, initialize lastHigh
-        if (events.size() == 0) {
-            lastHigh = 0;
-        }
-
         // put events in one-by-one - with place depending on priority
         for (EtEventImpl ev : newEvents) {
             // if low priority event, add to the list end
             if (ev.getPriority() == Priority.LOW) {
-//System.out.println(" put in low - " + ev.id);
-                events.add(ev);
+                low[ringIndex(ev)].addLast(ev);
             }
             // else if high pri event, add after other high priority events
             else {
-//System.out.println(" put in high - " + ev.id);
-                events.add(lastHigh++, ev);
+                high[ringIndex(ev)].addLast(ev);
             }
         }
         notify();
+        resumeWaiters();
         return;
     }
 
@@ -278,25 +445,19 @@ class EventList {
      * @param newEvents list of events to put
      */
     synchronized void put(List<EtEventImpl> newEvents) {
-        // if no events in list, initialize lastHigh
-        if (events.size() == 0) {
-            lastHigh = 0;
-        }
-
         // put events in one-by-one - with place depending on priority
         for (EtEventImpl ev : newEvents) {
             // if low priority event, add to the list end
             if (ev.getPriority() == Priority.LOW) {
-//System.out.println(" put in low - " + ev.id);
-                events.add(ev);
+                low[ringIndex(ev)].addLast(ev);
             }
             // else if high pri event, add after other high priority events
             else {
-//System.out.println(" put in high - " + ev.id);
-                events.add(lastHigh++, ev);
+                high[ringIndex(ev)].addLast(ev);
             }
         }
         notify();
+        resumeWaiters();
         return;
     }
 
@@ -309,38 +470,19 @@ class EventList {
      * @param newEvents list of events to put
      */
     synchronized void putReverse(List<EtEventImpl> newEvents) {
-        // if no events in list, initialize lastHigh
-        if (events.size() == 0) {
-            lastHigh = 0;
-        }
-        else {
-            // The lastHigh is NOT tracked for input lists, so let's do
-            // it here since this method can be used for input lists.
-            int highCount = 0;
-            for (EtEvent ev : events) {
-                if (ev.getPriority() != Priority.HIGH) {
-                    break;
-                }
-                highCount++;
-            }
-            lastHigh = highCount;
-        }
-
         // put events in one-by-one - with place depending on priority
         for (EtEventImpl ev : newEvents) {
             // if low priority event, add below last high priority but above low priority events
             if (ev.getPriority() == Priority.LOW) {
-//System.out.println(" put in low - " + ev.id);
-                events.add(lastHigh, ev);
+                low[ringIndex(ev)].addFirst(ev);
             }
             // else if high pri event, add to the top
             else {
-//System.out.println(" put in high - " + ev.id);
-                events.add(0, ev);
-                lastHigh++;
+                high[ringIndex(ev)].addFirst(ev);
             }
         }
         notify();
+        resumeWaiters();
         return;
     }
 
@@ -350,9 +492,13 @@ class EventList {
      * @param eventsToGo list of event to get
      */
     synchronized void get(List<EtEventImpl> eventsToGo) {
-        eventsToGo.addAll(events);
-        eventsOut += events.size();
-        events.clear();
+        eventsOut += size();
+        for (EventRing ring : high) {
+            ring.takeAll(eventsToGo);
+        }
+        for (EventRing ring : low) {
+            ring.takeAll(eventsToGo);
+        }
         return;
     }
 
@@ -375,7 +521,7 @@ class EventList {
     synchronized EtEventImpl[] get(AttachmentLocal att, int mode, int microSec, int quantity)
             throws EtEmptyException, EtWakeUpException, EtTimeoutException {
 
-        int  nanos, count = events.size();
+        int  nanos, count = size();
         long begin, microDelay, milliSec, elapsedTime = 0;
 
         // Sleep mode is never used since it is implemented in the TcpServer
@@ -405,7 +551,7 @@ class EventList {
 
                     att.setWaiting(false);
                     waitingCount--;
-                    count = events.size();
+                    count = size();
                 }
             }
             else if (mode == EtConstants.timed) {
@@ -442,7 +588,7 @@ class EventList {
 
                     att.setWaiting(false);
                     waitingCount--;
-                    count = events.size();
+                    count = size();
 //System.out.println("  get" + att.id + ": woke up and counts = " + count);
                 }
             }
@@ -451,21 +597,59 @@ class EventList {
             }
         }
 
+        if (depths != null) {
+            depths.record(count);
+        }
+
         if (quantity > count) {
             quantity = count;
         }
 //System.out.println("  get"+ att.id + ": quantity = " + quantity);
 
-        List<EtEventImpl> deleteList = events.subList(0, quantity);
+        // high priority events first
         EtEventImpl[] eventsToGo = new EtEventImpl[quantity];
-        deleteList.toArray(eventsToGo);
-        deleteList.clear();
+        if (!grouped) {
+            int highCount = Math.min(quantity, high[0].size());
+            high[0].take(eventsToGo, 0, highCount);
+            low[0].take(eventsToGo, highCount, quantity - highCount);
+        }
+        else {
+            // Any group will do, so start with a different one each
+            // time so the events of no group are left sitting
+            int taken = 0;
+            taken = takeFromRings(high, eventsToGo, taken, quantity);
+            takeFromRings(low, eventsToGo, taken, quantity);
+            nextGroup = (nextGroup + 1) % high.length;
+        }
 
         eventsOut += quantity;
+        if (roomWanted) {
+            roomWanted = false;
+            notifyAll();
+        }
         return eventsToGo;
     }
 
 
+    /**
+     * Take events from rings of all groups, starting with {@link #nextGroup}.
+     * @param rings    rings of one priority
+     * @param evs      array in which to place the events
+     * @param taken    number of events already placed in evs
+     * @param quantity number of events wanted in evs
+     * @return number of events placed in evs
+     */
+    private int takeFromRings(EventRing[] rings, EtEventImpl[] evs, int taken, int quantity) {
+        for (int i=0; i < rings.length && taken < quantity; i++) {
+            EventRing ring = rings[(nextGroup + i) % rings.length];
+            int num = Math.min(quantity - taken, ring.size());
+            ring.take(evs, taken, num);
+            taken += num;
+        }
+        return taken;
+    }
+
+
     /**
      * Method for an attachment (in TcpServer thread) to get a list of events.
      *
@@ -485,20 +669,16 @@ class EventList {
     synchronized List<EtEventImpl> get(AttachmentLocal att, int mode, int microSec, int quantity, int group)
             throws EtEmptyException, EtWakeUpException, EtTimeoutException {
 
-        int nanos, count = events.size(), groupCount = 0;
-        EtEventImpl ev;
-        boolean scanList = true;
+        int  nanos, count = size(group);
         long begin, microDelay, milliSec, elapsedTime = 0;
-        LinkedList<EtEventImpl> groupList = new LinkedList<EtEventImpl>();
 
         // Sleep mode is never used since it is implemented in the TcpServer
         // thread by repeated calls in timed mode.
-        do {
+        if (count == 0) {
             if (mode == EtConstants.sleep) {
-                while (count < 1 || !scanList) {
+                while (count < 1) {
                     waitingCount++;
                     att.setWaiting(true);
-//System.out.println("  get" + att.id + ": sleep");
                     try {
                         wait();
                     }
@@ -518,12 +698,11 @@ class EventList {
 
                     att.setWaiting(false);
                     waitingCount--;
-                    count = events.size();
-                    scanList = true;
+                    count = size(group);
                 }
             }
             else if (mode == EtConstants.timed) {
-                while (count < 1 || !scanList) {
+                while (count < 1) {
                     microDelay = microSec - 1000*elapsedTime;
                     if (microDelay <= 0) {
                         throw new EtTimeoutException("timed out");
@@ -531,15 +710,8 @@ class EventList {
                     milliSec = microDelay/1000L;
                     nanos = 1000 * (int)(microDelay - 1000*milliSec);
 
-//                    if (nanos > 999999) {
-//                        System.out.println("nanos = " + nanos + ", millisec = " +
-//                           milliSec + ", elapsed = " + elapsedTime + ", microSec = " + microSec + ", scanList = " + scanList);
-//                  }
-
                     waitingCount++;
                     att.setWaiting(true);
-//System.out.println("  get" + att.id + ": wait " + milliSec + " ms and " +
-//                   nanos + " nsec, elapsed time = " + elapsedTime);
                     begin = System.currentTimeMillis();
                     try {
                         wait(milliSec, nanos);
@@ -561,36 +733,34 @@ class EventList {
 
                     att.setWaiting(false);
                     waitingCount--;
-                    count = events.size();
-//System.out.println("  get" + att.id + ": woke up and counts = " + count);
-                    scanList = true;
+                    count = size(group);
                 }
             }
             else if (mode == EtConstants.async) {
                 throw new EtEmptyException("no events in list");
             }
+        }
 
-            if (quantity > count) {
-                quantity = count;
-            }
-//System.out.println("  get"+ att.id + ": quantity = " + quantity);
-
-            for (ListIterator liter = events.listIterator(); liter.hasNext(); ) {
-                ev = (EtEventImpl)liter.next();
-                if (ev.getGroup() == group) {
-                    groupList.add(ev);
-                    if (++groupCount >= quantity)  break;
-                }
-            }
+        if (depths != null) {
+            depths.record(size());
+        }
 
-            scanList = false;
+        if (quantity > count) {
+            quantity = count;
+        }
 
-            // If we got nothing and we're Constants.sleep or Constants.timed, then try again
-        } while (groupCount == 0 && mode != EtConstants.async);
+        // take events off the front of the group's rings, high priority first
+        int index = grouped ? group - 1 : 0;
+        ArrayList<EtEventImpl> groupList = new ArrayList<EtEventImpl>(quantity);
+        int highCount = Math.min(quantity, high[index].size());
+        high[index].take(groupList, highCount);
+        low[index].take(groupList, quantity - highCount);
 
-        // remove from this list
-        events.removeAll(groupList);
-        eventsOut += groupList.size();
+        eventsOut += quantity;
+        if (roomWanted) {
+            roomWanted = false;
+            notifyAll();
+        }
         return groupList;
     }
 }
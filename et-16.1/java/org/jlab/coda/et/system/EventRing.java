@@ -0,0 +1,169 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2026        Jefferson Science Associates,                   *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.system;
+
+import java.util.List;
+import org.jlab.coda.et.EtEventImpl;
+
+/**
+ * This class is a ring buffer of events used to store one priority
+ * of events in an {@link EventList}. Events can be added to and taken off of
+ * either end without moving any others. It holds no more than the number of
+ * events it's made for, which is all the events (of a group) in the ET system,
+ * so it never grows. It is not synchronized.
+ *
+ * @author Carl Timmer
+ */
+final class EventRing {
+
+    /** Ring of events. */
+    private final EtEventImpl[] ring;
+
+    /** Ring size - 1, used to wrap indexes. */
+    private final int mask;
+
+    /** Most events the ring may hold. */
+    private final int capacity;
+
+    /** Index of the first event. */
+    private int head;
+
+    /** Number of events in ring. */
+    private int count;
+
+
+    /**
+     * Constructor.
+     * @param capacity most events the ring may hold
+     */
+    EventRing(int capacity) {
+        // ring size is a power of 2 so indexes wrap with a mask
+        int size = 16;
+        while (size < capacity && size < (1 << 30)) {
+            size <<= 1;
+        }
+        ring = new EtEventImpl[size];
+        mask = size - 1;
+        this.capacity = Math.min(capacity, size);
+    }
+
+
+    /**
+     * Get the number of events in the ring.
+     * @return number of events in the ring
+     */
+    int size() {
+        return count;
+    }
+
+
+    /**
+     * Make sure there is room for more events. Since the ring can hold all
+     * events there are, no room means an event was put in twice.
+     * @param num number of events to be added
+     * @throws IllegalStateException if the ring would hold more than its capacity
+     */
+    private void checkRoom(int num) {
+        if (count + num > capacity) {
+            throw new IllegalStateException("event list cannot hold more than " +
+                                            capacity + " events");
+        }
+    }
+
+
+    /**
+     * Add an event after all others.
+     * @param ev event to add
+     * @throws IllegalStateException if the ring is full
+     */
+    void addLast(EtEventImpl ev) {
+        checkRoom(1);
+        ring[(head + count++) & mask] = ev;
+    }
+
+
+    /**
+     * Add an event before all others.
+     * @param ev event to add
+     * @throws IllegalStateException if the ring is full
+     */
+    void addFirst(EtEventImpl ev) {
+        checkRoom(1);
+        head = (head - 1) & mask;
+        ring[head] = ev;
+        count++;
+    }
+
+
+    /**
+     * Add events after all others.
+     * @param evs  list of events
+     * @param from index of the first event in evs to add
+     * @param to   index after the last event in evs to add
+     * @throws IllegalStateException if the ring cannot hold all the events
+     */
+    void addLast(List<EtEventImpl> evs, int from, int to) {
+        checkRoom(to - from);
+        for (int i=from; i < to; i++) {
+            ring[(head + count++) & mask] = evs.get(i);
+        }
+    }
+
+
+    /**
+     * Take events off the front of the ring.
+     * @param evs    array in which to place the events
+     * @param offset index into evs at which to place the first event
+     * @param num    number of events to take, no more than {@link #size()}
+     */
+    void take(EtEventImpl[] evs, int offset, int num) {
+        for (int i=0; i < num; i++) {
+            evs[offset + i] = ring[head];
+            ring[head] = null;
+            head = (head + 1) & mask;
+        }
+        count -= num;
+    }
+
+
+    /**
+     * Take all events off the ring.
+     * @param evs list to which the events are added
+     */
+    void takeAll(List<EtEventImpl> evs) {
+        for (int i=0; i < count; i++) {
+            int index = (head + i) & mask;
+            evs.add(ring[index]);
+            ring[index] = null;
+        }
+        head  = 0;
+        count = 0;
+    }
+
+
+    /**
+     * Take events off the front of the ring.
+     * @param evs list to which the events are added
+     * @param num number of events to take, no more than {@link #size()}
+     */
+    void take(List<EtEventImpl> evs, int num) {
+        for (int i=0; i < num; i++) {
+            evs.add(ring[head]);
+            ring[head] = null;
+            head = (head + 1) & mask;
+        }
+        count -= num;
+    }
+}
@@ -0,0 +1,214 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2026        Jefferson Science Associates,                   *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.system;
+
+import java.util.ArrayList;
+import org.jlab.coda.et.EtConstants;
+import org.jlab.coda.et.EtEventImpl;
+import org.jlab.coda.et.EtEventSelectable;
+
+/**
+ * This class selects the events which enter a station whose select mode is
+ * {@link EtConstants#stationSelectMatch} or {@link EtConstants#stationSelectUser}.
+ * For matching, the station's select integers are compiled once into the few
+ * comparisons that are actually needed (those not equal to -1) so that events
+ * can be checked without copying any arrays. For users, the user's selection
+ * object is called. It also keeps count of the events accepted and rejected.
+ * It is used only with the station's input list locked.
+ *
+ * @author Carl Timmer
+ */
+final class EventSelector {
+
+    /** User's selection object, or null if matching select integers. */
+    private final EtEventSelectable userSelector;
+
+    /** Indexes of control integers which must equal a select integer. */
+    private final int[] equalIndex;
+
+    /** Values which control integers must equal. */
+    private final int[] equalValue;
+
+    /** Indexes of control integers which must share a bit with a select integer. */
+    private final int[] maskIndex;
+
+    /** Values with which control integers must share a bit. */
+    private final int[] maskValue;
+
+    /** Number of events accepted. */
+    private long accepted;
+
+    /** Number of events rejected. */
+    private long rejected;
+
+
+    /**
+     * Constructor for matching an event's control integers against the station's
+     * select integers. Even-indexed select integers must equal the event's control
+     * integer, odd-indexed ones must have a bit in common with it, and those
+     * equal to -1 are ignored. An event is accepted if any comparison succeeds.
+     *
+     * @param select the station's select integers
+     */
+    EventSelector(int[] select) {
+        userSelector = null;
+
+        int equals = 0, masks = 0;
+        for (int i=0; i < EtConstants.stationSelectInts; i++) {
+            if (select[i] == -1) continue;
+            if (i%2 == 0) equals++;
+            else          masks++;
+        }
+
+        equalIndex = new int[equals];
+        equalValue = new int[equals];
+        maskIndex  = new int[masks];
+        maskValue  = new int[masks];
+
+        equals = masks = 0;
+        for (int i=0; i < EtConstants.stationSelectInts; i++) {
+            if (select[i] == -1) continue;
+            if (i%2 == 0) {
+                equalIndex[equals]   = i;
+                equalValue[equals++] = select[i];
+            }
+            else {
+                maskIndex[masks]   = i;
+                maskValue[masks++] = select[i];
+            }
+        }
+    }
+
+
+    /**
+     * Constructor for selecting events with a user's selection object.
+     * @param userSelector user's selection object
+     */
+    EventSelector(EtEventSelectable userSelector) {
+        this.userSelector = userSelector;
+        equalIndex = equalValue = maskIndex = maskValue = null;
+    }
+
+
+    /**
+     * Copy constructor which keeps the counts of the given selector.
+     * Used when the select integers change.
+     *
+     * @param select  the station's new select integers
+     * @param counter selector whose counts are kept
+     */
+    EventSelector(int[] select, EventSelector counter) {
+        this(select);
+        accepted = counter.accepted;
+        rejected = counter.rejected;
+    }
+
+
+    /**
+     * Get the number of events accepted into the station.
+     * @return number of events accepted into the station
+     */
+    long getAccepted() {
+        return accepted;
+    }
+
+
+    /**
+     * Get the number of events rejected by the station.
+     * @return number of events rejected by the station
+     */
+    long getRejected() {
+        return rejected;
+    }
+
+
+    /**
+     * Does this event match the select integers?
+     * @param ev event
+     * @return {@code true} if event matches, else {@code false}
+     */
+    private boolean matches(EtEventImpl ev) {
+        for (int i=0; i < equalIndex.length; i++) {
+            if (ev.getControl(equalIndex[i]) == equalValue[i]) return true;
+        }
+        for (int i=0; i < maskIndex.length; i++) {
+            if ((ev.getControl(maskIndex[i]) & maskValue[i]) != 0) return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Is this event accepted into the station?
+     *
+     * @param sys  ET system object
+     * @param stat station object
+     * @param ev   event object being evaluated
+     * @return {@code true} if event is accepted, else {@code false}
+     */
+    boolean select(SystemCreate sys, StationLocal stat, EtEventImpl ev) {
+        boolean result;
+        if (userSelector == null) {
+            result = matches(ev);
+        }
+        else {
+            result = userSelector.select(sys, stat, ev);
+        }
+
+        if (result) accepted++;
+        else        rejected++;
+        return result;
+    }
+
+
+    /**
+     * Move the events of a list which are accepted into the station into another list.
+     * Events remain in order in both lists. When used with prescaling, only every
+     * prescale-th accepted event is moved and the rest stay in the first list.
+     *
+     * @param sys       ET system object
+     * @param stat      station object
+     * @param events    list of events to select from; events moved are removed
+     * @param selected  list to which selected events are added
+     * @param max       most events to move
+     * @param prescale  prescale value, 1 if none
+     * @param tries     number of events accepted before this call, used with prescaling
+     * @return number of events accepted (prescaled or not) during this call
+     */
+    int select(SystemCreate sys, StationLocal stat, ArrayList<EtEventImpl> events,
+               ArrayList<EtEventImpl> selected, int max, int prescale, long tries) {
+
+        int kept = 0, moved = 0, size = events.size();
+        long tried = tries;
+        EtEventImpl ev;
+
+        for (int i=0; i < size; i++) {
+            ev = events.get(i);
+            if (moved < max && select(sys, stat, ev) && (tried++ % prescale) == 0) {
+                selected.add(ev);
+                moved++;
+            }
+            else {
+                // Fill the holes left by moved events
+                if (kept < i) events.set(kept, ev);
+                kept++;
+            }
+        }
+
+        // Remove what is now at the end
+        if (kept < size) events.subList(kept, size).clear();
+        return (int) (tried - tries);
+    }
+}
@@ -0,0 +1,572 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2026        Jefferson Science Associates,                   *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.system;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jlab.coda.et.EtConstants;
+import org.jlab.coda.et.EtEventImpl;
+import org.jlab.coda.et.enums.Age;
+import org.jlab.coda.et.enums.DataStatus;
+import org.jlab.coda.et.enums.Priority;
+import org.jlab.coda.et.exception.*;
+
+/**
+ * This class keeps the events which overflow a nonblocking station's input list
+ * in a file and, as a thread, puts them back into the station in order as its
+ * attachments make room. Conductor threads reserve room in the file while holding
+ * the station's input list lock, so the station never gets newer events ahead of
+ * spilled ones, and write the events after letting go of it, in the order reserved.
+ * Each event in the file is a header of length, group, priority, data status,
+ * byte order, and control integers followed by its data.
+ *
+ * @author Carl Timmer
+ */
+class EventSpill extends Thread {
+
+    /** Number of bytes in the header preceding each event's data in the file. */
+    private static final int headerBytes = 20 + 4*EtConstants.stationSelectInts;
+
+    /** Most milliseconds to wait for free events or for an idle station to become active. */
+    private static final int waitMilliSec = 100;
+
+    /** ET system object. */
+    private final SystemCreate sys;
+
+    /** Station whose events are spilled. */
+    private final StationLocal station;
+
+    /** Station's input list, whose lock protects the file positions, event counts,
+     *  and batches of events waiting to be written. */
+    private final EventList inputList;
+
+    /** Lock held while writing to, truncating, or closing the file. Conductors
+     *  wait on it for their turn to write. Taken before the input list's lock. */
+    private final Object writeLock = new Object();
+
+    /** Batches of events with room reserved in the file but not yet written, in order. */
+    private final ArrayDeque<List<EtEventImpl>> pending = new ArrayDeque<List<EtEventImpl>>();
+
+    /** File in which events are spilled. */
+    private final File file;
+
+    /** Most bytes the file may hold. */
+    private final long limit;
+
+    /** Channel to the file, opened when first needed. */
+    private FileChannel channel;
+
+    /** Header of the event being written, used by conductors with the write lock held. */
+    private final ByteBuffer writeHeader = ByteBuffer.allocate(headerBytes);
+
+    /** Header of the event being read, used only by this thread. */
+    private final ByteBuffer readHeader = ByteBuffer.allocate(headerBytes);
+
+    /** Control integers of the event being read, used only by this thread. */
+    private final int[] control = new int[EtConstants.stationSelectInts];
+
+    /** File position at which the next batch of events is written. */
+    private long writePosition;
+
+    /** File position following the last event with room reserved. */
+    private long reservedPosition;
+
+    /** File position from which the next event is read. */
+    private long readPosition;
+
+    /** Number of times the file's events have been discarded. Events read while
+     *  this changes are not put into the station. */
+    private int discards;
+
+    /** Number of events in the file not yet put back into the station. Changed only
+     *  with the input list's lock held. */
+    private volatile int count;
+
+    /** Number of events with room reserved in the file but not yet written. */
+    private int pendingCount;
+
+    /** Is this thread to end? */
+    private volatile boolean killed;
+
+
+    /**
+     * Create an object to spill a station's events into a file in the given directory.
+     * The file is not created until events are first spilled.
+     *
+     * @param sys     ET system object
+     * @param station station whose events are spilled
+     * @param directory directory in which to put the file
+     * @param limit   most bytes the file may hold
+     */
+    EventSpill(SystemCreate sys, StationLocal station, String directory, long limit) {
+        super("spill " + station.getStationName());
+        setDaemon(true);
+        this.sys     = sys;
+        this.station = station;
+        this.limit   = limit;
+        inputList    = station.getInputList();
+
+        // station names may contain characters unfit for file names
+        String name = new File(sys.getName()).getName() + '_' + station.getStationName();
+        file = new File(directory, name.replaceAll("[^A-Za-z0-9._-]", "_") + ".spill");
+    }
+
+
+    /**
+     * Is there no event in the file or waiting to be written to it?
+     * Call with the input list's lock held.
+     * @return <code>true</code> if there is no event in the file or waiting to be written to it
+     */
+    boolean isEmpty() {
+        return count < 1 && pendingCount < 1;
+    }
+
+
+    /**
+     * Get the number of events in the file waiting to be put back into the station.
+     * @return number of events in the file
+     */
+    int getCount() {
+        return count;
+    }
+
+
+    /**
+     * Reserve room at the end of the file for events, in order. Reserving stops at the
+     * first event which would make the file bigger than its limit. The events reserved
+     * are added to the given batch, which must then be passed to {@link #flush(List)}.
+     * Call with the input list's lock held.
+     *
+     * @param events events to spill
+     * @param batch  empty list to which the events reserved are added
+     * @return number of events, from the front of the list, reserved
+     */
+    int reserve(List<EtEventImpl> events, List<EtEventImpl> batch) {
+        if (killed) return 0;
+
+        for (EtEventImpl ev : events) {
+            long end = reservedPosition + headerBytes + ev.getLength();
+            if (end > limit) {
+                break;
+            }
+            reservedPosition = end;
+            batch.add(ev);
+        }
+
+        if (batch.size() > 0) {
+            pending.add(batch);
+            pendingCount += batch.size();
+        }
+        return batch.size();
+    }
+
+
+    /**
+     * Write a batch of events, with room reserved by {@link #reserve(List, List)}, to the
+     * file once all batches reserved before it are written. Call without the input list's
+     * lock held. Events which cannot be written are left at the end of the batch.
+     *
+     * @param batch events to write
+     * @return number of events, from the front of the batch, which are written or
+     *         discarded and so are free to be used again
+     */
+    int flush(List<EtEventImpl> batch) {
+        synchronized (writeLock) {
+            long position;
+            int discarded;
+
+            // wait for the batches ahead of this one to be written
+            while (true) {
+                synchronized (inputList) {
+                    if (pending.peek() == batch) {
+                        position  = writePosition;
+                        discarded = discards;
+                        break;
+                    }
+                    if (!isPending(batch)) {
+                        // thrown away by discard() or close()
+                        return batch.size();
+                    }
+                }
+                try {
+                    writeLock.wait();
+                }
+                catch (InterruptedException ex) {
+                }
+            }
+
+            int written = 0;
+
+            try {
+                if (channel == null) {
+                    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                    raf.setLength(0L);
+                    channel = raf.getChannel();
+                    file.deleteOnExit();
+                }
+
+                // An event partly written before an error is written over next time
+                channel.position(position);
+                ByteBuffer[] bufs = new ByteBuffer[] {writeHeader, null};
+
+                for (EtEventImpl ev : batch) {
+                    int len = ev.getLength();
+                    writeHeader.clear();
+                    writeHeader.putInt(len).putInt(ev.getGroup()).putInt(ev.getPriorityValue());
+                    writeHeader.putInt(ev.getDataStatusValue()).putInt(ev.getRawByteOrder());
+                    for (int i=0; i < EtConstants.stationSelectInts; i++) {
+                        writeHeader.putInt(ev.getControl(i));
+                    }
+                    writeHeader.flip();
+
+                    ByteBuffer data = ev.getDataBuffer().duplicate();
+                    data.clear();
+                    data.limit(len);
+                    bufs[1] = data;
+                    while (writeHeader.hasRemaining() || data.hasRemaining()) {
+                        channel.write(bufs);
+                    }
+
+                    position += headerBytes + len;
+                    written++;
+                }
+            }
+            catch (IOException ex) {
+                if (sys.getConfig().getDebug() >= EtConstants.debugError) {
+                    System.out.println("cannot spill events of " + station.getStationName() +
+                                       " to " + file.getPath() + ": " + ex.getMessage());
+                }
+            }
+
+            synchronized (inputList) {
+                if (discarded == discards) {
+                    pending.poll();
+                    pendingCount -= batch.size();
+                    count += written;
+                    // room reserved for events not written is free again
+                    for (int i=written; i < batch.size(); i++) {
+                        reservedPosition -= headerBytes + batch.get(i).getLength();
+                    }
+                    writePosition = position;
+                }
+                else {
+                    written = batch.size();
+                }
+            }
+
+            writeLock.notifyAll();
+            if (written > 0) {
+                synchronized (this) {
+                    notify();
+                }
+            }
+            return written;
+        }
+    }
+
+
+    /**
+     * Is the given batch of events still waiting to be written?
+     * Call with the input list's lock held.
+     * @param batch batch of events
+     * @return <code>true</code> if the batch is waiting to be written
+     */
+    private boolean isPending(List<EtEventImpl> batch) {
+        for (List<EtEventImpl> b : pending) {
+            if (b == batch) return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Discard all events in the file. Used when the station's last attachment detaches.
+     */
+    void discard() {
+        synchronized (writeLock) {
+            synchronized (inputList) {
+                if (isEmpty()) return;
+                throwAway();
+                empty();
+                // stop waiting for room
+                inputList.notifyAll();
+            }
+            writeLock.notifyAll();
+        }
+    }
+
+
+    /** Stop this thread and delete the file. */
+    void close() {
+        killed = true;
+        synchronized (this) {
+            notify();
+        }
+        synchronized (writeLock) {
+            synchronized (inputList) {
+                throwAway();
+                inputList.notifyAll();
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    }
+                    catch (IOException ex) {
+                    }
+                    channel = null;
+                }
+                file.delete();
+            }
+            writeLock.notifyAll();
+        }
+    }
+
+
+    /**
+     * Throw away all events in the file and waiting to be written to it.
+     * Call with the write lock and the input list's lock held.
+     */
+    private void throwAway() {
+        pending.clear();
+        pendingCount = 0;
+        count = 0;
+        discards++;
+    }
+
+
+    /**
+     * Start writing and reading at the beginning of the file again, giving the
+     * disk space back. Call with the input list's lock held when there is no event
+     * in the file or waiting to be written to it.
+     */
+    private void empty() {
+        readPosition = writePosition = reservedPosition = 0L;
+        if (channel == null) return;
+        try {
+            channel.truncate(0L);
+        }
+        catch (IOException ex) {
+        }
+    }
+
+
+    /**
+     * Read the given buffer full from the file.
+     * @param buf      buffer to fill
+     * @param position file position from which to read
+     * @throws IOException if the file cannot be read or ends too early
+     */
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position);
+            if (n < 0) {
+                throw new IOException("spill file ends too early");
+            }
+            position += n;
+        }
+    }
+
+
+    /**
+     * Read events from the file into free events taken from GRAND_CENTRAL station.
+     * Reading stops early if there is no free event of the group needed.
+     *
+     * @param position file position of the first event to read
+     * @param quantity most events to read
+     * @param events   list to which events read are added
+     * @return file position following the last event read
+     * @throws IOException if the file cannot be read
+     * @throws EtException if an event's header is bad
+     */
+    private long read(long position, int quantity, ArrayList<EtEventImpl> events)
+            throws IOException, EtException {
+
+        EventList gcList = sys.getStations().get(0).getInputList();
+
+        for (int j=0; j < quantity; j++) {
+            readHeader.clear();
+            readFully(readHeader, position);
+            readHeader.flip();
+
+            int len = readHeader.getInt();
+            int group = readHeader.getInt();
+            if (len < 0 || position + headerBytes + len > limit) {
+                throw new EtException("bad event length " + len);
+            }
+
+            // Taking one event without waiting needs no attachment
+            EtEventImpl ev;
+            try {
+                ev = gcList.get(null, EtConstants.async, 0, 1, group).get(0);
+            }
+            catch (EtEmptyException ex) {
+                break;
+            }
+            catch (EtWakeUpException ex) {
+                break;
+            }
+            catch (EtTimeoutException ex) {
+                break;
+            }
+            events.add(ev);
+
+            ev.init();
+            ev.setTraced(false, 0L);
+            ev.setAge(Age.USED);
+            ev.setPriority(Priority.getPriority(readHeader.getInt()));
+            ev.setDataStatus(DataStatus.getStatus(readHeader.getInt()));
+            ev.setRawByteOrder(readHeader.getInt());
+            for (int i=0; i < control.length; i++) {
+                control[i] = readHeader.getInt();
+            }
+            ev.setControl(control);
+
+            // if the event was made larger than normal, do the same here
+            if (ev.getMemSize() < len) {
+                ev.setData(new byte[len]);
+            }
+            ev.setLengthFromServer(len);
+
+            ByteBuffer data = ev.getDataBuffer().duplicate();
+            data.clear();
+            data.limit(len);
+            readFully(data, position + headerBytes);
+
+            position += headerBytes + len;
+        }
+
+        return position;
+    }
+
+
+    /**
+     * Put events read from the file back into the station as its attachments make room.
+     */
+    public void run() {
+        ArrayList<EtEventImpl> events = new ArrayList<EtEventImpl>();
+        EventList gcList = sys.getStations().get(0).getInputList();
+        int room, discarded, high;
+        long start, end = 0L;
+
+        while (true) {
+            // wait for events to be spilled
+            synchronized (this) {
+                while (count < 1 && !killed) {
+                    try {
+                        wait();
+                    }
+                    catch (InterruptedException ex) {
+                    }
+                }
+            }
+            if (killed) return;
+
+            // wait for attachments to make room
+            synchronized (inputList) {
+                room = Math.min(count, station.getConfig().getCue() - inputList.size());
+                while (room < 1 && count > 0 && !killed) {
+                    try {
+                        inputList.waitForRoom();
+                    }
+                    catch (InterruptedException ex) {
+                    }
+                    room = Math.min(count, station.getConfig().getCue() - inputList.size());
+                }
+                start = readPosition;
+                discarded = discards;
+            }
+            // events were discarded or this thread is to end
+            if (room < 1) continue;
+
+            if (station.getStatus() != EtConstants.stationActive) {
+                // events are discarded once the last attachment detaches
+                synchronized (this) {
+                    try {
+                        wait(waitMilliSec);
+                    }
+                    catch (InterruptedException ex) {
+                    }
+                }
+                continue;
+            }
+
+            try {
+                end = read(start, room, events);
+            }
+            catch (Exception ex) {
+                gcList.putInGC(events);
+                events.clear();
+                if (killed) return;
+
+                // Events discarded while being read are truncated away, which is no error
+                synchronized (inputList) {
+                    if (discarded != discards) continue;
+                }
+                if (sys.getConfig().getDebug() >= EtConstants.debugError) {
+                    System.out.println("cannot read events of " + station.getStationName() +
+                                       " spilled to " + file.getPath() + ": " + ex.getMessage());
+                }
+                discard();
+                continue;
+            }
+
+            if (events.size() < 1) {
+                // wait for attachments to put events back into GRAND_CENTRAL
+                synchronized (gcList) {
+                    try {
+                        gcList.wait(waitMilliSec);
+                    }
+                    catch (InterruptedException ex) {
+                    }
+                }
+                continue;
+            }
+
+            // Adding to the input list wants high priority events first
+            high = 0;
+            for (int i=0; i < events.size(); i++) {
+                if (events.get(i).getPriority() == Priority.HIGH) {
+                    events.add(high++, events.remove(i));
+                }
+            }
+
+            synchronized (inputList) {
+                if (discarded == discards) {
+                    readPosition = end;
+                    count -= events.size();
+                    if (isEmpty()) {
+                        empty();
+                    }
+                    inputList.putAll(events);
+                    inputList.notifyAll();
+                    inputList.resumeWaiters();
+                    events.clear();
+                }
+            }
+
+            // events of a discarded file are freed
+            if (events.size() > 0) {
+                gcList.putInGC(events);
+                events.clear();
+            }
+        }
+    }
+}
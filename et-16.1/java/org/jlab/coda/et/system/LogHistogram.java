@@ -0,0 +1,163 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2026        Jefferson Science Associates,                   *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.system;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is a histogram of non-negative values, such as times in nanoseconds
+ * or numbers of events, which any number of threads may record into without locking.
+ * Each power of 2 is divided into 16 buckets so that any value is known to within
+ * about 6%, no matter how large, while the whole histogram takes only a few kB.
+ * Values of 2<sup>44</sup> and more (about 5 hours in nanoseconds) are counted as
+ * the largest value. Recording costs two atomic increments and no allocation, so it
+ * can be left on at high rates.
+ *
+ * @author Carl Timmer
+ */
+public class LogHistogram {
+
+    /** Number of bits which give the bucket within a power of 2. */
+    private static final int subBits = 4;
+
+    /** Number of buckets within each power of 2. */
+    private static final int subCount = 1 << subBits;
+
+    /** Values of 2 to this power and larger are all counted in the last bucket. */
+    private static final int maxBits = 44;
+
+    /** Number of values recorded in each bucket. */
+    private final AtomicLongArray counts = new AtomicLongArray((maxBits - subBits + 1) * subCount);
+
+    /** Number of values recorded. */
+    private final LongAdder count = new LongAdder();
+
+    /** Sum of all values recorded. */
+    private final LongAdder sum = new LongAdder();
+
+
+    /**
+     * Get the index of the bucket in which a value is counted.
+     * @param value value
+     * @return index of bucket
+     */
+    private int index(long value) {
+        if (value < subCount) {
+            return value < 0 ? 0 : (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - subBits;
+        if (shift >= maxBits - subBits) {
+            return counts.length() - 1;
+        }
+        return (shift + 1)*subCount + (int)(value >>> shift) - subCount;
+    }
+
+
+    /**
+     * Get the largest value counted in a bucket.
+     * @param index index of bucket
+     * @return largest value counted in bucket
+     */
+    private static long highestValue(int index) {
+        index++;
+        if (index <= subCount) {
+            return index - 1;
+        }
+        int shift = index/subCount - 1;
+        return ((long)(subCount + index%subCount) << shift) - 1;
+    }
+
+
+    /**
+     * Record a value. Negative values are recorded as 0.
+     * @param value value to record
+     */
+    public void record(long value) {
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value < 0 ? 0 : value);
+    }
+
+
+    /**
+     * Get the number of values recorded.
+     * @return number of values recorded
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+
+    /**
+     * Get the sum of the values recorded.
+     * @return sum of the values recorded
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+
+    /**
+     * Get the mean of the values recorded.
+     * @return mean of the values recorded, 0 if there are none
+     */
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0. : (double) sum.sum() / n;
+    }
+
+
+    /**
+     * Get the value below which the given percentage of recorded values fall.
+     * The largest value of the bucket in which it is counted is returned.
+     *
+     * @param percentile percentage of values (0 to 100)
+     * @return value at the given percentile, 0 if no values were recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        int length = counts.length();
+        for (int i=0; i < length; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) return 0L;
+
+        long wanted = Math.max(1L, (long) Math.ceil(total * Math.min(percentile, 100.) / 100.));
+        long seen = 0;
+        for (int i=0; i < length; i++) {
+            seen += counts.get(i);
+            if (seen >= wanted) {
+                return highestValue(i);
+            }
+        }
+        return highestValue(length - 1);
+    }
+
+
+    /**
+     * Get the largest value recorded. The largest value of the bucket
+     * in which it is counted is returned.
+     * @return largest value recorded, 0 if no values were recorded
+     */
+    public long getMax() {
+        for (int i=counts.length()-1; i >= 0; i--) {
+            if (counts.get(i) > 0) {
+                return highestValue(i);
+            }
+        }
+        return 0L;
+    }
+}
@@ -63,6 +63,16 @@ public class StationLocal extends Thread implements EtEventSelectable {
      *  It's protected by stopTransferLock & {@link SystemCreate#systemLock}. */
     private ArrayList<StationLocal> parallelStations;
 
+    /** Stations of the main linked list which follow this station's place in it,
+     *  not including GRAND_CENTRAL. This array is replaced, never changed, whenever
+     *  stations are added or removed so the conductor can route events without
+     *  searching the linked lists. It's protected by stopTransferLock. */
+    private StationLocal[] downstream = new StationLocal[0];
+
+    /** Position of this station in its group of parallel stations, or 0 if not parallel.
+     *  It's protected by stopTransferLock. */
+    private int parallelIndex;
+
     /** Input list of events. */
     private EventList inputList;
     
@@ -72,9 +82,27 @@ public class StationLocal extends Thread implements EtEventSelectable {
     /** Set of attachments to this station. */
     private HashSet<AttachmentLocal> attachments;
 
-    /** Predefined event selection method used when the station's select mode
-     *  is {@link org.jlab.coda.et.EtConstants#stationSelectMatch}. */
-    private EtEventSelectable selector;
+    /** Event selection used when the station's select mode is
+     *  {@link org.jlab.coda.et.EtConstants#stationSelectMatch} or
+     *  {@link org.jlab.coda.et.EtConstants#stationSelectUser}.
+     *  It's protected by the input list's lock. */
+    private EventSelector selector;
+
+    /** Events which do not fit in the input list of this station, if nonblocking,
+     *  are spilled to a file by this object, or null if events are not spilled. */
+    private EventSpill spill;
+
+    /** Time in nanoseconds events spend in the input list before being gotten. */
+    private final LogHistogram residency = new LogHistogram();
+
+    /** Number of events in the input list each time events are gotten from it. */
+    private final LogHistogram inputDepth = new LogHistogram();
+
+    /** Number of events the conductor moves out of the output list at once. */
+    private final LogHistogram conductorBatches = new LogHistogram();
+
+    /** Time in nanoseconds traced events spend in the output list. */
+    private final LogHistogram traceOutput = new LogHistogram();
 
     /**
      * Creates a new StationLocal object.
@@ -97,19 +125,27 @@ public class StationLocal extends Thread implements EtEventSelectable {
         parallelStations = new ArrayList<StationLocal>(20);
         stopTransferLock = new ReentrantLock();
 
-        inputList  = new EventList(sys.getConfig().getNumEvents());
+        // GRAND_CENTRAL keeps the free events of each group apart
+        if (id == 0) {
+            inputList = new EventList(sys.getConfig().getGroups(), inputDepth);
+        }
+        else {
+            inputList = new EventList(sys.getConfig().getNumEvents(), inputDepth);
+        }
         outputList = new EventList(sys.getConfig().getNumEvents());
 
         // attachments
         attachments = new HashSet<AttachmentLocal>(EtConstants.attachmentsMax);
 
         // user event selection routine
-        selector = this;
-        if (config.getSelectMode() == EtConstants.stationSelectUser) {
+        if (config.getSelectMode() == EtConstants.stationSelectUser && config.getSelector() != null) {
+            selector = new EventSelector(config.getSelector());
+        }
+        else if (config.getSelectMode() == EtConstants.stationSelectUser) {
             // instantiate object of proper class
             try {
                 Object f = Class.forName(config.getSelectClass()).newInstance();
-                selector = (EtEventSelectable) f;
+                selector = new EventSelector((EtEventSelectable) f);
             }
             catch (ClassNotFoundException ex) {
                 throw new EtException("station cannot load select class " + config.getSelectClass());
@@ -125,6 +161,16 @@ public class StationLocal extends Thread implements EtEventSelectable {
                 System.out.println(name + " loaded select class " + config.getSelectClass());
             }
         }
+        // predefined selection by matching the select integers
+        else {
+            selector = new EventSelector(this.config.getSelect());
+        }
+
+        // GRAND_CENTRAL is blocking and never spills
+        if (id != 0 && sys.getConfig().getSpillDirectory() != null) {
+            spill = new EventSpill(sys, this, sys.getConfig().getSpillDirectory(),
+                                   sys.getConfig().getSpillLimit());
+        }
     }
 
 
@@ -156,6 +202,44 @@ public class StationLocal extends Thread implements EtEventSelectable {
      */
     public EventList getOutputList() { return outputList; }
 
+    /**
+     * Get the histogram of the time, in nanoseconds, events spend in the input list.
+     * @return histogram of the time events spend in the input list
+     */
+    LogHistogram getResidency() { return residency; }
+
+    /**
+     * Get the histogram of the number of events in the input list when events are gotten.
+     * @return histogram of the number of events in the input list when events are gotten
+     */
+    LogHistogram getInputDepth() { return inputDepth; }
+
+    /**
+     * Get the histogram of the number of events the conductor moves at once.
+     * @return histogram of the number of events the conductor moves at once
+     */
+    LogHistogram getConductorBatches() { return conductorBatches; }
+
+    /**
+     * Get the histogram of the time, in nanoseconds, traced events spend in the output list.
+     * @return histogram of the time traced events spend in the output list
+     */
+    LogHistogram getTraceOutput() { return traceOutput; }
+
+    /**
+     * Record the time traced events spent in the output list.
+     * @param events events just taken out of the output list
+     */
+    private void traceOutput(List<EtEventImpl> events) {
+        long now = System.nanoTime();
+        for (EtEventImpl ev : events) {
+            if (ev.isTraced()) {
+                traceOutput.record(now - ev.getTraceTime());
+                ev.setTraceTime(now);
+            }
+        }
+    }
+
     /**
      * Get lock object used to add and remove stations from the station linked list
      * while blocking the moving of events.
@@ -175,6 +259,18 @@ public class StationLocal extends Thread implements EtEventSelectable {
      */
     public ArrayList<StationLocal> getParallelStations() { return parallelStations; }
 
+    /**
+     * Set the position of this station in the linked lists of stations. Called only
+     * with all stations' transfer locks held, when stations are added or removed.
+     * @param downstream    stations of the main linked list which follow this station,
+     *                      not including GRAND_CENTRAL
+     * @param parallelIndex position of this station in its group of parallel stations
+     */
+    void setTopology(StationLocal[] downstream, int parallelIndex) {
+        this.downstream    = downstream;
+        this.parallelIndex = parallelIndex;
+    }
+
     /**
      * Get the station status which may be one of the following values: {@link org.jlab.coda.et.EtConstants#stationUnused },
      * {@link org.jlab.coda.et.EtConstants#stationCreating}, {@link org.jlab.coda.et.EtConstants#stationIdle}, or  {@link org.jlab.coda.et.EtConstants#stationActive}.
@@ -202,8 +298,48 @@ public class StationLocal extends Thread implements EtEventSelectable {
      */
     public boolean isKillConductor() { return killConductor; }
 
-    /** Schedule conductor thread to be terminated. */
-    public void killConductor() { killConductor = true; }
+    /**
+     * Get the number of events which the station's selection method has accepted.
+     * @return number of events accepted by the station's selection method
+     */
+    public long getEventsAccepted() {
+        synchronized (inputList) {
+            return selector.getAccepted();
+        }
+    }
+
+    /**
+     * Get the number of events which the station's selection method has rejected.
+     * @return number of events rejected by the station's selection method
+     */
+    public long getEventsRejected() {
+        synchronized (inputList) {
+            return selector.getRejected();
+        }
+    }
+
+    /**
+     * Get the number of events spilled to disk and waiting to be put into the input list.
+     * @return number of events spilled to disk and waiting to be put into the input list
+     */
+    public int getEventsSpilled() {
+        return (spill == null) ? 0 : spill.getCount();
+    }
+
+    /** Discard any events spilled to disk. Used when the last attachment detaches. */
+    void discardSpill() {
+        if (spill != null) {
+            spill.discard();
+        }
+    }
+
+    /** Schedule conductor thread to be terminated, deleting any events spilled to disk. */
+    public void killConductor() {
+        killConductor = true;
+        if (spill != null) {
+            spill.close();
+        }
+    }
 
 
     /**
@@ -267,6 +403,9 @@ public class StationLocal extends Thread implements EtEventSelectable {
             synchronized(inputList) {
                 try {
                     config.setSelect(select.clone());
+                    if (config.getSelectMode() != EtConstants.stationSelectUser) {
+                        selector = new EventSelector(select, selector);
+                    }
                 }
                 catch (EtException e) { /* should not happen. */  }
             }
@@ -306,7 +445,8 @@ public class StationLocal extends Thread implements EtEventSelectable {
 
     /**
      * When selectMode equals {@link org.jlab.coda.et.EtConstants#stationSelectMatch}, this
-     * becomes the station's selection method.
+     * is the station's selection method. The conductor threads use a compiled
+     * version of it ({@link EventSelector}) which gives the same results.
      * True is returned
      *
      * @param sys ET system object
@@ -368,7 +508,58 @@ public class StationLocal extends Thread implements EtEventSelectable {
         } while (inc > 1);
     }
 
-    
+
+    /**
+     * Spill the events going into this nonblocking station which do not fit in its
+     * input list. While events are on disk, all new ones follow them there so the
+     * station gets events in order. Events which do not fit on disk either pass
+     * this station by, as they would if it were not spilling.
+     * Called by conductors with this station's input list lock held. Events going
+     * to disk are only reserved room there and are written by {@link #flushSpill}
+     * once the lock is let go.
+     *
+     * @param putList   events going into this station; those not fitting are removed
+     * @param getList   events going on to the next stations, to which events which
+     *                  cannot be spilled are added
+     * @param spillList empty list to which events going to disk are added
+     */
+    private void overflow(ArrayList<EtEventImpl> putList, ArrayList<EtEventImpl> getList,
+                          ArrayList<EtEventImpl> spillList) {
+        int room = spill.isEmpty() ? Math.max(config.getCue() - inputList.size(), 0) : 0;
+        if (putList.size() <= room) return;
+
+        List<EtEventImpl> extra = putList.subList(room, putList.size());
+        int reserved = spill.reserve(extra, spillList);
+        getList.addAll(extra.subList(reserved, extra.size()));
+        extra.clear();
+    }
+
+
+    /**
+     * Write the events going to disk from {@link #overflow} to this station's spill
+     * file. Those which cannot be written pass this station by. The rest are free to
+     * be used again and are put into GRAND_CENTRAL station. Called by conductors
+     * without this station's input list lock held.
+     *
+     * @param getList   events going on to the next stations, to which events which
+     *                  cannot be written are added
+     * @param spillList events going to disk; emptied
+     */
+    private void flushSpill(ArrayList<EtEventImpl> getList, ArrayList<EtEventImpl> spillList) {
+        List<EtEventImpl> unwritten = spillList.subList(spill.flush(spillList), spillList.size());
+        getList.addAll(unwritten);
+        unwritten.clear();
+
+        if (spillList.size() > 0) {
+            if (sys.getMetrics().isTracing()) {
+                sys.getMetrics().endTrace(spillList);
+            }
+            sys.getStations().get(0).inputList.putInGC(spillList);
+            spillList.clear();
+        }
+    }
+
+
     /**
      * Method to implement thread conducting events between stations. This
      * conductor places all events that go into a single station into one list
@@ -379,13 +570,13 @@ public class StationLocal extends Thread implements EtEventSelectable {
      * station's input list without bothering to sort or filter it.
      */
     public void run() {
-        int count, prescale, available, getListSize, position;
+        int count, prescale, available, getListSize, nextIndex, batchSize = 0;
         long listTry;
-        EtEventImpl ev;
         boolean writeAll, parallelIsActive, rrobinOrEqualcue;
         StationLocal currentStat, stat, firstActive, startStation;
+        StationLocal[] nextStations;
         List<EtEventImpl> subList;
-        ListIterator statIterator, pIterator = null;
+        ListIterator pIterator = null;
 
         // inputList of next station
         EventList inList;
@@ -393,6 +584,8 @@ public class StationLocal extends Thread implements EtEventSelectable {
         ArrayList<EtEventImpl> getList = new ArrayList<EtEventImpl>(sys.getConfig().getNumEvents());
         // events to be put into the next station's inputList
         ArrayList<EtEventImpl> putList = new ArrayList<EtEventImpl>(sys.getConfig().getNumEvents());
+        // events going to disk in the next station, to be put into GRAND_CENTRAL once written
+        ArrayList<EtEventImpl> spillList = new ArrayList<EtEventImpl>();
 
         // store some constants in stack variables for greater speed
         final int idle = EtConstants.stationIdle;
@@ -400,7 +593,8 @@ public class StationLocal extends Thread implements EtEventSelectable {
         final int blocking = EtConstants.stationBlocking;
         final int nonBlocking = EtConstants.stationNonBlocking;
         final int selectAll = EtConstants.stationSelectAll;
-        final int parallel = EtConstants.stationParallel;
+        // most times to wait for another put (up to 1 ms each) to make a bigger batch
+        final int maxBatchWaits = 2;
 
         if (name.equals("GRAND_CENTRAL")) {
             status = active;
@@ -409,10 +603,14 @@ public class StationLocal extends Thread implements EtEventSelectable {
             status = idle;
         }
 
+        if (spill != null) {
+            spill.start();
+        }
+
         while (true) {
             // wait for events
             synchronized (outputList) {
-                while (outputList.getEvents().size() < 1) {
+                while (outputList.size() < 1) {
                     try {
                         outputList.wait();
                     }
@@ -422,10 +620,28 @@ public class StationLocal extends Thread implements EtEventSelectable {
                         return;
                     }
                 }
+
+                // If fewer events are here than usually come at once, users are probably
+                // still putting events. Wait for the next put (which notifies us) so that
+                // events from several puts are moved together in one transfer.
+                for (int i=0; i < maxBatchWaits && outputList.size() < batchSize/2; i++) {
+                    try {
+                        outputList.wait(0, 1);
+                    }
+                    catch (InterruptedException ex) {
+                    }
+                }
             }
 
             // grab all events in station's outputList
             outputList.get(getList);
+            conductorBatches.record(getList.size());
+            if (sys.getMetrics().isTracing()) {
+                traceOutput(getList);
+            }
+
+            // keep a running average of the number of events moved at once
+            batchSize = (3*batchSize + getList.size()) / 4;
 
             // reinit items
             writeAll = false;
@@ -434,35 +650,23 @@ public class StationLocal extends Thread implements EtEventSelectable {
             stopTransferLock.lock();
 
             // find next station in main linked list
-            position = sys.getStations().indexOf(this);
-            // If we're a parallel station which is NOT the head of its group,
-            // find our position in the main linked list
-            if (position < 0) {
-                position = 1;
-                for (ListIterator i = sys.getStations().listIterator(1); i.hasNext();) {
-                    stat = (StationLocal) i.next();
-                    if (stat.config.getFlowMode() == parallel) {
-                        // we've found the group of parallel stations we belong to & our position
-                        if (stat.parallelStations.indexOf(this) > -1) {
-                            break;
-                        }
-                    }
-                    position++;
-                }
-            }
-
-            statIterator = sys.getStations().listIterator(position + 1);
-            if (statIterator.hasNext()) {
-                currentStat = (StationLocal) statIterator.next();
+            nextStations = downstream;
+            nextIndex = 0;
+            if (nextIndex < nextStations.length) {
+                currentStat = nextStations[nextIndex++];
             }
             else {
                 // the next station is GrandCentral, put everything in it
                 currentStat = sys.getStations().get(0);
                 inList = currentStat.inputList;
+                if (sys.getMetrics().isTracing()) {
+                    sys.getMetrics().endTrace(getList);
+                }
                 synchronized (inList) {
                     inList.putInLow(getList);
                     getList.clear();
                     inList.notifyAll();
+                    inList.resumeWaiters();
                 }
                 stopTransferLock.unlock();
                 continue;
@@ -541,8 +745,14 @@ public class StationLocal extends Thread implements EtEventSelectable {
                             // all events, nonblocking
                             else if ((currentStat.config.getSelectMode() == selectAll) &&
                                     (currentStat.config.getBlockMode() == nonBlocking)) {
-                                if (inList.getEvents().size() < currentStat.config.getCue()) {
-                                    count = currentStat.config.getCue() - inList.getEvents().size();
+                                // all events go in, those beyond the cue onto disk
+                                if (currentStat.spill != null) {
+                                    putList.addAll(getList);
+                                    getList.clear();
+                                    currentStat.overflow(putList, getList, spillList);
+                                }
+                                else if (inList.size() < currentStat.config.getCue()) {
+                                    count = currentStat.config.getCue() - inList.size();
                                     available = getList.size();
                                     subList = getList.subList(0, (count > available) ? available : count);
                                     putList.addAll(subList);
@@ -552,37 +762,27 @@ public class StationLocal extends Thread implements EtEventSelectable {
 
                             //  condition (user or match), blocking
                             else if (currentStat.config.getBlockMode() == blocking) {
-                                prescale = currentStat.config.getPrescale();
-                                for (ListIterator i = getList.listIterator(); i.hasNext();) {
-                                    ev = (EtEventImpl) i.next();
-                                    // apply selection method
-                                    if (currentStat.selector.select(sys, currentStat, ev)) {
-                                        // apply prescale
-                                        listTry = inList.getEventsTry();
-                                        inList.setEventsTry(listTry + 1);
-                                        if ((listTry % prescale) == 0) {
-                                            putList.add(ev);
-                                            i.remove();
-                                        }
-                                    }
-                                }
+                                // apply selection method & prescale
+                                listTry = inList.getEventsTry();
+                                listTry += currentStat.selector.select(sys, currentStat, getList, putList,
+                                                                       Integer.MAX_VALUE,
+                                                                       currentStat.config.getPrescale(),
+                                                                       listTry);
+                                inList.setEventsTry(listTry);
                             }
 
                             // condition (user or match) + nonblocking
                             else if (currentStat.config.getBlockMode() == nonBlocking) {
-                                if (inList.getEvents().size() < currentStat.config.getCue()) {
-                                    count = currentStat.config.getCue() - inList.getEvents().size();
-                                    for (ListIterator i = getList.listIterator(); i.hasNext();) {
-                                        ev = (EtEventImpl) i.next();
-                                        // apply selection method
-                                        if (currentStat.selector.select(sys, currentStat, ev)) {
-                                            putList.add(ev);
-                                            i.remove();
-                                            if (--count < 1) {
-                                                break;
-                                            }
-                                        }
-                                    }
+                                if (currentStat.spill != null) {
+                                    currentStat.selector.select(sys, currentStat, getList, putList,
+                                                                Integer.MAX_VALUE, 1, 0);
+                                    currentStat.overflow(putList, getList, spillList);
+                                }
+                                else if (inList.size() < currentStat.config.getCue()) {
+                                    count = currentStat.config.getCue() - inList.size();
+                                    // apply selection method
+                                    currentStat.selector.select(sys, currentStat, getList, putList,
+                                                                count, 1, 0);
                                 }
                             }
 
@@ -590,6 +790,9 @@ public class StationLocal extends Thread implements EtEventSelectable {
                             if ((putList.size() > 0) || (writeAll)) {
                                 // if grandcentral
                                 if (currentStat.id == 0) {
+                                    if (sys.getMetrics().isTracing()) {
+                                        sys.getMetrics().endTrace(getList);
+                                    }
                                     inList.putInLow(getList);
                                     getList.clear();
                                     writeAll = false;
@@ -608,9 +811,15 @@ public class StationLocal extends Thread implements EtEventSelectable {
                                 }
                                 // signal reader that new events are here
                                 inList.notifyAll();
+                                inList.resumeWaiters();
                             } // if items go in this station
                         } // end of inputList synchronization
 
+                        // write events going to disk outside the input list lock
+                        if (spillList.size() > 0) {
+                            currentStat.flushSpill(getList, spillList);
+                        }
+
                         // go to next active parallel station, if there is one
                         if (parallelIsActive) {
                             do {
@@ -722,7 +931,7 @@ public class StationLocal extends Thread implements EtEventSelectable {
                         count = 0;
 
                         // set iterator to start with the station following startStation
-                        index = currentStat.parallelStations.indexOf(startStation) + 1;
+                        index = startStation.parallelIndex + 1;
                         pIterator = currentStat.parallelStations.listIterator(index);
 
                         while (true) {
@@ -743,6 +952,7 @@ public class StationLocal extends Thread implements EtEventSelectable {
                                         inList.setEventsTry(inList.getEventsTry() + eventsToPut);
                                         // signal reader that new events are here
                                         inList.notifyAll();
+                                        inList.resumeWaiters();
                                     }
 
                                     eventsAlreadyPut += eventsToPut;
@@ -761,7 +971,7 @@ public class StationLocal extends Thread implements EtEventSelectable {
                                 // Go back to the first active parallel station
                                 stat = firstActive;
                                 inList = stat.inputList;
-                                index = currentStat.parallelStations.indexOf(stat) + 1;
+                                index = stat.parallelIndex + 1;
                                 pIterator = currentStat.parallelStations.listIterator(index);
                             }
                         } // while (forever)
@@ -795,7 +1005,7 @@ public class StationLocal extends Thread implements EtEventSelectable {
                                 // Store this information as it will change and we don't
                                 // really want to grab all the input mutexes to make
                                 // sure these values don't change.
-                                inListCount[numActiveStations + 1] = stat.inputList.getEvents().size();
+                                inListCount[numActiveStations + 1] = stat.inputList.size();
 
                                 // Total number of active stations
                                 numActiveStations++;
@@ -872,7 +1082,7 @@ public class StationLocal extends Thread implements EtEventSelectable {
 
                         stat = firstActive;
                         count = 0;
-                        index = currentStat.parallelStations.indexOf(stat) + 1;
+                        index = stat.parallelIndex + 1;
                         pIterator = currentStat.parallelStations.listIterator(index);
 
                         while (true) {
@@ -898,6 +1108,7 @@ public class StationLocal extends Thread implements EtEventSelectable {
                                     inList.setEventsTry(inList.getEventsTry() + eventsToPut);
                                     // signal reader that new events are here
                                     inList.notifyAll();
+                                    inList.resumeWaiters();
                                 }
 
                                 eventsAlreadyPut += eventsToPut;
@@ -922,8 +1133,8 @@ public class StationLocal extends Thread implements EtEventSelectable {
                 }
 
                 // find next station
-                if (statIterator.hasNext()) {
-                    currentStat = (StationLocal) statIterator.next();
+                if (nextIndex < nextStations.length) {
+                    currentStat = nextStations[nextIndex++];
                 }
                 else {
                     currentStat = sys.getStations().get(0);
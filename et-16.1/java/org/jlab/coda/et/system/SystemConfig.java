@@ -67,6 +67,47 @@ public class SystemConfig {
      */
     private boolean noDelay;
 
+    /**
+     * Number of threads the ET server uses to handle all users' tcp connections.
+     * If 0, the default, each connection gets a thread of its own.
+     * Otherwise connections are multiplexed over this many threads with
+     * non-blocking IO, and users waiting for events hold no thread.
+     */
+    private int serverThreads;
+
+    /**
+     * Are events' data stored outside of the Java heap?
+     * If <code>true</code>, the data of all events are slices of a few large
+     * direct buffers so that the heap stays small no matter how much event memory
+     * there is. Local users in the same JVM cannot then use {@link org.jlab.coda.et.EtEvent#getData()}.
+     */
+    private boolean directEvents;
+
+    /**
+     * Name of the file in which events' data are stored, or null if none.
+     * If set, the data of all events are slices of the memory-mapped file
+     * (and therefore outside the Java heap). Java users on the same host may map
+     * the same file to access event data directly instead of over the network.
+     */
+    private String eventFile;
+
+    /**
+     * One of every this many new events is traced through the stations, or none if 0.
+     * The time traced events spend in each station and with each attachment is kept.
+     */
+    private int traceSampling;
+
+    /**
+     * Directory in which nonblocking stations spill events which do not fit in
+     * their input lists, or null if events are not spilled. Events beyond a station's
+     * cue are written to a file in this directory instead of passing the station by,
+     * and are put back into the station, in order, as it catches up.
+     */
+    private String spillDirectory;
+
+    /** Most bytes of events each station may spill to disk. */
+    private long spillLimit;
+
     /** UDP port number for thread responding to users' broad/multicasts looking for the
      *  ET system. */
     private int udpPort;
@@ -98,6 +139,7 @@ public class SystemConfig {
         debug           = EtConstants.debugError;
         udpPort         = EtConstants.udpPort;
         serverPort      = EtConstants.serverPort;
+        spillLimit      = EtConstants.defaultSpillLimit;
         multicastAddrs  = new HashSet<InetAddress>(10);
         // by default there is one group with all events in it
         groups          = new int[1];
@@ -115,6 +157,12 @@ public class SystemConfig {
         tcpRecvBufSize  = config.tcpRecvBufSize;
         tcpSendBufSize  = config.tcpSendBufSize;
         noDelay         = config.noDelay;
+        serverThreads   = config.serverThreads;
+        directEvents    = config.directEvents;
+        eventFile       = config.eventFile;
+        traceSampling   = config.traceSampling;
+        spillDirectory  = config.spillDirectory;
+        spillLimit      = config.spillLimit;
         serverPort      = config.serverPort;
         multicastAddrs  = new HashSet<InetAddress>(config.multicastAddrs);
         groups          = config.groups.clone();
@@ -166,6 +214,43 @@ public class SystemConfig {
         return noDelay;
     }
 
+    /** Get the number of threads handling all users' tcp connections.
+     *  @return number of threads handling all tcp connections, or 0 if
+     *          each connection has a thread of its own */
+    public int getServerThreads() {
+        return serverThreads;
+    }
+
+    /** Are events' data stored outside of the Java heap?
+     *  @return <code>true</code> if events' data are stored in direct buffers */
+    public boolean isDirectEvents() {
+        return directEvents;
+    }
+
+    /** Get the name of the file in which events' data are stored.
+     *  @return name of the file in which events' data are stored, or null if none */
+    public String getEventFile() {
+        return eventFile;
+    }
+
+    /** Get how often new events are traced through the stations.
+     *  @return one of every this many new events is traced, or none if 0 */
+    public int getTraceSampling() {
+        return traceSampling;
+    }
+
+    /** Get the directory in which nonblocking stations spill events, or null if none.
+     *  @return directory in which nonblocking stations spill events, or null if none */
+    public String getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /** Get the most bytes of events each station may spill to disk.
+     *  @return most bytes of events each station may spill to disk */
+    public long getSpillLimit() {
+        return spillLimit;
+    }
+
     /** Get the udp port number.
      *  @return udp port number */
     public int getUdpPort() {return udpPort;}
@@ -372,6 +457,103 @@ public class SystemConfig {
     }
 
 
+    /**
+     * Set the number of threads handling all users' tcp connections.
+     * A value of 0, the default, means each connection gets a thread of its own.
+     * Any other value multiplexes all connections over that many threads
+     * with non-blocking IO, which scales to many more users.
+     *
+     * @param serverThreads number of threads handling all tcp connections
+     * @throws EtException
+     *     if the argument is less than 0
+     */
+    public void setServerThreads(int serverThreads) throws EtException {
+        if (serverThreads < 0) {
+            throw new EtException("number of threads must be >= 0");
+        }
+        this.serverThreads = serverThreads;
+    }
+
+
+    /**
+     * Set whether events' data are stored outside of the Java heap,
+     * in direct buffers. They are on the heap by default.
+     * @param directEvents <code>true</code> if events' data are stored in direct buffers
+     */
+    public void setDirectEvents(boolean directEvents) {
+        this.directEvents = directEvents;
+    }
+
+
+    /**
+     * Set the name of the file in which events' data are stored. If set, events' data
+     * are stored in this memory-mapped file which Java users on the same host may map
+     * as well to access event data directly. Any existing file is overwritten.
+     * By default there is no such file.
+     * @param eventFile name of the file in which events' data are stored, or null if none
+     */
+    public void setEventFile(String eventFile) {
+        this.eventFile = eventFile;
+    }
+
+
+    /**
+     * Set how often new events are traced through the stations. The times a traced
+     * event spends in each station's output list, with each attachment, and from
+     * the time it is new until it returns to GRAND_CENTRAL station are kept.
+     * By default no events are traced.
+     * @param traceSampling one of every this many new events is traced, or none if 0
+     * @throws EtException
+     *     if the argument is negative
+     * @see SystemMetrics#setTraceSampling(int)
+     */
+    public void setTraceSampling(int traceSampling) throws EtException {
+        if (traceSampling < 0) {
+            throw new EtException("trace sampling must be >= 0");
+        }
+        this.traceSampling = traceSampling;
+    }
+
+
+    /**
+     * Set the directory in which nonblocking stations spill events that do not fit
+     * in their input lists. Normally, once a nonblocking station's input list holds
+     * as many events as its cue, any more events pass the station by. If this is set,
+     * those events are instead written to a file in this directory, the event objects
+     * are returned to GRAND_CENTRAL station, and the events are put back into the
+     * station in their original order as its attachments catch up. A slow station then
+     * loses no events during bursts as long as its file stays within the
+     * {@link #setSpillLimit(long) spill limit}. Spilled events still on disk when the
+     * station's last attachment detaches are discarded.
+     * By default events are not spilled.
+     *
+     * @param spillDirectory directory in which nonblocking stations spill events,
+     *                       or null if events are not spilled
+     */
+    public void setSpillDirectory(String spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+
+    /**
+     * Set the most bytes of events each nonblocking station may spill to disk.
+     * Once a station's file reaches this size, further events pass the station by
+     * just as if it were not spilling. Defaults to
+     * {@link org.jlab.coda.et.EtConstants#defaultSpillLimit}.
+     *
+     * @param spillLimit most bytes of events each station may spill to disk
+     * @throws EtException
+     *     if the argument is less than 1
+     * @see #setSpillDirectory(String)
+     */
+    public void setSpillLimit(long spillLimit) throws EtException {
+        if (spillLimit < 1) {
+            throw new EtException("spill limit must be > 0");
+        }
+        this.spillLimit = spillLimit;
+    }
+
+
     /**
      * Sets the udp port number.
      * @param port udp port number
@@ -18,6 +18,7 @@ import java.lang.*;
 import java.util.*;
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
 
 import org.jlab.coda.et.exception.*;
 import org.jlab.coda.et.*;
@@ -78,7 +79,7 @@ public class SystemCreate {
     private byte[] stationLock;
 
     /** TCP server thread. */
-    private SystemTcpServer tcpServer;
+    private Thread tcpServer;
 
     /** UDP server thread. */
     private SystemUdpServer udpServer;
@@ -103,6 +104,23 @@ public class SystemCreate {
 
     /** Array for storing system information for distribution. */
     private byte[] infoArray = new byte[6000];
+
+    /** Memory holding the data of each event (indexed by id) if not stored in
+     *  the Java heap, else null. */
+    private ByteBuffer[] eventMemory;
+
+    /** Random number identifying the file in which events' data are stored. */
+    private long eventFileId;
+
+    /** Offset into the file, in which events' data are stored, of the first event's data. */
+    static final int eventFileDataOffset = 64;
+
+    /** Metrics of this ET system. */
+    private final SystemMetrics metrics;
+
+    /** ET systems running in this JVM, by absolute file name, so that users in the
+     *  same JVM can access their events directly. Guarded by itself. */
+    private static final HashMap<String, SystemCreate> runningSystems = new HashMap<String, SystemCreate>();
     
 
     /**
@@ -153,6 +171,7 @@ public class SystemCreate {
 
         this.name = name;
         this.config = new SystemConfig(config);
+        metrics = new SystemMetrics(this, config.getTraceSampling());
         attachments = new HashMap<Integer, AttachmentLocal>(EtConstants.attachmentsMax + 1);
         events = new EtEventImpl[config.getNumEvents()];
         stations = new ArrayList<StationLocal>(100);
@@ -208,6 +227,14 @@ public class SystemCreate {
         catch (IOException ex) {
         }
 
+        // Events' data may be stored outside the Java heap
+        if (config.getEventFile() != null) {
+            eventMemory = mapEventFile();
+        }
+        else if (config.isDirectEvents()) {
+            eventMemory = allocateDirectEvents();
+        }
+
         // store local IP addresses
 //        try {
 //            netAddresses = InetAddress.getAllByName(InetAddress.getLocalHost().getHostName());
@@ -272,6 +299,10 @@ public class SystemCreate {
      *  @return ET system file name */
     public String getName() {return name;}
 
+    /** Gets the metrics of this ET system.
+     *  @return metrics of this ET system */
+    public SystemMetrics getMetrics() {return metrics;}
+
     /** Gets the ET system configuration.
      *  @return ET system configuration */
     public SystemConfig getConfig() {return new SystemConfig(config);}
@@ -280,6 +311,28 @@ public class SystemCreate {
      *  @return <code>true</code> if the system is running, else <code>false</code> */
     synchronized public boolean running() {return running;}
 
+    /**
+     * Gets the ET system of the given name if it is running in this JVM.
+     * @param name ET system file name
+     * @return ET system running in this JVM, or null if none
+     */
+    public static SystemCreate getRunningSystem(String name) {
+        synchronized (runningSystems) {
+            return runningSystems.get(new File(name).getAbsolutePath());
+        }
+    }
+
+    /**
+     * Gets the attachment of the given id.
+     * @param attId attachment id
+     * @return attachment, or null if none
+     */
+    public AttachmentLocal getAttachment(int attId) {
+        synchronized (systemLock) {
+            return (attachments == null) ? null : attachments.get(attId);
+        }
+    }
+
     /** Get the linked list of stations.
      * @return linked list of stations */
     public ArrayList<StationLocal> getStations() { return stations; }
@@ -318,6 +371,108 @@ public class SystemCreate {
 
    
 
+    /**
+     * Allocate the data memory of all events outside of the Java heap.
+     * Since a single buffer cannot be larger than 2GB, events are divided among
+     * direct buffers of up to 1GB each and every event gets a slice of one.
+     *
+     * @return array of buffers, one for each event
+     */
+    private ByteBuffer[] allocateDirectEvents() {
+        int numEvents = config.getNumEvents();
+        int eventSize = config.getEventSize();
+        int eventsPerBuffer = Math.max(1, (1 << 30) / eventSize);
+        ByteBuffer[] buffers = new ByteBuffer[numEvents];
+        ByteBuffer memory = null;
+
+        for (int i=0; i < numEvents; i++) {
+            int index = i % eventsPerBuffer;
+            if (index == 0) {
+                int count = Math.min(eventsPerBuffer, numEvents - i);
+                memory = ByteBuffer.allocateDirect(count * eventSize);
+            }
+            memory.limit((index + 1) * eventSize).position(index * eventSize);
+            buffers[i] = memory.slice();
+        }
+
+        return buffers;
+    }
+
+
+    /**
+     * Store the data of all events in a memory-mapped file so that Java users on
+     * the same host can map it too and access event data without copying it over
+     * the network. The file starts with a random id (long) so users can be sure
+     * they have mapped the file of this ET system. Events' data start at
+     * {@link #eventFileDataOffset} bytes into the file.
+     *
+     * @return array of buffers, one for each event
+     * @throws EtException if file cannot be created or mapped
+     */
+    private ByteBuffer[] mapEventFile() throws EtException {
+        int numEvents = config.getNumEvents();
+        int eventSize = config.getEventSize();
+        File file = new File(config.getEventFile());
+        eventFileId = new Random().nextLong();
+
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(0L);
+            raf.setLength(eventFileDataOffset + (long)numEvents*eventSize);
+            raf.writeLong(eventFileId);
+            return EtUtils.mapEvents(raf.getChannel(), eventFileDataOffset, numEvents, eventSize);
+        }
+        catch (IOException ex) {
+            if (config.getDebug() >= EtConstants.debugInfo) {
+                System.out.println("cannot map event file " + file.getPath());
+            }
+            throw new EtException("Cannot map event file " + file.getPath());
+        }
+        finally {
+            // the mapping remains valid after the file is closed
+            if (raf != null) {
+                try {raf.close();}
+                catch (IOException ex) {}
+            }
+            file.deleteOnExit();
+        }
+    }
+
+
+    /**
+     * Get the random number identifying the file in which events' data are stored.
+     * @return random number identifying the file in which events' data are stored
+     */
+    long getEventFileId() {
+        return eventFileId;
+    }
+
+
+    /**
+     * Is this event's data stored in the memory-mapped event file? It will not be
+     * if the user has given the event a buffer of its own (a larger event, for example).
+     *
+     * @param ev event
+     * @return {@code true} if event's data is in the event file, else {@code false}
+     */
+    boolean isSharedData(EtEventImpl ev) {
+        return config.getEventFile() != null && ev.getDataBuffer() == eventMemory[ev.getId()];
+    }
+
+
+    /**
+     * Have this event's data be stored in its place in the memory-mapped event file.
+     * Used when a user on the same host has written the event's data directly into the file.
+     *
+     * @param ev event
+     */
+    void useSharedData(EtEventImpl ev) {
+        ev.setDataBuffer(eventMemory[ev.getId()]);
+        ev.setMemSize(config.getEventSize());
+    }
+
+
     /** Starts the ET system running. If the system is already running, nothing
      * is done. */
     synchronized public void startUp() {
@@ -332,7 +487,12 @@ public class SystemCreate {
         ArrayList<EtEventImpl> eventList = new ArrayList<EtEventImpl>(config.getNumEvents());
 
         for (int i=0; i < config.getNumEvents(); i++) {
-            ev = new EtEventImpl(config.getEventSize());
+            if (eventMemory != null) {
+                ev = new EtEventImpl(eventMemory[i]);
+            }
+            else {
+                ev = new EtEventImpl(config.getEventSize());
+            }
             ev.setId(i);
 
             // assign group numbers
@@ -355,7 +515,12 @@ public class SystemCreate {
         etSystemThreads = new ThreadGroup("etSystemThreads");
 
         // run tcp server thread
-        tcpServer = new SystemTcpServer(this, etSystemThreads);
+        if (config.getServerThreads() > 0) {
+            tcpServer = new SystemNioServer(this, etSystemThreads);
+        }
+        else {
+            tcpServer = new SystemTcpServer(this, etSystemThreads);
+        }
         tcpServer.start();
 
         // run udp listening thread
@@ -363,6 +528,11 @@ public class SystemCreate {
         udpServer.start();
 
         running = true;
+        metrics.register();
+
+        synchronized (runningSystems) {
+            runningSystems.put(new File(name).getAbsolutePath(), this);
+        }
     }
 
 
@@ -371,6 +541,26 @@ public class SystemCreate {
     synchronized public void shutdown() {
         if (!running) return;
 
+        synchronized (runningSystems) {
+            String path = new File(name).getAbsolutePath();
+            if (runningSystems.get(path) == this) {
+                runningSystems.remove(path);
+            }
+        }
+        metrics.unregister();
+
+        // Stop conductors and delete any files of spilled events
+        for (StationLocal stat : stations) {
+            if (stat.getConfig().getFlowMode() == EtConstants.stationParallel) {
+                for (StationLocal pStat : stat.getParallelStations()) {
+                    pStat.killConductor();
+                }
+            }
+            else {
+                stat.killConductor();
+            }
+        }
+
         // Give threads to a chance to gracefully end
         killAllThreads = true;
         etSystemThreads.interrupt();
@@ -509,11 +699,39 @@ public class SystemCreate {
     }
 
 
+    /**
+     * Method used to give each station its place in the linked lists of stations so its
+     * conductor thread can find where events go next. Call this, holding all stations'
+     * transfer locks, after changing the linked lists.
+     */
+    private void updateStationTopology() {
+        int size = stations.size();
+        for (int i=0; i < size; i++) {
+            StationLocal stat = stations.get(i);
+            // stations after this one, each array shared by any group of parallel stations
+            StationLocal[] downstream = stations.subList(i+1, size).toArray(new StationLocal[size-i-1]);
+
+            if (stat.getConfig().getFlowMode() == EtConstants.stationParallel) {
+                ArrayList<StationLocal> group = stat.getParallelStations();
+                for (int j=0; j < group.size(); j++) {
+                    group.get(j).setTopology(downstream, j);
+                }
+            }
+            else {
+                stat.setTopology(downstream, 0);
+            }
+        }
+    }
+
+
     /**
      * Method used to remove a station from all relevant linked lists of stations.
      * @param station station object
      */
     private void deleteStation(StationLocal station) {
+        // Any events still passing through go straight to GRAND_CENTRAL
+        station.setTopology(new StationLocal[0], 0);
+
         // The only tricky part in removing a station is to remember that it may not
         // be in the main linked list if it is a parallel station.
 
@@ -589,6 +807,7 @@ public class SystemCreate {
             newStation.getStopTransferLock().lock();
         }
         finally {
+            updateStationTopology();
             unlockAllStationTransferLocks();
         }
     }
@@ -609,6 +828,7 @@ public class SystemCreate {
             station.getStopTransferLock().unlock();
         }
         finally {
+            updateStationTopology();
             unlockAllStationTransferLocks();
         }
     }
@@ -635,6 +855,7 @@ public class SystemCreate {
             insertStation(station, position, parallelPosition);
         }
         finally {
+            updateStationTopology();
             unlockAllStationTransferLocks();
         }
     }
@@ -821,6 +1042,7 @@ public class SystemCreate {
         // put in linked list
         stations.clear();
         stations.add(0, station);
+        updateStationTopology();
 
         // start its conductor thread
         station.start();
@@ -1169,6 +1391,8 @@ public class SystemCreate {
                 // att.station.status = Constants.stationIdle;
                 // change station status - first grabbing stopTransfer mutexes
                 changeStationStatus(att.getStation(), EtConstants.stationIdle);
+                // no one is left to get events spilled to disk
+                att.getStation().discardSpill();
                 // give other threads a chance to finish putting events in
                 Thread.yield();
                 // flush any remaining events
@@ -1355,13 +1579,19 @@ public class SystemCreate {
             throws EtEmptyException, EtBusyException, EtTimeoutException, EtWakeUpException {
 
 //System.out.println("newEvents: get " + count + " events");
+        long begin = System.nanoTime();
 
         // get events from GrandCentral Station's output list
         EtEventImpl[] evs = gcStation.getInputList().get(att, mode, microSec, count);
 //System.out.println("newEvents: got events");
 
         // for each event ...
+        long now = System.nanoTime();
         for (EtEventImpl ev : evs) {
+            // time spent in GrandCentral
+            gcStation.getResidency().record(now - ev.getStationTime());
+            // trace this event?
+            ev.setTraced(metrics.sampleTrace(), now);
             // initialize fields
             ev.init();
             // registered as owned by this attachment
@@ -1376,6 +1606,7 @@ public class SystemCreate {
 
         // keep track of # of events made by this attachment
         att.setEventsMake(att.getEventsMake() + evs.length);
+        metrics.recordNew(begin, evs.length);
 //System.out.println("newEvents: att.eventsMake = "+ att.eventsMake);
         return evs;
     }
@@ -1417,13 +1648,23 @@ public class SystemCreate {
         if (group > config.getGroups().length) {
             throw new EtException("group number is too high");
         }
+        else if (group < 1) {
+            throw new EtException("group number is too low");
+        }
+
+        long begin = System.nanoTime();
 
         // get events from GrandCentral Station's output list
         List<EtEventImpl> evs = gcStation.getInputList().get(att, mode, microSec, count, group);
 //System.out.println("newEvents: got events (# = " + evs.size() + ")");
 
         // for each event ...
+        long now = System.nanoTime();
         for (EtEventImpl ev : evs) {
+            // time spent in GrandCentral
+            gcStation.getResidency().record(now - ev.getStationTime());
+            // trace this event?
+            ev.setTraced(metrics.sampleTrace(), now);
             // initialize fields
             ev.init();
             // registered as owned by this attachment
@@ -1438,6 +1679,7 @@ public class SystemCreate {
 
         // keep track of # of events made by this attachment
         att.setEventsMake(att.getEventsMake() + evs.size());
+        metrics.recordNew(begin, evs.size());
 //System.out.println("newEvents: att.eventsMake = "+ att.eventsMake);
         return evs;
     }
@@ -1470,15 +1712,23 @@ public class SystemCreate {
     public EtEventImpl[] getEvents(AttachmentLocal att, int mode, int microSec, int count)
             throws EtEmptyException, EtBusyException, EtTimeoutException, EtWakeUpException {
 
-        EtEventImpl[] evs = att.getStation().getInputList().get(att, mode, microSec, count);
+        long begin = System.nanoTime();
+        StationLocal stat = att.getStation();
+        EtEventImpl[] evs = stat.getInputList().get(att, mode, microSec, count);
 
         // each event is registered as owned by this attachment
+        long now = System.nanoTime();
         for (EtEventImpl ev : evs) {
             ev.setOwner(att.getId());
+            stat.getResidency().record(now - ev.getStationTime());
+            if (ev.isTraced()) {
+                ev.setTraceTime(now);
+            }
         }
 
         // keep track of # of events gotten by this attachment
         att.setEventsGet(att.getEventsGet() + evs.length);
+        metrics.recordGet(begin, evs.length);
 
         return evs;
     }
@@ -1513,17 +1763,23 @@ public class SystemCreate {
      */
    public void putEvents(AttachmentLocal att, EtEventImpl[] eventArray) {
         if (eventArray.length < 1) return;
+        long begin = System.nanoTime();
 
         // mark events as used and as owned by system
         for (EtEventImpl ev : eventArray) {
 //System.out.println("putEvents: set age & owner of event " + i);
             ev.setAge(Age.USED);
             ev.setOwner(EtConstants.system);
+            if (ev.isTraced()) {
+                att.getTraceHold().record(begin - ev.getTraceTime());
+                ev.setTraceTime(begin);
+            }
         }
 
         att.getStation().getOutputList().put(eventArray);
         // keep track of # of events put by this attachment
         att.setEventsPut(att.getEventsPut() + eventArray.length);
+        metrics.recordPut(begin, eventArray.length);
 
         return;
     }
@@ -1563,10 +1819,15 @@ public class SystemCreate {
      */
     public void dumpEvents(AttachmentLocal att, EtEventImpl[] eventArray) {
         if (eventArray.length < 1) return;
+        long begin = System.nanoTime();
 
         // mark as owned by system
         for (EtEventImpl ev : eventArray) {
             ev.setOwner(EtConstants.system);
+            if (ev.isTraced()) {
+                att.getTraceHold().record(begin - ev.getTraceTime());
+                metrics.endTrace(ev, begin);
+            }
         }
 
         // put into GrandCentral Station
@@ -1574,6 +1835,7 @@ public class SystemCreate {
 
         // keep track of # of events put by this attachment
         att.setEventsDump(att.getEventsDump() + eventArray.length);
+        metrics.recordDump(begin, eventArray.length);
 
         return;
     }
@@ -1827,11 +2089,11 @@ public class SystemCreate {
             numAtts = counter;
 
             EtUtils.intToBytes(EtConstants.mutexUnlocked,                 info, off += 4);
-            EtUtils.intToBytes(stat.getInputList().getEvents().size(),  info, off += 4);
+            EtUtils.intToBytes(stat.getInputList().size(),  info, off += 4);
             EtUtils.longToBytes(stat.getInputList().getEventsTry(),     info, off += 4);
             EtUtils.longToBytes(stat.getInputList().getEventsIn(),      info, off += 8);
             EtUtils.intToBytes(EtConstants.mutexUnlocked,                 info, off += 8);
-            EtUtils.intToBytes(stat.getOutputList().getEvents().size(), info, off += 4);
+            EtUtils.intToBytes(stat.getOutputList().size(), info, off += 4);
             EtUtils.longToBytes(stat.getOutputList().getEventsOut(),    info, off += 4);
 
             if (stat.getConfig().getFlowMode() == EtConstants.stationParallel && isHead) {
@@ -0,0 +1,372 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2026        Jefferson Science Associates,                   *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.system;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.jlab.coda.et.EtConstants;
+import org.jlab.coda.et.EtEventImpl;
+
+/**
+ * This class keeps the metrics of an ET system: counts of events going through it,
+ * how long users' calls take, and, for each station, how long events wait in its
+ * input list, how many events are in that list when they are gotten, and how many
+ * events its conductor moves at once. Everything is recorded without locking so it
+ * is always on.<p>
+ *
+ * In addition, a sample of new events may be traced through the stations. For these,
+ * the time spent in each station's output list, the time held by each attachment, and
+ * the time from being new until returning to GRAND_CENTRAL are kept. When no events
+ * are traced this costs nearly nothing. The metrics are seen through JMX under the name
+ * "org.jlab.coda.et:type=EtSystem,name=&lt;ET file name&gt;", or as text through
+ * {@link #toText()} which users get with
+ * {@link org.jlab.coda.et.EtSystem#getMetrics()}.
+ *
+ * @author Carl Timmer
+ */
+public class SystemMetrics implements SystemMetricsMBean {
+
+    /** ET system whose metrics these are. */
+    private final SystemCreate sys;
+
+    /** Name under which this object is registered with JMX, null if it is not. */
+    private ObjectName jmxName;
+
+    /** Number of new events handed out. */
+    private final LongAdder eventsNew = new LongAdder();
+
+    /** Number of events gotten. */
+    private final LongAdder eventsGotten = new LongAdder();
+
+    /** Number of events put. */
+    private final LongAdder eventsPut = new LongAdder();
+
+    /** Number of events dumped. */
+    private final LongAdder eventsDumped = new LongAdder();
+
+    /** Times of calls getting new events in nanoseconds. */
+    private final LogHistogram newLatency = new LogHistogram();
+
+    /** Times of calls getting events in nanoseconds. */
+    private final LogHistogram getLatency = new LogHistogram();
+
+    /** Times of calls putting or dumping events in nanoseconds. */
+    private final LogHistogram putLatency = new LogHistogram();
+
+    /** Times in nanoseconds traced events take from being new to returning to GRAND_CENTRAL. */
+    private final LogHistogram traceLifetime = new LogHistogram();
+
+    /** One of every this many new events is traced, or none if 0. */
+    private volatile int traceSampling;
+
+
+    /**
+     * Constructor.
+     * @param sys ET system whose metrics these are
+     * @param traceSampling one of every this many new events is traced, or none if 0
+     */
+    SystemMetrics(SystemCreate sys, int traceSampling) {
+        this.sys = sys;
+        this.traceSampling = traceSampling;
+    }
+
+
+    /**
+     * Are events being traced?
+     * @return <code>true</code> if events are being traced
+     */
+    boolean isTracing() {
+        return traceSampling > 0;
+    }
+
+
+    /**
+     * Should a new event be traced?
+     * @return <code>true</code> if the new event should be traced
+     */
+    boolean sampleTrace() {
+        int n = traceSampling;
+        return n > 0 && (n == 1 || ThreadLocalRandom.current().nextInt(n) == 0);
+    }
+
+
+    /**
+     * Stop tracing an event which is returning to GRAND_CENTRAL station
+     * and record how long it was traced.
+     * @param ev  event
+     * @param now current time from {@link System#nanoTime()}
+     */
+    void endTrace(EtEventImpl ev, long now) {
+        traceLifetime.record(now - ev.getTraceStart());
+        ev.setTraced(false, 0L);
+    }
+
+
+    /**
+     * Stop tracing any traced events which are returning to GRAND_CENTRAL station.
+     * @param events events returning to GRAND_CENTRAL station
+     */
+    void endTrace(List<EtEventImpl> events) {
+        long now = System.nanoTime();
+        for (EtEventImpl ev : events) {
+            if (ev.isTraced()) {
+                endTrace(ev, now);
+            }
+        }
+    }
+
+
+    /**
+     * Record a call which got new events.
+     * @param begin  time, from {@link System#nanoTime()}, at which the call began
+     * @param events number of events handed out
+     */
+    void recordNew(long begin, int events) {
+        newLatency.record(System.nanoTime() - begin);
+        eventsNew.add(events);
+    }
+
+
+    /**
+     * Record a call which got events.
+     * @param begin  time, from {@link System#nanoTime()}, at which the call began
+     * @param events number of events handed out
+     */
+    void recordGet(long begin, int events) {
+        getLatency.record(System.nanoTime() - begin);
+        eventsGotten.add(events);
+    }
+
+
+    /**
+     * Record a call which put events.
+     * @param begin  time, from {@link System#nanoTime()}, at which the call began
+     * @param events number of events put
+     */
+    void recordPut(long begin, int events) {
+        putLatency.record(System.nanoTime() - begin);
+        eventsPut.add(events);
+    }
+
+
+    /**
+     * Record a call which dumped events.
+     * @param begin  time, from {@link System#nanoTime()}, at which the call began
+     * @param events number of events dumped
+     */
+    void recordDump(long begin, int events) {
+        putLatency.record(System.nanoTime() - begin);
+        eventsDumped.add(events);
+    }
+
+
+    /** Make these metrics seen through JMX. Failure is not fatal. */
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("org.jlab.coda.et:type=EtSystem,name=" +
+                                     ObjectName.quote(new File(sys.getName()).getAbsolutePath()));
+            server.registerMBean(this, name);
+            jmxName = name;
+        }
+        catch (JMException ex) {
+            if (sys.getConfig().getDebug() >= EtConstants.debugWarn) {
+                System.out.println("cannot register metrics with JMX: " + ex.getMessage());
+            }
+        }
+        catch (SecurityException ex) {
+            if (sys.getConfig().getDebug() >= EtConstants.debugWarn) {
+                System.out.println("cannot register metrics with JMX: " + ex.getMessage());
+            }
+        }
+    }
+
+
+    /** Stop these metrics from being seen through JMX. */
+    void unregister() {
+        if (jmxName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(jmxName);
+        }
+        catch (JMException ex) {
+        }
+        jmxName = null;
+    }
+
+
+    public long getEventsNew()       {return eventsNew.sum();}
+    public long getEventsGotten()    {return eventsGotten.sum();}
+    public long getEventsPut()       {return eventsPut.sum();}
+    public long getEventsDumped()    {return eventsDumped.sum();}
+    public long getNewLatencyMedian(){return newLatency.getValueAtPercentile(50.);}
+    public long getNewLatency99()    {return newLatency.getValueAtPercentile(99.);}
+    public long getGetLatencyMedian(){return getLatency.getValueAtPercentile(50.);}
+    public long getGetLatency99()    {return getLatency.getValueAtPercentile(99.);}
+    public long getPutLatencyMedian(){return putLatency.getValueAtPercentile(50.);}
+    public long getPutLatency99()    {return putLatency.getValueAtPercentile(99.);}
+    public int  getTraceSampling()   {return traceSampling;}
+    public String getText()          {return toText();}
+
+
+    /**
+     * Set how often new events are traced through the stations.
+     * @param traceSampling one of every this many new events is traced, or none if 0 or less
+     * @see SystemConfig#setTraceSampling(int)
+     */
+    public void setTraceSampling(int traceSampling) {
+        this.traceSampling = Math.max(traceSampling, 0);
+    }
+
+
+    /**
+     * Write a histogram's values as a summary in the Prometheus text format.
+     *
+     * @param sb     where to write
+     * @param metric name of metric
+     * @param labels labels identifying the histogram, separated by commas
+     * @param hist   histogram
+     */
+    private static void writeSummary(StringBuilder sb, String metric, String labels, LogHistogram hist) {
+        String[] quantiles = {"0.5", "0.9", "0.99", "0.999"};
+        for (String q : quantiles) {
+            sb.append(metric).append('{').append(labels).append(",quantile=\"").append(q).append("\"} ");
+            sb.append(hist.getValueAtPercentile(100.*Double.parseDouble(q))).append('\n');
+        }
+        sb.append(metric).append("_max{").append(labels).append("} ").append(hist.getMax()).append('\n');
+        sb.append(metric).append("_sum{").append(labels).append("} ").append(hist.getSum()).append('\n');
+        sb.append(metric).append("_count{").append(labels).append("} ").append(hist.getCount()).append('\n');
+    }
+
+
+    /**
+     * Get a label identifying a station.
+     * @param stat station
+     * @return label identifying the station
+     */
+    private static String stationLabel(StationLocal stat) {
+        String name = stat.getStationName().replace("\\", "\\\\").replace("\"", "\\\"");
+        return "station=\"" + name + '"';
+    }
+
+
+    /**
+     * Get all metrics as text in the Prometheus text format.
+     * Times are in nanoseconds.
+     *
+     * @return all metrics as text
+     */
+    public String toText() {
+        StringBuilder sb = new StringBuilder(4096);
+
+        sb.append("# TYPE et_events_total counter\n");
+        sb.append("et_events_total{op=\"new\"} ").append(eventsNew.sum()).append('\n');
+        sb.append("et_events_total{op=\"get\"} ").append(eventsGotten.sum()).append('\n');
+        sb.append("et_events_total{op=\"put\"} ").append(eventsPut.sum()).append('\n');
+        sb.append("et_events_total{op=\"dump\"} ").append(eventsDumped.sum()).append('\n');
+
+        sb.append("# TYPE et_call_latency_ns summary\n");
+        writeSummary(sb, "et_call_latency_ns", "op=\"new\"", newLatency);
+        writeSummary(sb, "et_call_latency_ns", "op=\"get\"", getLatency);
+        writeSummary(sb, "et_call_latency_ns", "op=\"put\"", putLatency);
+
+        // copy the stations and attachments so they are not locked while writing
+        ArrayList<StationLocal> stats = new ArrayList<StationLocal>();
+        ArrayList<AttachmentLocal> atts = new ArrayList<AttachmentLocal>();
+        synchronized (sys.getStationLock()) {
+            if (sys.getStations() == null) return sb.toString();
+            for (StationLocal stat : sys.getStations()) {
+                stats.add(stat);
+                if (stat.getConfig().getFlowMode() == EtConstants.stationParallel) {
+                    // first parallel station is the same as stat
+                    ArrayList<StationLocal> pStats = stat.getParallelStations();
+                    stats.addAll(pStats.subList(1, pStats.size()));
+                }
+            }
+            for (StationLocal stat : stats) {
+                atts.addAll(stat.getAttachments());
+            }
+        }
+
+        sb.append("# TYPE et_station_input_events gauge\n");
+        for (StationLocal stat : stats) {
+            EventList list = stat.getInputList();
+            int size;
+            synchronized (list) {
+                size = list.size();
+            }
+            sb.append("et_station_input_events{").append(stationLabel(stat)).append("} ");
+            sb.append(size).append('\n');
+        }
+
+        sb.append("# TYPE et_station_output_events gauge\n");
+        for (StationLocal stat : stats) {
+            EventList list = stat.getOutputList();
+            int size;
+            synchronized (list) {
+                size = list.size();
+            }
+            sb.append("et_station_output_events{").append(stationLabel(stat)).append("} ");
+            sb.append(size).append('\n');
+        }
+
+        sb.append("# TYPE et_station_spilled_events gauge\n");
+        for (StationLocal stat : stats) {
+            sb.append("et_station_spilled_events{").append(stationLabel(stat)).append("} ");
+            sb.append(stat.getEventsSpilled()).append('\n');
+        }
+
+        sb.append("# TYPE et_station_residency_ns summary\n");
+        for (StationLocal stat : stats) {
+            writeSummary(sb, "et_station_residency_ns", stationLabel(stat), stat.getResidency());
+        }
+
+        sb.append("# TYPE et_station_input_depth summary\n");
+        for (StationLocal stat : stats) {
+            writeSummary(sb, "et_station_input_depth", stationLabel(stat), stat.getInputDepth());
+        }
+
+        sb.append("# TYPE et_conductor_batch_events summary\n");
+        for (StationLocal stat : stats) {
+            writeSummary(sb, "et_conductor_batch_events", stationLabel(stat), stat.getConductorBatches());
+        }
+
+        sb.append("# TYPE et_trace_sampling gauge\n");
+        sb.append("et_trace_sampling ").append(traceSampling).append('\n');
+
+        sb.append("# TYPE et_trace_lifetime_ns summary\n");
+        writeSummary(sb, "et_trace_lifetime_ns", "station=\"GRAND_CENTRAL\"", traceLifetime);
+
+        sb.append("# TYPE et_trace_output_ns summary\n");
+        for (StationLocal stat : stats) {
+            writeSummary(sb, "et_trace_output_ns", stationLabel(stat), stat.getTraceOutput());
+        }
+
+        sb.append("# TYPE et_trace_hold_ns summary\n");
+        for (AttachmentLocal att : atts) {
+            writeSummary(sb, "et_trace_hold_ns", stationLabel(att.getStation()) +
+                         ",attachment=\"" + att.getId() + '"', att.getTraceHold());
+        }
+
+        return sb.toString();
+    }
+}
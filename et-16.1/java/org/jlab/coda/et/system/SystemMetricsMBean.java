@@ -0,0 +1,104 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2026        Jefferson Science Associates,                   *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.system;
+
+/**
+ * This interface defines the attributes of an ET system's metrics which are
+ * seen through JMX. Times are in nanoseconds and are the time spent inside
+ * the ET system's get, new and put methods.
+ *
+ * @author Carl Timmer
+ */
+public interface SystemMetricsMBean {
+
+    /**
+     * Get the number of new events handed out.
+     * @return number of new events handed out
+     */
+    long getEventsNew();
+
+    /**
+     * Get the number of events gotten by attachments.
+     * @return number of events gotten by attachments
+     */
+    long getEventsGotten();
+
+    /**
+     * Get the number of events put by attachments.
+     * @return number of events put by attachments
+     */
+    long getEventsPut();
+
+    /**
+     * Get the number of events dumped by attachments.
+     * @return number of events dumped by attachments
+     */
+    long getEventsDumped();
+
+    /**
+     * Get the median time of a call getting new events.
+     * @return median time of a call getting new events in nanoseconds
+     */
+    long getNewLatencyMedian();
+
+    /**
+     * Get the 99th percentile of the time of a call getting new events.
+     * @return 99th percentile of the time of a call getting new events in nanoseconds
+     */
+    long getNewLatency99();
+
+    /**
+     * Get the median time of a call getting events.
+     * @return median time of a call getting events in nanoseconds
+     */
+    long getGetLatencyMedian();
+
+    /**
+     * Get the 99th percentile of the time of a call getting events.
+     * @return 99th percentile of the time of a call getting events in nanoseconds
+     */
+    long getGetLatency99();
+
+    /**
+     * Get the median time of a call putting or dumping events.
+     * @return median time of a call putting or dumping events in nanoseconds
+     */
+    long getPutLatencyMedian();
+
+    /**
+     * Get the 99th percentile of the time of a call putting or dumping events.
+     * @return 99th percentile of the time of a call putting or dumping events in nanoseconds
+     */
+    long getPutLatency99();
+
+    /**
+     * Get how often new events are traced through the stations.
+     * @return one of every this many new events is traced, or none if 0
+     */
+    int getTraceSampling();
+
+    /**
+     * Set how often new events are traced through the stations.
+     * @param traceSampling one of every this many new events is traced, or none if 0
+     */
+    void setTraceSampling(int traceSampling);
+
+    /**
+     * Get all metrics, including those of each station, as text.
+     * @return all metrics as text
+     * @see SystemMetrics#toText()
+     */
+    String getText();
+}
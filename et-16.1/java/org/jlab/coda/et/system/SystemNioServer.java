@@ -0,0 +1,1040 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2026        Jefferson Science Associates,                   *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.system;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import org.jlab.coda.et.EtConstants;
+import org.jlab.coda.et.exception.*;
+
+/**
+ * This class implements a thread which listens for users trying to connect to
+ * the ET system. Unlike {@link SystemTcpServer} it does not start a thread for
+ * each connection. Instead, connections are handed out to a fixed number of
+ * {@link NioReactor} threads (see {@link SystemConfig#setServerThreads}) which
+ * use non-blocking IO to serve many users each.
+ *
+ * @author Carl Timmer
+ */
+
+class SystemNioServer extends Thread {
+
+    /** Port number to listen on. */
+    private int port;
+
+    /** Et system object. */
+    private SystemCreate sys;
+
+    /** Et system config object. */
+    private SystemConfig config;
+
+    /** Thread group used to interrupt/stop all this object's generated threads. */
+    private ThreadGroup tGroup;
+
+
+    /** Creates a new SystemNioServer object.
+     *  @param sys ET system object
+     *  @param tGroup thread group of all ET system threads */
+    SystemNioServer(SystemCreate sys, ThreadGroup tGroup) {
+        super(tGroup, "tcpServerThread");
+
+        this.sys    = sys;
+        this.tGroup = tGroup;
+        config      = sys.getConfig();
+        port        = config.getServerPort();
+    }
+
+
+    /** Start threads to handle connections, then listen for connections
+     *  and hand each one to one of those threads. */
+    public void run() {
+        if (config.getDebug() >= EtConstants.debugInfo) {
+            System.out.println("Running NIO TCP Server Thread");
+        }
+
+        // use the default port number since one wasn't specified
+        if (port < 1) {
+            port = EtConstants.serverPort;
+        }
+
+        ServerSocketChannel serverChannel = null;
+        Selector selector = null;
+
+        try {
+            // Create channel and bind to port. If that isn't possible, exit.
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.socket().setReuseAddress(true);
+            if (config.getTcpRecvBufSize() > 0) {
+                serverChannel.socket().setReceiveBufferSize(config.getTcpRecvBufSize());
+            }
+            serverChannel.socket().bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+
+            selector = Selector.open();
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+            NioReactor[] reactors = new NioReactor[config.getServerThreads()];
+            for (int i=0; i < reactors.length; i++) {
+                reactors[i] = new NioReactor(sys, tGroup, i);
+                reactors[i].start();
+            }
+
+            int next = 0;
+            SocketChannel channel;
+
+            while (!sys.killAllThreads()) {
+                // wake up every 2 seconds to see if we've been commanded to die
+                if (selector.select(2000) < 1) {
+                    continue;
+                }
+                selector.selectedKeys().clear();
+
+                while ((channel = serverChannel.accept()) != null) {
+                    Socket sock = channel.socket();
+                    // set send buffer size, receive buffer size is set above in server socket
+                    if (config.getTcpSendBufSize() > 0) {
+                        sock.setSendBufferSize(config.getTcpSendBufSize());
+                    }
+                    // Set tcpNoDelay so no packets are delayed
+                    if (config.isNoDelay()) {
+                        sock.setTcpNoDelay(true);
+                    }
+                    channel.configureBlocking(false);
+
+                    // spread connections evenly over the threads
+                    reactors[next].addChannel(channel);
+                    next = (next + 1) % reactors.length;
+                }
+            }
+        }
+        catch (IOException ex) {
+            if (config.getDebug() >= EtConstants.debugError) {
+                System.out.println("NIO Tcp Server: " + ex.getMessage());
+            }
+        }
+        finally {
+            try {
+                if (selector != null) selector.close();
+                if (serverChannel != null) serverChannel.close();
+            }
+            catch (IOException ex) {
+            }
+        }
+    }
+}
+
+
+/**
+ * This class implements a thread which handles the tcp connections of many users
+ * with a single selector. Commands are carried out in this thread, except those
+ * which can block, which are handed to worker threads. A user waiting for events
+ * is parked in the station's input list (see {@link EventList.Waiter}) until
+ * events arrive, so it does not hold up the other users.
+ *
+ * @author Carl Timmer
+ */
+
+class NioReactor extends Thread {
+
+    /** Longest time in milliseconds to wait before checking if we've been told to die. */
+    private static final long maxSelectMillis = 500L;
+
+    /** ET system object. */
+    private SystemCreate sys;
+
+    /** Selector for all of this thread's connections. */
+    private Selector selector;
+
+    /** Tasks to be run in this thread, handed over by other threads. */
+    private ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+    /** Connections which have a deadline. */
+    private HashSet<NioConnection> timedConnections = new HashSet<NioConnection>();
+
+    /** Threads carrying out commands which can block. */
+    private ExecutorService workers;
+
+
+    /**
+     * Create a new NioReactor object.
+     * @param sys    ET system object
+     * @param tGroup thread group of all ET system threads
+     * @param id     number used to name thread
+     * @throws IOException if selector cannot be opened
+     */
+    NioReactor(SystemCreate sys, final ThreadGroup tGroup, final int id) throws IOException {
+        super(tGroup, "nioReactor" + id);
+        this.sys = sys;
+        selector = Selector.open();
+
+        workers = Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(tGroup, r, "nioWorker" + id);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+
+    /**
+     * Run a task in this thread as soon as possible.
+     * May be called from any thread and does not block.
+     * @param task task to run
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+
+    /**
+     * Run a task which can block in a worker thread, or in the calling
+     * thread if the workers are gone because the ET system is dying.
+     * @param task task to run
+     */
+    void executeBlocking(Runnable task) {
+        try {
+            workers.execute(task);
+        }
+        catch (RejectedExecutionException ex) {
+            task.run();
+        }
+    }
+
+
+    /**
+     * Start handling a newly accepted, non-blocking connection.
+     * @param channel connection to a user
+     */
+    void addChannel(final SocketChannel channel) {
+        execute(new Runnable() {
+            public void run() {
+                try {
+                    new NioConnection(sys, NioReactor.this, selector, channel);
+                }
+                catch (IOException ex) {
+                    try {channel.close();}
+                    catch (IOException e) {}
+                }
+            }
+        });
+    }
+
+
+    /**
+     * Have {@link NioConnection#deadlinePassed} called once the connection's deadline passes.
+     * @param connection connection with a deadline
+     */
+    void watch(NioConnection connection) {
+        timedConnections.add(connection);
+    }
+
+
+    /**
+     * Stop watching a connection's deadline.
+     * @param connection connection with a deadline
+     */
+    void unwatch(NioConnection connection) {
+        timedConnections.remove(connection);
+    }
+
+
+    /**
+     * Get the time to wait for IO before the next deadline passes.
+     * @return time to wait in milliseconds
+     */
+    private long selectTimeout() {
+        long now = System.nanoTime();
+        long millis = maxSelectMillis;
+        for (NioConnection connection : timedConnections) {
+            long left = (connection.deadline - now) / 1000000L;
+            if (left < millis) {
+                millis = left;
+            }
+        }
+        // 0 means forever to select()
+        return (millis < 1L) ? 1L : millis;
+    }
+
+
+    /** Call all connections whose deadline has passed. */
+    private void checkDeadlines() {
+        if (timedConnections.size() < 1) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        NioConnection[] connections = timedConnections.toArray(new NioConnection[timedConnections.size()]);
+        for (NioConnection connection : connections) {
+            if (now - connection.deadline >= 0L) {
+                timedConnections.remove(connection);
+                connection.deadlinePassed();
+            }
+        }
+    }
+
+
+    /** Handle all IO and tasks until the ET system is killed. */
+    public void run() {
+        try {
+            while (!sys.killAllThreads()) {
+                selector.select(selectTimeout());
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> i = selector.selectedKeys().iterator();
+                while (i.hasNext()) {
+                    SelectionKey key = i.next();
+                    i.remove();
+                    NioConnection connection = (NioConnection) key.attachment();
+
+                    if (key.isValid() && key.isWritable()) {
+                        connection.writable();
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        connection.readable();
+                    }
+                }
+
+                checkDeadlines();
+            }
+        }
+        catch (IOException ex) {
+        }
+        finally {
+            // ET system is dying, so just drop the connections
+            for (SelectionKey key : selector.keys()) {
+                try {key.channel().close();}
+                catch (IOException ex) {}
+            }
+            try {selector.close();}
+            catch (IOException ex) {}
+            workers.shutdown();
+        }
+    }
+}
+
+
+/**
+ * This class handles all communication between an ET system and a user who has
+ * opened that ET system, driven by a {@link NioReactor} thread. Bytes from the
+ * user are collected in a buffer and a command is carried out, by a
+ * {@link ClientHandler}, once all of its bytes have arrived. A request to get or
+ * make events which cannot be satisfied immediately is left waiting in the list
+ * of events to be resumed when events arrive, when the attachment is woken up,
+ * or when its time runs out.
+ *
+ * @author Carl Timmer
+ */
+
+class NioConnection implements EventList.Waiter {
+
+    /** State: waiting for the magic numbers identifying an ET client. */
+    private static final int MAGIC    = 0;
+    /** State: waiting for the request to open the ET system. */
+    private static final int OPEN     = 1;
+    /** State: carrying out commands. */
+    private static final int COMMANDS = 2;
+    /** State: waiting for events to reply to a request to get or make them. */
+    private static final int WAITING  = 3;
+    /** State: connection closed. */
+    private static final int CLOSED   = 4;
+    /** State: a worker thread is carrying out a command which can block. */
+    private static final int BUSY     = 5;
+
+    /** Time in nanoseconds a new connection has to identify itself. */
+    private static final long handshakeNanos = 2000000000L;
+
+    /** ET system object. */
+    private SystemCreate sys;
+
+    /** ET system configuration object. */
+    private SystemConfig config;
+
+    /** Thread handling this connection. */
+    private NioReactor reactor;
+
+    /** Connection to user. */
+    private SocketChannel channel;
+
+    /** Key of channel registered with the reactor's selector. */
+    private SelectionKey key;
+
+    /** Current state, one of {@link #MAGIC}, {@link #OPEN}, {@link #COMMANDS},
+     *  {@link #WAITING}, {@link #CLOSED}, or {@link #BUSY}. */
+    private int state = MAGIC;
+
+    /** Bytes read from the user but not yet used. Kept ready for reading (flipped). */
+    private ByteBuffer input = ByteBuffer.allocate(4096);
+
+    /** Bytes to be written to the user. Kept ready for writing into (not flipped). */
+    private ByteBuffer output = ByteBuffer.allocate(4096);
+
+    /** Don't try the next command until at least this many bytes have arrived. */
+    private int bytesNeeded;
+
+    /** Position in {@link #input} just past the bytes the last read tried to get. */
+    private int readEnd;
+
+    /** Data input stream from the {@link #input} buffer. */
+    private DataInputStream in;
+
+    /** Object which carries out the user's commands. */
+    private ClientHandler handler;
+
+    /** Request to get or make events which is being carried out. */
+    private ClientHandler.GetRequest request;
+
+    /** List in which the request is waiting for events. */
+    private EventList waitList;
+
+    /** Request done whose reply a worker thread is preparing. */
+    private ClientHandler.GetRequest reply;
+
+    /** Time, from {@link System#nanoTime}, at which the handshake or a timed wait ends. */
+    long deadline;
+
+    /** Close the connection once all output is sent. */
+    private boolean closeWhenSent;
+
+
+    /** Stream of the bytes in {@link #input}. Reading past the end never blocks,
+     *  it ends the stream and records how far the read wanted to go. */
+    private final class InputBufferStream extends InputStream {
+        public int read() {
+            if (!input.hasRemaining()) {
+                readEnd = input.position() + 1;
+                return -1;
+            }
+            return input.get() & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            int count = Math.min(len, input.remaining());
+            if (count < len) {
+                readEnd = Math.max(readEnd, input.position() + len);
+            }
+            if (count == 0) {
+                return -1;
+            }
+            input.get(b, off, count);
+            return count;
+        }
+
+        public int available() {
+            return input.remaining();
+        }
+    }
+
+
+    /** Stream into {@link #output}. Flushing it writes as much as possible to the user. */
+    private final class OutputBufferStream extends OutputStream {
+        public void write(int b) {
+            ensureOutputCapacity(1);
+            output.put((byte) b);
+        }
+
+        public void write(byte[] b, int off, int len) {
+            ensureOutputCapacity(len);
+            output.put(b, off, len);
+        }
+
+        public void flush() throws IOException {
+            // A worker thread leaves the channel to the reactor
+            if (state != BUSY) {
+                flushOutput();
+            }
+        }
+    }
+
+
+    /**
+     * Create a new NioConnection object and register it with the reactor's selector.
+     * Must be called in the reactor's thread.
+     *
+     * @param sys      ET system object
+     * @param reactor  thread handling this connection
+     * @param selector reactor's selector
+     * @param channel  non-blocking connection to user
+     * @throws IOException if channel cannot be registered
+     */
+    NioConnection(SystemCreate sys, NioReactor reactor, Selector selector, SocketChannel channel)
+            throws IOException {
+
+        this.sys     = sys;
+        this.reactor = reactor;
+        this.channel = channel;
+        config = sys.getConfig();
+
+        input.flip();
+        in = new DataInputStream(new InputBufferStream());
+        ClientHandler.GatheringWriter writer = new ClientHandler.GatheringWriter() {
+            public void write(ByteBuffer[] buffers, int count) throws IOException {
+                gather(buffers, count);
+            }
+        };
+        handler = new ClientHandler(sys, in, new DataOutputStream(new OutputBufferStream()), writer);
+
+        key = channel.register(selector, SelectionKey.OP_READ, this);
+
+        // Don't let imposters hang around forever
+        deadline = System.nanoTime() + handshakeNanos;
+        reactor.watch(this);
+    }
+
+
+    /**
+     * Make sure there is room for more output.
+     * @param bytes number of bytes to be written
+     */
+    private void ensureOutputCapacity(int bytes) {
+        if (output.remaining() < bytes) {
+            int size = Math.max(2*output.capacity(), output.position() + bytes);
+            ByteBuffer buf = ByteBuffer.allocate(size);
+            output.flip();
+            buf.put(output);
+            output = buf;
+        }
+    }
+
+
+    /**
+     * Write as much output as possible without blocking and
+     * only look for the chance to write more if some is left.
+     * @throws IOException if error writing
+     */
+    private void flushOutput() throws IOException {
+        output.flip();
+        while (output.hasRemaining()) {
+            if (channel.write(output) < 1) {
+                break;
+            }
+        }
+        output.compact();
+
+        int ops = SelectionKey.OP_READ;
+        if (output.position() > 0) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        if (key.interestOps() != ops) {
+            key.interestOps(ops);
+        }
+    }
+
+
+    /**
+     * Write buffers to the user, after any output not yet sent, as far as possible
+     * without blocking. What cannot be sent now is copied into the output buffer
+     * since the events the buffers belong to may be used again once this returns.
+     *
+     * @param buffers buffers to write
+     * @param count   number of buffers to write, starting with the first
+     * @throws IOException if error writing
+     */
+    private void gather(ByteBuffer[] buffers, int count) throws IOException {
+        long bytes = 0L;
+        for (int i=0; i < count; i++) {
+            bytes += buffers[i].remaining();
+        }
+
+        flushOutput();
+        if (output.position() == 0) {
+            while (bytes > 0L) {
+                long written = channel.write(buffers, 0, count);
+                if (written < 1L) {
+                    break;
+                }
+                bytes -= written;
+            }
+        }
+
+        if (bytes > 0L) {
+            for (int i=0; i < count; i++) {
+                ensureOutputCapacity(buffers[i].remaining());
+                output.put(buffers[i]);
+            }
+            flushOutput();
+        }
+    }
+
+
+    /** Called by reactor when the user has sent bytes. */
+    void readable() {
+        // a worker thread is using the input
+        if (state == BUSY) {
+            return;
+        }
+        try {
+            input.compact();
+            // make room if the buffer is full or too small for the next command
+            if (!input.hasRemaining() || bytesNeeded > input.capacity()) {
+                int size = Math.max(2*input.capacity(), bytesNeeded);
+                ByteBuffer buf = ByteBuffer.allocate(size);
+                input.flip();
+                buf.put(input);
+                input = buf;
+            }
+            int bytes = channel.read(input);
+            input.flip();
+
+            if (bytes < 0) {
+                if (config.getDebug() >= EtConstants.debugError && state != CLOSED) {
+                    System.out.println("NioConnection: remote client connection broken");
+                }
+                close();
+                return;
+            }
+
+            process();
+        }
+        catch (Exception ex) {
+            close();
+        }
+    }
+
+
+    /** Called by reactor when more output can be written to the user. */
+    void writable() {
+        if (state == BUSY) {
+            return;
+        }
+        try {
+            flushOutput();
+            if (output.position() == 0) {
+                if (closeWhenSent) {
+                    close();
+                    return;
+                }
+                process();
+            }
+        }
+        catch (Exception ex) {
+            close();
+        }
+    }
+
+
+    /** Called by reactor when the handshake or a timed wait for events has run out of time. */
+    void deadlinePassed() {
+        try {
+            if (state == MAGIC || state == OPEN) {
+                // Client taking too long to identify itself, terminate connection
+                close();
+            }
+            else if (state == WAITING && waitList.removeWaiter(this)) {
+                // If the waiter was already removed, the task to resume it will take care of things
+                waitList = null;
+                tryRequest();
+                process();
+            }
+        }
+        catch (Exception ex) {
+            close();
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    public AttachmentLocal getAttachment() {
+        return request.att;
+    }
+
+
+    /** {@inheritDoc} This hands the work over to the reactor's thread. */
+    public void resume() {
+        reactor.execute(new Runnable() {
+            public void run() {
+                if (state != WAITING) {
+                    return;
+                }
+                try {
+                    waitList = null;
+                    tryRequest();
+                    process();
+                }
+                catch (Exception ex) {
+                    close();
+                }
+            }
+        });
+    }
+
+
+    /**
+     * Carry out as many of the commands which have arrived as possible.
+     * Stop at a command whose bytes have not all arrived, while waiting
+     * for events (other than to put events without a reply), or while
+     * there is output not yet sent.
+     */
+    private void process() throws IOException, EtException, EtReadException {
+        while ((state == MAGIC || state == OPEN || state == COMMANDS) &&
+               input.hasRemaining() && input.remaining() >= bytesNeeded &&
+               output.position() == 0) {
+
+            int start = input.position();
+            readEnd = start;
+
+            // Wait for all of a long command before reading any of it
+            if (state == COMMANDS) {
+                int frame = frameLength();
+                if (frame > input.remaining()) {
+                    bytesNeeded = frame;
+                    return;
+                }
+            }
+
+            try {
+                step();
+                bytesNeeded = 0;
+            }
+            catch (EOFException ex) {
+                // Not all of the command is here yet, so undo its reading and try
+                // again later. Commands only act after reading all their bytes.
+                input.position(start);
+                bytesNeeded = Math.max(readEnd - start, input.remaining() + 1);
+                return;
+            }
+        }
+
+        // Events put without a reply need not wait behind a request waiting for events
+        while (state == WAITING && input.remaining() >= 4 &&
+               input.getInt(input.position()) == EtConstants.netEvsPutNR) {
+
+            int frame = frameLength();
+            if (frame < 1 || frame > input.remaining()) {
+                bytesNeeded = Math.max(frame, 20);
+                return;
+            }
+            bytesNeeded = 0;
+
+            // Decompressing takes a while, so stop waiting and let a worker do it
+            if (handler.decompresses(EtConstants.netEvsPutNR)) {
+                if (!waitList.removeWaiter(this)) {
+                    // about to be resumed, after which this is done as usual
+                    return;
+                }
+                waitList = null;
+                int start = input.position();
+                processBlocking(in.readInt(), start);
+                return;
+            }
+            handler.processCommand(in.readInt());
+        }
+    }
+
+
+    /**
+     * Get the number of bytes in the command starting at the current input position,
+     * if that command puts many events and enough of it has arrived to tell.
+     * The length of all events, given by the user, saves reading them over and over
+     * as their bytes arrive.
+     *
+     * @return number of bytes in the command, or 0 if unknown
+     */
+    private int frameLength() {
+        int pos = input.position();
+        if (input.remaining() < 20) {
+            return 0;
+        }
+
+        int command = input.getInt(pos);
+        long bytes = 20L + input.getLong(pos + 12);
+        if (command == EtConstants.netEvsPutGet) {
+            // followed by the request to get events
+            bytes += 24L;
+        }
+        else if (command != EtConstants.netEvsPut && command != EtConstants.netEvsPutNR) {
+            return 0;
+        }
+
+        if (bytes < 20L || bytes > Integer.MAX_VALUE) {
+            return 0;
+        }
+        return (int) bytes;
+    }
+
+
+    /**
+     * Carry out, in a worker thread, a command which can block or which
+     * decompresses event data.
+     *
+     * @param command command from user
+     * @param start   position in input of the command
+     */
+    private void processBlocking(final int command, final int start) {
+        work(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return handler.processCommand(command);
+            }
+        }, start);
+    }
+
+
+    /**
+     * Do work which can block, or take a while, in a worker thread so other users
+     * of this reactor need not wait. Reading from the user stops until it's done,
+     * so no other thread touches the input or output. Output is sent, the request
+     * to get events is carried out or its reply sent, and the following commands
+     * are carried out back in the reactor.
+     *
+     * @param work  work to do which returns <code>false</code> if the user is closing
+     * @param start position in input of the command being carried out
+     */
+    private void work(final Callable<Boolean> work, final int start) {
+        state = BUSY;
+        key.interestOps(0);
+
+        reactor.executeBlocking(new Runnable() {
+            public void run() {
+                boolean keepGoing = false;
+                boolean tooShort  = false;
+                try {
+                    keepGoing = work.call();
+                }
+                catch (EOFException ex) {
+                    tooShort = true;
+                }
+                catch (Exception ex) {
+                }
+                done(keepGoing, tooShort);
+            }
+
+            private void done(final boolean keepGoing, final boolean tooShort) {
+                reactor.execute(new Runnable() {
+                    public void run() {
+                        if (state != BUSY) {
+                            return;
+                        }
+                        try {
+                            state = COMMANDS;
+                            if (tooShort) {
+                                // Try again once all of the command is here
+                                input.position(start);
+                                bytesNeeded = Math.max(readEnd - start, input.remaining() + 1);
+                                flushOutput();
+                                return;
+                            }
+                            if (!keepGoing) {
+                                if (config.getDebug() >= EtConstants.debugInfo) {
+                                    System.out.println("NioConnection: remote client closing");
+                                }
+                                close();
+                                return;
+                            }
+                            flushOutput();
+                            if (reply != null) {
+                                ClientHandler.GetRequest req = reply;
+                                reply = null;
+                                handler.replyGetRequest(req);
+                            }
+                            else if (request != null) {
+                                tryRequest();
+                            }
+                            process();
+                        }
+                        catch (Exception ex) {
+                            close();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+
+    /**
+     * Read a request to get or make events and start its timed wait, if any.
+     * @param command command from user
+     * @throws IOException if error communicating with user
+     * @throws EtException if an event put is too long for this ET system
+     */
+    private void readRequest(int command) throws IOException, EtException {
+        request = handler.readGetRequest(command);
+        if (request.mode == EtConstants.timed) {
+            deadline = System.nanoTime() + 1000L*request.microSec;
+        }
+    }
+
+
+    /** Read one item from the user and act on it. */
+    private void step() throws IOException, EtException, EtReadException {
+
+        switch (state) {
+            case MAGIC:
+                // Check to see if this is a legitimate client or some imposter.
+                int magic1 = in.readInt();
+                int magic2 = in.readInt();
+                int magic3 = in.readInt();
+                if (magic1 != EtConstants.magicNumbers[0] ||
+                    magic2 != EtConstants.magicNumbers[1] ||
+                    magic3 != EtConstants.magicNumbers[2])  {
+                    close();
+                    return;
+                }
+                state = OPEN;
+                break;
+
+            case OPEN:
+                if (!handler.open()) {
+                    // close once the error has been sent
+                    if (output.position() == 0) {
+                        close();
+                    }
+                    else {
+                        closeWhenSent = true;
+                        state = CLOSED;
+                    }
+                    return;
+                }
+                reactor.unwatch(this);
+                state = COMMANDS;
+                break;
+
+            default:
+                int command = in.readInt();
+
+                if (ClientHandler.isGetCommand(command) && handler.decompresses(command)) {
+                    // Events put first are decompressed by a worker
+                    final int getCommand = command;
+                    work(new Callable<Boolean>() {
+                        public Boolean call() throws Exception {
+                            readRequest(getCommand);
+                            return true;
+                        }
+                    }, input.position() - 4);
+                }
+                else if (ClientHandler.isGetCommand(command)) {
+                    readRequest(command);
+                    tryRequest();
+                }
+                else if (ClientHandler.isBlockingCommand(command) || handler.decompresses(command)) {
+                    processBlocking(command, input.position() - 4);
+                }
+                else if (!handler.processCommand(command)) {
+                    if (config.getDebug() >= EtConstants.debugInfo) {
+                        System.out.println("NioConnection: remote client closing");
+                    }
+                    close();
+                }
+        }
+    }
+
+
+    /**
+     * Try to carry out the current request to get or make events. If there are
+     * no events and it's allowed, wait for them in the list they come from.
+     */
+    private void tryRequest() throws IOException {
+        if (request.err == EtConstants.ok) {
+            EventList list = handler.getInputList(request);
+
+            // Holding the list's lock, no events can arrive
+            // between looking for them and starting to wait.
+            synchronized (list) {
+                if (!handler.tryGetEvents(request)) {
+                    if (request.mode == EtConstants.timed &&
+                        System.nanoTime() - deadline >= 0L) {
+                        request.err = EtConstants.errorTimeout;
+                    }
+                    else {
+                        list.addWaiter(this);
+                        waitList = list;
+                        if (state != WAITING && request.mode == EtConstants.timed) {
+                            reactor.watch(this);
+                        }
+                        state = WAITING;
+                        return;
+                    }
+                }
+            }
+        }
+
+        reactor.unwatch(this);
+        state = COMMANDS;
+        ClientHandler.GetRequest req = request;
+        request = null;
+
+        // Compressing takes a while, so let a worker do it and send the reply here
+        if (handler.compresses(req)) {
+            reply = req;
+            final ClientHandler.GetRequest compressed = req;
+            work(new Callable<Boolean>() {
+                public Boolean call() {
+                    handler.prepareReply(compressed);
+                    return true;
+                }
+            }, input.position());
+            return;
+        }
+        handler.replyGetRequest(req);
+    }
+
+
+    /**
+     * Close the connection. All attachments made over it are detached
+     * which returns any events the user had to the system.
+     */
+    void close() {
+        if (state == CLOSED && !closeWhenSent) {
+            return;
+        }
+
+        if (waitList != null) {
+            waitList.removeWaiter(this);
+            waitList = null;
+        }
+        if (request != null && request.att != null) {
+            request.att.setSleepMode(false);
+        }
+        request = null;
+        state = CLOSED;
+        closeWhenSent = false;
+
+        reactor.unwatch(this);
+        reactor.executeBlocking(new Runnable() {
+            public void run() {
+                handler.detachAll();
+            }
+        });
+
+        key.cancel();
+        try {
+            channel.close();
+        }
+        catch (IOException ex) {
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2026        Jefferson Science Associates,                   *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.test;
+
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.enums.Mode;
+import org.jlab.coda.et.enums.Modify;
+import org.jlab.coda.et.system.SystemConfig;
+import org.jlab.coda.et.system.SystemCreate;
+
+import java.io.File;
+
+/**
+ * This class tests that events keep their order when both a producer and
+ * a consumer stripe their batches across several connections. The ET system
+ * has fewer events than a producer's batch, so GRAND_CENTRAL is often short
+ * of free events and some connections get none.
+ *
+ * @author Carl Timmer
+ */
+public class StripeOrderTest {
+
+    private static void usage() {
+        System.out.println("\nUsage: java StripeOrderTest [-p <server port>] [-u <udp port>]\n" +
+                "                             [-c <connections>] [-n <events>] [-nio <threads>]\n");
+    }
+
+
+    public static void main(String[] args) {
+
+        int port = 23990, udpPort = 23991, connections = 4, total = 20000, serverThreads = 0;
+        final int batch = 100, size = 65536;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("-p")) {
+                port = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equalsIgnoreCase("-u")) {
+                udpPort = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equalsIgnoreCase("-c")) {
+                connections = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equalsIgnoreCase("-n")) {
+                total = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equalsIgnoreCase("-nio")) {
+                serverThreads = Integer.parseInt(args[++i]);
+            }
+            else {
+                usage();
+                System.exit(-1);
+            }
+        }
+
+        String etName = new File(System.getProperty("java.io.tmpdir"), "stripeOrderTest").getPath();
+        SystemCreate etSys = null;
+
+        try {
+            // ET system with fewer events than a batch
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(3*batch/2);
+            config.setEventSize(size);
+            config.setServerPort(port);
+            config.setUdpPort(udpPort);
+            config.setDebug(EtConstants.debugNone);
+            if (serverThreads > 0) {
+                config.setServerThreads(serverThreads);
+            }
+            etSys = new SystemCreate(etName, config);
+
+            EtSystemOpenConfig openConfig = new EtSystemOpenConfig(etName, "localhost", port);
+            openConfig.setConnectRemotely(true);
+            openConfig.setWaitTime(5000);
+            openConfig.setConnections(connections);
+
+            final EtSystem producer = new EtSystem(new EtSystemOpenConfig(openConfig), EtConstants.debugError);
+            producer.open();
+            EtSystem consumer = new EtSystem(openConfig, EtConstants.debugError);
+            consumer.open();
+
+            EtStation station = consumer.createStation(new EtStationConfig(), "stripeOrder");
+            EtAttachment consAtt = consumer.attach(station);
+            final EtAttachment prodAtt = producer.attach(producer.stationNameToObject("GRAND_CENTRAL"));
+
+            final int events = total;
+            Thread prodThread = new Thread() {
+                public void run() {
+                    try {
+                        int seq = 0;
+                        while (seq < events) {
+                            EtEvent[] evs = producer.newEvents(prodAtt, Mode.SLEEP, 0,
+                                                               Math.min(batch, events - seq), size);
+                            // big events take a while to put, giving later connections time to pass
+                            for (EtEvent ev : evs) {
+                                ev.getDataBuffer().putInt(0, seq++);
+                                ev.setLength(size);
+                            }
+                            producer.putEvents(prodAtt, evs);
+                        }
+                    }
+                    catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            prodThread.start();
+
+            int got = 0, bad = 0;
+            while (got < total) {
+                EtEvent[] evs = consumer.getEvents(consAtt, Mode.TIMED, Modify.NOTHING, 5000000, batch);
+                for (EtEvent ev : evs) {
+                    int seq = ev.getDataBuffer().getInt(0);
+                    if (seq != got) {
+                        if (bad++ < 10) {
+                            System.out.println("event " + seq + " came when " + got + " was expected");
+                        }
+                        got = seq;
+                    }
+                    got++;
+                }
+                consumer.putEvents(consAtt, evs);
+            }
+            prodThread.join();
+
+            consumer.detach(consAtt);
+            producer.detach(prodAtt);
+            consumer.close();
+            producer.close();
+
+            if (bad > 0) {
+                System.out.println("FAILED: " + bad + " events out of order");
+                etSys.shutdown();
+                System.exit(-1);
+            }
+            System.out.println("Striped over " + connections + " connections, " + total + " events in order: ok");
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            if (etSys != null) etSys.shutdown();
+            System.exit(-1);
+        }
+
+        etSys.shutdown();
+        System.exit(0);
+    }
+}
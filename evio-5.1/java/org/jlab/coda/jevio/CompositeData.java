@@ -1720,10 +1720,10 @@ public final class CompositeData {
             // Swap data
             swapData(srcBuffer, destBuffer, dataLength, formatInts);
 
-            // Set buffer positions and offset
-            dataOffset += dataLength;
+            // Set buffer positions and offset, skipping any padding
+            dataOffset += dataLength + bHeader.getPadding();
             srcBuffer.position( srcOff + dataOffset);
-            destBuffer.position(srcOff + dataOffset);
+            destBuffer.position(destOff + dataOffset);
 
             srcOff       += dataOffset;
             destOff      += dataOffset;
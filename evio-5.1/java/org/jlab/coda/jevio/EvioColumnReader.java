@@ -0,0 +1,474 @@
+/*
+ * Copyright (c) 2026, Jefferson Science Associates
+ *
+ * Thomas Jefferson National Accelerator Facility
+ * Data Acquisition Group
+ *
+ * 12000, Jefferson Ave, Newport News, VA 23606
+ * Phone : (757)-269-7100
+ *
+ */
+
+package org.jlab.coda.jevio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class is used to read files written by {@link EvioColumnWriter}.
+ * The file is memory mapped one chunk at a time and all data is returned
+ * as views into the mapped memory, so no data is copied and only the
+ * columns actually looked at are read from disk.<p>
+ *
+ * Data is accessed by chunk and column. For each chunk, the event numbers
+ * of its events are available along with, for each column, the offset of
+ * each event's first data item. The data of event <i>i</i> (starting at 0)
+ * of a chunk are the items from <code>offsets.get(i)</code> up to but not
+ * including <code>offsets.get(i+1)</code>.
+ * This class is not thread-safe.
+ *
+ * @author timmer
+ */
+public class EvioColumnReader {
+
+    /** Names of the columns. */
+    private final String[] names;
+
+    /** Tags of the columns. */
+    private final int[] tags;
+
+    /** Nums of the columns. */
+    private final int[] nums;
+
+    /** File positions of the chunks. */
+    private final long[] chunkPositions;
+
+    /** Mapped memory of each chunk which has been looked at. */
+    private final MappedByteBuffer[] chunkBuffers;
+
+    /** Position of each column's header in each chunk which has been looked at. */
+    private final int[][] columnPositions;
+
+    /** Total number of events in file. */
+    private final int eventCount;
+
+    /** File position of the trailer. */
+    private final long trailerPosition;
+
+    /** Byte order of the file. */
+    private final ByteOrder byteOrder;
+
+    /** File being read. */
+    private final RandomAccessFile file;
+
+    /** Channel of file being read. */
+    private final FileChannel fileChannel;
+
+
+    /**
+     * Constructor.
+     * @param fileName name of file to read.
+     * @throws IOException   if file cannot be read.
+     * @throws EvioException if file is not in the proper format.
+     */
+    public EvioColumnReader(String fileName) throws IOException, EvioException {
+        this(new File(fileName));
+    }
+
+
+    /**
+     * Constructor.
+     * @param f file to read.
+     * @throws IOException   if file cannot be read.
+     * @throws EvioException if file is not in the proper format.
+     */
+    public EvioColumnReader(File f) throws IOException, EvioException {
+        file = new RandomAccessFile(f, "r");
+        fileChannel = file.getChannel();
+
+        try {
+            long fileSize = fileChannel.size();
+            if (fileSize < 24) {
+                throw new EvioException("file too small");
+            }
+
+            // Figure out the byte order from the magic number
+            ByteBuffer buf = ByteBuffer.allocate(12);
+            read(buf, 0L);
+            if (buf.getInt(0) == EvioColumnWriter.MAGIC_NUMBER) {
+                byteOrder = ByteOrder.BIG_ENDIAN;
+            }
+            else if (Integer.reverseBytes(buf.getInt(0)) == EvioColumnWriter.MAGIC_NUMBER) {
+                byteOrder = ByteOrder.LITTLE_ENDIAN;
+                buf.order(byteOrder);
+            }
+            else {
+                throw new EvioException("bad magic number");
+            }
+
+            if (buf.getInt(4) != EvioColumnWriter.VERSION) {
+                throw new EvioException("unsupported version " + buf.getInt(4));
+            }
+
+            // Column descriptions
+            int columnCount = buf.getInt(8);
+            names = new String[columnCount];
+            tags  = new int[columnCount];
+            nums  = new int[columnCount];
+
+            long pos = 12L;
+            ByteBuffer colBuf = ByteBuffer.allocate(12).order(byteOrder);
+            for (int i=0; i < columnCount; i++) {
+                read(colBuf, pos);
+                tags[i] = colBuf.getInt(0);
+                nums[i] = colBuf.getInt(4);
+                int len = colBuf.getInt(8);
+                ByteBuffer nameBuf = ByteBuffer.allocate(len);
+                read(nameBuf, pos + 12);
+                names[i] = new String(nameBuf.array(), "UTF-8");
+                pos += 12 + EvioColumnWriter.padded(len, 4);
+            }
+
+            // Trailer
+            ByteBuffer trailer = ByteBuffer.allocate(12).order(byteOrder);
+            read(trailer, fileSize - 12);
+            if (trailer.getInt(8) != EvioColumnWriter.MAGIC_NUMBER) {
+                throw new EvioException("bad trailer, file incomplete");
+            }
+            int chunkCount = trailer.getInt(0);
+            eventCount = trailer.getInt(4);
+
+            trailerPosition = fileSize - 12 - 8L*chunkCount;
+            ByteBuffer positions = ByteBuffer.allocate(8*chunkCount).order(byteOrder);
+            read(positions, trailerPosition);
+            chunkPositions = new long[chunkCount];
+            positions.asLongBuffer().get(chunkPositions);
+
+            chunkBuffers    = new MappedByteBuffer[chunkCount];
+            columnPositions = new int[chunkCount][];
+        }
+        catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        catch (EvioException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Fill the given buffer from the file.
+     * @param buf buffer to fill.
+     * @param pos file position to read from.
+     * @throws IOException if error reading.
+     */
+    private void read(ByteBuffer buf, long pos) throws IOException {
+        buf.clear();
+        while (buf.hasRemaining()) {
+            if (fileChannel.read(buf, pos + buf.position()) < 0) {
+                throw new IOException("unexpected end of file");
+            }
+        }
+        buf.flip();
+    }
+
+
+    /** Close the file. */
+    public void close() {
+        try {file.close();}
+        catch (IOException e) {}
+    }
+
+
+    /**
+     * Get the byte order of the file.
+     * @return byte order of the file.
+     */
+    public ByteOrder getByteOrder() {return byteOrder;}
+
+    /**
+     * Get the total number of events.
+     * @return total number of events.
+     */
+    public int getEventCount() {return eventCount;}
+
+    /**
+     * Get the number of chunks.
+     * @return number of chunks.
+     */
+    public int getChunkCount() {return chunkPositions.length;}
+
+    /**
+     * Get the number of columns.
+     * @return number of columns.
+     */
+    public int getColumnCount() {return names.length;}
+
+    /**
+     * Get the name of a column.
+     * @param column column index starting at 0.
+     * @return name of column.
+     */
+    public String getColumnName(int column) {return names[column];}
+
+    /**
+     * Get the tag of the banks stored in a column.
+     * @param column column index starting at 0.
+     * @return tag of banks.
+     */
+    public int getColumnTag(int column) {return tags[column];}
+
+    /**
+     * Get the num of the banks stored in a column.
+     * @param column column index starting at 0.
+     * @return num of banks.
+     */
+    public int getColumnNum(int column) {return nums[column];}
+
+    /**
+     * Get the index of the column with the given name.
+     * @param name name of column.
+     * @return index of column; -1 if none.
+     */
+    public int getColumnIndex(String name) {
+        for (int i=0; i < names.length; i++) {
+            if (names[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+
+    /**
+     * Get the mapped memory of a chunk, mapping it if necessary.
+     * @param chunk chunk index starting at 0.
+     * @return mapped memory of chunk.
+     * @throws IOException if error mapping file.
+     */
+    private MappedByteBuffer getChunk(int chunk) throws IOException {
+        MappedByteBuffer buf = chunkBuffers[chunk];
+        if (buf != null) return buf;
+
+        long start = chunkPositions[chunk];
+        long end = (chunk + 1 < chunkPositions.length) ? chunkPositions[chunk + 1] : trailerPosition;
+        buf = fileChannel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        buf.order(byteOrder);
+
+        // Find where each column starts
+        int rows = buf.getInt(0);
+        int[] colPos = new int[names.length];
+        int pos = EvioColumnWriter.padded(4 + 4*rows, 8);
+        for (int i=0; i < colPos.length; i++) {
+            colPos[i] = pos;
+            int dataBytes = buf.getInt(pos + 8);
+            pos += EvioColumnWriter.padded(12 + 4*(rows + 1), 8) +
+                   EvioColumnWriter.padded(dataBytes, 8);
+        }
+
+        columnPositions[chunk] = colPos;
+        chunkBuffers[chunk] = buf;
+        return buf;
+    }
+
+
+    /**
+     * Get a view of part of a buffer.
+     * @param buf   buffer.
+     * @param pos   starting position of view.
+     * @param bytes size of view.
+     * @return view of part of buffer with file's byte order.
+     */
+    private ByteBuffer view(ByteBuffer buf, int pos, int bytes) {
+        ByteBuffer dup = buf.duplicate();
+        dup.limit(pos + bytes).position(pos);
+        return dup.slice().order(byteOrder);
+    }
+
+
+    /**
+     * Get the number of events in a chunk.
+     * @param chunk chunk index starting at 0.
+     * @return number of events in chunk.
+     * @throws IOException if error mapping file.
+     */
+    public int getEventCount(int chunk) throws IOException {
+        return getChunk(chunk).getInt(0);
+    }
+
+
+    /**
+     * Get the event numbers of the events in a chunk.
+     * @param chunk chunk index starting at 0.
+     * @return event numbers of the events in a chunk.
+     * @throws IOException if error mapping file.
+     */
+    public IntBuffer getEventNumbers(int chunk) throws IOException {
+        ByteBuffer buf = getChunk(chunk);
+        return view(buf, 4, 4*buf.getInt(0)).asIntBuffer();
+    }
+
+
+    /**
+     * Get the data type of a column's data in a chunk.
+     * @param chunk  chunk index starting at 0.
+     * @param column column index starting at 0.
+     * @return data type of column's data in chunk; UNKNOWN32 if there is none.
+     * @throws IOException if error mapping file.
+     */
+    public DataType getDataType(int chunk, int column) throws IOException {
+        ByteBuffer buf = getChunk(chunk);
+        return DataType.getDataType(buf.getInt(columnPositions[chunk][column]));
+    }
+
+
+    /**
+     * Get the number of data items of a column in a chunk.
+     * @param chunk  chunk index starting at 0.
+     * @param column column index starting at 0.
+     * @return number of data items of a column in a chunk.
+     * @throws IOException if error mapping file.
+     */
+    public int getItemCount(int chunk, int column) throws IOException {
+        ByteBuffer buf = getChunk(chunk);
+        return buf.getInt(columnPositions[chunk][column] + 4);
+    }
+
+
+    /**
+     * Get the offset of each event's first data item in a column of a chunk.
+     * There is one more offset than events, the last being the number of items.
+     * @param chunk  chunk index starting at 0.
+     * @param column column index starting at 0.
+     * @return offsets (in data items, not bytes) of each event's first data item.
+     * @throws IOException if error mapping file.
+     */
+    public IntBuffer getOffsets(int chunk, int column) throws IOException {
+        ByteBuffer buf = getChunk(chunk);
+        int rows = buf.getInt(0);
+        return view(buf, columnPositions[chunk][column] + 12, 4*(rows + 1)).asIntBuffer();
+    }
+
+
+    /**
+     * Get all the data of a column in a chunk as bytes.
+     * @param chunk  chunk index starting at 0.
+     * @param column column index starting at 0.
+     * @return view of data with the file's byte order.
+     * @throws IOException if error mapping file.
+     */
+    public ByteBuffer getData(int chunk, int column) throws IOException {
+        ByteBuffer buf = getChunk(chunk);
+        int rows = buf.getInt(0);
+        int pos  = columnPositions[chunk][column];
+        int dataBytes = buf.getInt(pos + 8);
+        return view(buf, pos + EvioColumnWriter.padded(12 + 4*(rows + 1), 8), dataBytes);
+    }
+
+
+    /**
+     * Get all the data of a column of 32 bit ints in a chunk.
+     * @param chunk  chunk index starting at 0.
+     * @param column column index starting at 0.
+     * @return view of data.
+     * @throws IOException   if error mapping file.
+     * @throws EvioException if column does not contain 32 bit ints.
+     */
+    public IntBuffer getIntData(int chunk, int column) throws IOException, EvioException {
+        checkSize(chunk, column, 4);
+        return getData(chunk, column).asIntBuffer();
+    }
+
+
+    /**
+     * Get all the data of a column of 16 bit shorts in a chunk.
+     * @param chunk  chunk index starting at 0.
+     * @param column column index starting at 0.
+     * @return view of data.
+     * @throws IOException   if error mapping file.
+     * @throws EvioException if column does not contain 16 bit shorts.
+     */
+    public ShortBuffer getShortData(int chunk, int column) throws IOException, EvioException {
+        checkSize(chunk, column, 2);
+        return getData(chunk, column).asShortBuffer();
+    }
+
+
+    /**
+     * Get all the data of a column of 64 bit longs in a chunk.
+     * @param chunk  chunk index starting at 0.
+     * @param column column index starting at 0.
+     * @return view of data.
+     * @throws IOException   if error mapping file.
+     * @throws EvioException if column does not contain 64 bit longs.
+     */
+    public LongBuffer getLongData(int chunk, int column) throws IOException, EvioException {
+        checkSize(chunk, column, 8);
+        return getData(chunk, column).asLongBuffer();
+    }
+
+
+    /**
+     * Get all the data of a column of floats in a chunk.
+     * @param chunk  chunk index starting at 0.
+     * @param column column index starting at 0.
+     * @return view of data.
+     * @throws IOException   if error mapping file.
+     * @throws EvioException if column does not contain floats.
+     */
+    public FloatBuffer getFloatData(int chunk, int column) throws IOException, EvioException {
+        checkType(chunk, column, DataType.FLOAT32);
+        return getData(chunk, column).asFloatBuffer();
+    }
+
+
+    /**
+     * Get all the data of a column of doubles in a chunk.
+     * @param chunk  chunk index starting at 0.
+     * @param column column index starting at 0.
+     * @return view of data.
+     * @throws IOException   if error mapping file.
+     * @throws EvioException if column does not contain doubles.
+     */
+    public DoubleBuffer getDoubleData(int chunk, int column) throws IOException, EvioException {
+        checkType(chunk, column, DataType.DOUBLE64);
+        return getData(chunk, column).asDoubleBuffer();
+    }
+
+
+    /**
+     * Make sure a column's data in a chunk are integers of the given size or none at all.
+     * @param chunk  chunk index starting at 0.
+     * @param column column index starting at 0.
+     * @param size   size of integer in bytes.
+     * @throws IOException   if error mapping file.
+     * @throws EvioException if data is of a different type.
+     */
+    private void checkSize(int chunk, int column, int size) throws IOException, EvioException {
+        if (getItemCount(chunk, column) == 0) return;
+        DataType type = getDataType(chunk, column);
+        if (!type.isInteger() || EvioColumnWriter.elementSize(type) != size) {
+            throw new EvioException("column " + names[column] + " contains " + type);
+        }
+    }
+
+
+    /**
+     * Make sure a column's data in a chunk are of the given type or none at all.
+     * @param chunk  chunk index starting at 0.
+     * @param column column index starting at 0.
+     * @param type   data type.
+     * @throws IOException   if error mapping file.
+     * @throws EvioException if data is of a different type.
+     */
+    private void checkType(int chunk, int column, DataType type) throws IOException, EvioException {
+        if (getItemCount(chunk, column) == 0) return;
+        DataType dataType = getDataType(chunk, column);
+        if (dataType != type) {
+            throw new EvioException("column " + names[column] + " contains " + dataType);
+        }
+    }
+}
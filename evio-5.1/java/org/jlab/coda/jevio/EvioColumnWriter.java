@@ -0,0 +1,500 @@
+/*
+ * Copyright (c) 2026, Jefferson Science Associates
+ *
+ * Thomas Jefferson National Accelerator Facility
+ * Data Acquisition Group
+ *
+ * 12000, Jefferson Ave, Newport News, VA 23606
+ * Phone : (757)-269-7100
+ *
+ */
+
+package org.jlab.coda.jevio;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class is used to copy the data of selected banks (given by tag/num)
+ * out of evio events and into a compact, columnar file which can be read
+ * with {@link EvioColumnReader}. Each selected tag/num pair is a column.
+ * Events are grouped into chunks. For each chunk, the file contains the
+ * numbers of its events, and for each column, its data type, the offset
+ * (in data items) of each event's data, and all of the column's data for
+ * those events stored contiguously. Thus an analysis that needs only a few
+ * columns only has to read those bytes. An event may contain any number of
+ * banks matching a column, including none.<p>
+ *
+ * File layout (all ints in the chosen byte order):
+ * <pre>
+ * header:  magic, version, column count,
+ *          for each column: tag, num, name length, name (UTF-8, padded to 4 bytes)
+ * chunk:   event count (n), event numbers (n ints), padding to 8 bytes,
+ *          for each column: data type, item count, data bytes,
+ *                           item offsets (n+1 ints), padding to 8 bytes,
+ *                           data (padded to 8 bytes)
+ * trailer: chunk positions (longs), chunk count, event count, magic
+ * </pre>
+ *
+ * Data of numerical types is converted to the byte order of the file.
+ * Data of other types is stored as raw bytes.
+ * This class is not thread-safe.
+ *
+ * @author timmer
+ */
+public class EvioColumnWriter {
+
+    /** Magic number at the beginning and end of the file. */
+    static final int MAGIC_NUMBER = 0xc0da0c01;
+
+    /** Version of the file format. */
+    static final int VERSION = 1;
+
+    /** Default number of events in a chunk. */
+    public static final int DEFAULT_CHUNK_EVENTS = 10000;
+
+
+    /** Data of a single column in the chunk currently being filled. */
+    private final class Column {
+        final String name;
+        final int tag;
+        final int num;
+
+        /** Data type of this column's data in the current chunk; null if none yet. */
+        DataType dataType;
+        /** Number of data items in the current chunk. */
+        int itemCount;
+        /** Offset of each event's first data item (with one extra at the end). */
+        int[] offsets = new int[chunkEvents + 1];
+        /** Data of the current chunk. */
+        ByteBuffer data = ByteBuffer.allocate(4096).order(byteOrder);
+
+        Column(String name, int tag, int num) {
+            this.name = name;
+            this.tag  = tag;
+            this.num  = num;
+        }
+
+        /** Reset for a new chunk. */
+        void clear() {
+            dataType  = null;
+            itemCount = 0;
+            data.clear();
+        }
+
+        /**
+         * Add the data of a matching bank.
+         * @param node node of matching bank.
+         * @throws EvioException if data type differs from other data in chunk
+         */
+        void append(EvioNode node) throws EvioException {
+            DataType type = node.getDataTypeObj();
+            if (dataType == null) {
+                dataType = type;
+            }
+            else if (dataType != type) {
+                throw new EvioException("column " + name + " has data of type " + dataType +
+                                        " and " + type + " in the same chunk");
+            }
+
+            ByteBuffer src = node.getByteData(false);
+            int bytes = src.remaining();
+            int size  = elementSize(type);
+
+            if (data.remaining() < bytes) {
+                int capacity = data.capacity();
+                while (capacity - data.position() < bytes) capacity *= 2;
+                ByteBuffer bigger = ByteBuffer.allocate(capacity).order(byteOrder);
+                data.flip();
+                bigger.put(data);
+                data = bigger;
+            }
+
+            // Convert to the byte order of the file if necessary
+            if (size == 1 || src.order() == byteOrder) {
+                data.put(src);
+            }
+            else {
+                switch (size) {
+                    case 2:
+                        data.asShortBuffer().put(src.asShortBuffer());
+                        break;
+                    case 4:
+                        data.asIntBuffer().put(src.asIntBuffer());
+                        break;
+                    default:
+                        data.asLongBuffer().put(src.asLongBuffer());
+                }
+                data.position(data.position() + bytes);
+            }
+
+            itemCount += bytes / size;
+        }
+    }
+
+
+    /** Columns in the order they were added. */
+    private final ArrayList<Column> columns = new ArrayList<Column>();
+
+    /** Columns as an array for fast access once writing starts. */
+    private Column[] columnArray;
+
+    /** Byte order of the file. */
+    private final ByteOrder byteOrder;
+
+    /** Max number of events in a chunk. */
+    private final int chunkEvents;
+
+    /** Event numbers of events in the current chunk. */
+    private final int[] eventNumbers;
+
+    /** Number of events in the current chunk. */
+    private int eventsInChunk;
+
+    /** Total number of events written. */
+    private int eventCount;
+
+    /** File positions of the chunks written. */
+    private long[] chunkPositions = new long[16];
+
+    /** Number of chunks written. */
+    private int chunkCount;
+
+    /** Stream to file being written. */
+    private final FileOutputStream fileOutputStream;
+
+    /** Channel to file being written. */
+    private final FileChannel fileChannel;
+
+    /** Buffer used to write the fixed size parts of a chunk. */
+    private ByteBuffer headerBuffer;
+
+    /** Is this object closed? */
+    private boolean closed;
+
+
+
+    /**
+     * Constructor which writes in the native byte order with chunks of
+     * {@link #DEFAULT_CHUNK_EVENTS} events.
+     *
+     * @param file file to write to which is overwritten if it exists.
+     * @throws IOException if file cannot be opened.
+     */
+    public EvioColumnWriter(File file) throws IOException {
+        this(file, DEFAULT_CHUNK_EVENTS, null);
+    }
+
+
+    /**
+     * Constructor.
+     *
+     * @param file        file to write to which is overwritten if it exists.
+     * @param chunkEvents max number of events in each chunk;
+     *                    if &lt; 1, {@link #DEFAULT_CHUNK_EVENTS} is used.
+     * @param byteOrder   byte order of file; if null, the native byte order is used.
+     * @throws IOException if file cannot be opened.
+     */
+    public EvioColumnWriter(File file, int chunkEvents, ByteOrder byteOrder) throws IOException {
+        if (chunkEvents < 1) {
+            chunkEvents = DEFAULT_CHUNK_EVENTS;
+        }
+        if (byteOrder == null) {
+            byteOrder = ByteOrder.nativeOrder();
+        }
+
+        this.chunkEvents = chunkEvents;
+        this.byteOrder   = byteOrder;
+        eventNumbers     = new int[chunkEvents];
+        headerBuffer     = ByteBuffer.allocate(4*chunkEvents + 64).order(byteOrder);
+
+        fileOutputStream = new FileOutputStream(file);
+        fileChannel      = fileOutputStream.getChannel();
+    }
+
+
+    /**
+     * Add a column containing the data of all banks with the given tag and num.
+     * All columns must be added before the first event is written.
+     *
+     * @param name name of column.
+     * @param tag  tag of banks to store in column.
+     * @param num  num of banks to store in column.
+     * @throws EvioException if name is null or already used;
+     *                       if events were already written
+     */
+    public void addColumn(String name, int tag, int num) throws EvioException {
+        if (name == null) {
+            throw new EvioException("null column name");
+        }
+        if (columnArray != null) {
+            throw new EvioException("columns must be added before writing events");
+        }
+        for (Column c : columns) {
+            if (c.name.equals(name)) {
+                throw new EvioException("column " + name + " already exists");
+            }
+        }
+        columns.add(new Column(name, tag, num));
+    }
+
+
+    /**
+     * Add a column for each of the given dictionary entries.
+     * Each column is named after its entry.
+     *
+     * @param dictionary dictionary containing the entries.
+     * @param names      names of dictionary entries.
+     * @throws EvioException if a name is not in the dictionary;
+     *                       if events were already written
+     */
+    public void addColumns(EvioXMLDictionary dictionary, String... names) throws EvioException {
+        for (String name : names) {
+            int tag = dictionary.getTag(name);
+            int num = dictionary.getNum(name);
+            if (tag == -1 || num == -1) {
+                throw new EvioException("no dictionary entry for " + name);
+            }
+            addColumn(name, tag, num);
+        }
+    }
+
+
+    /**
+     * Get the number of events written so far.
+     * @return number of events written so far.
+     */
+    public int getEventCount() {
+        return eventCount;
+    }
+
+
+    /**
+     * Write the header once all columns are known.
+     * @throws IOException if error writing.
+     * @throws EvioException if no columns were added.
+     */
+    private void writeHeader() throws IOException, EvioException {
+        if (columns.size() < 1) {
+            throw new EvioException("no columns added");
+        }
+
+        columnArray = columns.toArray(new Column[columns.size()]);
+
+        int bytes = 12;
+        byte[][] names = new byte[columnArray.length][];
+        for (int i=0; i < columnArray.length; i++) {
+            names[i] = columnArray[i].name.getBytes("UTF-8");
+            bytes += 12 + padded(names[i].length, 4);
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(padded(bytes, 8)).order(byteOrder);
+        buf.putInt(MAGIC_NUMBER).putInt(VERSION).putInt(columnArray.length);
+        for (int i=0; i < columnArray.length; i++) {
+            buf.putInt(columnArray[i].tag).putInt(columnArray[i].num).putInt(names[i].length);
+            buf.put(names[i]);
+            buf.position(padded(buf.position(), 4));
+        }
+        buf.position(buf.capacity()).flip();
+        write(buf);
+    }
+
+
+    /**
+     * Copy the data of all selected banks in the given event.
+     * The event number is stored in the event number index.
+     *
+     * @param eventNode   node of event which <b>must</b> have been scanned,
+     *                    for example with {@link EvioCompactReader#getScannedEvent(int)}.
+     * @param eventNumber number to store for this event.
+     * @throws IOException   if error writing.
+     * @throws EvioException if object closed; if no columns were added;
+     *                       if a column gets different data types in one chunk.
+     */
+    public void writeEvent(EvioNode eventNode, int eventNumber) throws IOException, EvioException {
+        if (closed) {
+            throw new EvioException("object closed");
+        }
+
+        if (columnArray == null) {
+            writeHeader();
+        }
+
+        for (Column c : columnArray) {
+            c.offsets[eventsInChunk] = c.itemCount;
+        }
+
+        ArrayList<EvioNode> nodes = eventNode.getAllNodes();
+        if (nodes != null) {
+            for (int i=0; i < nodes.size(); i++) {
+                EvioNode node = nodes.get(i);
+                // Containers have no data of their own
+                if (DataType.isStructure(node.dataType)) continue;
+
+                for (Column c : columnArray) {
+                    if (c.tag == node.tag && c.num == node.num) {
+                        c.append(node);
+                    }
+                }
+            }
+        }
+
+        eventNumbers[eventsInChunk++] = eventNumber;
+        eventCount++;
+
+        if (eventsInChunk == chunkEvents) {
+            writeChunk();
+        }
+    }
+
+
+    /**
+     * Copy the data of all selected banks in every event of the given reader.
+     * Each event's place in the file/buffer (starting at 1) is its event number.
+     *
+     * @param reader reader of events.
+     * @return number of events copied.
+     * @throws IOException   if error writing.
+     * @throws EvioException if this object or the reader is closed; if no columns were added;
+     *                       if a column gets different data types in one chunk.
+     */
+    public int writeEvents(EvioCompactReader reader) throws IOException, EvioException {
+        if (reader.isClosed()) {
+            throw new EvioException("reader closed");
+        }
+
+        int count = reader.getEventCount();
+        for (int i=1; i <= count; i++) {
+            EvioNode node = reader.getScannedEvent(i);
+            writeEvent(node, i);
+            // Don't keep scanned nodes around once their data is copied
+            node.clearLists();
+        }
+        return count;
+    }
+
+
+    /**
+     * Write the current chunk to the file.
+     * @throws IOException if error writing.
+     */
+    private void writeChunk() throws IOException {
+        if (eventsInChunk < 1) return;
+
+        if (chunkCount == chunkPositions.length) {
+            chunkPositions = Arrays.copyOf(chunkPositions, 2*chunkCount);
+        }
+        chunkPositions[chunkCount++] = fileChannel.position();
+
+        // Event number index
+        headerBuffer.clear();
+        headerBuffer.putInt(eventsInChunk);
+        headerBuffer.asIntBuffer().put(eventNumbers, 0, eventsInChunk);
+        headerBuffer.position(padded(4 + 4*eventsInChunk, 8)).flip();
+        write(headerBuffer);
+
+        for (Column c : columnArray) {
+            c.offsets[eventsInChunk] = c.itemCount;
+            int dataBytes = c.data.position();
+
+            headerBuffer.clear();
+            headerBuffer.putInt(c.dataType == null ? DataType.UNKNOWN32.getValue() : c.dataType.getValue());
+            headerBuffer.putInt(c.itemCount);
+            headerBuffer.putInt(dataBytes);
+            headerBuffer.asIntBuffer().put(c.offsets, 0, eventsInChunk + 1);
+            headerBuffer.position(padded(12 + 4*(eventsInChunk + 1), 8)).flip();
+            write(headerBuffer);
+
+            // Pad data to 8 bytes (buffer capacity is always a multiple of 8)
+            c.data.position(padded(dataBytes, 8));
+            c.data.flip();
+            write(c.data);
+            c.clear();
+        }
+
+        eventsInChunk = 0;
+    }
+
+
+    /**
+     * Write the buffer's remaining bytes to the file.
+     * @param buf buffer to write.
+     * @throws IOException if error writing.
+     */
+    private void write(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            fileChannel.write(buf);
+        }
+    }
+
+
+    /**
+     * Write any remaining events and the trailer, then close the file.
+     * @throws IOException if error writing.
+     * @throws EvioException if no columns were ever added.
+     */
+    public void close() throws IOException, EvioException {
+        if (closed) return;
+
+        try {
+            if (columnArray == null) {
+                writeHeader();
+            }
+            writeChunk();
+
+            ByteBuffer buf = ByteBuffer.allocate(8*chunkCount + 12).order(byteOrder);
+            for (int i=0; i < chunkCount; i++) {
+                buf.putLong(chunkPositions[i]);
+            }
+            buf.putInt(chunkCount).putInt(eventCount).putInt(MAGIC_NUMBER);
+            buf.flip();
+            write(buf);
+        }
+        finally {
+            closed = true;
+            fileOutputStream.close();
+        }
+    }
+
+
+    /**
+     * Round up to a multiple of the given size.
+     * @param value value to round up.
+     * @param size  size whose multiple is returned (power of 2).
+     * @return smallest multiple of size &gt;= value.
+     */
+    static int padded(int value, int size) {
+        return (value + size - 1) & ~(size - 1);
+    }
+
+
+    /**
+     * Get the size in bytes of a single data item of the given type
+     * as it is stored in a column.
+     * @param type data type.
+     * @return size in bytes of a single data item.
+     */
+    static int elementSize(DataType type) {
+        switch (type) {
+            case SHORT16:
+            case USHORT16:
+                return 2;
+            case INT32:
+            case UINT32:
+            case FLOAT32:
+                return 4;
+            case LONG64:
+            case ULONG64:
+            case DOUBLE64:
+                return 8;
+            default:
+                return 1;
+        }
+    }
+}
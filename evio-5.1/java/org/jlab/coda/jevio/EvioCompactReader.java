@@ -1250,6 +1250,44 @@ System.out.println("EvioCompactReader: unsupported evio version (" + evioVersion
     }
 
 
+    /**
+     * This method searches the specified event in a file/buffer and
+     * returns a list of objects each of which contain information
+     * about a single evio structure which matches the given compiled
+     * dictionary path. Unlike the other search methods, the event is
+     * not scanned. Only those parts of the event which can still match
+     * the path are looked at, and EvioNode objects are only created for them.
+     * The returned nodes are not part of the event node's lists of nodes.
+     *
+     * @param  eventNumber place of event in buffer (starting with 1)
+     * @param  path compiled dictionary path,
+     *              e.g. <code>StructurePath.compile("Event/ECal/FADC", getDictionary())</code>
+     *
+     * @return list of EvioNode objects corresponding to matching evio structures
+     *         (empty if none found)
+     * @throws EvioException if path is null;
+     *                       if bad event number;
+     *                       if object closed
+     */
+    public synchronized List<EvioNode> searchEvent(int eventNumber, StructurePath path)
+                                 throws EvioException {
+
+        if (path == null) {
+            throw new EvioException("null path");
+        }
+
+        if (eventNumber < 1 || eventNumber > eventCount) {
+            throw new EvioException("bad arg value(s)");
+        }
+
+        if (closed) {
+            throw new EvioException("object closed");
+        }
+
+        return path.getMatchingNodes(eventNodes.get(eventNumber - 1));
+    }
+
+
     /**
      * This method removes the data of the given event from the buffer.
      * It also marks any existing EvioNodes representing the event and its
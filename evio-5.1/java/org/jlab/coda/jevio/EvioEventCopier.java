@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2026, Jefferson Science Associates
+ *
+ * Thomas Jefferson National Accelerator Facility
+ * Data Acquisition Group
+ *
+ * 12000, Jefferson Ave, Newport News, VA 23606
+ * Phone : (757)-269-7100
+ *
+ */
+
+package org.jlab.coda.jevio;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class is used to copy those events of evio files which pass a filter
+ * into new files. Events are never parsed. Each file is read with an
+ * {@link EvioCompactReader}, the filter looks at the unscanned event node,
+ * and the bytes of accepted events are copied straight from the reader's
+ * buffer into an {@link EventWriter}. Several files may be copied in parallel,
+ * one per thread. The dictionary and byte order of each input file are kept.
+ *
+ * @author timmer
+ */
+public class EvioEventCopier {
+
+    /** Filter selecting the events to copy; null means copy all. */
+    private final IEvioNodeFilter filter;
+
+
+    /**
+     * Class containing the statistics of copying one or more files.
+     */
+    public static final class Statistics {
+        /** Number of files copied. */
+        public int  files;
+        /** Number of events read. */
+        public long eventsRead;
+        /** Number of events written. */
+        public long eventsWritten;
+        /** Number of event bytes read. */
+        public long bytesRead;
+        /** Number of event bytes written. */
+        public long bytesWritten;
+        /** Time taken in nanoseconds. */
+        public long nanoseconds;
+
+        /**
+         * Add the counts of another object to this one (but not the time).
+         * @param stats other statistics.
+         */
+        void add(Statistics stats) {
+            files         += stats.files;
+            eventsRead    += stats.eventsRead;
+            eventsWritten += stats.eventsWritten;
+            bytesRead     += stats.bytesRead;
+            bytesWritten  += stats.bytesWritten;
+        }
+
+        /**
+         * Get the rate at which events were read.
+         * @return rate at which events were read in Hz.
+         */
+        public double getEventRate() {
+            if (nanoseconds < 1) return 0.;
+            return eventsRead * 1.e9 / nanoseconds;
+        }
+
+        /**
+         * Get the rate at which event bytes were read.
+         * @return rate at which event bytes were read in MB/s.
+         */
+        public double getByteRate() {
+            if (nanoseconds < 1) return 0.;
+            return bytesRead * 1.e3 / nanoseconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d file(s), %d of %d events (%d of %d bytes) copied in %.3f s, " +
+                                 "%.1f kHz, %.1f MB/s",
+                                 files, eventsWritten, eventsRead, bytesWritten, bytesRead,
+                                 nanoseconds/1.e9, getEventRate()/1.e3, getByteRate());
+        }
+    }
+
+
+    /**
+     * Constructor.
+     * @param filter filter selecting the events to copy; if null, all events are copied.
+     *               If copying files in parallel, the filter must be thread-safe.
+     */
+    public EvioEventCopier(IEvioNodeFilter filter) {
+        this.filter = filter;
+    }
+
+
+    /**
+     * Copy the events of an input file which pass the filter into an output file.
+     * The output file is overwritten if it exists. If no events pass
+     * the filter, no output file is created.
+     *
+     * @param input  file to read.
+     * @param output file to write.
+     * @return statistics of the copy.
+     * @throws IOException   if error reading or writing.
+     * @throws EvioException if input file is not in evio format;
+     *                       if output file cannot be created.
+     */
+    public Statistics copy(File input, File output) throws IOException, EvioException {
+
+        Statistics stats = new Statistics();
+        long t1 = System.nanoTime();
+
+        EvioCompactReader reader = new EvioCompactReader(input);
+        EventWriter writer = null;
+
+        try {
+            String dictionary = reader.hasDictionary() ? reader.getDictionaryXML() : null;
+
+            // The writer does not create its file until an event is written.
+            // Don't leave an old file around if no events pass the filter.
+            if (output.exists() && !output.delete()) {
+                throw new EvioException("cannot overwrite " + output.getPath());
+            }
+
+            // Must write in the same byte order as the events are read in
+            writer = new EventWriter(output, EventWriter.DEFAULT_BLOCK_SIZE,
+                                     EventWriter.DEFAULT_BLOCK_COUNT, reader.getByteOrder(),
+                                     dictionary, null, true);
+
+            int count = reader.getEventCount();
+            for (int i=1; i <= count; i++) {
+                EvioNode node = reader.getEvent(i);
+                int bytes = node.getTotalBytes();
+                stats.eventsRead++;
+                stats.bytesRead += bytes;
+
+                if (filter == null || filter.accept(node)) {
+                    writer.writeEvent(node, false);
+                    stats.eventsWritten++;
+                    stats.bytesWritten += bytes;
+                }
+            }
+        }
+        finally {
+            if (writer != null) writer.close();
+            reader.close();
+        }
+
+        stats.files = 1;
+        stats.nanoseconds = System.nanoTime() - t1;
+        return stats;
+    }
+
+
+    /**
+     * Copy the events of many input files which pass the filter into output files
+     * of the same names in the given directory. Files are copied in parallel.
+     *
+     * @param inputs          files to read.
+     * @param outputDirectory directory in which to write files.
+     * @param threads         number of files to copy at once;
+     *                        if &lt; 1, the number of available processors is used.
+     * @return statistics of all copies combined.
+     * @throws IOException   if error reading or writing.
+     * @throws EvioException if an input file is not in evio format;
+     *                       if an output file cannot be created;
+     *                       if an output file would overwrite an input file;
+     *                       if two input files have the same name.
+     */
+    public Statistics copy(List<File> inputs, File outputDirectory, int threads)
+            throws IOException, EvioException {
+
+        if (threads < 1) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+
+        // Check before starting anything
+        HashSet<File> inputFiles = new HashSet<File>();
+        for (File input : inputs) {
+            inputFiles.add(input.getCanonicalFile());
+        }
+
+        HashSet<File> outputFiles = new HashSet<File>();
+        for (File input : inputs) {
+            File output = new File(outputDirectory, input.getName()).getCanonicalFile();
+            if (inputFiles.contains(output)) {
+                throw new EvioException("output would overwrite input " + output.getPath());
+            }
+            if (!outputFiles.add(output)) {
+                throw new EvioException("more than one input named " + input.getName());
+            }
+        }
+
+        long t1 = System.nanoTime();
+        ExecutorService threadPool = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<Statistics>> futures = new ArrayList<Future<Statistics>>(inputs.size());
+
+        for (final File input : inputs) {
+            final File output = new File(outputDirectory, input.getName());
+            futures.add(threadPool.submit(new Callable<Statistics>() {
+                public Statistics call() throws IOException, EvioException {
+                    return copy(input, output);
+                }
+            }));
+        }
+
+        Statistics total = new Statistics();
+
+        try {
+            for (Future<Statistics> future : futures) {
+                total.add(future.get());
+            }
+        }
+        catch (InterruptedException e) {
+            throw new EvioException("interrupted", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)   throw (IOException) cause;
+            if (cause instanceof EvioException) throw (EvioException) cause;
+            throw new EvioException(cause);
+        }
+        finally {
+            threadPool.shutdownNow();
+        }
+
+        total.nanoseconds = System.nanoTime() - t1;
+        return total;
+    }
+
+
+    /**
+     * Create a filter accepting events which contain at least one
+     * evio structure matching the given path.
+     * @param path compiled dictionary path.
+     * @return filter accepting events containing a match to the path.
+     */
+    public static IEvioNodeFilter containing(final StructurePath path) {
+        return new IEvioNodeFilter() {
+            public boolean accept(EvioNode eventNode) {
+                return path.getMatchingNodes(eventNode).size() > 0;
+            }
+        };
+    }
+}
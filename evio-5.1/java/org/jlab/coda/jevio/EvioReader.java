@@ -1776,6 +1776,66 @@ System.err.println("ERROR endOfBuffer " + a);
 		return WriteStatus.SUCCESS;
 	}
 
+    /**
+     * Rewrite the file to XML (not including dictionary) by converting
+     * events into XML in multiple threads. The output is the same as that of
+     * {@link #toXMLFile(String, IEvioProgressListener, boolean)}.
+     *
+     * @param path the path to the XML file.
+     * @param progressListener and optional progress listener, can be <code>null</code>.
+     * @param hex if true, ints get displayed in hexadecimal
+     * @param threads number of threads converting events to XML;
+     *                if &lt; 1, the number of available processors is used.
+     *
+     * @return the status of the write.
+     * @throws IOException   if failed file access
+     * @throws EvioException if object closed
+     * @see EvioXMLExporter
+     */
+    public synchronized WriteStatus toXMLFile(String path,
+                                              IEvioProgressListener progressListener,
+                                              boolean hex, int threads)
+                throws IOException, EvioException {
+
+        if (closed) {
+            throw new EvioException("object closed");
+        }
+
+        OutputStream out;
+
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(path), 1000000);
+        }
+        catch (FileNotFoundException e) {
+            e.printStackTrace();
+            return WriteStatus.CANNOT_OPEN_FILE;
+        }
+
+        // Save our state and then restore it when we're done.
+        ReaderState state = getState();
+        EvioXMLExporter exporter = new EvioXMLExporter(threads, hex);
+
+        try {
+            exporter.export(this, out, path, progressListener);
+        }
+        catch (EvioException e) {
+            e.printStackTrace();
+            return WriteStatus.EVIO_EXCEPTION;
+        }
+        finally {
+            exporter.close();
+            try {
+                out.close();
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+            restoreState(state);
+        }
+
+        return WriteStatus.SUCCESS;
+    }
+
 
     /**
      * This is the number of events in the file. Any dictionary event is <b>not</b>
@@ -414,6 +414,28 @@ System.out.println("IGNORING entry whose name conflicts with reserved strings: "
     }
 
 
+    /**
+     * Get the map in which the key is the tag of an entry with no num
+     * and the value is the entry name.
+     * @return map in which the key is the tag of a tag-only entry
+     *         and the value is its name.
+     * @since 5.1
+     */
+    Map<Integer, String> getTagOnlyMap() {
+        return Collections.unmodifiableMap(tagOnlyMap);
+    }
+
+
+    /**
+     * Get the character(s) used to separate hierarchical parts of names.
+     * @return character(s) used to separate hierarchical parts of names.
+     * @since 5.1
+     */
+    String getDelimiter() {
+        return delimiter;
+    }
+
+
     /**
      * Takes a list of the children of an xml node, selects the new
      * hierachical elements and converts them into a number of dictionary
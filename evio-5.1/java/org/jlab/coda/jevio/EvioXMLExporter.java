@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2026, Jefferson Science Associates
+ *
+ * Thomas Jefferson National Accelerator Facility
+ * Data Acquisition Group
+ *
+ * 12000, Jefferson Ave, Newport News, VA 23606
+ * Phone : (757)-269-7100
+ *
+ */
+
+package org.jlab.coda.jevio;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class is used to quickly write the events of an evio file or buffer
+ * out as xml. Events are read in a single thread but converted into xml
+ * by a pool of threads, each event into its own chunk of bytes. These chunks
+ * are written to the output stream in the order the events were read.
+ * Only a limited number of events are in the process of being converted
+ * at any one time so memory use does not depend on the number of events.<p>
+ *
+ * Events may either be fully parsed into EvioEvent objects by an
+ * {@link EvioReader}, or be taken from an {@link EvioCompactReader}
+ * in which case the xml is produced directly from the buffer without
+ * creating any EvioEvent objects.<p>
+ *
+ * The xml written for events from an {@link EvioReader} is identical to that of
+ * {@link EvioReader#toXMLFile(String)}. Events from an {@link EvioCompactReader}
+ * are written straight from the buffer as by {@link Utilities#toXML(EvioNode, boolean)}.
+ * Each is a comment giving the event's size followed by an event element holding
+ * one element for each structure, with its header values and number of data items
+ * as attributes and its data as content. The data is formatted by that method's own
+ * code, not by the parsed structures, so the two outputs are not promised to be identical.
+ *
+ * @author timmer
+ */
+public class EvioXMLExporter {
+
+    /** Root xml element surrounding all events. */
+    private static final String ROOT_ELEMENT = "evio-data";
+
+    /** Thread pool converting events to xml. */
+    private final ExecutorService threadPool;
+
+    /** Max number of events being converted at once. */
+    private final int maxInFlight;
+
+    /** If true, ints get displayed in hexadecimal. */
+    private final boolean hex;
+
+    /** Factory of xml writers, one for each event. */
+    private final XMLOutputFactory factory = XMLOutputFactory.newInstance();
+
+
+    /**
+     * Constructor using one thread per processor and decimal ints.
+     */
+    public EvioXMLExporter() {
+        this(0, false);
+    }
+
+
+    /**
+     * Constructor.
+     *
+     * @param threads number of threads used to convert events into xml;
+     *                if &lt; 1, the number of available processors is used.
+     * @param hex     if true, ints get displayed in hexadecimal
+     */
+    public EvioXMLExporter(int threads, boolean hex) {
+        if (threads < 1) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        this.hex = hex;
+        maxInFlight = 4*threads;
+        threadPool = Executors.newFixedThreadPool(threads);
+    }
+
+
+    /** Stop the threads of this object. It cannot be used afterwards. */
+    public void close() {
+        threadPool.shutdown();
+    }
+
+
+    /** Class used to convert a single, parsed event into xml. */
+    private final class EventConverter implements Callable<byte[]> {
+        private final EvioEvent event;
+
+        EventConverter(EvioEvent event) {
+            this.event = event;
+        }
+
+        public byte[] call() throws XMLStreamException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(8*event.getTotalBytes());
+            XMLStreamWriter xmlWriter = factory.createXMLStreamWriter(bytes, "UTF-8");
+            event.toXML(xmlWriter, hex);
+            xmlWriter.flush();
+            xmlWriter.close();
+            return bytes.toByteArray();
+        }
+    }
+
+
+    /** Class used to convert a single, scanned event node into xml. */
+    private final class NodeConverter implements Callable<byte[]> {
+        private final EvioNode node;
+
+        NodeConverter(EvioNode node) {
+            this.node = node;
+        }
+
+        public byte[] call() throws XMLStreamException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(8*node.getTotalBytes());
+            XMLStreamWriter xmlWriter = factory.createXMLStreamWriter(bytes, "UTF-8");
+            Utilities.toXML(node, hex, xmlWriter);
+            xmlWriter.flush();
+            xmlWriter.close();
+            return bytes.toByteArray();
+        }
+    }
+
+
+    /**
+     * Write all events, parsed from the beginning of the given reader, as xml.
+     * The reader is left positioned after the last event.
+     * The output stream is not closed.
+     *
+     * @param reader           reader of events.
+     * @param out              stream to write xml to.
+     * @param source           description of the event source (file name) used in a comment.
+     * @param progressListener an optional progress listener, can be <code>null</code>.
+     * @return number of events written.
+     * @throws IOException   if error writing to stream or reading file.
+     * @throws EvioException if reader closed; if error parsing or converting an event.
+     */
+    public int export(EvioReader reader, OutputStream out, String source,
+                      IEvioProgressListener progressListener)
+            throws IOException, EvioException {
+
+        int total = reader.getEventCount();
+        XMLStreamWriter xmlWriter = writeStart(out, source, total);
+        ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<Future<byte[]>>(maxInFlight);
+
+        reader.rewind();
+
+        int written = 0;
+        EvioEvent event;
+        while ((event = reader.parseNextEvent()) != null) {
+            if (inFlight.size() >= maxInFlight) {
+                writeChunk(inFlight.poll(), out);
+                written++;
+                if (progressListener != null) progressListener.completed(written, total);
+            }
+            inFlight.add(threadPool.submit(new EventConverter(event)));
+        }
+
+        while (inFlight.size() > 0) {
+            writeChunk(inFlight.poll(), out);
+            written++;
+            if (progressListener != null) progressListener.completed(written, total);
+        }
+
+        writeEnd(xmlWriter, out);
+        return written;
+    }
+
+
+    /**
+     * Write all events of the given reader as xml. Each event is scanned
+     * and written directly from the buffer without creating EvioEvent objects.
+     * The output stream is not closed.
+     *
+     * @param reader           reader of events.
+     * @param out              stream to write xml to.
+     * @param source           description of the event source (file name) used in a comment.
+     * @param progressListener an optional progress listener, can be <code>null</code>.
+     * @return number of events written.
+     * @throws IOException   if error writing to stream.
+     * @throws EvioException if reader closed; if error converting an event.
+     */
+    public int export(EvioCompactReader reader, OutputStream out, String source,
+                      IEvioProgressListener progressListener)
+            throws IOException, EvioException {
+
+        if (reader.isClosed()) {
+            throw new EvioException("object closed");
+        }
+
+        int total = reader.getEventCount();
+        XMLStreamWriter xmlWriter = writeStart(out, source, total);
+        ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<Future<byte[]>>(maxInFlight);
+
+        int written = 0;
+        for (int i=1; i <= total; i++) {
+            if (inFlight.size() >= maxInFlight) {
+                writeChunk(inFlight.poll(), out);
+                written++;
+                if (progressListener != null) progressListener.completed(written, total);
+            }
+            // Scanning is done here, in order, since it changes the reader's nodes
+            EvioNode node = reader.getScannedEvent(i);
+            if (node == null) {
+                throw new EvioException("cannot scan event " + i);
+            }
+            inFlight.add(threadPool.submit(new NodeConverter(node)));
+        }
+
+        while (inFlight.size() > 0) {
+            writeChunk(inFlight.poll(), out);
+            written++;
+            if (progressListener != null) progressListener.completed(written, total);
+        }
+
+        writeEnd(xmlWriter, out);
+        return written;
+    }
+
+
+    /**
+     * Write the start of the xml document up to and including the root element.
+     *
+     * @param out    stream to write xml to.
+     * @param source description of the event source used in a comment.
+     * @param total  total number of events.
+     * @return xml writer used to write the start which must be used to write the end.
+     * @throws IOException if error writing to stream.
+     */
+    private XMLStreamWriter writeStart(OutputStream out, String source, int total)
+            throws IOException {
+        try {
+            XMLStreamWriter xmlWriter = factory.createXMLStreamWriter(out, "UTF-8");
+            xmlWriter.writeStartDocument();
+            xmlWriter.writeCharacters("\n");
+            xmlWriter.writeComment("Event source file: " + source);
+
+            // start the root element
+            xmlWriter.writeCharacters("\n");
+            xmlWriter.writeStartElement(ROOT_ELEMENT);
+            xmlWriter.writeAttribute("numevents", "" + total);
+            xmlWriter.writeCharacters("\n");
+            // Everything must be in the stream before the events are written to it
+            xmlWriter.flush();
+            return xmlWriter;
+        }
+        catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+
+    /**
+     * Write the end of the xml document.
+     *
+     * @param xmlWriter xml writer used to write the start of the document.
+     * @param out       stream to write xml to.
+     * @throws IOException if error writing to stream.
+     */
+    private void writeEnd(XMLStreamWriter xmlWriter, OutputStream out) throws IOException {
+        try {
+            xmlWriter.writeEndElement();
+            xmlWriter.writeEndDocument();
+            xmlWriter.flush();
+            xmlWriter.close();
+            out.flush();
+        }
+        catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+
+    /**
+     * Wait for an event's xml to be completed and write it to the stream.
+     *
+     * @param future result of converting an event to xml.
+     * @param out    stream to write xml to.
+     * @throws IOException   if error writing to stream.
+     * @throws EvioException if error converting event or interrupted.
+     */
+    private void writeChunk(Future<byte[]> future, OutputStream out)
+            throws IOException, EvioException {
+        try {
+            out.write(future.get());
+        }
+        catch (InterruptedException e) {
+            throw new EvioException("interrupted", e);
+        }
+        catch (ExecutionException e) {
+            throw new EvioException("error converting event to xml", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package org.jlab.coda.jevio;
+
+/**
+ * This interface allows applications to create filters which select whole events,
+ * represented by EvioNode objects, without the events being parsed into EvioEvent objects.
+ * Below is a filter that accepts any event containing a bank which the
+ * dictionary calls "TriggerBank".
+ * <pre>
+ * IEvioNodeFilter myFilter = new IEvioNodeFilter() {
+ *     final StructurePath path = StructurePath.compile("**&#47;TriggerBank", dictionary);
+ *     public boolean accept(EvioNode eventNode) {
+ *         return path.getMatchingNodes(eventNode).size() &gt; 0;
+ *     }
+ * };
+ * </pre>
+ * @author timmer
+ */
+public interface IEvioNodeFilter {
+
+    /**
+     * Accept or reject the given event.
+     *
+     * @param eventNode node representing the event. It is <b>not</b> necessarily scanned,
+     *                  so it may have no child nodes. Its header and data can always be read
+     *                  from its buffer or searched with {@link StructurePath#getMatchingNodes(EvioNode)}.
+     *                  The node and its buffer must not be modified.
+     * @return <code>true</code> if the event passes the filter.
+     */
+    public boolean accept(EvioNode eventNode);
+}
@@ -32,6 +32,15 @@ public class NameProvider {
         return provider != null;
     }
 
+    /**
+     * Gets the one global (singleton) name provider.
+     *
+     * @return the global name provider; null if none set.
+     */
+    public static INameProvider getProvider() {
+        return provider;
+    }
+
     /**
      * Sets the one global (singleton) name provider.
      *
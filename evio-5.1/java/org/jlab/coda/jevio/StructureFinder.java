@@ -106,6 +106,18 @@ System.out.println("getMatchingStructures: returning null list");
             }
         }
 
+        // If an xml dictionary is used, compare tag/num pairs instead of names
+        EvioXMLDictionary xmlDictionary = getXMLDictionary(dictionary);
+        if (xmlDictionary != null) {
+            final StructurePath.Step step = StructurePath.compileName(name, xmlDictionary);
+            IEvioFilter filter = new IEvioFilter() {
+                public boolean accept(StructureType type, IEvioStructure struct) {
+                    return step.matches(struct.getHeader().tag, struct.getHeader().number);
+                }
+            };
+            return getMatchingStructures(structure, filter);
+        }
+
         // This IEvioFilter selects structures that match the given dictionary name
         class myEvioFilter implements IEvioFilter {
             String name;
@@ -161,6 +173,20 @@ System.out.println("getMatchingStructures: returning null list");
             }
         }
 
+        // If an xml dictionary is used, compare tag/num pairs instead of names
+        EvioXMLDictionary xmlDictionary = getXMLDictionary(dictionary);
+        if (xmlDictionary != null) {
+            final StructurePath.Step step = StructurePath.compileName(parentName, xmlDictionary);
+            IEvioFilter filter = new IEvioFilter() {
+                public boolean accept(StructureType type, IEvioStructure struct) {
+                    BaseStructure parent = ((BaseStructure)struct).getParent();
+                    return parent != null &&
+                           step.matches(parent.getHeader().tag, parent.getHeader().number);
+                }
+            };
+            return getMatchingStructures(structure, filter);
+        }
+
         // This IEvioFilter selects structures whose parent has the given dictionary name
         class myEvioFilter implements IEvioFilter {
             String name;
@@ -222,6 +248,25 @@ System.out.println("getMatchingStructures: returning null list");
             }
         }
 
+        // If an xml dictionary is used, compare tag/num pairs instead of names
+        EvioXMLDictionary xmlDictionary = getXMLDictionary(dictionary);
+        if (xmlDictionary != null) {
+            final StructurePath.Step step = StructurePath.compileName(childName, xmlDictionary);
+            IEvioFilter filter = new IEvioFilter() {
+                public boolean accept(StructureType type, IEvioStructure struct) {
+                    List<BaseStructure> children = ((BaseStructure)struct).getChildrenList();
+                    if (children == null) return false;
+                    for (BaseStructure child : children) {
+                        if (step.matches(child.getHeader().tag, child.getHeader().number)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+            };
+            return getMatchingStructures(structure, filter);
+        }
+
         // This IEvioFilter selects structures who have a child with the given dictionary name
         class myEvioFilter implements IEvioFilter {
             String name;
@@ -268,4 +313,50 @@ System.out.println("getMatchingStructures: returning null list");
     }
 
 
+    /**
+     * Collect all structures in an event which match the given dictionary path
+     * expression, e.g. "Event/ECal/FADC". The path is compiled into tag/num pairs
+     * only once per dictionary and subtrees which cannot match are skipped.
+     * See {@link StructurePath} for the path syntax.
+     *
+     * @param structure  the event/bank/seg/tagseg being queried.
+     * @param path       dictionary path expression of structures to be returned.
+     * @param dictionary dictionary to be used; if null, an existing global dictionary will be used.
+     * @return a list of BaseStructures which match the path; null if none
+     * @throws EvioException if no xml dictionary is defined; if path is badly formatted
+     */
+    public static List<BaseStructure> getMatchingPath(BaseStructure structure, String path,
+                                                      INameProvider dictionary)
+            throws EvioException {
+
+        EvioXMLDictionary xmlDictionary = getXMLDictionary(dictionary);
+        if (xmlDictionary == null) {
+            throw new EvioException("EvioXMLDictionary must be given as arg or defined globally in NameProvider");
+        }
+
+        if (structure == null) {
+            return null;
+        }
+
+        return StructurePath.compile(path, xmlDictionary).getMatchingStructures(structure);
+    }
+
+
+    /**
+     * Get the xml dictionary to use, if any.
+     * @param dictionary dictionary given as arg; if null, the global dictionary is used.
+     * @return xml dictionary to use; null if the dictionary is not an EvioXMLDictionary.
+     */
+    private static EvioXMLDictionary getXMLDictionary(INameProvider dictionary) {
+        if (dictionary == null) {
+            dictionary = NameProvider.getProvider();
+        }
+
+        if (dictionary instanceof EvioXMLDictionary) {
+            return (EvioXMLDictionary) dictionary;
+        }
+        return null;
+    }
+
+
 }
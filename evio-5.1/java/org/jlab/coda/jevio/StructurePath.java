@@ -0,0 +1,599 @@
+/*
+ * Copyright (c) 2026, Jefferson Science Associates
+ *
+ * Thomas Jefferson National Accelerator Facility
+ * Data Acquisition Group
+ *
+ * 12000, Jefferson Ave, Newport News, VA 23606
+ * Phone : (757)-269-7100
+ *
+ */
+
+package org.jlab.coda.jevio;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * This class is a dictionary path expression which has been compiled into
+ * a small automaton over tag/num pairs. It is used to find all the evio
+ * structures in an event whose chain of ancestors matches the path.
+ * Compiling is done once for each dictionary and path. After that, no strings
+ * are looked up or compared when evaluating the path, and subtrees which can
+ * no longer match are never visited.<p>
+ *
+ * A path consists of steps separated by "/", for example "Event/ECal/FADC".
+ * The first step must match the structure the search is started on.
+ * Each step is a dictionary name which matches an entry if it is equal to either
+ * the entry's full name or the last part of its hierarchical name.
+ * A step may contain the wildcards "*" (any number of characters) and "?"
+ * (a single character). A step of "**" matches any number of levels
+ * (including none) so that "**&#47;FADC" finds FADC structures at any depth.<p>
+ *
+ * Compiled paths are immutable and thread-safe. They are cached for
+ * each dictionary so calling {@link #compile(String, EvioXMLDictionary)}
+ * repeatedly with the same arguments is cheap.
+ *
+ * @author timmer
+ */
+public final class StructurePath {
+
+    /** Maximum number of steps in a path. */
+    public static final int MAX_STEPS = 63;
+
+    /** String used to separate the steps of a path. */
+    public static final String SEPARATOR = "/";
+
+    /** Step matching any number of levels. */
+    public static final String ANY_DEPTH = "**";
+
+    /** Compiled paths and names stored for each dictionary. */
+    private static final Map<EvioXMLDictionary, CompiledCache> cache =
+            new WeakHashMap<EvioXMLDictionary, CompiledCache>();
+
+    /** Original path expression. */
+    private final String path;
+
+    /** Compiled steps of the path. */
+    private final Step[] steps;
+
+    /** States (one bit per step) before the top structure is examined. */
+    private final long startStates;
+
+    /** Bit set in the state when all steps have been matched. */
+    private final long acceptBit;
+
+
+    /** Holds everything compiled for a single dictionary. */
+    private static final class CompiledCache {
+        final HashMap<String, StructurePath> paths = new HashMap<String, StructurePath>();
+        final HashMap<String, Step> names = new HashMap<String, Step>();
+    }
+
+
+    /**
+     * A single compiled step of a path. It contains the sorted
+     * tag/num pairs (packed into one int) which it matches.
+     */
+    static final class Step {
+        /** Does this step match any number of levels? */
+        final boolean anyDepth;
+        /** Sorted, packed tag/num pairs of matching entries. */
+        final int[] keys;
+        /** Sorted tags of matching entries which have no num. */
+        final int[] tags;
+        /** Sorted, packed tag/num pairs which override a matching tag-only entry. */
+        final int[] excludedKeys;
+
+        Step() {
+            anyDepth = true;
+            keys = tags = excludedKeys = new int[0];
+        }
+
+        Step(int[] keys, int[] tags, int[] excludedKeys) {
+            anyDepth = false;
+            this.keys = keys;
+            this.tags = tags;
+            this.excludedKeys = excludedKeys;
+        }
+
+        /**
+         * Does this step match the given tag and num?
+         * Gives the same answer as comparing the pattern against the dictionary name
+         * of a structure with this tag and num.
+         *
+         * @param tag tag of structure
+         * @param num num of structure
+         * @return <code>true</code> if step matches, else <code>false</code>
+         */
+        boolean matches(int tag, int num) {
+            int key = packKey(tag, num);
+            if (Arrays.binarySearch(keys, key) > -1) return true;
+            return tags.length > 0 &&
+                   Arrays.binarySearch(tags, tag) > -1 &&
+                   Arrays.binarySearch(excludedKeys, key) < 0;
+        }
+    }
+
+
+    /**
+     * Constructor.
+     * @param path  original path expression.
+     * @param steps compiled steps.
+     */
+    private StructurePath(String path, Step[] steps) {
+        this.path  = path;
+        this.steps = steps;
+        acceptBit   = 1L << steps.length;
+        startStates = closure(1L);
+    }
+
+
+    /**
+     * Compile a path expression using the given dictionary.
+     * The result is cached so that it is only compiled once per dictionary.
+     *
+     * @param path       path expression, e.g. "Event/ECal/FADC".
+     * @param dictionary dictionary used to translate names into tag/num pairs.
+     * @return compiled path.
+     * @throws EvioException if path or dictionary is null; if path has no steps,
+     *                       an empty step or more than {@link #MAX_STEPS} steps.
+     */
+    public static StructurePath compile(String path, EvioXMLDictionary dictionary)
+            throws EvioException {
+
+        if (path == null || dictionary == null) {
+            throw new EvioException("null path or dictionary");
+        }
+
+        synchronized (cache) {
+            CompiledCache compiled = getCache(dictionary);
+            StructurePath structurePath = compiled.paths.get(path);
+            if (structurePath != null) return structurePath;
+
+            String[] parts = path.split(SEPARATOR, -1);
+            if (parts.length > MAX_STEPS) {
+                throw new EvioException("path has more than " + MAX_STEPS + " steps");
+            }
+
+            Step[] steps = new Step[parts.length];
+            for (int i=0; i < parts.length; i++) {
+                String part = parts[i].trim();
+                if (part.length() < 1) {
+                    throw new EvioException("empty step in path \"" + path + "\"");
+                }
+                if (part.equals(ANY_DEPTH)) {
+                    steps[i] = new Step();
+                }
+                else {
+                    steps[i] = compileStep(part, dictionary, false);
+                }
+            }
+
+            structurePath = new StructurePath(path, steps);
+            compiled.paths.put(path, structurePath);
+            return structurePath;
+        }
+    }
+
+
+    /**
+     * Compile a single dictionary name into a step which matches only those
+     * tag/num pairs for which the dictionary returns exactly this name.
+     * No wildcards are used. The result is cached.
+     *
+     * @param name       dictionary name.
+     * @param dictionary dictionary used to translate the name into tag/num pairs.
+     * @return compiled step.
+     */
+    static Step compileName(String name, EvioXMLDictionary dictionary) {
+        synchronized (cache) {
+            CompiledCache compiled = getCache(dictionary);
+            Step step = compiled.names.get(name);
+            if (step == null) {
+                step = compileStep(name, dictionary, true);
+                compiled.names.put(name, step);
+            }
+            return step;
+        }
+    }
+
+
+    /**
+     * Get the cached, compiled objects of a dictionary, creating them if necessary.
+     * Must be called while synchronized on the cache.
+     * @param dictionary dictionary
+     * @return cached, compiled objects of the dictionary.
+     */
+    private static CompiledCache getCache(EvioXMLDictionary dictionary) {
+        CompiledCache compiled = cache.get(dictionary);
+        if (compiled == null) {
+            compiled = new CompiledCache();
+            cache.put(dictionary, compiled);
+        }
+        return compiled;
+    }
+
+
+    /**
+     * Turn a tag and num into a single int. Tags are 16 bits and nums 8 bits at most.
+     * @param tag tag
+     * @param num num
+     * @return packed tag and num.
+     */
+    private static int packKey(int tag, int num) {
+        return (tag << 8) | (num & 0xff);
+    }
+
+
+    /**
+     * Compile a single name or name pattern into a step.
+     *
+     * @param pattern    name or pattern with wildcards.
+     * @param dictionary dictionary used to translate names into tag/num pairs.
+     * @param exact      if <code>true</code>, the pattern must equal the full
+     *                   dictionary name and no wildcards are used.
+     * @return compiled step.
+     */
+    private static Step compileStep(String pattern, EvioXMLDictionary dictionary, boolean exact) {
+
+        String delimiter = dictionary.getDelimiter();
+
+        // Tag-only entries
+        ArrayList<Integer> tagList = new ArrayList<Integer>();
+        for (Map.Entry<Integer, String> entry : dictionary.getTagOnlyMap().entrySet()) {
+            if (nameMatches(pattern, entry.getValue(), delimiter, exact)) {
+                tagList.add(entry.getKey());
+            }
+        }
+        int[] tags = toSortedArray(tagList);
+
+        // Regular entries. Those not matching but sharing a tag with a matching
+        // tag-only entry need to be excluded since they take precedence.
+        ArrayList<Integer> keyList = new ArrayList<Integer>();
+        ArrayList<Integer> excludedList = new ArrayList<Integer>();
+        for (Map.Entry<String, EvioDictionaryEntry> entry : dictionary.getMap().entrySet()) {
+            EvioDictionaryEntry data = entry.getValue();
+            int tag = data.getTag();
+            int num = data.getNum();
+            // Headers cannot hold these values so they never match
+            if (tag > 0xffff || num > 0xff) continue;
+
+            if (nameMatches(pattern, entry.getKey(), delimiter, exact)) {
+                keyList.add(packKey(tag, num));
+            }
+            else if (Arrays.binarySearch(tags, tag) > -1) {
+                excludedList.add(packKey(tag, num));
+            }
+        }
+
+        return new Step(toSortedArray(keyList), tags, toSortedArray(excludedList));
+    }
+
+
+    /**
+     * Does the given pattern match a dictionary name?
+     *
+     * @param pattern   name or pattern with wildcards.
+     * @param name      full dictionary name.
+     * @param delimiter string separating hierarchical parts of names.
+     * @param exact     if <code>true</code>, pattern must equal the full name.
+     * @return <code>true</code> if pattern matches, else <code>false</code>.
+     */
+    private static boolean nameMatches(String pattern, String name, String delimiter, boolean exact) {
+        if (exact) return pattern.equals(name);
+        if (globMatches(pattern, name)) return true;
+
+        int index = name.lastIndexOf(delimiter);
+        return index > -1 && globMatches(pattern, name.substring(index + delimiter.length()));
+    }
+
+
+    /**
+     * Match text against a pattern in which "*" matches any number of
+     * characters and "?" matches a single character.
+     *
+     * @param pattern pattern
+     * @param text    text to match
+     * @return <code>true</code> if text matches pattern, else <code>false</code>.
+     */
+    static boolean globMatches(String pattern, String text) {
+        int p = 0, t = 0, starP = -1, starT = 0;
+        int pLen = pattern.length(), tLen = text.length();
+
+        while (t < tLen) {
+            if (p < pLen && (pattern.charAt(p) == '?' || pattern.charAt(p) == text.charAt(t))) {
+                p++; t++;
+            }
+            else if (p < pLen && pattern.charAt(p) == '*') {
+                starP = p++;
+                starT = t;
+            }
+            else if (starP > -1) {
+                // Let the last star swallow one more character
+                p = starP + 1;
+                t = ++starT;
+            }
+            else {
+                return false;
+            }
+        }
+
+        while (p < pLen && pattern.charAt(p) == '*') p++;
+        return p == pLen;
+    }
+
+
+    /**
+     * Turn a list of Integers into a sorted int array.
+     * @param list list of Integers.
+     * @return sorted int array.
+     */
+    private static int[] toSortedArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i=0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        Arrays.sort(array);
+        return array;
+    }
+
+
+    /**
+     * Add to the given states all those reachable by skipping "**" steps.
+     * @param states states with one bit for each step expected next.
+     * @return states with skipped "**" steps added.
+     */
+    private long closure(long states) {
+        for (int i=0; i < steps.length; i++) {
+            if (steps[i].anyDepth && (states & (1L << i)) != 0) {
+                states |= 1L << (i+1);
+            }
+        }
+        return states;
+    }
+
+
+    /**
+     * Compute the states after examining a structure with the given tag and num.
+     *
+     * @param states states before examining structure.
+     * @param tag    tag of structure.
+     * @param num    num of structure.
+     * @return states after examining structure; zero if no match is possible.
+     */
+    private long next(long states, int tag, int num) {
+        long nextStates = 0L;
+        // The accepting bit is not a step
+        states &= ~acceptBit;
+
+        while (states != 0L) {
+            int i = Long.numberOfTrailingZeros(states);
+            states &= states - 1L;
+
+            if (steps[i].anyDepth) {
+                nextStates |= 1L << i;
+            }
+            else if (steps[i].matches(tag, num)) {
+                nextStates |= 1L << (i+1);
+            }
+        }
+
+        return closure(nextStates);
+    }
+
+
+    /**
+     * Get the original path expression.
+     * @return original path expression.
+     */
+    public String getPath() {
+        return path;
+    }
+
+
+    /**
+     * Get the number of steps in this path.
+     * @return number of steps in this path.
+     */
+    public int getStepCount() {
+        return steps.length;
+    }
+
+
+    /**
+     * Collect all structures, starting with and including the given structure,
+     * which match this path.
+     *
+     * @param structure the event/bank/seg/tagseg being queried.
+     * @return list of all matching structures; null if none.
+     */
+    public List<BaseStructure> getMatchingStructures(BaseStructure structure) {
+        if (structure == null) return null;
+
+        ArrayList<BaseStructure> list = new ArrayList<BaseStructure>(10);
+        search(structure, startStates, list);
+
+        if (list.size() == 0) {
+            return null;
+        }
+        return list;
+    }
+
+
+    /**
+     * Recursively look for matches in a structure and its descendants.
+     *
+     * @param structure structure being examined.
+     * @param states    states before examining structure.
+     * @param list      list in which to place matches.
+     */
+    private void search(BaseStructure structure, long states, List<BaseStructure> list) {
+        BaseStructureHeader header = structure.getHeader();
+        states = next(states, header.tag, header.number);
+
+        if ((states & acceptBit) != 0) {
+            list.add(structure);
+        }
+
+        // Prune subtree if no more matches are possible
+        if ((states & ~acceptBit) == 0L || structure.isLeaf()) {
+            return;
+        }
+
+        List<BaseStructure> kids = structure.getChildrenList();
+        if (kids == null) return;
+
+        for (BaseStructure kid : kids) {
+            search(kid, states, list);
+        }
+    }
+
+
+    /**
+     * Collect all evio structures, starting with and including the one represented
+     * by the given node, which match this path. The structures are read directly out
+     * of the node's buffer so the node does not need to have been scanned. Only
+     * those subtrees which can still match are examined. The returned nodes are
+     * <b>not</b> added to the child or all-node lists of the given node.
+     * The buffer's position and limit are not changed.
+     *
+     * @param node node representing the event/bank/seg/tagseg being queried.
+     * @return list of EvioNode objects representing matching structures
+     *         (empty if none found).
+     */
+    public List<EvioNode> getMatchingNodes(EvioNode node) {
+        ArrayList<EvioNode> list = new ArrayList<EvioNode>(10);
+        if (node == null) return list;
+
+        long states = next(startStates, node.tag, node.num);
+        if ((states & acceptBit) != 0) {
+            list.add(node);
+        }
+
+        search(node, states, list);
+        return list;
+    }
+
+
+    /**
+     * Recursively look for matches in the children of an evio structure
+     * in a buffer.
+     *
+     * @param node   node of structure whose children are examined.
+     * @param states states after examining the node itself.
+     * @param list   list in which to place matches.
+     */
+    private void search(EvioNode node, long states, List<EvioNode> list) {
+
+        // Prune subtree if no more matches are possible
+        if ((states & ~acceptBit) == 0L || !DataType.isStructure(node.dataType)) {
+            return;
+        }
+
+        int position  = node.dataPos;
+        int endingPos = position + 4*node.dataLen;
+        ByteBuffer buffer = node.bufferNode.buffer;
+
+        int word, len, dataLen, headerBytes, tag, num, dt, dataType, pad, kidType;
+
+        switch (DataType.getDataType(node.dataType)) {
+            case BANK:
+            case ALSOBANK:
+                headerBytes = 8;
+                kidType = DataType.BANK.getValue();
+                break;
+            case SEGMENT:
+            case ALSOSEGMENT:
+                headerBytes = 4;
+                kidType = DataType.SEGMENT.getValue();
+                break;
+            case TAGSEGMENT:
+                headerBytes = 4;
+                kidType = DataType.TAGSEGMENT.getValue();
+                break;
+            default:
+                return;
+        }
+
+        while (position <= endingPos - headerBytes) {
+
+            if (headerBytes == 8) {
+                len     = buffer.getInt(position);
+                dataLen = len - 1;
+                word    = buffer.getInt(position + 4);
+                tag     = word >>> 16;
+                dt      = (word >> 8) & 0xff;
+                num     = word & 0xff;
+            }
+            else if (kidType == DataType.SEGMENT.getValue()) {
+                word    = buffer.getInt(position);
+                tag     = word >>> 24;
+                dt      = (word >>> 16) & 0xff;
+                len     = dataLen = word & 0xffff;
+                num     = 0;
+            }
+            else {
+                word    = buffer.getInt(position);
+                tag     = word >>> 20;
+                dt      = (word >>> 16) & 0xf;
+                len     = dataLen = word & 0xffff;
+                num     = 0;
+            }
+
+            long kidStates = next(states, tag, num);
+
+            // Only create a node if it matches or may contain matches
+            if (kidStates != 0L) {
+                dataType = dt & 0x3f;
+                pad = dt >>> 6;
+                // If only 7th bit set, that can only be the legacy tagsegment type
+                // with no padding information - convert it properly.
+                if (dt == 0x40) {
+                    dataType = DataType.TAGSEGMENT.getValue();
+                    pad = 0;
+                }
+                if (kidType == DataType.TAGSEGMENT.getValue()) {
+                    pad = 0;
+                }
+
+                EvioNode kidNode = (EvioNode)node.clone();
+                kidNode.len      = len;
+                kidNode.pos      = position;
+                kidNode.type     = kidType;
+                kidNode.dataLen  = dataLen;
+                kidNode.dataPos  = position + headerBytes;
+                kidNode.dataType = dataType;
+                kidNode.pad      = pad;
+                kidNode.tag      = tag;
+                kidNode.num      = num;
+                kidNode.isEvent  = false;
+                kidNode.parentNode = node;
+
+                if ((kidStates & acceptBit) != 0) {
+                    list.add(kidNode);
+                }
+
+                search(kidNode, kidStates, list);
+            }
+
+            // Hop over kid's header and data
+            position += headerBytes + 4*dataLen;
+        }
+    }
+
+
+    /**
+     * Get a string representation of this path.
+     * @return string representation of this path.
+     */
+    @Override
+    public String toString() {
+        return path;
+    }
+}
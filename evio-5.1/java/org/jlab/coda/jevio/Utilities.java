@@ -394,24 +394,166 @@ final public class Utilities {
             return null;
         }
 
+        ArrayList<EvioEvent> eventList = new ArrayList<EvioEvent>();
+        XMLInputFactory f = XMLInputFactory.newInstance();
+
+        try {
+            XMLEventReader evReader = f.createXMLEventReader(new StringReader(xmlString));
+            toEvents(evReader, maxEvents, skip, dictionary, debug, eventList, null, null);
+            evReader.close();
+        }
+        catch (XMLStreamException e) {
+            throw new EvioException(e);
+        }
+
+        return eventList;
+    }
+
+
+    /**
+     * This method reads evio events in xml format (each starting with lt; event gt;)
+     * from a stream and converts them, one at a time, into EvioEvent objects.
+     * As soon as an event's xml element is closed, the event is written
+     * to the given writer and/or handed to the given listener after which it is
+     * no longer referenced. Thus, memory use does not depend on the size of the input.
+     * The writer is not closed when done.
+     *
+     * @param xmlStream   stream of xml to parse
+     * @param writer      object to write each event to; may be null
+     * @param maxEvents   max number of events to convert
+     * @param skip        number of events to initially skip over
+     * @param dictionary  dictionary object
+     * @param listener    object whose endEventParse method is called with each
+     *                    completed event; may be null
+     * @param debug       true for debug output
+     * @return number of events converted
+     * @throws EvioException if xml is not in proper format;
+     *                       if error writing event
+     */
+    final static public int toEvents(InputStream xmlStream, EventWriter writer,
+                                     int maxEvents, int skip,
+                                     EvioXMLDictionary dictionary,
+                                     IEvioListener listener, boolean debug)
+            throws EvioException {
+
+        if (xmlStream == null) {
+            return 0;
+        }
+
+        XMLInputFactory f = XMLInputFactory.newInstance();
+
+        XMLEventReader evReader = null;
+        try {
+            // Let the parser figure out the encoding
+            evReader = f.createXMLEventReader(xmlStream);
+            return toEvents(evReader, maxEvents, skip, dictionary, debug, null, writer, listener);
+        }
+        catch (XMLStreamException e) {
+            throw new EvioException(e);
+        }
+        finally {
+            close(evReader);
+        }
+    }
+
+
+    /**
+     * This method reads evio events in xml format (each starting with lt; event gt;)
+     * from a Reader and converts them, one at a time, into EvioEvent objects.
+     * As soon as an event's xml element is closed, the event is written
+     * to the given writer and/or handed to the given listener after which it is
+     * no longer referenced. Thus, memory use does not depend on the size of the input.
+     * The writer is not closed when done.
+     *
+     * @param xmlReader   source of xml to parse
+     * @param writer      object to write each event to; may be null
+     * @param maxEvents   max number of events to convert
+     * @param skip        number of events to initially skip over
+     * @param dictionary  dictionary object
+     * @param listener    object whose endEventParse method is called with each
+     *                    completed event; may be null
+     * @param debug       true for debug output
+     * @return number of events converted
+     * @throws EvioException if xml is not in proper format;
+     *                       if error writing event
+     */
+    final static public int toEvents(Reader xmlReader, EventWriter writer,
+                                     int maxEvents, int skip,
+                                     EvioXMLDictionary dictionary,
+                                     IEvioListener listener, boolean debug)
+            throws EvioException {
+
+        if (xmlReader == null) {
+            return 0;
+        }
+
+        XMLInputFactory f = XMLInputFactory.newInstance();
+
+        XMLEventReader evReader = null;
+        try {
+            evReader = f.createXMLEventReader(xmlReader);
+            return toEvents(evReader, maxEvents, skip, dictionary, debug, null, writer, listener);
+        }
+        catch (XMLStreamException e) {
+            throw new EvioException(e);
+        }
+        finally {
+            close(evReader);
+        }
+    }
+
+
+    /**
+     * Close an xml reader, even after a parse error, ignoring any error in closing.
+     * The underlying stream or reader is not closed.
+     * @param evReader object used to parse xml; may be null
+     */
+    final static private void close(XMLEventReader evReader) {
+        if (evReader == null) return;
+        try {
+            evReader.close();
+        }
+        catch (XMLStreamException e) {}
+    }
+
+
+    /**
+     * This method does the work of parsing xml representations of evio events.
+     * Each event is built and, once complete, it is added to the list, written
+     * to the writer, and given to the listener if each of those is not null.
+     *
+     * @param evReader    object used to parse xml
+     * @param maxEvents   max number of events to convert
+     * @param skip        number of events to initially skip over
+     * @param dictionary  dictionary object
+     * @param debug       true for debug output
+     * @param eventList   list to add each completed event to; may be null
+     * @param writer      object to write each event to; may be null
+     * @param listener    object whose endEventParse method is called with each
+     *                    completed event; may be null
+     * @return number of events converted
+     * @throws EvioException if xml is not in proper format;
+     *                       if error reading xml or writing event
+     */
+    final static private int toEvents(XMLEventReader evReader, int maxEvents, int skip,
+                                      EvioXMLDictionary dictionary, boolean debug,
+                                      List<EvioEvent> eventList, EventWriter writer,
+                                      IEvioListener listener)
+            throws EvioException {
+
         // For a single event, keep track of the state of each XML level in a stack.
         // This is faster than the old "Stack" java class.
         ArrayDeque<EvioXmlLevel> xmlStack = new ArrayDeque<EvioXmlLevel>(10);
         EvioXmlLevel level=null, upLevel;
 
         EventBuilder eb = new EventBuilder(null);
-        StringReader sReader = new StringReader(xmlString);
-        XMLInputFactory f = XMLInputFactory.newInstance();
-        ArrayList<EvioEvent> eventList = new ArrayList<EvioEvent>();
         DataType dataType;
-        int eventCount=0;
+        int eventCount=0, convertedCount=0;
         int[] tagNum;
         boolean eventBeginning=true, fileBeginning=true;
         boolean skipEvent=false, inDictionary, haveDictionary=(dictionary != null);
 
         try {
-            XMLEventReader evReader = f.createXMLEventReader(sReader);
-
             while(evReader.hasNext()) {
 
                 XMLEvent event = evReader.nextEvent();
@@ -530,7 +672,7 @@ if (debug) System.out.println("FOUND dict entry(" + name + "): tag = " + level.t
                             // If we've hit our max, we're done
                             if ((maxEvents > 0) && (eventCount >= maxEvents + skip)) {
 if (debug) System.out.println("Hit max # events, quitting");
-                                return eventList;
+                                return convertedCount;
                             }
 
                             // Skip over this event since first "skip" # of events are ignored
@@ -681,8 +823,23 @@ if (debug) System.out.println("END_ELEMENT " + name);
                                 // Done with everything
                                 break;
                             }
-                            // We're done with event, move on to next if any
-                            eventList.add(eb.getEvent());
+                            // We're done with event, hand it off and move on to next if any
+                            EvioEvent ev = eb.getEvent();
+                            if (eventList != null) {
+                                eventList.add(ev);
+                            }
+                            if (writer != null) {
+                                try {
+                                    writer.writeEvent(ev);
+                                }
+                                catch (IOException e) {
+                                    throw new EvioException(e);
+                                }
+                            }
+                            if (listener != null) {
+                                listener.endEventParse(ev);
+                            }
+                            convertedCount++;
                             eventBeginning = true;
                             level = null;
                             break;
@@ -734,7 +891,7 @@ if (debug) System.out.println("END_DOCUMENT");
             throw new EvioException(e);
         }
 
-        return eventList;
+        return convertedCount;
     }
 
 
@@ -1459,6 +1616,21 @@ if (debug) System.out.println("      Format = " + formats[cDataCount]);
     }
 
 
+    /**
+     * This method takes an EvioNode object and writes it as XML.
+     * The node and its descendants must have been scanned.
+     * @param node      EvioNode object to write
+     * @param hex       if true, ints get displayed in hexadecimal
+     * @param xmlWriter the writer used to write the node.
+     */
+    final static void toXML(EvioNode node, boolean hex, XMLStreamWriter xmlWriter) {
+        if (node == null) {
+            return;
+        }
+        nodeToString(node, "", hex, xmlWriter);
+    }
+
+
     /**
      * All structures have a common start to their xml writing
      * @param xmlWriter the writer used to write the node.
@@ -1529,9 +1701,11 @@ if (debug) System.out.println("      Format = " + formats[cDataCount]);
                 xmlWriter.writeAttribute("length", "" + node.getLength());
                 xmlIndent = increaseXmlIndent(xmlIndent);
 
-                for (EvioNode n : node.childNodes) {
-                    // Recursive call
-                    nodeToString(n, xmlIndent, hex, xmlWriter);
+                if (node.childNodes != null) {
+                    for (EvioNode n : node.childNodes) {
+                        // Recursive call
+                        nodeToString(n, xmlIndent, hex, xmlWriter);
+                    }
                 }
 
                 xmlIndent = decreaseXmlIndent(xmlIndent);
@@ -0,0 +1,602 @@
+package org.jlab.coda.jevio.apps;
+
+import org.jlab.coda.jevio.*;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * This program measures the speed of evio's readers, parser and writer so that
+ * changes which slow them down are caught. Events are generated rather than read
+ * from files so that every run sees the same data. They look like those of HPS:
+ * a bank of ROC banks each containing a bank of ints and a bank of FADC
+ * composite data, in small, medium and large sizes.
+ * Each benchmark does the same operation over and over while the number done is
+ * counted. After a few warmup iterations, the rate of several measured iterations
+ * is averaged and printed along with its standard deviation. The results may also
+ * be appended as a line of JSON to a file so that they can be compared from one
+ * commit to the next. The benchmarks are:
+ * <ul>
+ * <li>parse: {@link EvioReader#parseNextEvent()} into a tree of objects;</li>
+ * <li>scan: {@link EvioCompactReader#getScannedEvent(int)} into a list of nodes;</li>
+ * <li>search: {@link EvioCompactReader#searchEvent(int, int, int)} for the FADC banks;</li>
+ * <li>toInts, toBytes: {@link ByteDataTransformer} conversions of 64kB of data;</li>
+ * <li>compositeParse, compositeSwap: {@link CompositeData#parse(byte[], ByteOrder)} and
+ *     {@link CompositeData#swapAll(byte[], int, byte[], int, int, ByteOrder)}
+ *     of a FADC bank's data;</li>
+ * <li>write: {@link EventWriter#writeEvent(EvioBank)} into a buffer.</li>
+ * </ul>
+ * Created by timmer on 10/18/26.
+ */
+public class EvioBenchmark {
+
+    /** Number of events generated of each size. */
+    private static final int numEvents = 100;
+
+    /** Tag of ROC banks is this plus the ROC id. */
+    private static final int rocTag = 0x10;
+
+    /** Tag of banks of ints. */
+    private static final int intTag = 0xe101;
+
+    /** Tag of banks of FADC composite data. */
+    private static final int fadcTag = 0xe102;
+
+    /** Format of FADC composite data: slot, trigger #, time, N channels each of N samples. */
+    private static final String fadcFormat = "c,i,l,N(c,Ns)";
+
+    /** Data generated on the fly is kept here so it cannot be optimized away. */
+    static volatile long sink;
+
+
+    public EvioBenchmark() {
+    }
+
+
+    private static void usage() {
+        System.out.println("\nUsage: java EvioBenchmark [-h] [-b <benchmark>] [-wi <iterations>] [-i <iterations>]\n" +
+                "                       [-r <seconds>] [-json <file>] [-label <label>]\n\n" +
+                "       -h      help\n" +
+                "       -b      run only benchmarks whose name contains this string\n" +
+                "       -wi     number of warmup iterations (default 3)\n" +
+                "       -i      number of measured iterations (default 5)\n" +
+                "       -r      seconds in each iteration (default 1)\n" +
+                "       -json   append results as one line of JSON to this file\n" +
+                "       -label  label of results in JSON, for example a commit id\n\n" +
+                "        This program measures the rates at which evio reads, parses\n" +
+                "        and writes generated events.\n");
+    }
+
+
+    /**
+     * Sizes of generated events.
+     */
+    enum Size {
+        /** 2 ROCs, about 0.5kB. */
+        small  (2,  32,  2,   8),
+        /** 4 ROCs, about 10kB. */
+        medium (4, 512,  8,  24),
+        /** 8 ROCs, about 160kB. */
+        large  (8, 4096, 16, 100);
+
+        /** Number of ROC banks. */
+        final int rocs;
+        /** Number of ints in each bank of ints. */
+        final int ints;
+        /** Number of FADC channels in each composite bank. */
+        final int channels;
+        /** Number of samples in each FADC channel. */
+        final int samples;
+
+        Size(int rocs, int ints, int channels, int samples) {
+            this.rocs     = rocs;
+            this.ints     = ints;
+            this.channels = channels;
+            this.samples  = samples;
+        }
+    }
+
+
+    /**
+     * Generate FADC composite data.
+     *
+     * @param size     size of event it goes in
+     * @param slot     slot of FADC
+     * @param trigger  trigger number
+     * @param random   source of samples
+     * @return FADC composite data
+     * @throws EvioException if data does not match format
+     */
+    static CompositeData generateFadc(Size size, int slot, int trigger, Random random)
+            throws EvioException {
+
+        CompositeData.Data data = new CompositeData.Data();
+        data.addUchar((byte) slot);
+        data.addUint(trigger);
+        data.addUlong(trigger * 4000L);
+        data.addN(size.channels);
+        short[] samples = new short[size.samples];
+        for (int i=0; i < size.channels; i++) {
+            data.addUchar((byte) i);
+            data.addN(size.samples);
+            for (int j=0; j < size.samples; j++) {
+                samples[j] = (short) (200 + random.nextInt(50));
+            }
+            data.addUshort(samples);
+        }
+        return new CompositeData(fadcFormat, 1, data, 0, 0);
+    }
+
+
+    /**
+     * Generate an event which looks like one of HPS.
+     *
+     * @param size     size of event
+     * @param trigger  trigger number
+     * @param random   source of data
+     * @return event
+     * @throws EvioException if event cannot be built
+     */
+    static EvioEvent generateEvent(Size size, int trigger, Random random) throws EvioException {
+        EventBuilder builder = new EventBuilder(1, DataType.BANK, trigger);
+        EvioEvent event = builder.getEvent();
+
+        int[] ints = new int[size.ints];
+        for (int roc=1; roc <= size.rocs; roc++) {
+            EvioBank rocBank = new EvioBank(rocTag + roc, DataType.BANK, roc);
+
+            for (int i=0; i < ints.length; i++) {
+                ints[i] = random.nextInt();
+            }
+            EvioBank intBank = new EvioBank(intTag, DataType.INT32, roc);
+            intBank.appendIntData(ints);
+            builder.addChild(rocBank, intBank);
+
+            EvioBank fadcBank = new EvioBank(fadcTag, DataType.COMPOSITE, roc);
+            fadcBank.appendCompositeData(new CompositeData[] {generateFadc(size, roc, trigger, random)});
+            builder.addChild(rocBank, fadcBank);
+
+            builder.addChild(event, rocBank);
+        }
+        event.setAllHeaderLengths();
+        return event;
+    }
+
+
+    /**
+     * Generate events and write them into a buffer.
+     *
+     * @param size  size of events
+     * @param order byte order of buffer
+     * @return buffer ready to be read from
+     * @throws EvioException if events cannot be built or written
+     * @throws IOException   if events cannot be written
+     */
+    static ByteBuffer generateBuffer(Size size, ByteOrder order) throws EvioException, IOException {
+        List<EvioEvent> events = generateEvents(size);
+        int bytes = 1024;
+        for (EvioEvent ev : events) {
+            bytes += ev.getTotalBytes() + 32;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(2*bytes).order(order);
+        EventWriter writer = new EventWriter(buf);
+        for (EvioEvent ev : events) {
+            writer.writeEvent(ev);
+        }
+        writer.close();
+        return writer.getByteBuffer();
+    }
+
+
+    /**
+     * Generate the same events every time.
+     * @param size size of events
+     * @return events
+     * @throws EvioException if events cannot be built
+     */
+    static List<EvioEvent> generateEvents(Size size) throws EvioException {
+        Random random = new Random(size.ordinal());
+        ArrayList<EvioEvent> events = new ArrayList<EvioEvent>(numEvents);
+        for (int i=0; i < numEvents; i++) {
+            events.add(generateEvent(size, i+1, random));
+        }
+        return events;
+    }
+
+
+    /**
+     * A benchmark does the same operation over and over
+     * and counts the operations done.
+     */
+    static abstract class Benchmark {
+
+        /** Name of benchmark. */
+        final String name;
+
+        /** Parameters of benchmark. */
+        final String params;
+
+        /** Units of operations. */
+        final String units;
+
+
+        Benchmark(String name, String params, String units) {
+            this.name   = name;
+            this.params = params;
+            this.units  = units;
+        }
+
+        /** Generate the data. */
+        abstract void setup() throws Exception;
+
+        /**
+         * Do the operation once.
+         * @return number of operations done (for example, events parsed)
+         */
+        abstract int run() throws Exception;
+    }
+
+
+    /** Parse events into trees of objects. */
+    static class ParseBenchmark extends Benchmark {
+        private final Size size;
+        private EvioReader reader;
+
+        ParseBenchmark(Size size) {
+            super("parse", "size=" + size, "events/s");
+            this.size = size;
+        }
+
+        void setup() throws Exception {
+            reader = new EvioReader(generateBuffer(size, ByteOrder.BIG_ENDIAN));
+        }
+
+        int run() throws Exception {
+            EvioEvent ev = reader.parseNextEvent();
+            if (ev == null) {
+                reader.rewind();
+                ev = reader.parseNextEvent();
+            }
+            sink += ev.getChildCount();
+            return 1;
+        }
+    }
+
+
+    /** Scan events into lists of nodes without making objects of their data. */
+    static class ScanBenchmark extends Benchmark {
+        private final Size size;
+        private EvioCompactReader reader;
+        private int eventNumber;
+
+        ScanBenchmark(Size size) {
+            super("scan", "size=" + size, "events/s");
+            this.size = size;
+        }
+
+        void setup() throws Exception {
+            reader = new EvioCompactReader(generateBuffer(size, ByteOrder.BIG_ENDIAN));
+        }
+
+        int run() throws Exception {
+            if (++eventNumber > numEvents) eventNumber = 1;
+            sink += reader.getScannedEvent(eventNumber).getChildCount();
+            return 1;
+        }
+    }
+
+
+    /** Search scanned events for banks of FADC data. */
+    static class SearchBenchmark extends Benchmark {
+        private final Size size;
+        private EvioCompactReader reader;
+        private int eventNumber;
+
+        SearchBenchmark(Size size) {
+            super("search", "size=" + size, "events/s");
+            this.size = size;
+        }
+
+        void setup() throws Exception {
+            reader = new EvioCompactReader(generateBuffer(size, ByteOrder.BIG_ENDIAN));
+        }
+
+        int run() throws Exception {
+            if (++eventNumber > numEvents) eventNumber = 1;
+            sink += reader.searchEvent(eventNumber, fadcTag, 1).size();
+            return 1;
+        }
+    }
+
+
+    /** Convert bytes into ints. */
+    static class ToIntsBenchmark extends Benchmark {
+        private final ByteOrder order;
+        private byte[] bytes;
+        private int[] ints;
+
+        ToIntsBenchmark(ByteOrder order) {
+            super("toInts", "order=" + order, "arrays/s");
+            this.order = order;
+        }
+
+        void setup() throws Exception {
+            bytes = new byte[65536];
+            new Random(0).nextBytes(bytes);
+            ints = new int[bytes.length/4];
+        }
+
+        int run() throws Exception {
+            ByteDataTransformer.toIntArray(bytes, order, ints, 0);
+            sink += ints[ints.length - 1];
+            return 1;
+        }
+    }
+
+
+    /** Convert ints into bytes. */
+    static class ToBytesBenchmark extends Benchmark {
+        private final ByteOrder order;
+        private byte[] bytes;
+        private int[] ints;
+
+        ToBytesBenchmark(ByteOrder order) {
+            super("toBytes", "order=" + order, "arrays/s");
+            this.order = order;
+        }
+
+        void setup() throws Exception {
+            Random random = new Random(0);
+            ints = new int[16384];
+            for (int i=0; i < ints.length; i++) {
+                ints[i] = random.nextInt();
+            }
+            bytes = new byte[4*ints.length];
+        }
+
+        int run() throws Exception {
+            ByteDataTransformer.toBytes(ints, order, bytes, 0);
+            sink += bytes[bytes.length - 1];
+            return 1;
+        }
+    }
+
+
+    /** Parse the raw bytes of FADC composite data. */
+    static class CompositeParseBenchmark extends Benchmark {
+        private final Size size;
+        private byte[] bytes;
+
+        CompositeParseBenchmark(Size size) {
+            super("compositeParse", "size=" + size, "banks/s");
+            this.size = size;
+        }
+
+        void setup() throws Exception {
+            bytes = generateFadc(size, 1, 1, new Random(0)).getRawBytes();
+        }
+
+        int run() throws Exception {
+            sink += CompositeData.parse(bytes, ByteOrder.BIG_ENDIAN).length;
+            return 1;
+        }
+    }
+
+
+    /** Swap the raw bytes of FADC composite data. */
+    static class CompositeSwapBenchmark extends Benchmark {
+        private final Size size;
+        private byte[] bytes, swapped;
+
+        CompositeSwapBenchmark(Size size) {
+            super("compositeSwap", "size=" + size, "banks/s");
+            this.size = size;
+        }
+
+        void setup() throws Exception {
+            bytes = generateFadc(size, 1, 1, new Random(0)).getRawBytes();
+            swapped = new byte[bytes.length];
+        }
+
+        int run() throws Exception {
+            CompositeData.swapAll(bytes, 0, swapped, 0, bytes.length/4, ByteOrder.BIG_ENDIAN);
+            sink += swapped[0];
+            return 1;
+        }
+    }
+
+
+    /** Write events into a buffer. */
+    static class WriteBenchmark extends Benchmark {
+        private final Size size;
+        private List<EvioEvent> events;
+        private ByteBuffer buf;
+
+        WriteBenchmark(Size size) {
+            super("write", "size=" + size, "events/s");
+            this.size = size;
+        }
+
+        void setup() throws Exception {
+            events = generateEvents(size);
+            buf = ByteBuffer.allocate(2*generateBuffer(size, ByteOrder.BIG_ENDIAN).limit());
+        }
+
+        int run() throws Exception {
+            buf.clear();
+            EventWriter writer = new EventWriter(buf);
+            for (EvioEvent ev : events) {
+                writer.writeEvent(ev);
+            }
+            writer.close();
+            sink += writer.getBytesWrittenToBuffer();
+            return events.size();
+        }
+    }
+
+
+    /** Result of a benchmark. */
+    static class Result {
+        final Benchmark benchmark;
+        final int iterations;
+        final double mean, deviation;
+
+        Result(Benchmark benchmark, int iterations, double mean, double deviation) {
+            this.benchmark  = benchmark;
+            this.iterations = iterations;
+            this.mean       = mean;
+            this.deviation  = deviation;
+        }
+    }
+
+
+    /**
+     * Run one benchmark and print its result.
+     *
+     * @param b          benchmark
+     * @param warmups    number of warmup iterations
+     * @param iterations number of measured iterations
+     * @param nanos      nanoseconds in each iteration
+     * @return result
+     */
+    private static Result run(Benchmark b, int warmups, int iterations, long nanos) throws Exception {
+        double[] rates = new double[iterations];
+        b.setup();
+        for (int i=0; i < warmups + iterations; i++) {
+            long ops = 0, t = System.nanoTime(), now;
+            do {
+                ops += b.run();
+                now = System.nanoTime();
+            } while (now - t < nanos);
+            if (i >= warmups) rates[i - warmups] = ops * 1.e9 / (now - t);
+        }
+
+        double mean = 0., var = 0.;
+        for (double r : rates) mean += r;
+        mean /= iterations;
+        for (double r : rates) var += (r - mean)*(r - mean);
+        double dev = iterations > 1 ? Math.sqrt(var/(iterations - 1)) : 0.;
+
+        System.out.printf("%-16s %-20s %5d %14.1f +- %12.1f  %s%n",
+                          b.name, b.params, iterations, mean, dev, b.units);
+        return new Result(b, iterations, mean, dev);
+    }
+
+
+    /**
+     * Append results as one line of JSON to a file.
+     *
+     * @param fileName name of file
+     * @param label    label of results, may be null
+     * @param results  results
+     * @throws IOException if file cannot be written
+     */
+    private static void writeJson(String fileName, String label, List<Result> results)
+            throws IOException {
+
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("{\"date\":\"");
+        sb.append(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(new Date()));
+        sb.append("\",\"label\":\"").append(label == null ? "" : label.replace("\"", "'"));
+        sb.append("\",\"java\":\"").append(System.getProperty("java.version"));
+        sb.append("\",\"results\":[");
+        for (int i=0; i < results.size(); i++) {
+            Result r = results.get(i);
+            if (i > 0) sb.append(',');
+            sb.append("{\"benchmark\":\"").append(r.benchmark.name);
+            sb.append("\",\"params\":\"").append(r.benchmark.params);
+            sb.append("\",\"cnt\":").append(r.iterations);
+            sb.append(",\"score\":").append(String.format(Locale.US, "%.1f", r.mean));
+            sb.append(",\"error\":").append(String.format(Locale.US, "%.1f", r.deviation));
+            sb.append(",\"units\":\"").append(r.benchmark.units).append("\"}");
+        }
+        sb.append("]}\n");
+
+        FileWriter writer = new FileWriter(fileName, true);
+        try {
+            writer.write(sb.toString());
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+
+    public static void main(String[] args) {
+        String only = null, jsonFile = null, label = null;
+        int warmups = 3, iterations = 5;
+        double seconds = 1.;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equalsIgnoreCase("-b")) {
+                    only = args[++i];
+                }
+                else if (args[i].equalsIgnoreCase("-wi")) {
+                    warmups = Integer.parseInt(args[++i]);
+                }
+                else if (args[i].equalsIgnoreCase("-i")) {
+                    iterations = Integer.parseInt(args[++i]);
+                }
+                else if (args[i].equalsIgnoreCase("-r")) {
+                    seconds = Double.parseDouble(args[++i]);
+                }
+                else if (args[i].equalsIgnoreCase("-json")) {
+                    jsonFile = args[++i];
+                }
+                else if (args[i].equalsIgnoreCase("-label")) {
+                    label = args[++i];
+                }
+                else {
+                    usage();
+                    return;
+                }
+            }
+        }
+        catch (Exception ex) {
+            usage();
+            return;
+        }
+
+        if (iterations < 1 || warmups < 0 || seconds <= 0.) {
+            usage();
+            return;
+        }
+
+        ArrayList<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        for (Size size : Size.values()) benchmarks.add(new ParseBenchmark(size));
+        for (Size size : Size.values()) benchmarks.add(new ScanBenchmark(size));
+        for (Size size : Size.values()) benchmarks.add(new SearchBenchmark(size));
+        benchmarks.add(new ToIntsBenchmark(ByteOrder.BIG_ENDIAN));
+        benchmarks.add(new ToIntsBenchmark(ByteOrder.LITTLE_ENDIAN));
+        benchmarks.add(new ToBytesBenchmark(ByteOrder.BIG_ENDIAN));
+        benchmarks.add(new ToBytesBenchmark(ByteOrder.LITTLE_ENDIAN));
+        for (Size size : Size.values()) benchmarks.add(new CompositeParseBenchmark(size));
+        for (Size size : Size.values()) benchmarks.add(new CompositeSwapBenchmark(size));
+        for (Size size : Size.values()) benchmarks.add(new WriteBenchmark(size));
+
+        System.out.printf("%-16s %-20s %5s %14s   %12s  %s%n",
+                          "Benchmark", "Parameters", "Cnt", "Score", "Error", "Units");
+        ArrayList<Result> results = new ArrayList<Result>();
+        try {
+            for (Benchmark b : benchmarks) {
+                if (only != null && !b.name.contains(only)) continue;
+                results.add(run(b, warmups, iterations, (long) (1.e9*seconds)));
+            }
+            if (jsonFile != null) {
+                writeJson(jsonFile, label, results);
+            }
+        }
+        catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.jlab.coda.jevio.apps;
+
+import org.jlab.coda.jevio.*;
+
+import java.io.File;
+import java.util.ArrayList;
+
+/**
+ * This program copies those events of evio files which contain a given bank
+ * into new files without parsing the events.
+ * Created by timmer on 10/18/26.
+ */
+public class EvioFilterCopy {
+
+    /** Method to print out correct program command line usage. */
+    private static void usage() {
+
+        System.out.println("\nUsage: java EvioFilterCopy -o <output dir> [-t <threads>]\n" +
+                             "                     [-tag <tag> -num <num>] [-p <path> -d <dictionary file>]\n" +
+                             "                     <evio file> ...\n\n" +
+
+        "          -h    help\n" +
+        "          -o    directory in which to write the copied files\n" +
+        "          -t    number of files to copy at once (default = # of cores)\n" +
+        "          -tag  tag of bank an event must contain to be copied\n" +
+        "          -num  num of bank an event must contain to be copied\n" +
+        "          -p    dictionary path of structure an event must contain to be copied\n" +
+        "          -d    xml dictionary file name (default = dictionary in evio file)\n\n" +
+
+        "          This program copies all events which contain the given bank\n" +
+        "          (or all events if none is given) into files of the same name\n" +
+        "          in the output directory.\n");
+    }
+
+
+    public EvioFilterCopy() {
+    }
+
+    public static void main(String[] args) {
+        int threads=0, tag=-1, num=-1;
+        String outDir=null, path=null, dictFile=null;
+        ArrayList<File> inputs = new ArrayList<File>();
+
+        // loop over all args
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("-o")) {
+                outDir = args[i + 1];
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-t")) {
+                threads = Integer.parseInt(args[i + 1]);
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-tag")) {
+                tag = Integer.decode(args[i + 1]);
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-num")) {
+                num = Integer.decode(args[i + 1]);
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-p")) {
+                path = args[i + 1];
+                i++;
+            }
+            else if (args[i].equalsIgnoreCase("-d")) {
+                dictFile = args[i + 1];
+                i++;
+            }
+            else if (args[i].startsWith("-")) {
+                usage();
+                System.exit(-1);
+            }
+            else {
+                inputs.add(new File(args[i]));
+            }
+        }
+
+        if (outDir == null || inputs.size() < 1) {
+            usage();
+            System.exit(-1);
+        }
+
+        try {
+            IEvioNodeFilter filter = null;
+            EvioXMLDictionary dictionary = null;
+
+            if (tag > -1) {
+                // Make a dictionary with a single entry for the given bank
+                if (num < 0) num = 0;
+                dictionary = new EvioXMLDictionary("<xmlDict><dictEntry name='selected' tag='" +
+                                                   tag + "' num='" + num + "'/></xmlDict>");
+                path = "**/selected";
+            }
+            else if (path != null) {
+                if (dictFile != null) {
+                    dictionary = new EvioXMLDictionary(new File(dictFile));
+                }
+                else {
+                    EvioCompactReader reader = new EvioCompactReader(inputs.get(0));
+                    dictionary = reader.getDictionary();
+                    reader.close();
+                }
+
+                if (dictionary == null) {
+                    System.out.println("No dictionary to translate path");
+                    System.exit(-1);
+                }
+            }
+
+            if (path != null) {
+                filter = EvioEventCopier.containing(StructurePath.compile(path, dictionary));
+            }
+
+            EvioEventCopier copier = new EvioEventCopier(filter);
+            EvioEventCopier.Statistics stats = copier.copy(inputs, new File(outDir), threads);
+            System.out.println(stats);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -2,10 +2,11 @@ package org.jlab.coda.jevio.apps;
 
 import org.jlab.coda.jevio.*;
 
+import java.io.BufferedInputStream;
 import java.io.File;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.List;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * This program takes an xml format file containing evio data
@@ -93,31 +94,47 @@ public class Xml2evio {
             }
         }
 
+        EventWriter writer = null;
+        InputStream xmlStream = null;
+
         try {
-            String xml = new String(Files.readAllBytes(Paths.get(xmlFile)));
-            List<EvioEvent> evList = Utilities.toEvents(xml, max, skip, dictionary, debug);
-            EventWriter writer = null;
             if (evioFile != null) {
                 writer = new EventWriter(evioFile);
             }
 
-            for (EvioEvent ev : evList) {
-                if (evioFile != null) {
-                    writer.writeEvent(ev);
-                }
-
-                if (verbose) {
-                    System.out.println("Event:\n" + ev.toXML(hex));
-                }
+            // Print out each event as it is converted
+            IEvioListener listener = null;
+            if (verbose) {
+                final boolean printHex = hex;
+                listener = new IEvioListener() {
+                    public void gotStructure(BaseStructure topStructure, IEvioStructure structure) {}
+                    public void startEventParse(BaseStructure structure) {}
+                    public void endEventParse(BaseStructure structure) {
+                        System.out.println("Event:\n" + structure.toXML(printHex));
+                    }
+                };
             }
 
-            if (evioFile != null) {
-                writer.close();
+            // Events are converted and written one at a time as the
+            // xml is read so the whole file is never held in memory.
+            xmlStream = new BufferedInputStream(new FileInputStream(xmlFile), 1000000);
+            int count = Utilities.toEvents(xmlStream, writer, max, skip, dictionary, listener, debug);
+            if (debug) {
+                System.out.println("Converted " + count + " events");
             }
         }
         catch (Exception e) {
             e.printStackTrace();
         }
+        finally {
+            if (writer != null) {
+                writer.close();
+            }
+            if (xmlStream != null) {
+                try {xmlStream.close();}
+                catch (IOException e) {}
+            }
+        }
     }
 
 }
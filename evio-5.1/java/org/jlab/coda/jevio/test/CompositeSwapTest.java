@@ -0,0 +1,74 @@
+package org.jlab.coda.jevio.test;
+
+import org.jlab.coda.jevio.*;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Test swapping composite data whose data bank is padded
+ * into a destination array at a nonzero offset.
+ *
+ * @author timmer
+ */
+public class CompositeSwapTest {
+
+    /** Create composite data holding an int followed by the given number of chars. */
+    private static CompositeData createItem(int i, int chars) throws EvioException {
+        CompositeData.Data data = new CompositeData.Data();
+        data.addInt(i);
+        byte[] b = new byte[chars];
+        for (int j=0; j < chars; j++) {
+            b[j] = (byte) ('a' + j);
+        }
+        data.addChar(b);
+        return new CompositeData("I," + chars + "C", data);
+    }
+
+
+    public static void main(String args[]) {
+
+        try {
+            // 7 and 5 bytes of data, so both data banks are padded
+            byte[] item1 = createItem(0x11223344, 3).getRawBytes();
+            byte[] item2 = createItem(0x55667788, 1).getRawBytes();
+            ByteOrder order = createItem(0, 1).getByteOrder();
+            ByteOrder swappedOrder = (order == ByteOrder.BIG_ENDIAN) ?
+                                      ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+
+            byte[] src = new byte[item1.length + item2.length];
+            System.arraycopy(item1, 0, src, 0, item1.length);
+            System.arraycopy(item2, 0, src, item1.length, item2.length);
+            int words = src.length/4;
+
+            // swap into the middle of an array, then back again
+            int destOff = 12;
+            byte[] swapped = new byte[destOff + src.length + 8];
+            CompositeData.swapAll(src, 0, swapped, destOff, words, order);
+
+            byte[] back = new byte[src.length];
+            CompositeData.swapAll(swapped, destOff, back, 0, words, swappedOrder);
+
+            if (!Arrays.equals(src, back)) {
+                System.out.println("FAILED: data swapped twice differs from the original");
+                System.exit(-1);
+            }
+
+            // the second item must be where it belongs in the swapped array
+            byte[] swapped2 = Arrays.copyOfRange(swapped, destOff + item1.length,
+                                                 destOff + src.length);
+            CompositeData cData = new CompositeData(swapped2, swappedOrder);
+            cData.index(0);
+            if (cData.getInt() != 0x55667788) {
+                System.out.println("FAILED: bad int in swapped second item");
+                System.exit(-1);
+            }
+
+            System.out.println("Swapped padded composite data at offset " + destOff + ": ok");
+        }
+        catch (EvioException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+}
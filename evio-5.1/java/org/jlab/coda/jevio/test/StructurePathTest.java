@@ -0,0 +1,107 @@
+package org.jlab.coda.jevio.test;
+
+import org.jlab.coda.jevio.*;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Test program for compiled dictionary path queries.
+ * @author timmer
+ * Date: Oct 18, 2026
+ */
+public class StructurePathTest {
+
+    static String xmlDict =
+            "<xmlDict>"  +
+                "<bank name='Event' tag='1' num='1' >"  +
+                    "<bank name='ECal' tag='10' num='0' >"  +
+                        "<leaf name='FADC' tag='11' num='1' />"  +
+                        "<leaf name='TDC'  tag='12' num='1' />"  +
+                    "</bank>"  +
+                    "<bank name='SVT' tag='20' num='0' >"  +
+                        "<leaf name='FADC' tag='21' num='1' />"  +
+                    "</bank>"  +
+                "</bank>"  +
+            "</xmlDict>";
+
+
+    /** Build an event with an ECal and an SVT bank each containing data banks. */
+    static EvioEvent createEvent() throws EvioException {
+        EventBuilder builder = new EventBuilder(1, DataType.BANK, 1);
+        EvioEvent event = builder.getEvent();
+
+        EvioBank ecal = new EvioBank(10, DataType.BANK, 0);
+        builder.addChild(event, ecal);
+
+        EvioBank fadc = new EvioBank(11, DataType.INT32, 1);
+        builder.setIntData(fadc, new int[] {1, 2, 3});
+        builder.addChild(ecal, fadc);
+
+        EvioBank tdc = new EvioBank(12, DataType.INT32, 1);
+        builder.setIntData(tdc, new int[] {4, 5});
+        builder.addChild(ecal, tdc);
+
+        EvioBank svt = new EvioBank(20, DataType.BANK, 0);
+        builder.addChild(event, svt);
+
+        EvioBank svtFadc = new EvioBank(21, DataType.INT32, 1);
+        builder.setIntData(svtFadc, new int[] {6});
+        builder.addChild(svt, svtFadc);
+
+        builder.setAllHeaderLengths();
+        return event;
+    }
+
+
+    static void print(String label, List<?> list) {
+        System.out.println(label + ": " + (list == null ? 0 : list.size()) + " match(es)");
+        if (list == null) return;
+        for (Object o : list) {
+            if (o instanceof BaseStructure) {
+                BaseStructureHeader h = ((BaseStructure)o).getHeader();
+                System.out.println("    tag = " + h.getTag() + ", num = " + h.getNumber());
+            }
+            else {
+                System.out.println("    " + o);
+            }
+        }
+    }
+
+
+    /** For testing only */
+    public static void main(String args[]) {
+
+        try {
+            EvioXMLDictionary dict = new EvioXMLDictionary(xmlDict);
+            EvioEvent event = createEvent();
+
+            String[] paths = {"Event/ECal/FADC", "Event/*/FADC", "**/FADC",
+                              "Event/ECal/*", "**", "ECal/FADC"};
+
+            for (String p : paths) {
+                print("tree \"" + p + "\"", StructureFinder.getMatchingPath(event, p, dict));
+            }
+
+            print("name \"Event.ECal.FADC\"",
+                  StructureFinder.getMatchingStructures(event, "Event.ECal.FADC", dict));
+
+            // Now search the serialized event without parsing it
+            ByteBuffer buf = ByteBuffer.allocate(4096);
+            EventWriter writer = new EventWriter(buf);
+            writer.writeEvent(event);
+            writer.close();
+
+            EvioCompactReader reader = new EvioCompactReader(writer.getByteBuffer());
+            for (String p : paths) {
+                StructurePath path = StructurePath.compile(p, dict);
+                print("node \"" + p + "\"", reader.searchEvent(1, path));
+            }
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+
+}